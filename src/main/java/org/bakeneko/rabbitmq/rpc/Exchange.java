@@ -0,0 +1,40 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks a parameter of a {@link RabbitClient} method as the exchange of the call,
+ * overriding {@link RabbitSender#exchange()} and {@link RabbitClient#exchange()}.
+ *
+ * @author Ivan Sergienko
+ * @see RoutingKey
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Exchange {
+
+    /**
+     * A template for the exchange name, where {@code {}} is replaced with the value of the parameter, e.g. {@code "tenant.{}"}.
+     * Supports property placeholders. If not specified, the value of the parameter is used as is.
+     *
+     * @return the exchange name template
+     */
+    String value() default "";
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks a method of a {@link RabbitService} as the batch handler of one of its {@link RabbitClient} interface methods:
+ * the requests sent to that method are consumed in batches of up to {@link RabbitSender#batchSize()} messages,
+ * and the handler is invoked once per batch.
+ * <p>
+ * The handler takes a {@code List} of the payloads and returns a {@code List} of the replies in the same order
+ * (or nothing, if the interface method is {@code void}); each reply is sent to the reply address of its own request.
+ * Only the payloads are passed to the handler, so the headers of the requests are not available.
+ * The batch is acknowledged once the handler returns. If it throws, each request gets the exception as a
+ * {@link org.springframework.remoting.support.RemoteInvocationResult} reply, and the one-way requests are rejected without requeueing.
+ * Calls dispatched locally still go to the interface method itself.
+ *
+ * @author Ivan Sergienko
+ * @see RabbitService#batchSize()
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RabbitBatchHandler {
+
+    /**
+     * @return the name of the {@link RabbitClient} interface method handled in batches. If the method is overloaded,
+     * the handler applies to the overload taking its payload type
+     */
+    String value();
+
+    /**
+     * The maximum number of milliseconds the first request of an incomplete batch waits for the others,
+     * before the batch is handled anyway. Supports property placeholders.
+     *
+     * @return the maximum wait for a batch to fill up
+     */
+    String maxWait() default "100";
+
+}
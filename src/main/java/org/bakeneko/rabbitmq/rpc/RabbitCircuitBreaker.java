@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc;
+
+import java.lang.annotation.*;
+
+/**
+ * Enables circuit breaking for the methods of a {@link RabbitClient}.
+ * When used on the interface, every method gets its own circuit breaker with the specified settings.
+ * When used on a method, its attributes override the ones specified on the interface.
+ * <p>
+ * Once the failure rate or the slow call rate over the last {@link #slidingWindowSize()} calls reaches its threshold, the circuit opens:
+ * all calls fail immediately with {@link org.bakeneko.rabbitmq.rpc.policy.CircuitBreakerOpenException}, without sending anything.
+ * After {@link #waitDurationInOpenState()} a few probe calls are let through, closing the circuit if they succeed.
+ * Exceptions and reply timeouts (i.e. {@code null} replies) count as failures.
+ * <p>
+ * All the attributes support property placeholders.
+ *
+ * @author Ivan Sergienko
+ * @see org.bakeneko.rabbitmq.rpc.policy.CircuitBreaker
+ */
+@Target({ElementType.TYPE, ElementType.METHOD, ElementType.ANNOTATION_TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RabbitCircuitBreaker {
+
+    /**
+     * Allows disabling circuit breaking for a particular method, when it's enabled on the interface.
+     *
+     * @return {@code "true"} or {@code "false"}, enabled by default
+     */
+    String enabled() default "";
+
+    /**
+     * @return the percentage of failed calls opening the circuit, {@code 50} by default
+     */
+    String failureRateThreshold() default "";
+
+    /**
+     * @return the percentage of slow calls opening the circuit, {@code 100} (i.e. only when all calls are slow) by default
+     * @see #slowCallDuration()
+     */
+    String slowCallRateThreshold() default "";
+
+    /**
+     * @return the duration in milliseconds above which a call is considered slow, {@code 5000} by default
+     */
+    String slowCallDuration() default "";
+
+    /**
+     * @return the number of most recent calls the rates are calculated over, {@code 100} by default
+     */
+    String slidingWindowSize() default "";
+
+    /**
+     * @return the minimum number of calls before the rates are evaluated, {@code 20} by default
+     */
+    String minimumNumberOfCalls() default "";
+
+    /**
+     * @return the time in milliseconds the circuit stays open before letting probe calls through, {@code 30000} by default
+     */
+    String waitDurationInOpenState() default "";
+
+    /**
+     * @return the number of probe calls let through in the half-open state, {@code 5} by default
+     */
+    String permittedCallsInHalfOpenState() default "";
+}
@@ -17,12 +17,15 @@
 package org.bakeneko.rabbitmq.rpc;
 
 import org.springframework.stereotype.Component;
+import org.springframework.stereotype.Indexed;
 
 import java.lang.annotation.*;
 
 /**
  * Annotation to be used on an interface for RabbitMQ RPC client generation.
  * Requires {@link EnableRabbitRPC} annotation to be present on a {@link org.springframework.context.annotation.Configuration} class.
+ * The annotation is {@link Indexed}, so the {@code spring-context-indexer} annotation processor lists the clients
+ * in {@code META-INF/spring.components}, and {@link EnableRabbitRPC} finds them there instead of scanning the classpath.
  *
  * @author Ivan Sergienko
  * @see RabbitSender
@@ -31,6 +34,7 @@ import java.lang.annotation.*;
 @Retention(RetentionPolicy.RUNTIME)
 @Documented
 @Component
+@Indexed
 public @interface RabbitClient {
 
     /**
@@ -61,4 +65,172 @@ public @interface RabbitClient {
      */
     String messagePostProcessor() default "";
 
+    /**
+     * The maximum number of calls that may be outstanding at the same time across all the methods of the client.
+     * Supports property placeholders. Not limited by default.
+     * Methods can additionally be limited individually with {@link RabbitSender#maxInFlight()}.
+     *
+     * @return the maximum number of concurrent calls through the client
+     * @see RabbitSender#maxInFlight()
+     */
+    String maxInFlight() default "";
+
+    /**
+     * How long (in milliseconds) a call waits for a free slot once the {@link #maxInFlight()} limit is reached.
+     * A negative value means waiting indefinitely (the default), {@code 0} means failing immediately
+     * with {@link org.bakeneko.rabbitmq.rpc.policy.RabbitCallRejectedException}, a positive value - failing after the specified time.
+     * Supports property placeholders.
+     * If also defined in {@link RabbitSender#inFlightTimeout()}, the latter one takes precedence for the method limit.
+     *
+     * @return the time to wait for a free slot, in milliseconds
+     * @see RabbitSender#inFlightTimeout()
+     */
+    String inFlightTimeout() default "";
+
+    /**
+     * Whether the number of outstanding calls of each method returning a value should be limited adaptively,
+     * based on the measured round-trip time (see {@link org.bakeneko.rabbitmq.rpc.policy.AdaptiveConcurrencyLimiter}).
+     * The calls exceeding the current limit fail immediately with {@link org.bakeneko.rabbitmq.rpc.policy.RabbitCallRejectedException}.
+     * Accepts {@code "true"} or {@code "false"} and supports property placeholders. Disabled by default.
+     * If also defined in {@link RabbitSender#adaptiveConcurrency()}, the latter one takes precedence.
+     *
+     * @return whether adaptive concurrency limiting is enabled
+     * @see RabbitSender#adaptiveConcurrency()
+     */
+    String adaptiveConcurrency() default "";
+
+    /**
+     * The bean name of the {@link org.springframework.amqp.rabbit.core.RabbitTemplate} to send the messages through,
+     * instead of the default one. Allows isolating the traffic of the client onto a differently configured template or connection.
+     * Mutually exclusive with {@link #connectionFactory()} and {@link #isolated()}.
+     *
+     * @return the bean name of the template to use
+     */
+    String rabbitTemplate() default "";
+
+    /**
+     * The bean name of the {@link org.springframework.amqp.rabbit.connection.ConnectionFactory} to create a dedicated
+     * {@link org.springframework.amqp.rabbit.core.RabbitTemplate} for. The template uses the message converter of the default one.
+     * Mutually exclusive with {@link #rabbitTemplate()} and {@link #isolated()}.
+     *
+     * @return the bean name of the connection factory to use
+     */
+    String connectionFactory() default "";
+
+    /**
+     * Whether the client should get a {@link org.springframework.amqp.rabbit.core.RabbitTemplate} with a connection and channel cache of its own,
+     * created with the same settings as the default one, so that its traffic doesn't contend with the other clients.
+     * Requires the default template to use a {@link org.springframework.amqp.rabbit.connection.CachingConnectionFactory}.
+     * Accepts {@code "true"} or {@code "false"} and supports property placeholders.
+     * Mutually exclusive with {@link #rabbitTemplate()} and {@link #connectionFactory()}.
+     *
+     * @return whether the client uses an isolated connection
+     */
+    String isolated() default "";
+
+    /**
+     * The retry policy applied to all the methods of the client.
+     * If also defined in {@link RabbitSender#retry()}, the attributes specified there take precedence.
+     *
+     * @return the retry policy for calls through the client, no retries by default
+     * @see RabbitSender#retry()
+     */
+    RabbitRetry retry() default @RabbitRetry;
+
+    /**
+     * The shards the calls with a {@link ShardKey} parameter are distributed over through a consistent hash ring.
+     * Either a number of shards {@code N}, in which case the routing key of a call is {@code <routingKey>.<0..N-1>},
+     * or a comma-separated list of the routing keys of the shards.
+     * Supports property placeholders; the property is re-read periodically, and the ring is rebuilt when it changes,
+     * moving only about {@code 1/N} of the keys when a shard is added or removed.
+     *
+     * @return the shard count or the comma-separated shard routing keys
+     * @see ShardKey
+     */
+    String shards() default "";
+
+    /**
+     * Whether the calls should be dispatched directly to a {@link org.springframework.amqp.rabbit.annotation.RabbitListener}
+     * of the same application when the broker would route them to its queue, bypassing the serialization and the broker.
+     * The listener runs on the calling thread. The calls without a local listener go through the broker as usual.
+     * Accepts {@code "true"} or {@code "false"} and supports property placeholders.
+     *
+     * @return whether the calls are dispatched to local listeners
+     * @see org.bakeneko.rabbitmq.rpc.local.LocalRabbitListenerRegistry
+     * @see #copyOnLocalDispatch()
+     */
+    String localDispatch() default "";
+
+    /**
+     * Whether the payloads and the replies of locally dispatched calls are copied by converting them through the message converter
+     * of the client's template, so that the caller and the listener never share mutable objects. Otherwise they are passed by reference.
+     * Accepts {@code "true"} or {@code "false"} and supports property placeholders.
+     *
+     * @return whether locally dispatched payloads and replies are copied
+     * @see #localDispatch()
+     */
+    String copyOnLocalDispatch() default "";
+
+    /**
+     * The number of long-lived reply consumers to receive the replies of the client's calls through, instead of the
+     * {@link org.springframework.amqp.rabbit.core.RabbitTemplate}'s own reply handling. The calls are published on the consumers'
+     * channels with direct reply-to, and matched to their replies through a shared correlation table, so a handful of channels
+     * serves any number of concurrent calls. The clients sharing a connection factory share the consumers.
+     * {@code "0"} or an empty value (the default) leaves the replies to the template. Supports property placeholders.
+     *
+     * @return the number of multiplexed reply consumers
+     * @see org.bakeneko.rabbitmq.rpc.reply.ReplyMultiplexer
+     */
+    String replyConsumers() default "";
+
+    /**
+     * The number of pooled channels to publish the client's {@code void} calls through, instead of the channel cache
+     * of the {@link org.springframework.amqp.rabbit.core.RabbitTemplate}'s connection factory. Each publishing thread sticks to
+     * a channel of its own while it's free, so the publishers don't contend on a shared cache.
+     * The clients sharing a connection factory share the pool. {@code "0"} or an empty value (the default) leaves the publishing
+     * to the template. Supports property placeholders.
+     *
+     * @return the number of pooled publishing channels
+     * @see org.bakeneko.rabbitmq.rpc.publish.StripedChannelPool
+     */
+    String publishChannels() default "";
+
+    /**
+     * The largest message body, in bytes, the client sends as a single message. A larger request is split into ordered chunk messages
+     * sharing a transfer id, which the receiving side reassembles before handing the request to its listener - a {@link RabbitService}
+     * of the interface does it on its own, a {@code @RabbitListener} needs a
+     * {@link org.bakeneko.rabbitmq.rpc.chunk.ChunkAssemblingContainerFactory}. An empty value (the default) never splits the requests.
+     * Supports property placeholders.
+     *
+     * @return the maximum body size of a request message
+     * @see org.bakeneko.rabbitmq.rpc.chunk.ChunkedTransfer
+     */
+    String chunkSize() default "";
+
+    /**
+     * The durable local outbox the {@code void} calls failing to reach the broker are stored in, to be published once it's back.
+     *
+     * @return the outbox of the client, none by default
+     * @see RabbitOutbox
+     */
+    RabbitOutbox outbox() default @RabbitOutbox;
+
+    /**
+     * Whether the client should be resolved lazily: the proxy is created right away, while the metadata and the invoker of each method
+     * (and the template, the limiters and the outbox of the client) are only set up on its first call, so the configuration errors
+     * surface then rather than at startup. Accepts {@code "true"} or {@code "false"} and supports property placeholders.
+     *
+     * @return whether the methods are resolved on their first call
+     */
+    String lazy() default "";
+
+    /**
+     * Whether the generated client is registered as the primary bean of the interface type, so that it's the one injected by type
+     * when another bean implements the interface too, e.g. its {@link RabbitService}. Otherwise both beans are candidates,
+     * like for any other interface. Accepts {@code "true"} or {@code "false"} and supports property placeholders. Defaults to {@code "false"}.
+     *
+     * @return whether the client is the primary bean of its type
+     */
+    String primary() default "";
+
 }
@@ -19,6 +19,12 @@ package org.bakeneko.rabbitmq.rpc;
 import org.bakeneko.rabbitmq.rpc.factory.PropertiesResolverImpl;
 import org.bakeneko.rabbitmq.rpc.factory.RabbitClientAnnotationProcessorImpl;
 import org.bakeneko.rabbitmq.rpc.factory.RabbitClientFactoryImpl;
+import org.bakeneko.rabbitmq.rpc.factory.RabbitTemplateResolverImpl;
+import org.bakeneko.rabbitmq.rpc.local.LocalRabbitListenerRegistry;
+import org.bakeneko.rabbitmq.rpc.metrics.MicrometerRabbitClientMetrics;
+import org.bakeneko.rabbitmq.rpc.metrics.NoOpRabbitClientMetrics;
+import org.bakeneko.rabbitmq.rpc.metrics.RabbitClientMetrics;
+import org.bakeneko.rabbitmq.rpc.server.RabbitServiceConfigurer;
 import org.springframework.beans.factory.BeanClassLoaderAware;
 import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -27,9 +33,11 @@ import org.springframework.beans.factory.config.ConstructorArgumentValues;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
 import org.springframework.beans.factory.support.GenericBeanDefinition;
 import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.EnvironmentAware;
 import org.springframework.context.ResourceLoaderAware;
 import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
 import org.springframework.context.annotation.ImportBeanDefinitionRegistrar;
+import org.springframework.core.env.Environment;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.core.type.AnnotationMetadata;
 import org.springframework.core.type.filter.AnnotationTypeFilter;
@@ -43,17 +51,25 @@ import java.util.Set;
 
 /**
  * The {@link ImportBeanDefinitionRegistrar} used to register {@link RabbitClient} bean definitions.
+ * The clients are looked up in the candidate components index ({@code META-INF/spring.components}) if the classpath has one,
+ * like {@link org.springframework.context.annotation.ComponentScan} does, and the base packages are scanned otherwise.
  *
  * @author Ivan Sergienko
  */
-public class RabbitClientRegistrar implements ImportBeanDefinitionRegistrar, ResourceLoaderAware, BeanClassLoaderAware {
+public class RabbitClientRegistrar implements ImportBeanDefinitionRegistrar, ResourceLoaderAware, BeanClassLoaderAware, EnvironmentAware {
     private ClassPathScanner classpathScanner;
     private ClassLoader classLoader;
     private ResourceLoader resourceLoader;
+    private Environment environment;
 
     private static final String PROPERTIES_RESOLVER_BEAN_NAME = PropertiesResolverImpl.class.getName();
     private static final String ANNOTATION_PROCESSOR_BEAN_NAME = RabbitClientAnnotationProcessorImpl.class.getName();
     private static final String CLIENT_FACTORY_BEAN_NAME = RabbitClientFactoryImpl.class.getName();
+    private static final String TEMPLATE_RESOLVER_BEAN_NAME = RabbitTemplateResolverImpl.class.getName();
+    private static final String METRICS_BEAN_NAME = RabbitClientMetrics.class.getName();
+    private static final String LOCAL_LISTENER_REGISTRY_BEAN_NAME = LocalRabbitListenerRegistry.class.getName();
+    private static final String SERVICE_CONFIGURER_BEAN_NAME = RabbitServiceConfigurer.class.getName();
+    private static final String MICROMETER_REGISTRY_CLASS_NAME = "io.micrometer.core.instrument.MeterRegistry";
 
     public RabbitClientRegistrar() {
         classpathScanner = new ClassPathScanner();
@@ -65,8 +81,14 @@ public class RabbitClientRegistrar implements ImportBeanDefinitionRegistrar, Res
         this.classLoader = classLoader;
     }
 
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.environment = environment;
+    }
+
     public void setResourceLoader(ResourceLoader resourceLoader) {
         this.resourceLoader = resourceLoader;
+        classpathScanner.setResourceLoader(resourceLoader);
     }
 
     public void registerBeanDefinitions(AnnotationMetadata annotationMetadata, BeanDefinitionRegistry registry) {
@@ -76,12 +98,27 @@ public class RabbitClientRegistrar implements ImportBeanDefinitionRegistrar, Res
         if (annotationMetadata.getAnnotationAttributes(EnableRabbitRPC.class.getName()) != null) {
             registerDefinitionIfMissing(PROPERTIES_RESOLVER_BEAN_NAME, PropertiesResolverImpl.class, registry);
             registerDefinitionIfMissing(ANNOTATION_PROCESSOR_BEAN_NAME, RabbitClientAnnotationProcessorImpl.class, registry);
+            registerDefinitionIfMissing(TEMPLATE_RESOLVER_BEAN_NAME, RabbitTemplateResolverImpl.class, registry);
+            registerDefinitionIfMissing(METRICS_BEAN_NAME, metricsType(), registry);
             registerDefinitionIfMissing(CLIENT_FACTORY_BEAN_NAME, RabbitClientFactoryImpl.class, registry);
+            registerDefinitionIfMissing(SERVICE_CONFIGURER_BEAN_NAME, RabbitServiceConfigurer.class, registry);
 
-            getBasePackages(annotationMetadata).forEach(p -> createRabbitClients(p, registry));
+            boolean localDispatch = false;
+            for (String basePackage : getBasePackages(annotationMetadata)) {
+                localDispatch |= createRabbitClients(basePackage, registry);
+            }
+            // the registry post-processes every bean looking for listeners, so it's only worth it if a client dispatches locally
+            if (localDispatch) {
+                registerDefinitionIfMissing(LOCAL_LISTENER_REGISTRY_BEAN_NAME, LocalRabbitListenerRegistry.class, registry);
+            }
         }
     }
 
+    private Class<? extends RabbitClientMetrics> metricsType() {
+        return ClassUtils.isPresent(MICROMETER_REGISTRY_CLASS_NAME, classLoader) ?
+                MicrometerRabbitClientMetrics.class : NoOpRabbitClientMetrics.class;
+    }
+
     private <T> void registerDefinitionIfMissing(String beanName, Class<T> beanType, BeanDefinitionRegistry registry) {
         if (!registry.containsBeanDefinition(beanName)) {
             registry.registerBeanDefinition(beanName, new RootBeanDefinition(beanType));
@@ -113,10 +150,14 @@ public class RabbitClientRegistrar implements ImportBeanDefinitionRegistrar, Res
         return basePackages;
     }
 
-    private void createRabbitClients(String basePackage, BeanDefinitionRegistry registry) {
+    /**
+     * @return whether any of the clients registered dispatches its calls locally
+     */
+    private boolean createRabbitClients(String basePackage, BeanDefinitionRegistry registry) {
+        boolean localDispatch = false;
         try {
             for (BeanDefinition beanDefinition : classpathScanner.findCandidateComponents(basePackage)) {
-                Class<?> clazz = Class.forName(beanDefinition.getBeanClassName());
+                Class<?> clazz = ClassUtils.forName(beanDefinition.getBeanClassName(), classLoader);
                 String beanName = getBeanName(clazz);
 
                 GenericBeanDefinition proxyBeanDefinition = new GenericBeanDefinition();
@@ -129,12 +170,37 @@ public class RabbitClientRegistrar implements ImportBeanDefinitionRegistrar, Res
 
                 proxyBeanDefinition.setFactoryBeanName(CLIENT_FACTORY_BEAN_NAME);
                 proxyBeanDefinition.setFactoryMethodName("forType");
+                proxyBeanDefinition.setPrimary(isPrimary(clazz));
 
                 registry.registerBeanDefinition(beanName, proxyBeanDefinition);
+                localDispatch |= isLocalDispatch(clazz.getAnnotation(RabbitClient.class));
             }
         } catch (ClassNotFoundException e) {
             throw new IllegalStateException(e);
         }
+        return localDispatch;
+    }
+
+    private boolean isLocalDispatch(RabbitClient rabbitClient) {
+        String localDispatch = resolve(rabbitClient.localDispatch());
+        // an unresolvable placeholder may still turn out to be true
+        return Boolean.parseBoolean(localDispatch) || localDispatch.contains("${");
+    }
+
+    private boolean isPrimary(Class<?> clazz) {
+        String primary = resolve(clazz.getAnnotation(RabbitClient.class).primary());
+        if (primary.isEmpty() || "false".equalsIgnoreCase(primary)) {
+            return false;
+        } else if ("true".equalsIgnoreCase(primary)) {
+            return true;
+        } else {
+            throw new IllegalStateException(String.format("The value of primary must be either \"true\" or \"false\", while \"%s\" was specified in %s.",
+                    primary, clazz.getName()));
+        }
+    }
+
+    private String resolve(String value) {
+        return (environment != null ? environment.resolvePlaceholders(value) : value).trim();
     }
 
     private String getBeanName(Class<?> clazz) {
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc;
+
+import java.lang.annotation.*;
+
+/**
+ * The durable local outbox of a {@link RabbitClient}, used as {@link RabbitClient#outbox()}.
+ * The {@code void} calls that fail to reach the broker are appended to a segmented journal on the local disk instead of failing,
+ * and a background publisher sends them once the broker is back, in the order they were made. While the outbox has pending messages,
+ * the new calls are appended to it as well, so that they don't overtake the pending ones.
+ * <p>
+ * All the attributes support property placeholders.
+ *
+ * @author Ivan Sergienko
+ * @see org.bakeneko.rabbitmq.rpc.outbox.Outbox
+ */
+@Target({})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RabbitOutbox {
+
+    /**
+     * @return the directory of the journal, unique to the client, no outbox if empty (the default)
+     */
+    String directory() default "";
+
+    /**
+     * @return the maximum size of the journal on disk in bytes, {@code 1073741824} (1 GB) by default
+     */
+    String maxSize() default "";
+
+    /**
+     * @return the size of a journal segment in bytes, which also caps the size of a message, {@code 16777216} (16 MB) by default
+     */
+    String segmentSize() default "";
+
+    /**
+     * When the appended messages are forced to the disk: {@code "always"} (after each message), {@code "never"} (left to the OS),
+     * or every given number of milliseconds, {@code "1000"} by default.
+     *
+     * @return the fsync policy of the journal
+     */
+    String fsync() default "";
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc;
+
+import java.lang.annotation.*;
+
+/**
+ * The retry policy of a {@link RabbitClient}, used as {@link RabbitClient#retry()} to specify the defaults for all methods,
+ * or as {@link RabbitSender#retry()} to override them for a particular method. Unspecified attributes are inherited.
+ * <p>
+ * Failed calls are retried with an exponential backoff and full jitter, i.e. each delay is a random value between {@code 0}
+ * and {@code min(maxBackoff, initialBackoff * multiplier ^ (attempt - 1))}, so that the retries of many clients don't synchronize.
+ * Only the exceptions listed in {@link #retryOn()} are retried; reply timeouts are never retried.
+ * The retries are capped by {@link #budget()}, so that they cannot multiply the load on a struggling broker.
+ * <p>
+ * All the {@link String} attributes support property placeholders.
+ *
+ * @author Ivan Sergienko
+ * @see org.bakeneko.rabbitmq.rpc.policy.RetryPolicy
+ */
+@Target({})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RabbitRetry {
+
+    /**
+     * @return the maximum number of attempts, including the first one, {@code 1} (i.e. no retries) by default
+     */
+    String maxAttempts() default "";
+
+    /**
+     * @return the upper bound of the first backoff in milliseconds, {@code 100} by default
+     */
+    String initialBackoff() default "";
+
+    /**
+     * @return the upper bound of any backoff in milliseconds, {@code 2000} by default
+     */
+    String maxBackoff() default "";
+
+    /**
+     * @return the multiplier applied to the backoff bound after each attempt, {@code 2} by default
+     */
+    String multiplier() default "";
+
+    /**
+     * The exceptions (or causes) to retry on.
+     * {@link org.springframework.amqp.AmqpConnectException} and {@link org.springframework.amqp.AmqpIOException} by default.
+     *
+     * @return the retryable exception types
+     */
+    Class<? extends Throwable>[] retryOn() default {};
+
+    /**
+     * @return the maximum number of retries per hundred calls of a method, {@code 20} by default
+     */
+    String budget() default "";
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc;
+
+import org.bakeneko.rabbitmq.rpc.factory.ObjectMethodsDelegatingInvocationHandler;
+import org.bakeneko.rabbitmq.rpc.factory.RabbitClientInvocationHandler;
+import org.bakeneko.rabbitmq.rpc.factory.RabbitPipeline;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Utilities for the {@link RabbitClient} implementations generated by the library.
+ *
+ * @author Ivan Sergienko
+ */
+public final class RabbitRpc {
+    /**
+     * The reply timeout of the pipelined calls, the same as the default one of {@link org.springframework.amqp.rabbit.core.RabbitTemplate}.
+     */
+    public static final long DEFAULT_REPLY_TIMEOUT = 5000;
+
+    private RabbitRpc() {
+    }
+
+    /**
+     * Sends the calls made by {@code calls} on the client without waiting for the replies in between, so that
+     * the replies of the independent calls take about one round-trip in total:
+     * <pre>
+     * List&lt;CompletableFuture&lt;Object&gt;&gt; replies = RabbitRpc.pipeline(client, c -&gt; {
+     *     c.getUser(userId);
+     *     c.getOrders(userId);
+     * });
+     * </pre>
+     * The methods called on {@code c} only record the calls and return {@code null} (or the default value of a primitive type);
+     * the calls are published once {@code calls} returns. Pipelined calls always go through the broker,
+     * and the call policies of the client (limits, retries, circuit breakers, hedging) are not applied to them.
+     *
+     * @param client a client generated by the library
+     * @param calls  the calls to make on the client
+     * @param <T>    the type of the client
+     * @return the futures of the replies in the order of the calls, completed with {@code null} for {@code void} methods
+     * @throws IllegalArgumentException if {@code client} is not a generated client
+     */
+    public static <T> List<CompletableFuture<Object>> pipeline(T client, Consumer<T> calls) {
+        return pipeline(client, DEFAULT_REPLY_TIMEOUT, calls);
+    }
+
+    /**
+     * Same as {@link #pipeline(Object, Consumer)}, failing the calls without a reply in {@code replyTimeout} milliseconds
+     * with a {@link java.util.concurrent.TimeoutException}.
+     *
+     * @param client       a client generated by the library
+     * @param replyTimeout the number of milliseconds to wait for the replies
+     * @param calls        the calls to make on the client
+     * @param <T>          the type of the client
+     * @return the futures of the replies in the order of the calls
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> List<CompletableFuture<Object>> pipeline(T client, long replyTimeout, Consumer<T> calls) {
+        RabbitClientInvocationHandler handler = RabbitClientInvocationHandler.of(client);
+        RabbitPipeline pipeline = new RabbitPipeline(replyTimeout);
+        List<CompletableFuture<Object>> replies = new ArrayList<>();
+
+        T recorder = (T) Proxy.newProxyInstance(client.getClass().getClassLoader(), client.getClass().getInterfaces(),
+                new ObjectMethodsDelegatingInvocationHandler((proxy, method, args) -> {
+                    replies.add(pipeline.add(handler.getInvoker(method), args));
+
+                    return defaultValue(method.getReturnType());
+                }));
+        calls.accept(recorder);
+        pipeline.send();
+
+        return replies;
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        return type.isPrimitive() && type != void.class ? Array.get(Array.newInstance(type, 1), 0) : null;
+    }
+}
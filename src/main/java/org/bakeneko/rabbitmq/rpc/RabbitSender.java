@@ -56,4 +56,102 @@ public @interface RabbitSender {
      */
     String messagePostProcessor() default "";
 
+    /**
+     * The maximum number of calls of this particular method that may be outstanding at the same time.
+     * Applied in addition to {@link RabbitClient#maxInFlight()}, i.e. a call has to fit into both limits.
+     * Supports property placeholders. Not limited by default.
+     *
+     * @return the maximum number of concurrent calls of the method
+     * @see RabbitClient#maxInFlight()
+     */
+    String maxInFlight() default "";
+
+    /**
+     * How long (in milliseconds) a call waits for a free slot once the {@link #maxInFlight()} limit is reached.
+     * A negative value means waiting indefinitely, {@code 0} means failing immediately, a positive value - failing after the specified time.
+     * Supports property placeholders.
+     *
+     * @return the time to wait for a free slot, in milliseconds. Overrides the one defined in {@link RabbitClient#inFlightTimeout()} (if any)
+     * @see RabbitClient#inFlightTimeout()
+     */
+    String inFlightTimeout() default "";
+
+    /**
+     * Whether the number of outstanding calls of this method should be limited adaptively, based on the measured round-trip time.
+     * Has no effect on {@code void} methods, since there is no reply to measure.
+     * Accepts {@code "true"} or {@code "false"} and supports property placeholders.
+     *
+     * @return whether adaptive concurrency limiting is enabled. Overrides the one defined in {@link RabbitClient#adaptiveConcurrency()} (if any)
+     * @see RabbitClient#adaptiveConcurrency()
+     */
+    String adaptiveConcurrency() default "";
+
+    /**
+     * Enables hedging for an idempotent method: if no reply arrives within the specified time, a duplicate request is sent,
+     * and whichever reply comes first is returned, while the other one is discarded.
+     * Either a number of milliseconds (e.g. {@code "50"}), or a percentile of the observed round-trip times (e.g. {@code "p95"}).
+     * Percentile based hedging only starts once enough round-trip times have been observed.
+     * Supports property placeholders. Has no effect on {@code void} methods. Disabled by default.
+     *
+     * @return the delay before sending a duplicate request
+     * @see #hedgeBudget()
+     */
+    String hedgeAfter() default "";
+
+    /**
+     * The maximum share of calls (in percent) that may be hedged, capping the extra load hedging generates.
+     * Supports property placeholders. Defaults to {@code 10} percent.
+     *
+     * @return the maximum percentage of hedged calls
+     * @see #hedgeAfter()
+     */
+    String hedgeBudget() default "";
+
+    /**
+     * The retry policy of the method. The attributes not specified here are inherited from {@link RabbitClient#retry()}.
+     *
+     * @return the retry policy for calls of the method
+     * @see RabbitClient#retry()
+     */
+    RabbitRetry retry() default @RabbitRetry;
+
+    /**
+     * The AMQP priority (0-255) of the messages sent by the method. The target queue has to be declared with
+     * {@code x-max-priority} for the broker to take it into account.
+     * Methods with a priority are also sent through a separate lane of the client: a connection and channels of their own,
+     * and a separate {@link RabbitClient#maxInFlight()} budget, so they don't queue behind the bulk traffic of the client.
+     * Methods sharing the same priority share the lane. Supports property placeholders.
+     *
+     * @return the message priority of the method
+     */
+    String priority() default "";
+
+    /**
+     * The number of consumers of the method's queue on the server side, either fixed ({@code "4"}) or a range ({@code "2-8"}).
+     * Only used by {@link RabbitService} implementations. Supports property placeholders.
+     *
+     * @return the consumer concurrency of the method's listener
+     * @see RabbitService#concurrency()
+     */
+    String concurrency() default "";
+
+    /**
+     * The number of unacknowledged messages each consumer of the method's queue may hold on the server side.
+     * Only used by {@link RabbitService} implementations. Supports property placeholders.
+     *
+     * @return the prefetch count of the method's listener
+     * @see RabbitService#prefetch()
+     */
+    String prefetch() default "";
+
+    /**
+     * The number of messages the server side consumes (and acknowledges) together,
+     * and the maximum number of requests passed to the method's {@link RabbitBatchHandler}, if there is one.
+     * Only used by {@link RabbitService} implementations. Supports property placeholders.
+     *
+     * @return the batch size of the method's listener
+     * @see RabbitService#batchSize()
+     */
+    String batchSize() default "";
+
 }
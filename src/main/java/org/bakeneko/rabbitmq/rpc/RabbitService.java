@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc;
+
+import org.springframework.stereotype.Component;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks a bean implementing one or more {@link RabbitClient} interfaces as the server side of these interfaces:
+ * each method of the interface is exposed as a listener of the queue named after its routing key, so the queue contract
+ * is declared only once - in the interface shared by both sides.
+ * <p>
+ * The listener containers are created by the {@link #containerFactory()} and tuned per method through
+ * {@link RabbitSender#concurrency()}, {@link RabbitSender#prefetch()} and {@link RabbitSender#batchSize()},
+ * which take precedence over the defaults specified here. Methods routed through {@link RoutingKey}, {@link ShardKey}
+ * or without a routing key cannot be exposed, since their queue is not known upfront.
+ * <p>
+ * The requests of a client with a {@link RabbitClient#chunkSize()} are reassembled before the method is called, and their chunks
+ * are acknowledged as they arrive, so a chunked request is delivered at most once - see
+ * {@link org.bakeneko.rabbitmq.rpc.chunk.ChunkAssemblingMessageListener}. The reassembly limits are set by a
+ * {@link org.bakeneko.rabbitmq.rpc.chunk.ChunkAssembler} bean.
+ * <p>
+ * When the client and the server live in the same application, both beans implement the interface, so injecting it by type
+ * is ambiguous unless the client is made the primary bean with {@link RabbitClient#primary()}.
+ *
+ * @author Ivan Sergienko
+ * @see org.bakeneko.rabbitmq.rpc.server.RabbitServiceConfigurer
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Component
+public @interface RabbitService {
+
+    /**
+     * The bean name of the {@link org.springframework.amqp.rabbit.listener.RabbitListenerContainerFactory} to create the listener containers with.
+     * Defaults to {@code rabbitListenerContainerFactory}.
+     *
+     * @return the bean name of the listener container factory
+     */
+    String containerFactory() default "";
+
+    /**
+     * The default number of consumers of each method's queue, either fixed ({@code "4"}) or a range ({@code "2-8"}).
+     * Supports property placeholders.
+     *
+     * @return the default consumer concurrency
+     * @see RabbitSender#concurrency()
+     */
+    String concurrency() default "";
+
+    /**
+     * The default number of unacknowledged messages each consumer may hold. Supports property placeholders.
+     *
+     * @return the default prefetch count
+     * @see RabbitSender#prefetch()
+     */
+    String prefetch() default "";
+
+    /**
+     * The default number of messages consumed (and acknowledged) together, also limiting the batches of {@link RabbitBatchHandler}s.
+     * Supports property placeholders.
+     *
+     * @return the default batch size
+     * @see RabbitSender#batchSize()
+     */
+    String batchSize() default "";
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks a parameter of a {@link RabbitClient} method as the routing key of the call,
+ * overriding {@link RabbitSender#routingKey()} and {@link RabbitClient#routingKey()}.
+ * This way one client can address any number of queues (e.g. one per tenant) without an interface per destination.
+ *
+ * @author Ivan Sergienko
+ * @see Exchange
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RoutingKey {
+
+    /**
+     * A template for the routing key, where {@code {}} is replaced with the value of the parameter, e.g. {@code "orders.{}"}.
+     * Supports property placeholders. If not specified, the value of the parameter is used as is.
+     *
+     * @return the routing key template
+     */
+    String value() default "";
+}
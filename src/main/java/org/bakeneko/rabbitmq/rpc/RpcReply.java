@@ -0,0 +1,104 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A reply of a {@link RabbitClient} method declared to return {@code RpcReply<T>} instead of {@code T}:
+ * the properties and the size of the reply are available right away, while the body is only converted to {@code T}
+ * on the first {@link #get()}, so the callers that only check a header don't pay for the deserialization.
+ * <p>
+ * A reply of a call dispatched in-process holds the listener's return value as is, with empty properties and a size of {@code -1}.
+ *
+ * @param <T> the type of the reply body
+ * @author Ivan Sergienko
+ */
+public final class RpcReply<T> {
+    private final MessageProperties messageProperties;
+    private final int size;
+    private Message message;
+    private Function<Message, T> converter;
+    private T value;
+
+    /**
+     * @param message   the reply message
+     * @param converter the conversion of the message to the reply body
+     */
+    public RpcReply(Message message, Function<Message, T> converter) {
+        this.messageProperties = message.getMessageProperties();
+        this.size = message.getBody() != null ? message.getBody().length : 0;
+        this.message = message;
+        this.converter = converter;
+    }
+
+    private RpcReply(T value) {
+        this.messageProperties = new MessageProperties();
+        this.size = -1;
+        this.value = value;
+    }
+
+    /**
+     * @param value the reply body
+     * @param <T>   the type of the reply body
+     * @return a reply already holding its body
+     */
+    public static <T> RpcReply<T> of(T value) {
+        return new RpcReply<>(value);
+    }
+
+    /**
+     * Converts the reply body on the first call, and returns the same value afterwards.
+     *
+     * @return the reply body
+     */
+    public synchronized T get() {
+        if (message != null) {
+            value = converter.apply(message);
+            message = null;
+            converter = null;
+        }
+
+        return value;
+    }
+
+    /**
+     * @return {@code true} if the body has been converted already
+     */
+    public synchronized boolean isConverted() {
+        return message == null;
+    }
+
+    public MessageProperties getMessageProperties() {
+        return messageProperties;
+    }
+
+    public Map<String, Object> getHeaders() {
+        return messageProperties.getHeaders();
+    }
+
+    /**
+     * @return the size of the reply body in bytes, or {@code -1} if the call was dispatched in-process
+     */
+    public int getSize() {
+        return size;
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks a parameter of a {@link RabbitClient} method as the shard key of the call: calls with equal keys are always
+ * routed to the same shard among {@link RabbitClient#shards()}, so the consumers can keep the state of their entities local.
+ * Like {@link RoutingKey}, the parameter is not a part of the message. Mutually exclusive with {@link RoutingKey}.
+ *
+ * @author Ivan Sergienko
+ * @see RabbitClient#shards()
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ShardKey {
+}
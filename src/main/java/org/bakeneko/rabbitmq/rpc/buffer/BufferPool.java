@@ -0,0 +1,189 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.buffer;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of reusable {@code byte[]} buffers in power-of-two size classes, from {@link #MIN_BUFFER_SIZE} up to the maximum buffer size.
+ * Each size class keeps a fixed number of slots: a thread takes and returns buffers starting from its home slot (picked by the thread id)
+ * with a single atomic swap, so there is no lock shared by the threads, like in {@link org.bakeneko.rabbitmq.rpc.publish.StripedChannelPool}.
+ * Requests above the maximum size, and those finding no free buffer, are served with a new array, counted as misses.
+ * <p>
+ * The buffers are plain heap arrays, since a message body handed to the AMQP client has to be a {@code byte[]} anyway.
+ * A pool retains at most about {@code 2 * maxBufferSize * slots} bytes (see {@link #getMaxRetainedBytes()}), so the defaults are kept small:
+ * the larger payloads are rare enough to be allocated. The {@link #shared() shared} pool is sized with the
+ * {@value #MAX_BUFFER_SIZE_PROPERTY} and {@value #SLOTS_PROPERTY} system properties, if set.
+ *
+ * @author Ivan Sergienko
+ * @see PooledByteArrayOutputStream
+ */
+public class BufferPool {
+    public static final int MIN_BUFFER_SIZE = 1024;
+    public static final int DEFAULT_MAX_BUFFER_SIZE = 64 * 1024;
+    public static final int DEFAULT_SLOTS = Runtime.getRuntime().availableProcessors();
+    /**
+     * The system property overriding the maximum buffer size of the shared pool.
+     */
+    public static final String MAX_BUFFER_SIZE_PROPERTY = "rabbitmq.rpc.buffers.maxBufferSize";
+    /**
+     * The system property overriding the number of slots per size class of the shared pool.
+     */
+    public static final String SLOTS_PROPERTY = "rabbitmq.rpc.buffers.slots";
+
+    private static final BufferPool SHARED = new BufferPool(
+            Integer.getInteger(MAX_BUFFER_SIZE_PROPERTY, DEFAULT_MAX_BUFFER_SIZE), Integer.getInteger(SLOTS_PROPERTY, DEFAULT_SLOTS));
+
+    private final int maxBufferSize;
+    private final int slotCount;
+    private final AtomicReferenceArray<byte[]>[] sizeClasses;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder retainedBytes = new LongAdder();
+
+    /**
+     * @param maxBufferSize the size of the largest pooled buffer, rounded up to a power of two
+     * @param slots         the number of buffers kept per size class
+     */
+    @SuppressWarnings("unchecked")
+    public BufferPool(int maxBufferSize, int slots) {
+        if (maxBufferSize < MIN_BUFFER_SIZE || maxBufferSize > 1 << 30 || slots <= 0) {
+            throw new IllegalArgumentException(String.format("The maximum buffer size must be between %d and 2^30 bytes, and the number of slots positive, " +
+                    "while %d and %d were specified.", MIN_BUFFER_SIZE, maxBufferSize, slots));
+        }
+        this.maxBufferSize = roundUp(maxBufferSize);
+        this.slotCount = slots;
+        this.sizeClasses = new AtomicReferenceArray[sizeClass(this.maxBufferSize) + 1];
+        for (int i = 0; i < sizeClasses.length; i++) {
+            sizeClasses[i] = new AtomicReferenceArray<>(slots);
+        }
+    }
+
+    /**
+     * @return the pool shared by the {@link PooledJackson2JsonMessageConverter}s created without a pool of their own
+     */
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * @param minSize the minimum size of the buffer
+     * @return a buffer of at least {@code minSize} bytes, to be returned with {@link #release(byte[])} once it's no longer used
+     */
+    public byte[] acquire(int minSize) {
+        if (minSize > maxBufferSize) {
+            misses.increment();
+            return new byte[minSize];
+        }
+
+        int size = roundUp(minSize);
+        AtomicReferenceArray<byte[]> slots = sizeClasses[sizeClass(size)];
+        int home = home();
+        for (int i = 0; i < slotCount; i++) {
+            byte[] buffer = slots.getAndSet((home + i) % slotCount, null);
+            if (buffer != null) {
+                hits.increment();
+                retainedBytes.add(-buffer.length);
+                return buffer;
+            }
+        }
+
+        misses.increment();
+        return new byte[size];
+    }
+
+    /**
+     * Returns the buffer to the pool, unless it isn't of a pooled size or its size class is full.
+     * The buffer must not be used afterwards.
+     *
+     * @param buffer a buffer taken with {@link #acquire(int)}
+     */
+    public void release(byte[] buffer) {
+        int size = buffer.length;
+        if (size < MIN_BUFFER_SIZE || size > maxBufferSize || Integer.bitCount(size) != 1) {
+            return;
+        }
+
+        AtomicReferenceArray<byte[]> slots = sizeClasses[sizeClass(size)];
+        int home = home();
+        for (int i = 0; i < slotCount; i++) {
+            if (slots.compareAndSet((home + i) % slotCount, null, buffer)) {
+                retainedBytes.add(size);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return a new stream writing into the buffers of this pool
+     */
+    public PooledByteArrayOutputStream outputStream() {
+        return new PooledByteArrayOutputStream(this);
+    }
+
+    public int getMaxBufferSize() {
+        return maxBufferSize;
+    }
+
+    /**
+     * @return the number of buffers kept per size class
+     */
+    public int getSlots() {
+        return slotCount;
+    }
+
+    /**
+     * @return the total size of the buffers the pool may retain once every slot is filled
+     */
+    public long getMaxRetainedBytes() {
+        return (long) slotCount * (2L * maxBufferSize - MIN_BUFFER_SIZE);
+    }
+
+    /**
+     * @return the total size of the buffers currently retained by the pool
+     */
+    public long getRetainedBytes() {
+        return retainedBytes.sum();
+    }
+
+    /**
+     * @return the number of requests served with a pooled buffer
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of requests served with a new array
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private int home() {
+        return (int) (Thread.currentThread().getId() % slotCount);
+    }
+
+    private static int sizeClass(int size) {
+        return Integer.numberOfTrailingZeros(size) - Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+    }
+
+    private static int roundUp(int size) {
+        return size <= MIN_BUFFER_SIZE ? MIN_BUFFER_SIZE : Integer.highestOneBit(size - 1) << 1;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.buffer;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A {@link java.io.ByteArrayOutputStream} counterpart writing into the buffers of a {@link BufferPool}: a full buffer is swapped
+ * for one of the next size class, and the written bytes are copied out only once, by {@link #toByteArray()}.
+ * Like {@link java.io.ByteArrayOutputStream}, {@link #close()} has no effect, the buffer goes back to the pool with {@link #release()}.
+ * Not thread-safe.
+ *
+ * @author Ivan Sergienko
+ */
+public class PooledByteArrayOutputStream extends OutputStream {
+    private final BufferPool pool;
+    private byte[] buffer;
+    private int count;
+
+    PooledByteArrayOutputStream(BufferPool pool) {
+        this.pool = pool;
+        this.buffer = pool.acquire(BufferPool.MIN_BUFFER_SIZE);
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > bytes.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        ensureCapacity(count + length);
+        System.arraycopy(bytes, offset, buffer, count, length);
+        count += length;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return a copy of the written bytes
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, count);
+    }
+
+    /**
+     * Discards the written bytes, keeping the buffer.
+     */
+    public void reset() {
+        count = 0;
+    }
+
+    /**
+     * Returns the buffer to the pool. The stream must not be used afterwards.
+     */
+    public void release() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        // the buffer is only released explicitly, so that the bytes can still be copied out after a serializer closes the stream
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new OutOfMemoryError("The written bytes exceed the maximum array size");
+        }
+        if (capacity > buffer.length) {
+            byte[] grown = pool.acquire(Math.max(capacity, buffer.length << 1));
+            System.arraycopy(buffer, 0, grown, 0, count);
+            pool.release(buffer);
+            buffer = grown;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.buffer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JavaTypeMapper;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.SmartMessageConverter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A JSON converter producing the same messages as {@link Jackson2JsonMessageConverter}, but serializing the payloads into
+ * the pooled buffers of a {@link BufferPool}, so that a call allocates nothing but the final message body (copied out once),
+ * while {@link ObjectMapper#writeValueAsBytes(Object)} grows and concatenates a chain of fresh segments for every payload
+ * larger than its recycled first one. The messages are read by a {@link Jackson2JsonMessageConverter} sharing the object mapper.
+ *
+ * @author Ivan Sergienko
+ */
+public class PooledJackson2JsonMessageConverter implements SmartMessageConverter {
+    private final ObjectMapper objectMapper;
+    private final BufferPool pool;
+    private final Jackson2JsonMessageConverter delegate;
+
+    public PooledJackson2JsonMessageConverter() {
+        this(new ObjectMapper(), BufferPool.shared());
+    }
+
+    /**
+     * @param objectMapper the object mapper to write and read the payloads with
+     * @param pool         the pool of the serialization buffers
+     */
+    public PooledJackson2JsonMessageConverter(ObjectMapper objectMapper, BufferPool pool) {
+        this.objectMapper = objectMapper;
+        this.pool = pool;
+        this.delegate = new Jackson2JsonMessageConverter(objectMapper);
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) {
+        PooledByteArrayOutputStream out = pool.outputStream();
+        byte[] body;
+        try {
+            objectMapper.writeValue(out, object);
+            body = out.toByteArray();
+        } catch (IOException e) {
+            throw new MessageConversionException("Failed to convert Message content", e);
+        } finally {
+            out.release();
+        }
+
+        messageProperties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        messageProperties.setContentEncoding(StandardCharsets.UTF_8.name());
+        messageProperties.setContentLength(body.length);
+        if (object != null) {
+            getJavaTypeMapper().fromJavaType(objectMapper.constructType(object.getClass()), messageProperties);
+        }
+
+        return new Message(body, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) {
+        return delegate.fromMessage(message);
+    }
+
+    @Override
+    public Object fromMessage(Message message, Object conversionHint) {
+        return delegate.fromMessage(message, conversionHint);
+    }
+
+    /**
+     * @return the type mapper writing and reading the type headers, to be customized like that of a {@link Jackson2JsonMessageConverter}
+     */
+    public Jackson2JavaTypeMapper getJavaTypeMapper() {
+        return delegate.getJavaTypeMapper();
+    }
+
+    public BufferPool getPool() {
+        return pool;
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.chunk;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reassembles the messages split or streamed by {@link ChunkedTransfer}, whatever the order their chunks arrive in.
+ * The number of chunks of a streamed transfer is only known once its last chunk arrives.
+ * The chunks are buffered in memory up to {@code maxBufferedBytes} over all the transfers: a chunk that doesn't fit
+ * fails its whole transfer, and so do the transfers not completed within {@code timeoutMillis} since their first chunk arrived.
+ * A transfer that is known to exceed either limit, or the {@link Integer#MAX_VALUE} bytes of a message, as soon as
+ * a chunk says it has more chunks of that size, fails right away.
+ * The chunks of a failed transfer are rejected with {@link AmqpRejectAndDontRequeueException} until it times out.
+ * <p>
+ * The limits are set by declaring a {@code ChunkAssembler} bean, which the {@link org.bakeneko.rabbitmq.rpc.RabbitService}s
+ * of the context then share.
+ * <p>
+ * The transfers are shared by all the consumers of the assembler, so the chunks of a transfer may be consumed concurrently,
+ * but not by the consumers of another application: a transfer timing out without its first chunk, which is published first,
+ * is reported as consumed by competing consumers elsewhere (see {@link ChunkedTransfer#SINGLE_ACTIVE_CONSUMER}).
+ *
+ * @author Ivan Sergienko
+ */
+public class ChunkAssembler {
+    public static final long DEFAULT_MAX_BUFFERED_BYTES = 64L * 1024 * 1024;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 60_000;
+
+    private static final Log logger = LogFactory.getLog(ChunkAssembler.class);
+    private static final long SWEEP_INTERVAL_MILLIS = 1000;
+    private static final ScheduledExecutorService SWEEPER = sweeper();
+
+    private final long maxBufferedBytes;
+    private final long timeoutMillis;
+    private final Map<String, Transfer> transfers = new ConcurrentHashMap<>();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final ScheduledFuture<?> sweep;
+
+    public ChunkAssembler() {
+        this(DEFAULT_MAX_BUFFERED_BYTES, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param maxBufferedBytes the maximum number of bytes buffered over all the incomplete transfers
+     * @param timeoutMillis    the number of milliseconds a transfer has to complete in
+     */
+    public ChunkAssembler(long maxBufferedBytes, long timeoutMillis) {
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.timeoutMillis = timeoutMillis;
+        this.sweep = SWEEPER.scheduleWithFixedDelay(this::sweep, SWEEP_INTERVAL_MILLIS, SWEEP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Buffers a chunk.
+     *
+     * @param chunk a chunk, see {@link ChunkedTransfer#isChunk(Message)}
+     * @return the reassembled message if the chunk completes its transfer, {@code null} otherwise
+     * @throws AmqpRejectAndDontRequeueException if the transfer of the chunk has failed
+     */
+    public Message add(Message chunk) {
+        Map<String, Object> headers = chunk.getMessageProperties().getHeaders();
+        String transferId = String.valueOf(headers.get(ChunkedTransfer.TRANSFER_ID));
+        int index = ((Number) headers.get(ChunkedTransfer.CHUNK_INDEX)).intValue();
+        Number countHeader = (Number) headers.get(ChunkedTransfer.CHUNK_COUNT);
+        int count = countHeader != null ? countHeader.intValue() : Transfer.UNKNOWN_COUNT;
+        if (countHeader != null && count < 1) {
+            throw new AmqpRejectAndDontRequeueException(String.format("The chunked transfer %s has %d chunks.", transferId, count));
+        }
+        Transfer transfer = transfers.computeIfAbsent(transferId,
+                id -> new Transfer(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis)));
+
+        synchronized (transfer) {
+            if (transfer.failed) {
+                throw new AmqpRejectAndDontRequeueException(String.format("The chunked transfer %s has failed.", transferId));
+            }
+            if (count != Transfer.UNKNOWN_COUNT) {
+                if (transfer.count != Transfer.UNKNOWN_COUNT && transfer.count != count) {
+                    fail(transfer);
+                    throw new AmqpRejectAndDontRequeueException(String.format("The chunk %d of %d doesn't match the chunked transfer %s of %d chunks.",
+                            index, count, transferId, transfer.count));
+                }
+                transfer.count = count;
+            }
+            if (index < 0 || transfer.count != Transfer.UNKNOWN_COUNT && (index >= transfer.count || transfer.lastIndex >= transfer.count)) {
+                fail(transfer);
+                throw new AmqpRejectAndDontRequeueException(String.format("The chunk %d doesn't match the chunked transfer %s of %d chunks.",
+                        index, transferId, transfer.count));
+            }
+            if (transfer.chunks.containsKey(index)) {
+                return null;
+            }
+
+            int size = chunk.getBody().length;
+            // all the chunks but the last one have the same size
+            long minimumSize = Math.max(transfer.size + size, index < transfer.count - 1 ? (long) (transfer.count - 1) * size : 0);
+            if (minimumSize > Math.min(maxBufferedBytes, Integer.MAX_VALUE)) {
+                fail(transfer);
+                throw new AmqpRejectAndDontRequeueException(String.format("The chunked transfer %s of at least %d bytes exceeds the %d buffered bytes " +
+                        "or the maximum size of a message.", transferId, minimumSize, maxBufferedBytes));
+            }
+            if (bufferedBytes.addAndGet(size) > maxBufferedBytes) {
+                bufferedBytes.addAndGet(-size);
+                fail(transfer);
+                throw new AmqpRejectAndDontRequeueException(String.format("The chunked transfer %s doesn't fit into the %d buffered bytes.",
+                        transferId, maxBufferedBytes));
+            }
+            transfer.chunks.put(index, chunk);
+            transfer.lastIndex = Math.max(transfer.lastIndex, index);
+            transfer.size += size;
+            if (transfer.count == Transfer.UNKNOWN_COUNT || transfer.chunks.size() < transfer.count) {
+                return null;
+            }
+
+            transfers.remove(transferId);
+            bufferedBytes.addAndGet(-transfer.size);
+
+            return assemble(transfer, chunk);
+        }
+    }
+
+    /**
+     * @return the number of bytes buffered over all the incomplete transfers
+     */
+    public long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    /**
+     * @return the number of incomplete transfers, including the failed ones not timed out yet
+     */
+    public int getTransfers() {
+        return transfers.size();
+    }
+
+    /**
+     * Stops the sweeping of the timed out transfers.
+     */
+    public void close() {
+        sweep.cancel(false);
+    }
+
+    private Message assemble(Transfer transfer, Message lastReceived) {
+        byte[] body = new byte[(int) transfer.size];
+        int position = 0;
+        for (int i = 0; i < transfer.count; i++) {
+            byte[] chunk = transfer.chunks.get(i).getBody();
+            System.arraycopy(chunk, 0, body, position, chunk.length);
+            position += chunk.length;
+        }
+
+        MessageProperties properties = ChunkedTransfer.copy(transfer.chunks.get(transfer.count - 1).getMessageProperties());
+        properties.getHeaders().remove(ChunkedTransfer.TRANSFER_ID);
+        properties.getHeaders().remove(ChunkedTransfer.CHUNK_INDEX);
+        properties.getHeaders().remove(ChunkedTransfer.CHUNK_COUNT);
+        properties.setDeliveryTag(lastReceived.getMessageProperties().getDeliveryTag());
+        properties.setContentLength(body.length);
+
+        return new Message(body, properties);
+    }
+
+    /**
+     * Drops the buffered chunks of the transfer, keeping it until it times out to reject its remaining chunks.
+     */
+    private void fail(Transfer transfer) {
+        transfer.failed = true;
+        bufferedBytes.addAndGet(-transfer.size);
+        transfer.size = 0;
+        transfer.chunks.clear();
+    }
+
+    private void sweep() {
+        long now = System.nanoTime();
+        transfers.forEach((transferId, transfer) -> {
+            if (now - transfer.deadline < 0) {
+                return;
+            }
+
+            synchronized (transfer) {
+                if (transfers.get(transferId) != transfer) {
+                    return;
+                }
+
+                if (!transfer.failed) {
+                    String count = transfer.count != Transfer.UNKNOWN_COUNT ? String.valueOf(transfer.count) : "unknown";
+                    if (!transfer.chunks.containsKey(0)) {
+                        logger.error(String.format("Dropping the chunked transfer %s, only %d of %s chunks arrived in %d ms, not including the first one. " +
+                                        "The other chunks were likely consumed by another application: a queue consumed by several applications " +
+                                        "has to be declared with the %s argument.",
+                                transferId, transfer.chunks.size(), count, timeoutMillis, ChunkedTransfer.SINGLE_ACTIVE_CONSUMER));
+                    } else {
+                        logger.warn(String.format("Dropping the chunked transfer %s, only %d of %s chunks arrived in %d ms.",
+                                transferId, transfer.chunks.size(), count, timeoutMillis));
+                    }
+                    fail(transfer);
+                }
+                // removed only once its chunks are released, so an empty assembler holds no buffered bytes
+                transfers.remove(transferId, transfer);
+            }
+        });
+    }
+
+    private static ScheduledExecutorService sweeper() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("rabbit-rpc-chunk-sweeper-");
+        threadFactory.setDaemon(true);
+        return Executors.newSingleThreadScheduledExecutor(threadFactory);
+    }
+
+    private static class Transfer {
+        private static final int UNKNOWN_COUNT = -1;
+
+        private final Map<Integer, Message> chunks = new HashMap<>();
+        private final long deadline;
+        private int count = UNKNOWN_COUNT;
+        private int lastIndex = -1;
+        private long size;
+        private boolean failed;
+
+        Transfer(long deadline) {
+            this.deadline = deadline;
+        }
+    }
+}
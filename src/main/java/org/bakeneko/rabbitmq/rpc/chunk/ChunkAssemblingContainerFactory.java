@@ -0,0 +1,64 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.chunk;
+
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.rabbit.listener.AbstractMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpoint;
+
+/**
+ * Creates the listener containers through another {@link RabbitListenerContainerFactory}, wrapping their listeners
+ * into {@link ChunkAssemblingMessageListener}s, so that {@code @RabbitListener} methods receive the requests of clients
+ * with a {@link org.bakeneko.rabbitmq.rpc.RabbitClient#chunkSize()} reassembled:
+ * <pre>
+ * &#64;Bean
+ * public RabbitListenerContainerFactory&lt;?&gt; chunkedContainerFactory(SimpleRabbitListenerContainerFactory factory) {
+ *     return new ChunkAssemblingContainerFactory(factory, new ChunkAssembler());
+ * }
+ *
+ * &#64;RabbitListener(queues = "uploads", containerFactory = "chunkedContainerFactory")
+ * </pre>
+ * The chunks of a transfer may be consumed by any of the containers sharing the assembler.
+ *
+ * @author Ivan Sergienko
+ */
+public class ChunkAssemblingContainerFactory implements RabbitListenerContainerFactory<MessageListenerContainer> {
+    private final RabbitListenerContainerFactory<?> delegate;
+    private final ChunkAssembler assembler;
+
+    public ChunkAssemblingContainerFactory(RabbitListenerContainerFactory<?> delegate, ChunkAssembler assembler) {
+        this.delegate = delegate;
+        this.assembler = assembler;
+    }
+
+    @Override
+    public MessageListenerContainer createListenerContainer(RabbitListenerEndpoint endpoint) {
+        MessageListenerContainer container = delegate.createListenerContainer(endpoint);
+
+        if (container instanceof AbstractMessageListenerContainer) {
+            AbstractMessageListenerContainer listenerContainer = (AbstractMessageListenerContainer) container;
+            MessageListener listener = (MessageListener) listenerContainer.getMessageListener();
+            if (listener != null && !(listener instanceof ChunkAssemblingMessageListener)) {
+                listenerContainer.setMessageListener(new ChunkAssemblingMessageListener(listener, assembler));
+            }
+        }
+
+        return container;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.chunk;
+
+import com.rabbitmq.client.Channel;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+
+/**
+ * Passes the messages to another listener, reassembling the chunked ones first.
+ * The chunks are acknowledged as they are buffered, so the listener only sees (and the container only acknowledges
+ * on its behalf) the reassembled message. The delivery of a chunked message is therefore at most once: the chunks buffered
+ * by an application that stops are lost, and the transfer never completes. Holding the chunks unacknowledged instead
+ * would stall any transfer of more chunks than the prefetch count.
+ *
+ * @author Ivan Sergienko
+ */
+public class ChunkAssemblingMessageListener implements ChannelAwareMessageListener {
+    private final MessageListener delegate;
+    private final ChunkAssembler assembler;
+
+    public ChunkAssemblingMessageListener(MessageListener delegate, ChunkAssembler assembler) {
+        this.delegate = delegate;
+        this.assembler = assembler;
+    }
+
+    @Override
+    public void onMessage(Message message, Channel channel) throws Exception {
+        Message assembled = ChunkedTransfer.isChunk(message) ? assembler.add(message) : message;
+        if (assembled == null) {
+            return;
+        }
+
+        if (delegate instanceof ChannelAwareMessageListener) {
+            ((ChannelAwareMessageListener) delegate).onMessage(assembled, channel);
+        } else {
+            delegate.onMessage(assembled);
+        }
+    }
+
+    public MessageListener getDelegate() {
+        return delegate;
+    }
+}
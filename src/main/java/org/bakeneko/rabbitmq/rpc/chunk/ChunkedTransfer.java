@@ -0,0 +1,257 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.chunk;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Splits a message with a large body into chunk messages, to be reassembled by a {@link ChunkAssembler}.
+ * Each chunk carries a copy of the original properties, and the {@link #TRANSFER_ID}, {@link #CHUNK_INDEX} and {@link #CHUNK_COUNT} headers.
+ * A streamed payload ({@link InputStream}, {@link ReadableByteChannel} or a file {@link Path}) is read chunk by chunk instead,
+ * and only its last chunk carries the {@link #CHUNK_COUNT}, since it isn't known before the end of the stream.
+ * The reassembled message takes the properties of the last chunk, so a reply address set on it by the sender
+ * (like {@link org.springframework.amqp.rabbit.core.RabbitTemplate#sendAndReceive} does) is the one the listener replies to.
+ * <p>
+ * All the chunks of a transfer have to be consumed by the same application, since a {@link ChunkAssembler} keeps them in memory.
+ * A queue consumed by several applications has to be declared with the {@link #SINGLE_ACTIVE_CONSUMER} argument (RabbitMQ 3.8+),
+ * otherwise the competing consumers split the chunks of a transfer between them and none of them can reassemble it.
+ *
+ * @author Ivan Sergienko
+ */
+public final class ChunkedTransfer {
+    public static final String TRANSFER_ID = "x-chunk-transfer-id";
+    public static final String CHUNK_INDEX = "x-chunk-index";
+    public static final String CHUNK_COUNT = "x-chunk-count";
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    /**
+     * The queue argument making a single consumer of the queue active at a time, so that it receives all the chunks of a transfer.
+     */
+    public static final String SINGLE_ACTIVE_CONSUMER = "x-single-active-consumer";
+
+    private ChunkedTransfer() {
+    }
+
+    /**
+     * @param message   a message
+     * @param chunkSize the maximum body size of a chunk
+     * @return the chunks of the message in their order, or the message itself if its body fits into a chunk
+     */
+    public static List<Message> split(Message message, int chunkSize) {
+        byte[] body = message.getBody();
+        if (body.length <= chunkSize) {
+            return Collections.singletonList(message);
+        }
+
+        String transferId = UUID.randomUUID().toString();
+        int count = (body.length + chunkSize - 1) / chunkSize;
+        List<Message> chunks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            MessageProperties properties = copy(message.getMessageProperties());
+            properties.setHeader(TRANSFER_ID, transferId);
+            properties.setHeader(CHUNK_INDEX, i);
+            properties.setHeader(CHUNK_COUNT, count);
+
+            int from = i * chunkSize;
+            chunks.add(new Message(Arrays.copyOfRange(body, from, Math.min(from + chunkSize, body.length)), properties));
+        }
+
+        return chunks;
+    }
+
+    /**
+     * @param payload a payload
+     * @return {@code true} if the payload is a stream to be read chunk by chunk
+     */
+    public static boolean isStream(Object payload) {
+        return payload instanceof InputStream || payload instanceof ReadableByteChannel || payload instanceof Path;
+    }
+
+    /**
+     * @param payloadType the declared type of a payload
+     * @return {@code true} if the payloads of the type are streams that can only be read once, unlike files
+     */
+    public static boolean isSingleUseStream(Class<?> payloadType) {
+        return InputStream.class.isAssignableFrom(payloadType) || ReadableByteChannel.class.isAssignableFrom(payloadType);
+    }
+
+    /**
+     * Reads the stream chunk by chunk, passing each chunk but the last one to {@code leadingChunks} before reading the next one,
+     * so that at most two chunks are held in memory whatever the size of the stream. A file is read one chunk at a time,
+     * straight into the chunk. The stream is read to its end, but not closed.
+     *
+     * @param payload       an {@link InputStream}, a {@link ReadableByteChannel} or a {@link Path}
+     * @param properties    the properties to copy into the chunks
+     * @param chunkSize     the maximum body size of a chunk
+     * @param leadingChunks the consumer of all the chunks but the last one
+     * @return the last chunk
+     * @throws IOException              if the stream can't be read
+     * @throws IllegalArgumentException if the stream is a non-blocking channel, which would have to be polled for data
+     */
+    public static Message stream(Object payload, MessageProperties properties, int chunkSize, Consumer<Message> leadingChunks) throws IOException {
+        if (payload instanceof Path) {
+            try (FileChannel file = FileChannel.open((Path) payload, StandardOpenOption.READ)) {
+                return stream(new FileChunks(file, chunkSize), properties, leadingChunks);
+            }
+        }
+        if (payload instanceof SelectableChannel && !((SelectableChannel) payload).isBlocking()) {
+            throw new IllegalArgumentException("A non-blocking channel can't be streamed, since it has to be polled for data.");
+        }
+
+        ReadableByteChannel channel = payload instanceof InputStream ? Channels.newChannel((InputStream) payload) : (ReadableByteChannel) payload;
+
+        return stream(new ChannelChunks(channel, chunkSize), properties, leadingChunks);
+    }
+
+    /**
+     * @param message a message
+     * @return {@code true} if the message is a chunk of a larger one
+     */
+    public static boolean isChunk(Message message) {
+        return message.getMessageProperties().getHeaders().containsKey(TRANSFER_ID);
+    }
+
+    private static Message stream(Chunks chunks, MessageProperties properties, Consumer<Message> leadingChunks) throws IOException {
+        String transferId = UUID.randomUUID().toString();
+        byte[] body = chunks.next();
+        int index = 0;
+        for (byte[] next = chunks.next(); next.length > 0; next = chunks.next()) {
+            leadingChunks.accept(chunk(body, properties, transferId, index++));
+            body = next;
+        }
+
+        Message last = chunk(body, properties, transferId, index);
+        last.getMessageProperties().setHeader(CHUNK_COUNT, index + 1);
+
+        return last;
+    }
+
+    private static Message chunk(byte[] body, MessageProperties properties, String transferId, int index) {
+        MessageProperties chunkProperties = copy(properties);
+        chunkProperties.setHeader(TRANSFER_ID, transferId);
+        chunkProperties.setHeader(CHUNK_INDEX, index);
+
+        return new Message(body, chunkProperties);
+    }
+
+    /**
+     * Copies the properties field by field rather than through the bean setters, which would also pass the reply address
+     * through {@link MessageProperties#setReplyToAddress} and rewrite it into the exchange/routing key form.
+     */
+    static MessageProperties copy(MessageProperties source) {
+        MessageProperties properties = new MessageProperties();
+        properties.getHeaders().putAll(source.getHeaders());
+        properties.setTimestamp(source.getTimestamp());
+        properties.setMessageId(source.getMessageId());
+        properties.setUserId(source.getUserId());
+        properties.setReceivedUserId(source.getReceivedUserId());
+        properties.setAppId(source.getAppId());
+        properties.setClusterId(source.getClusterId());
+        properties.setType(source.getType());
+        properties.setCorrelationId(source.getCorrelationId());
+        properties.setReplyTo(source.getReplyTo());
+        properties.setContentType(source.getContentType());
+        properties.setContentEncoding(source.getContentEncoding());
+        properties.setDeliveryMode(source.getDeliveryMode());
+        properties.setReceivedDeliveryMode(source.getReceivedDeliveryMode());
+        properties.setExpiration(source.getExpiration());
+        properties.setPriority(source.getPriority());
+        properties.setReceivedExchange(source.getReceivedExchange());
+        properties.setReceivedRoutingKey(source.getReceivedRoutingKey());
+        properties.setReceivedDelay(source.getReceivedDelay());
+        properties.setRedelivered(source.getRedelivered());
+        properties.setDeliveryTag(source.getDeliveryTag());
+        properties.setMessageCount(source.getMessageCount());
+        properties.setConsumerTag(source.getConsumerTag());
+        properties.setConsumerQueue(source.getConsumerQueue());
+        properties.setFinalRetryForMessageWithNoId(source.isFinalRetryForMessageWithNoId());
+        properties.setPublishSequenceNumber(source.getPublishSequenceNumber());
+
+        return properties;
+    }
+
+    private interface Chunks {
+        /**
+         * @return the next chunk, empty at the end of the stream
+         */
+        byte[] next() throws IOException;
+    }
+
+    private static class ChannelChunks implements Chunks {
+        private final ReadableByteChannel channel;
+        private final int chunkSize;
+
+        ChannelChunks(ReadableByteChannel channel, int chunkSize) {
+            this.channel = channel;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public byte[] next() throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(chunkSize);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // a channel may return less than requested before its end
+            }
+
+            return buffer.position() == chunkSize ? buffer.array() : Arrays.copyOf(buffer.array(), buffer.position());
+        }
+    }
+
+    private static class FileChunks implements Chunks {
+        private final FileChannel file;
+        private final int chunkSize;
+        private long position;
+
+        FileChunks(FileChannel file, int chunkSize) {
+            this.file = file;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public byte[] next() throws IOException {
+            int size = (int) Math.min(chunkSize, file.size() - position);
+            if (size <= 0) {
+                return new byte[0];
+            }
+
+            byte[] chunk = new byte[size];
+            ByteBuffer buffer = ByteBuffer.wrap(chunk);
+            while (buffer.hasRemaining() && file.read(buffer, position + buffer.position()) >= 0) {
+                // a positional read may return less than requested
+            }
+            position += buffer.position();
+
+            return buffer.position() == size ? chunk : Arrays.copyOf(chunk, buffer.position());
+        }
+    }
+}
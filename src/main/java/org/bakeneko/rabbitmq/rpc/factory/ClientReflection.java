@@ -0,0 +1,279 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.factory;
+
+import org.bakeneko.rabbitmq.rpc.Exchange;
+import org.bakeneko.rabbitmq.rpc.RabbitCircuitBreaker;
+import org.bakeneko.rabbitmq.rpc.RabbitSender;
+import org.bakeneko.rabbitmq.rpc.RoutingKey;
+import org.bakeneko.rabbitmq.rpc.ShardKey;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.Headers;
+import org.springframework.messaging.handler.annotation.Payload;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.IntStream;
+
+/**
+ * The part of the metadata of a client interface derived from its annotations alone: its methods, their signatures
+ * and the roles of their parameters. Unlike the property placeholders and the post processor beans resolved by
+ * {@link RabbitClientAnnotationProcessorImpl}, it doesn't depend on the application context, so it's cached JVM-wide
+ * in a {@link ClassValue}, and the contexts started by the same JVM (like those of a test suite) don't repeat the reflection.
+ * A method is introspected on demand, once, so an invalid method only fails when its metadata is read.
+ * Only the {@link #signature(Method) signatures} keying the metadata of the methods are public.
+ *
+ * @author Ivan Sergienko
+ */
+public final class ClientReflection {
+    private static final ClassValue<ClientReflection> CACHE = new ClassValue<ClientReflection>() {
+        @Override
+        protected ClientReflection computeValue(Class<?> type) {
+            return new ClientReflection(type);
+        }
+    };
+
+    private final List<Method> declaredMethods;
+    private final ConcurrentMap<Method, MethodReflection> methods = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Method, String> signatures = new ConcurrentHashMap<>();
+
+    private ClientReflection(Class<?> type) {
+        this.declaredMethods = Collections.unmodifiableList(Arrays.asList(type.getDeclaredMethods()));
+    }
+
+    /**
+     * @param type an interface
+     * @return the cached reflection of the interface
+     */
+    static ClientReflection of(Class<?> type) {
+        return CACHE.get(type);
+    }
+
+    /**
+     * @param method a method of an interface
+     * @return the cached reflection of the method
+     * @throws IllegalStateException if the parameters of the method are annotated incorrectly
+     */
+    static MethodReflection of(Method method) {
+        return of(method.getDeclaringClass()).method(method);
+    }
+
+    /**
+     * Unlike {@link #of(Method)}, doesn't validate the method, so it's also applicable to the methods of {@link Object}.
+     *
+     * @param method a method
+     * @return the cached {@link ReflectionUtils#methodNameSignatureAware(Method) signature} of the method
+     */
+    public static String signature(Method method) {
+        ClientReflection reflection = of(method.getDeclaringClass());
+        String signature = reflection.signatures.get(method);
+        return signature != null ? signature : reflection.signatures.computeIfAbsent(method, ReflectionUtils::methodNameSignatureAware);
+    }
+
+    List<Method> getDeclaredMethods() {
+        return declaredMethods;
+    }
+
+    MethodReflection method(Method method) {
+        MethodReflection reflection = methods.get(method);
+        return reflection != null ? reflection : methods.computeIfAbsent(method, MethodReflection::new);
+    }
+
+    /**
+     * The signature, the annotations and the parameter roles of a method.
+     */
+    static final class MethodReflection {
+        private final String signature;
+        private final RabbitSender rabbitSender;
+        private final RabbitCircuitBreaker circuitBreaker;
+        private final Integer payloadParameterIndex;
+        private final Integer headerMapParameterIndex;
+        private final Map<String, Integer> headerParameterIndexByName;
+        private final Integer exchangeParameterIndex;
+        private final String exchangeTemplate;
+        private final Integer routingKeyParameterIndex;
+        private final String routingKeyTemplate;
+        private final Integer shardKeyParameterIndex;
+
+        private MethodReflection(Method method) {
+            this.signature = signature(method);
+            this.rabbitSender = method.getAnnotation(RabbitSender.class);
+            this.circuitBreaker = method.getAnnotation(RabbitCircuitBreaker.class);
+            this.payloadParameterIndex = payloadParameterIndex(method);
+            this.headerMapParameterIndex = headerMapParameterIndex(method);
+            this.headerParameterIndexByName = Collections.unmodifiableMap(headerParameterIndexByName(method));
+            this.exchangeParameterIndex = annotatedParameterIndex(method, Exchange.class);
+            this.exchangeTemplate = exchangeParameterIndex != null ?
+                    method.getParameters()[exchangeParameterIndex].getAnnotation(Exchange.class).value() : null;
+            this.routingKeyParameterIndex = annotatedParameterIndex(method, RoutingKey.class);
+            this.routingKeyTemplate = routingKeyParameterIndex != null ?
+                    method.getParameters()[routingKeyParameterIndex].getAnnotation(RoutingKey.class).value() : null;
+            this.shardKeyParameterIndex = annotatedParameterIndex(method, ShardKey.class);
+        }
+
+        String getSignature() {
+            return signature;
+        }
+
+        /**
+         * @return the {@link RabbitSender} annotation of the method, or {@code null}
+         */
+        RabbitSender getRabbitSender() {
+            return rabbitSender;
+        }
+
+        /**
+         * @return the {@link RabbitCircuitBreaker} annotation of the method, or {@code null}
+         */
+        RabbitCircuitBreaker getCircuitBreaker() {
+            return circuitBreaker;
+        }
+
+        Integer getPayloadParameterIndex() {
+            return payloadParameterIndex;
+        }
+
+        Integer getHeaderMapParameterIndex() {
+            return headerMapParameterIndex;
+        }
+
+        Map<String, Integer> getHeaderParameterIndexByName() {
+            return headerParameterIndexByName;
+        }
+
+        Integer getExchangeParameterIndex() {
+            return exchangeParameterIndex;
+        }
+
+        /**
+         * @return the unresolved template of the {@link Exchange} parameter, or {@code null}
+         */
+        String getExchangeTemplate() {
+            return exchangeTemplate;
+        }
+
+        Integer getRoutingKeyParameterIndex() {
+            return routingKeyParameterIndex;
+        }
+
+        /**
+         * @return the unresolved template of the {@link RoutingKey} parameter, or {@code null}
+         */
+        String getRoutingKeyTemplate() {
+            return routingKeyTemplate;
+        }
+
+        Integer getShardKeyParameterIndex() {
+            return shardKeyParameterIndex;
+        }
+
+        private static Integer payloadParameterIndex(Method method) {
+            Parameter[] parameters = method.getParameters();
+            int[] messageParameterIndexes = IntStream.range(0, parameters.length)
+                    .filter(i -> !isRouting(parameters[i]))
+                    .toArray();
+
+            if (messageParameterIndexes.length == 1 && !hasAnnotation(parameters[messageParameterIndexes[0]], Header.class)) {
+                return messageParameterIndexes[0];
+            } else if (messageParameterIndexes.length == 0 || (messageParameterIndexes.length == 1 && hasAnnotation(parameters[messageParameterIndexes[0]], Header.class))) {
+                throw new IllegalStateException(String.format("No @Payload parameters found in %s.%s. " +
+                                "At least one @Payload parameter must be present - if a parameter is the only one and not marked as @Header, it's also considered @Payload.",
+                        method.getDeclaringClass().getName(), method.getName()));
+            } else {
+                for (int i : messageParameterIndexes) {
+                    if (hasAnnotation(parameters[i], Payload.class)) {
+                        return i;
+                    }
+                }
+
+                throw new IllegalStateException(String.format("Multiple parameters specified in %s.%s, but none of them is marked as @Payload.",
+                        method.getDeclaringClass().getName(), method.getName()));
+            }
+        }
+
+        private static Integer annotatedParameterIndex(Method method, Class<? extends Annotation> annotationType) {
+            Parameter[] parameters = method.getParameters();
+            Integer index = null;
+            for (int i = 0; i < parameters.length; i++) {
+                if (!hasAnnotation(parameters[i], annotationType)) {
+                    continue;
+                }
+                if (index != null) {
+                    throw new IllegalStateException(String.format("Multiple @%s parameters specified in %s.%s, while a maximum of 1 is allowed.",
+                            annotationType.getSimpleName(), method.getDeclaringClass().getName(), method.getName()));
+                }
+                index = i;
+            }
+
+            return index;
+        }
+
+        private static Map<String, Integer> headerParameterIndexByName(Method method) {
+            Parameter[] parameters = method.getParameters();
+            Map<String, Integer> indexByName = new HashMap<>();
+            for (int i = 0; i < parameters.length; i++) {
+                Header header = parameters[i].getAnnotation(Header.class);
+                if (header == null) {
+                    continue;
+                }
+
+                String headerName;
+                if (!header.value().isEmpty()) {
+                    headerName = header.value();
+                } else if (!header.name().isEmpty()) {
+                    headerName = header.name();
+                } else {
+                    headerName = parameters[i].getName();
+                }
+                indexByName.put(headerName, i);
+            }
+
+            return indexByName;
+        }
+
+        private static Integer headerMapParameterIndex(Method method) {
+            Integer index = annotatedParameterIndex(method, Headers.class);
+            if (index != null) {
+                Class<?> parameterType = method.getParameters()[index].getType();
+                if (!Map.class.isAssignableFrom(parameterType)) {
+                    throw new IllegalArgumentException(
+                            String.format("Parameters marked as @Headers must be assignable to java.util.Map<String, Object>, while %s.%s has type %s.",
+                                    method.getDeclaringClass().getName(), method.getName(), parameterType)
+                    );
+                }
+            }
+
+            return index;
+        }
+
+        private static boolean isRouting(Parameter parameter) {
+            return hasAnnotation(parameter, RoutingKey.class) || hasAnnotation(parameter, Exchange.class) || hasAnnotation(parameter, ShardKey.class);
+        }
+
+        private static boolean hasAnnotation(Parameter parameter, Class<? extends Annotation> annotationType) {
+            return parameter.isAnnotationPresent(annotationType);
+        }
+    }
+}
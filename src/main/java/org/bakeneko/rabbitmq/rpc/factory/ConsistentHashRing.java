@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.factory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable consistent hash ring. Each shard is placed on the ring as a number of virtual nodes,
+ * so the keys are spread evenly, and adding or removing a shard only moves the keys of its own segments.
+ * The ring is kept as a sorted array of node hashes, so a lookup is a binary search without allocations.
+ *
+ * @author Ivan Sergienko
+ */
+public class ConsistentHashRing {
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private final List<String> shards;
+    private final long[] nodeHashes;
+    private final int[] nodeShards;
+
+    public ConsistentHashRing(List<String> shards) {
+        this(shards, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ConsistentHashRing(List<String> shards, int virtualNodes) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("A consistent hash ring requires at least one shard.");
+        }
+        this.shards = Collections.unmodifiableList(shards);
+
+        long[][] nodes = new long[shards.size() * virtualNodes][];
+        for (int shard = 0; shard < shards.size(); shard++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                nodes[shard * virtualNodes + node] = new long[]{hash(shards.get(shard) + "#" + node), shard};
+            }
+        }
+        Arrays.sort(nodes, (a, b) -> Long.compare(a[0], b[0]));
+
+        this.nodeHashes = new long[nodes.length];
+        this.nodeShards = new int[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            nodeHashes[i] = nodes[i][0];
+            nodeShards[i] = (int) nodes[i][1];
+        }
+    }
+
+    /**
+     * @param key the shard key
+     * @return the shard owning the first node clockwise from the hash of the key
+     */
+    public String shardFor(Object key) {
+        int index = Arrays.binarySearch(nodeHashes, hash(String.valueOf(key)));
+        if (index < 0) {
+            index = -index - 1;
+        }
+
+        return shards.get(nodeShards[index == nodeHashes.length ? 0 : index]);
+    }
+
+    public List<String> getShards() {
+        return shards;
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-8 bytes, followed by the MurmurHash3 finalizer to spread similar keys apart.
+     */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -31,6 +31,10 @@ public class ObjectMethodsDelegatingInvocationHandler implements InvocationHandl
         this.handler = handler;
     }
 
+    public InvocationHandler getHandler() {
+        return handler;
+    }
+
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
         if (method.getDeclaringClass() == Object.class) {
@@ -19,7 +19,9 @@ package org.bakeneko.rabbitmq.rpc.factory;
 import org.bakeneko.rabbitmq.rpc.RabbitClient;
 import org.bakeneko.rabbitmq.rpc.RabbitSender;
 
+import java.lang.reflect.Method;
 import java.util.Map;
+import java.util.function.Function;
 
 /**
  * Annotation processor for {@link RabbitClient} generation.
@@ -35,4 +37,20 @@ public interface RabbitClientAnnotationProcessor {
      * @return a {@code Map<String, RabbitClientMetadata>} containing metadata for each method in {@code toImplement} interface
      */
     Map<String, RabbitClientMetadata> readMetadata(Class<?> toImplement);
+
+    /**
+     * Reads the {@link RabbitClient} annotation, deferring the {@link RabbitSender} annotations and the parameters of each method
+     * until its metadata is requested.
+     *
+     * @param toImplement the interface annotated with {@link RabbitClient}
+     * @return a function reading the metadata of a method of {@code toImplement} interface
+     */
+    Function<Method, RabbitClientMetadata> methodMetadataReader(Class<?> toImplement);
+
+    /**
+     * @param toImplement the interface annotated with {@link RabbitClient}
+     * @return {@code true} if the client resolves its methods on their first call
+     * @see RabbitClient#lazy()
+     */
+    boolean isLazy(Class<?> toImplement);
 }
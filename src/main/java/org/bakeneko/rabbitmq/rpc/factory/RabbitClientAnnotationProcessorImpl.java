@@ -16,20 +16,26 @@
 
 package org.bakeneko.rabbitmq.rpc.factory;
 
+import org.bakeneko.rabbitmq.rpc.RabbitCircuitBreaker;
 import org.bakeneko.rabbitmq.rpc.RabbitClient;
+import org.bakeneko.rabbitmq.rpc.RabbitOutbox;
+import org.bakeneko.rabbitmq.rpc.RabbitRetry;
 import org.bakeneko.rabbitmq.rpc.RabbitSender;
+import org.bakeneko.rabbitmq.rpc.chunk.ChunkedTransfer;
+import org.bakeneko.rabbitmq.rpc.outbox.OutboxSettings;
+import org.bakeneko.rabbitmq.rpc.policy.CircuitBreakerSettings;
+import org.bakeneko.rabbitmq.rpc.policy.HedgingSettings;
+import org.bakeneko.rabbitmq.rpc.policy.InFlightLimit;
+import org.bakeneko.rabbitmq.rpc.policy.RetrySettings;
 import org.springframework.amqp.core.MessagePostProcessor;
-import org.springframework.messaging.handler.annotation.Header;
-import org.springframework.messaging.handler.annotation.Headers;
-import org.springframework.messaging.handler.annotation.Payload;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
-import java.lang.reflect.Parameter;
-import java.util.HashMap;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Stream;
+import java.util.function.Function;
 
 import static java.util.stream.Collectors.toMap;
 
@@ -50,6 +56,14 @@ public class RabbitClientAnnotationProcessorImpl implements RabbitClientAnnotati
 
     @Override
     public Map<String, RabbitClientMetadata> readMetadata(Class<?> toImplement) {
+        Function<Method, RabbitClientMetadata> metadataReader = methodMetadataReader(toImplement);
+
+        return ClientReflection.of(toImplement).getDeclaredMethods().stream()
+                .collect(toMap(method -> ClientReflection.of(method).getSignature(), metadataReader));
+    }
+
+    @Override
+    public Function<Method, RabbitClientMetadata> methodMetadataReader(Class<?> toImplement) {
         if (toImplement.isAnnotationPresent(RabbitClient.class)) {
             RabbitClient rabbitClient = toImplement.getAnnotation(RabbitClient.class);
             String defaultExchange = !rabbitClient.exchange().isEmpty() ? rabbitClient.exchange() : null;
@@ -57,132 +71,357 @@ public class RabbitClientAnnotationProcessorImpl implements RabbitClientAnnotati
             MessagePostProcessor defaultMessagePostProcessor = !rabbitClient.messagePostProcessor().isEmpty() ?
                     getMessagePostProcessor(rabbitClient.messagePostProcessor()) : null;
 
-            Map<String, Method> methodsByName = Stream.of(toImplement.getDeclaredMethods())
-                    .collect(toMap(ReflectionUtils::methodNameSignatureAware, m -> m));
-
-            return methodsByName.entrySet()
-                    .stream()
-                    .collect(toMap(Map.Entry::getKey, entry -> {
-                        Method method = entry.getValue();
-                        Integer payloadParameterIndex = getPayloadParameterIndex(method);
-                        Integer headerMapParameterIndex = getHeaderMapParameterIndex(method);
-                        Map<String, Integer> headerParameterIndexByName = getHeaderParameterIndexByName(method);
-
-                        if (method.isAnnotationPresent(RabbitSender.class)) {
-                            RabbitSender rabbitSender = method.getAnnotation(RabbitSender.class);
-
-                            String exchange = !rabbitSender.exchange().isEmpty() ? rabbitSender.exchange() : defaultExchange;
-                            String routingKey = !rabbitSender.routingKey().isEmpty() ? rabbitSender.routingKey() : defaultRoutingKey;
-                            MessagePostProcessor messagePostProcessor = !rabbitSender.messagePostProcessor().isEmpty() ?
-                                    getMessagePostProcessor(rabbitSender.messagePostProcessor()) : defaultMessagePostProcessor;
-
-
-                            return new RabbitClientMetadata(
-                                    propertiesResolver.replaceIfProperty(exchange),
-                                    propertiesResolver.replaceIfProperty(routingKey),
-                                    messagePostProcessor,
-                                    payloadParameterIndex,
-                                    headerMapParameterIndex,
-                                    headerParameterIndexByName
-                            );
-                        } else {
-                            return new RabbitClientMetadata(
-                                    propertiesResolver.replaceIfProperty(defaultExchange),
-                                    propertiesResolver.replaceIfProperty(defaultRoutingKey),
-                                    defaultMessagePostProcessor,
-                                    payloadParameterIndex,
-                                    headerMapParameterIndex,
-                                    headerParameterIndexByName
-                            );
-                        }
-                    }));
+            String defaultInFlightTimeout = emptyToNull(rabbitClient.inFlightTimeout());
+            InFlightLimit clientInFlightLimit = getInFlightLimit(rabbitClient.maxInFlight(), defaultInFlightTimeout);
+            String defaultAdaptiveConcurrency = emptyToNull(rabbitClient.adaptiveConcurrency());
+            RabbitCircuitBreaker defaultCircuitBreaker = toImplement.getAnnotation(RabbitCircuitBreaker.class);
+            RabbitTemplateSettings templateSettings = getTemplateSettings(toImplement, rabbitClient);
+            ShardRouting shardRouting = getShardRouting(toImplement, rabbitClient);
+            boolean localDispatch = parseBoolean(rabbitClient.localDispatch(), "localDispatch");
+            boolean copyOnLocalDispatch = parseBoolean(rabbitClient.copyOnLocalDispatch(), "copyOnLocalDispatch");
+            Integer replyConsumers = getChannelCount(rabbitClient.replyConsumers(), "replyConsumers");
+            Integer publishChannels = getChannelCount(rabbitClient.publishChannels(), "publishChannels");
+            Integer chunkSize = getChunkSize(rabbitClient.chunkSize());
+            OutboxSettings outbox = getOutboxSettings(rabbitClient.outbox());
+
+            return method -> {
+                ClientReflection.MethodReflection reflection = ClientReflection.of(method);
+                Integer payloadParameterIndex = reflection.getPayloadParameterIndex();
+                boolean streamed = payloadParameterIndex != null
+                        && ChunkedTransfer.isSingleUseStream(method.getParameterTypes()[payloadParameterIndex]);
+
+                RabbitClientMetadata.Builder metadata = RabbitClientMetadata.builder()
+                        .payloadParameterIndex(payloadParameterIndex)
+                        .headerMapParameterIndex(reflection.getHeaderMapParameterIndex())
+                        .headerParameterIndexByName(reflection.getHeaderParameterIndexByName())
+                        .exchangeTemplate(getRoutingTemplate(reflection.getExchangeParameterIndex(), reflection.getExchangeTemplate()))
+                        .routingKeyTemplate(getRoutingTemplate(reflection.getRoutingKeyParameterIndex(), reflection.getRoutingKeyTemplate()))
+                        .shardKeyParameterIndex(getShardKeyParameterIndex(method, reflection, shardRouting))
+                        .shardRouting(shardRouting)
+                        .clientInFlightLimit(clientInFlightLimit)
+                        .circuitBreaker(getCircuitBreakerSettings(defaultCircuitBreaker, reflection.getCircuitBreaker()))
+                        .templateSettings(templateSettings)
+                        .localDispatch(localDispatch)
+                        .copyOnLocalDispatch(copyOnLocalDispatch)
+                        .replyConsumers(replyConsumers)
+                        .publishChannels(publishChannels)
+                        .chunkSize(chunkSize)
+                        .outbox(outbox);
+
+                if (reflection.getRabbitSender() != null) {
+                    RabbitSender rabbitSender = reflection.getRabbitSender();
+
+                    String exchange = !rabbitSender.exchange().isEmpty() ? rabbitSender.exchange() : defaultExchange;
+                    String routingKey = !rabbitSender.routingKey().isEmpty() ? rabbitSender.routingKey() : defaultRoutingKey;
+                    MessagePostProcessor messagePostProcessor = !rabbitSender.messagePostProcessor().isEmpty() ?
+                            getMessagePostProcessor(rabbitSender.messagePostProcessor()) : defaultMessagePostProcessor;
+                    String inFlightTimeout = !rabbitSender.inFlightTimeout().isEmpty() ? rabbitSender.inFlightTimeout() : defaultInFlightTimeout;
+                    String adaptiveConcurrency = !rabbitSender.adaptiveConcurrency().isEmpty() ? rabbitSender.adaptiveConcurrency() : defaultAdaptiveConcurrency;
+
+                    return metadata
+                            .exchange(propertiesResolver.replaceIfProperty(exchange))
+                            .routingKey(propertiesResolver.replaceIfProperty(routingKey))
+                            .messagePostProcessor(messagePostProcessor)
+                            .inFlightLimit(getInFlightLimit(rabbitSender.maxInFlight(), inFlightTimeout))
+                            .adaptiveConcurrency(parseBoolean(adaptiveConcurrency, "adaptiveConcurrency"))
+                            .hedging(getHedgingSettings(method, streamed, rabbitSender.hedgeAfter(), rabbitSender.hedgeBudget()))
+                            .retry(getRetrySettings(method, streamed, rabbitClient.retry(), rabbitSender.retry()))
+                            .priority(getPriority(rabbitSender.priority()))
+                            .build();
+                } else {
+                    return metadata
+                            .exchange(propertiesResolver.replaceIfProperty(defaultExchange))
+                            .routingKey(propertiesResolver.replaceIfProperty(defaultRoutingKey))
+                            .messagePostProcessor(defaultMessagePostProcessor)
+                            .adaptiveConcurrency(parseBoolean(defaultAdaptiveConcurrency, "adaptiveConcurrency"))
+                            .retry(getRetrySettings(method, streamed, rabbitClient.retry(), null))
+                            .build();
+                }
+            };
         } else {
             throw new IllegalArgumentException("The class provided is not a @RabbitClient: " + toImplement.getCanonicalName());
         }
     }
 
-    private Integer getPayloadParameterIndex(Method method) {
-        if (method.getParameterCount() == 1 && !isHeader(method.getParameters()[0])) {
-            return 0;
-        } else if (method.getParameterCount() == 0 || (method.getParameterCount() == 1 && isHeader(method.getParameters()[0]))) {
-            throw new IllegalStateException(String.format("No @Payload parameters found in %s.%s. " +
-                            "At least one @Payload parameter must be present - if a parameter is the only one and not marked as @Header, it's also considered @Payload.",
-                    method.getDeclaringClass().getName(), method.getName()));
+    @Override
+    public boolean isLazy(Class<?> toImplement) {
+        RabbitClient rabbitClient = toImplement.getAnnotation(RabbitClient.class);
+        return rabbitClient != null && parseBoolean(rabbitClient.lazy(), "lazy");
+    }
+
+    private RabbitTemplateSettings getTemplateSettings(Class<?> toImplement, RabbitClient rabbitClient) {
+        String rabbitTemplate = emptyToNull(propertiesResolver.replaceIfProperty(rabbitClient.rabbitTemplate()));
+        String connectionFactory = emptyToNull(propertiesResolver.replaceIfProperty(rabbitClient.connectionFactory()));
+        boolean isolated = parseBoolean(rabbitClient.isolated(), "isolated");
+
+        if ((rabbitTemplate != null ? 1 : 0) + (connectionFactory != null ? 1 : 0) + (isolated ? 1 : 0) > 1) {
+            throw new IllegalStateException(String.format("Only one of rabbitTemplate, connectionFactory and isolated can be specified in %s.",
+                    toImplement.getName()));
+        }
+
+        return new RabbitTemplateSettings(rabbitTemplate, connectionFactory, isolated);
+    }
+
+    private InFlightLimit getInFlightLimit(String maxInFlight, String timeoutMillis) {
+        Long maxInFlightValue = parseLong(maxInFlight, "maxInFlight");
+        if (maxInFlightValue == null || maxInFlightValue == 0) {
+            return InFlightLimit.UNLIMITED;
+        }
+        Long timeoutMillisValue = parseLong(timeoutMillis, "inFlightTimeout");
+
+        return new InFlightLimit(maxInFlightValue.intValue(), timeoutMillisValue != null ? timeoutMillisValue : -1);
+    }
+
+    private Integer getPriority(String priority) {
+        Long priorityValue = parseLong(priority, "priority");
+        if (priorityValue == null) {
+            return null;
+        }
+        if (priorityValue < 0 || priorityValue > 255) {
+            throw new IllegalStateException(String.format("The value of priority must be between 0 and 255, while %d was specified.", priorityValue));
+        }
+
+        return priorityValue.intValue();
+    }
+
+    private Integer getChannelCount(String channels, String attributeName) {
+        Long channelsValue = parseLong(channels, attributeName);
+        if (channelsValue == null || channelsValue == 0) {
+            return null;
+        }
+        if (channelsValue < 0 || channelsValue > 64) {
+            throw new IllegalStateException(String.format("The value of %s must be between 0 and 64, while %d was specified.", attributeName, channelsValue));
+        }
+
+        return channelsValue.intValue();
+    }
+
+    private Integer getChunkSize(String chunkSize) {
+        Long chunkSizeValue = parseLong(chunkSize, "chunkSize");
+        if (chunkSizeValue == null) {
+            return null;
+        }
+        if (chunkSizeValue < 1 || chunkSizeValue > Integer.MAX_VALUE) {
+            throw new IllegalStateException(String.format("The value of chunkSize must be a positive number of bytes, while %d was specified.", chunkSizeValue));
+        }
+
+        return chunkSizeValue.intValue();
+    }
+
+    private OutboxSettings getOutboxSettings(RabbitOutbox outbox) {
+        String directory = propertiesResolver.replaceIfProperty(outbox.directory());
+        if (directory == null || directory.trim().isEmpty()) {
+            return OutboxSettings.DISABLED;
+        }
+
+        String fsync = propertiesResolver.replaceIfProperty(outbox.fsync());
+        long fsyncInterval;
+        if (fsync == null || fsync.trim().isEmpty()) {
+            fsyncInterval = OutboxSettings.DEFAULT_FSYNC_INTERVAL_MILLIS;
+        } else if ("always".equalsIgnoreCase(fsync.trim())) {
+            fsyncInterval = OutboxSettings.FSYNC_ALWAYS;
+        } else if ("never".equalsIgnoreCase(fsync.trim())) {
+            fsyncInterval = OutboxSettings.FSYNC_NEVER;
         } else {
-            for (int i = 0; i < method.getParameterCount(); i++) {
-                if (isPayload(method.getParameters()[i])) {
-                    return i;
-                }
+            fsyncInterval = parseLong(fsync, "fsync");
+            if (fsyncInterval <= 0) {
+                throw new IllegalStateException(String.format("The value of fsync must be \"always\", \"never\" or a positive number of milliseconds, " +
+                        "while %d was specified.", fsyncInterval));
+            }
+        }
+
+        try {
+            return new OutboxSettings(
+                    Paths.get(directory.trim()),
+                    parseLong(outbox.maxSize(), "maxSize", OutboxSettings.DEFAULT_MAX_SIZE),
+                    (int) parseLong(outbox.segmentSize(), "segmentSize", OutboxSettings.DEFAULT_SEGMENT_SIZE),
+                    fsyncInterval
+            );
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Invalid outbox: " + e.getMessage(), e);
+        }
+    }
+
+    private HedgingSettings getHedgingSettings(Method method, boolean streamed, String hedgeAfter, String hedgeBudget) {
+        String resolvedHedgeAfter = propertiesResolver.replaceIfProperty(hedgeAfter);
+        if (resolvedHedgeAfter == null || resolvedHedgeAfter.trim().isEmpty()) {
+            return HedgingSettings.DISABLED;
+        }
+        if (streamed) {
+            throw new IllegalStateException(String.format("Hedging can't be enabled for %s, since its streamed payload can only be read once.", method));
+        }
+        Long budget = parseLong(hedgeBudget, "hedgeBudget");
+        int budgetPercent = budget != null ? budget.intValue() : HedgingSettings.DEFAULT_BUDGET_PERCENT;
+
+        String delay = resolvedHedgeAfter.trim();
+        try {
+            if (delay.startsWith("p") || delay.startsWith("P")) {
+                return HedgingSettings.percentile(Double.parseDouble(delay.substring(1)), budgetPercent);
+            } else {
+                return HedgingSettings.fixed(Long.parseLong(delay), budgetPercent);
             }
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException(String.format("The value of hedgeAfter must be either a number of milliseconds or a percentile (e.g. \"p95\"), " +
+                    "while \"%s\" was specified.", delay), e);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
 
-            throw new IllegalStateException(String.format("Multiple parameters specified in %s.%s, but none of them is marked as @Payload.",
-                    method.getDeclaringClass().getName(), method.getName()));
+    private CircuitBreakerSettings getCircuitBreakerSettings(RabbitCircuitBreaker clientLevel, RabbitCircuitBreaker methodLevel) {
+        if (clientLevel == null && methodLevel == null) {
+            return CircuitBreakerSettings.DISABLED;
+        }
+        String enabled = attribute(clientLevel, methodLevel, RabbitCircuitBreaker::enabled);
+        if (enabled != null && !parseBoolean(enabled, "enabled")) {
+            return CircuitBreakerSettings.DISABLED;
+        }
+
+        try {
+            return new CircuitBreakerSettings(
+                    true,
+                    (int) parseLong(attribute(clientLevel, methodLevel, RabbitCircuitBreaker::failureRateThreshold),
+                            "failureRateThreshold", CircuitBreakerSettings.DEFAULT_FAILURE_RATE_THRESHOLD),
+                    (int) parseLong(attribute(clientLevel, methodLevel, RabbitCircuitBreaker::slowCallRateThreshold),
+                            "slowCallRateThreshold", CircuitBreakerSettings.DEFAULT_SLOW_CALL_RATE_THRESHOLD),
+                    parseLong(attribute(clientLevel, methodLevel, RabbitCircuitBreaker::slowCallDuration),
+                            "slowCallDuration", CircuitBreakerSettings.DEFAULT_SLOW_CALL_DURATION_MILLIS),
+                    (int) parseLong(attribute(clientLevel, methodLevel, RabbitCircuitBreaker::slidingWindowSize),
+                            "slidingWindowSize", CircuitBreakerSettings.DEFAULT_SLIDING_WINDOW_SIZE),
+                    (int) parseLong(attribute(clientLevel, methodLevel, RabbitCircuitBreaker::minimumNumberOfCalls),
+                            "minimumNumberOfCalls", CircuitBreakerSettings.DEFAULT_MINIMUM_NUMBER_OF_CALLS),
+                    parseLong(attribute(clientLevel, methodLevel, RabbitCircuitBreaker::waitDurationInOpenState),
+                            "waitDurationInOpenState", CircuitBreakerSettings.DEFAULT_WAIT_DURATION_IN_OPEN_STATE_MILLIS),
+                    (int) parseLong(attribute(clientLevel, methodLevel, RabbitCircuitBreaker::permittedCallsInHalfOpenState),
+                            "permittedCallsInHalfOpenState", CircuitBreakerSettings.DEFAULT_PERMITTED_CALLS_IN_HALF_OPEN_STATE)
+            );
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException(e.getMessage(), e);
         }
     }
 
-    private Map<String, Integer> getHeaderParameterIndexByName(Method method) {
-        Map<String, Integer> indexByName = new HashMap<>();
+    private RetrySettings getRetrySettings(Method method, boolean streamed, RabbitRetry clientLevel, RabbitRetry methodLevel) {
+        int maxAttempts = (int) parseLong(attribute(clientLevel, methodLevel, RabbitRetry::maxAttempts),
+                "maxAttempts", RetrySettings.DEFAULT_MAX_ATTEMPTS);
+        if (maxAttempts == 1) {
+            return RetrySettings.DISABLED;
+        }
+        if (streamed) {
+            // a streamed payload can only be read once: the retries inherited from the client are dropped, the explicit ones rejected
+            if (methodLevel != null && !methodLevel.maxAttempts().isEmpty()) {
+                throw new IllegalStateException(String.format("Retries can't be enabled for %s, since its streamed payload can only be read once.", method));
+            }
+            return RetrySettings.DISABLED;
+        }
+
+        List<Class<? extends Throwable>> retryOn;
+        if (methodLevel != null && methodLevel.retryOn().length > 0) {
+            retryOn = Arrays.asList(methodLevel.retryOn());
+        } else if (clientLevel.retryOn().length > 0) {
+            retryOn = Arrays.asList(clientLevel.retryOn());
+        } else {
+            retryOn = RetrySettings.DEFAULT_RETRY_ON;
+        }
+        String multiplier = propertiesResolver.replaceIfProperty(attribute(clientLevel, methodLevel, RabbitRetry::multiplier));
 
-        for (AtomicInteger i = new AtomicInteger(0); i.get() < method.getParameterCount(); i.incrementAndGet()) {
-            Stream.of(method.getParameterAnnotations()[i.get()]).filter(it -> it.annotationType().equals(Header.class))
-                    .findFirst()
-                    .ifPresent(annotation -> {
-                        Header header = (Header) annotation;
-                        String headerName;
-                        if (!header.value().isEmpty()) {
-                            headerName = header.value();
-                        } else if (!header.name().isEmpty()) {
-                            headerName = header.name();
-                        } else {
-                            headerName = method.getParameters()[i.get()].getName();
-                        }
+        try {
+            return new RetrySettings(
+                    maxAttempts,
+                    parseLong(attribute(clientLevel, methodLevel, RabbitRetry::initialBackoff),
+                            "initialBackoff", RetrySettings.DEFAULT_INITIAL_BACKOFF_MILLIS),
+                    parseLong(attribute(clientLevel, methodLevel, RabbitRetry::maxBackoff),
+                            "maxBackoff", RetrySettings.DEFAULT_MAX_BACKOFF_MILLIS),
+                    multiplier != null ? Double.parseDouble(multiplier.trim()) : RetrySettings.DEFAULT_MULTIPLIER,
+                    retryOn,
+                    (int) parseLong(attribute(clientLevel, methodLevel, RabbitRetry::budget),
+                            "budget", RetrySettings.DEFAULT_BUDGET_PERCENT)
+            );
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Invalid retry policy: " + e.getMessage(), e);
+        }
+    }
 
-                        indexByName.put(headerName, i.get());
-                    });
+    private <A extends Annotation> String attribute(A clientLevel, A methodLevel, Function<A, String> attribute) {
+        if (methodLevel != null && !attribute.apply(methodLevel).isEmpty()) {
+            return attribute.apply(methodLevel);
+        } else if (clientLevel != null && !attribute.apply(clientLevel).isEmpty()) {
+            return attribute.apply(clientLevel);
+        } else {
+            return null;
         }
+    }
 
-        return indexByName;
+    private long parseLong(String value, String attributeName, long defaultValue) {
+        Long parsed = parseLong(value, attributeName);
+        return parsed != null ? parsed : defaultValue;
     }
 
-    private Integer getHeaderMapParameterIndex(Method method) {
-        long headerMapParameters = Stream.of(method.getParameters()).filter(this::isHeaderMap).count();
+    private Long parseLong(String value, String attributeName) {
+        String resolved = propertiesResolver.replaceIfProperty(value);
+        if (resolved == null || resolved.trim().isEmpty()) {
+            return null;
+        }
 
-        if (headerMapParameters == 1) {
-            for (int i = 0; i < method.getParameterCount(); i++) {
-                if (isHeaderMap(method.getParameters()[i])) {
-                    Class<?> parameterType = method.getParameters()[i].getType();
-                    if (Map.class.isAssignableFrom(parameterType)) {
-                        return i;
-                    } else {
-                        throw new IllegalArgumentException(
-                                String.format("Parameters marked as @Headers must be assignable to java.util.Map<String, Object>, while %s.%s has type %s.",
-                                        method.getDeclaringClass().getName(), method.getName(), parameterType)
-                        );
-                    }
-                }
-            }
-        } else if (headerMapParameters > 1) {
-            throw new IllegalStateException(String.format("Multiple @Headers parameters specified in %s.%s, while a maximum of 1 is allowed.",
-                    method.getDeclaringClass().getName(), method.getName()));
+        try {
+            return Long.parseLong(resolved.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException(String.format("The value of %s must be a number, while \"%s\" was specified.",
+                    attributeName, resolved), e);
         }
+    }
 
-        return null;
+    private boolean parseBoolean(String value, String attributeName) {
+        String resolved = propertiesResolver.replaceIfProperty(value);
+        if (resolved == null || resolved.trim().isEmpty() || "false".equalsIgnoreCase(resolved.trim())) {
+            return false;
+        } else if ("true".equalsIgnoreCase(resolved.trim())) {
+            return true;
+        } else {
+            throw new IllegalStateException(String.format("The value of %s must be either \"true\" or \"false\", while \"%s\" was specified.",
+                    attributeName, resolved));
+        }
     }
 
-    private boolean isHeader(Parameter parameter) {
-        return hasAnnotation(parameter, Header.class);
+    private String emptyToNull(String value) {
+        return value != null && !value.isEmpty() ? value : null;
     }
 
-    private boolean isHeaderMap(Parameter parameter) {
-        return hasAnnotation(parameter, Headers.class);
+    private RoutingTemplate getRoutingTemplate(Integer parameterIndex, String template) {
+        if (parameterIndex == null) {
+            return null;
+        }
+
+        try {
+            return new RoutingTemplate(parameterIndex, propertiesResolver.replaceIfProperty(template));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
     }
 
-    private boolean isPayload(Parameter parameter) {
-        return hasAnnotation(parameter, Payload.class);
+    private ShardRouting getShardRouting(Class<?> toImplement, RabbitClient rabbitClient) {
+        if (rabbitClient.shards().isEmpty()) {
+            return null;
+        }
+
+        try {
+            return new ShardRouting(() -> propertiesResolver.replaceIfProperty(rabbitClient.shards()));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException(String.format("Invalid shards specified in %s: %s", toImplement.getName(), e.getMessage()), e);
+        }
     }
 
-    private <T extends Annotation> boolean hasAnnotation(Parameter parameter, Class<T> annotationType) {
-        return Stream.of(parameter.getAnnotations()).anyMatch(it -> it.annotationType().equals(annotationType));
+    private Integer getShardKeyParameterIndex(Method method, ClientReflection.MethodReflection reflection, ShardRouting shardRouting) {
+        Integer shardKeyParameterIndex = reflection.getShardKeyParameterIndex();
+        if (shardKeyParameterIndex != null && shardRouting == null) {
+            throw new IllegalStateException(String.format("A @ShardKey parameter is specified in %s.%s, but no shards are configured in @RabbitClient.",
+                    method.getDeclaringClass().getName(), method.getName()));
+        }
+        if (shardKeyParameterIndex != null && reflection.getRoutingKeyParameterIndex() != null) {
+            throw new IllegalStateException(String.format("Both @ShardKey and @RoutingKey parameters are specified in %s.%s, while they are mutually exclusive.",
+                    method.getDeclaringClass().getName(), method.getName()));
+        }
+
+        return shardKeyParameterIndex;
     }
 
     private MessagePostProcessor getMessagePostProcessor(String beanName) {
@@ -17,30 +17,72 @@
 package org.bakeneko.rabbitmq.rpc.factory;
 
 import org.bakeneko.rabbitmq.rpc.RabbitClient;
-import org.springframework.amqp.core.MessagePostProcessor;
+import org.bakeneko.rabbitmq.rpc.buffer.BufferPool;
+import org.bakeneko.rabbitmq.rpc.buffer.PooledJackson2JsonMessageConverter;
+import org.bakeneko.rabbitmq.rpc.local.LocalRabbitListenerRegistry;
+import org.bakeneko.rabbitmq.rpc.metrics.RabbitClientMetrics;
+import org.bakeneko.rabbitmq.rpc.outbox.Outbox;
+import org.bakeneko.rabbitmq.rpc.outbox.OutboxSettings;
+import org.bakeneko.rabbitmq.rpc.policy.AdaptiveConcurrencyLimiter;
+import org.bakeneko.rabbitmq.rpc.policy.CallPolicy;
+import org.bakeneko.rabbitmq.rpc.policy.CircuitBreaker;
+import org.bakeneko.rabbitmq.rpc.policy.CircuitBreakerSettings;
+import org.bakeneko.rabbitmq.rpc.policy.CircuitBreakerStateChangedEvent;
+import org.bakeneko.rabbitmq.rpc.policy.ConcurrencyLimiter;
+import org.bakeneko.rabbitmq.rpc.policy.HedgingPolicy;
+import org.bakeneko.rabbitmq.rpc.policy.HedgingSettings;
+import org.bakeneko.rabbitmq.rpc.policy.InFlightLimit;
+import org.bakeneko.rabbitmq.rpc.policy.InFlightLimiter;
+import org.bakeneko.rabbitmq.rpc.policy.RetryPolicy;
+import org.bakeneko.rabbitmq.rpc.policy.RetrySettings;
+import org.bakeneko.rabbitmq.rpc.publish.StripedChannelPool;
+import org.bakeneko.rabbitmq.rpc.reply.ReplyMultiplexer;
+import org.springframework.amqp.rabbit.AsyncRabbitTemplate;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
-import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ObjectUtils;
 
-import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.lang.reflect.Type;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-
-import static org.bakeneko.rabbitmq.rpc.factory.ReflectionUtils.methodNameSignatureAware;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /**
  * @author Ivan Sergienko
  */
-public class RabbitClientFactoryImpl implements RabbitClientFactory {
+public class RabbitClientFactoryImpl implements RabbitClientFactory, DisposableBean {
     private RabbitClientAnnotationProcessor annotationProcessor;
-    private RabbitTemplate rabbitTemplate;
+    private RabbitTemplateResolver templateResolver;
+    private RabbitClientMetrics metrics;
+    private ApplicationEventPublisher eventPublisher;
+    private LocalRabbitListenerRegistry localListeners;
+    private final Map<RabbitTemplate, AsyncRabbitTemplate> asyncTemplates = new ConcurrentHashMap<>();
+    private final Map<ConnectionFactory, ReplyMultiplexer> replyMultiplexers = new ConcurrentHashMap<>();
+    private final Map<ConnectionFactory, StripedChannelPool> publishChannelPools = new ConcurrentHashMap<>();
+    private final Map<Path, Outbox> outboxes = new ConcurrentHashMap<>();
+    private final Map<BufferPool, Boolean> bufferPools = new ConcurrentHashMap<>();
 
     public RabbitClientFactoryImpl(
-            RabbitTemplate rabbitTemplate,
-            RabbitClientAnnotationProcessor annotationProcessor
+            RabbitTemplateResolver templateResolver,
+            RabbitClientAnnotationProcessor annotationProcessor,
+            RabbitClientMetrics metrics,
+            ApplicationEventPublisher eventPublisher,
+            @Nullable LocalRabbitListenerRegistry localListeners
     ) {
-        this.rabbitTemplate = rabbitTemplate;
+        this.templateResolver = templateResolver;
         this.annotationProcessor = annotationProcessor;
+        this.metrics = metrics;
+        this.eventPublisher = eventPublisher;
+        this.localListeners = localListeners;
     }
 
     public <T> T forType(Class<T> toImplement) {
@@ -50,73 +92,266 @@ public class RabbitClientFactoryImpl implements RabbitClientFactory {
     @SuppressWarnings("unchecked")
     public <T> T forType(ClassLoader classLoader, Class<T> toImplement) {
         if (toImplement.isAnnotationPresent(RabbitClient.class)) {
-            Map<String, RabbitClientMetadata> metadata = annotationProcessor.readMetadata(toImplement);
+            RabbitClientInvocationHandler handler = annotationProcessor.isLazy(toImplement) ?
+                    new RabbitClientInvocationHandler(new LazyMethodInvokers(toImplement)) :
+                    new RabbitClientInvocationHandler(methodInvokers(toImplement, annotationProcessor.readMetadata(toImplement)));
 
             return (T) Proxy.newProxyInstance(
                     classLoader,
                     new Class[]{toImplement},
-                    new ObjectMethodsDelegatingInvocationHandler(invocationHandler(metadata))
+                    new ObjectMethodsDelegatingInvocationHandler(handler)
             );
         } else {
             throw new IllegalArgumentException("The class provided is not a @RabbitClient: " + toImplement.getCanonicalName());
         }
     }
 
-    private InvocationHandler invocationHandler(Map<String, RabbitClientMetadata> metadataByMethod) {
-        return (proxy, method, args) -> {
-            RabbitClientMetadata metadata = metadataByMethod.get(methodNameSignatureAware(method));
-            String exchange = metadata.getExchange();
-            String routingKey = metadata.getRoutingKey();
-            MessagePostProcessor postProcessor = headerAppendingPostProcessorWrapper(metadata.getHeaders(args), metadata.getMessagePostProcessor());
+    private Map<String, RabbitMethodInvoker> methodInvokers(Class<?> toImplement, Map<String, RabbitClientMetadata> metadataByMethod) {
+        RabbitClientMetadata clientMetadata = metadataByMethod.values().stream().findFirst().orElse(null);
+        if (clientMetadata == null) {
+            return new HashMap<>();
+        }
+
+        ClientInvokers clientInvokers = new ClientInvokers(toImplement.getSimpleName(), clientMetadata);
+        Map<String, RabbitMethodInvoker> invokers = new HashMap<>();
+        for (Method method : ClientReflection.of(toImplement).getDeclaredMethods()) {
+            String signature = ClientReflection.signature(method);
+            invokers.put(signature, clientInvokers.invoker(method, metadataByMethod.get(signature)));
+        }
+
+        return invokers;
+    }
+
+    /**
+     * The multiplexers are shared by the clients with the same connection factory, having the number of consumers
+     * requested by the first of them.
+     */
+    private ReplyMultiplexer replyMultiplexer(RabbitTemplate template, Integer consumers) {
+        if (consumers == null) {
+            return null;
+        }
+
+        return replyMultiplexers.computeIfAbsent(template.getConnectionFactory(), connectionFactory -> {
+            ReplyMultiplexer multiplexer = new ReplyMultiplexer(connectionFactory, consumers);
+            metrics.gauge("rabbitmq.rpc.replies.pending", multiplexer::getPending, "connectionFactory", ObjectUtils.getIdentityHexString(connectionFactory));
+            return multiplexer;
+        });
+    }
+
+    /**
+     * Like the reply multiplexers, the pools are shared by the clients with the same connection factory.
+     */
+    private StripedChannelPool publishChannelPool(RabbitTemplate template, Integer size) {
+        if (size == null) {
+            return null;
+        }
+
+        return publishChannelPools.computeIfAbsent(template.getConnectionFactory(), connectionFactory -> new StripedChannelPool(connectionFactory, size));
+    }
+
+    /**
+     * Exposes the hit rate and the retained memory of the serialization buffers, once per pool.
+     */
+    private void registerBufferPool(MessageConverter converter) {
+        if (converter instanceof PooledJackson2JsonMessageConverter) {
+            bufferPools.computeIfAbsent(((PooledJackson2JsonMessageConverter) converter).getPool(), pool -> {
+                String id = ObjectUtils.getIdentityHexString(pool);
+                metrics.counter("rabbitmq.rpc.buffers.hits", pool::getHits, "pool", id);
+                metrics.counter("rabbitmq.rpc.buffers.misses", pool::getMisses, "pool", id);
+                metrics.gauge("rabbitmq.rpc.buffers.retained.bytes", pool::getRetainedBytes, "pool", id);
+                return Boolean.TRUE;
+            });
+        }
+    }
 
-            if ("void".equals(method.getAnnotatedReturnType().getType().getTypeName())) {
-                sendAsync(exchange, routingKey, metadata.getPayload(args), postProcessor);
+    /**
+     * An outbox replays the stored messages through the default template of the client (or its publishing channels),
+     * and owns its directory, so that two clients don't interleave their journals.
+     */
+    private Outbox outbox(String clientName, OutboxSettings settings, RabbitTemplate template, StripedChannelPool publishChannels) {
+        if (!settings.isEnabled()) {
+            return null;
+        }
 
-                return null;
-            } else {
-                return sendAndReceive(exchange, routingKey, metadata.getPayload(args), method.getGenericReturnType(), postProcessor);
+        Path directory = settings.getDirectory().toAbsolutePath().normalize();
+        return outboxes.compute(directory, (path, existing) -> {
+            if (existing != null) {
+                throw new IllegalStateException(String.format("The outbox directory %s is used by more than one client", path));
             }
-        };
+            Outbox outbox = new Outbox(clientName, settings, publishChannels != null ? publishChannels::publish : template::send);
+            metrics.gauge("rabbitmq.rpc.outbox.pending", outbox::getPending, "client", clientName);
+            metrics.gauge("rabbitmq.rpc.outbox.pending.bytes", outbox::getPendingBytes, "client", clientName);
+            return outbox;
+        });
     }
 
-    private MessagePostProcessor headerAppendingPostProcessorWrapper(Map<String, Object> headers, MessagePostProcessor postProcessor) {
-        return message -> {
-            headers.forEach((name, value) -> message.getMessageProperties().getHeaders().put(name, value));
+    private List<CallPolicy> callPolicies(String clientName, Method method, RabbitClientMetadata metadata, InFlightLimiter clientLimiter) {
+        List<CallPolicy> policies = new ArrayList<>();
+
+        if (metadata.getRetry().isEnabled()) {
+            policies.add(retryPolicy(metadata.getRetry(), "client", clientName, "method", method.getName()));
+        }
+        if (metadata.getCircuitBreaker().isEnabled()) {
+            policies.add(circuitBreaker(clientName, method, metadata.getCircuitBreaker()));
+        }
+        if (clientLimiter != null) {
+            policies.add(clientLimiter);
+        }
+        if (metadata.getInFlightLimit().isLimited()) {
+            policies.add(inFlightLimiter(clientName + "." + method.getName(), metadata.getInFlightLimit(),
+                    "rabbitmq.rpc.method", "client", clientName, "method", method.getName()));
+        }
+        if (metadata.isAdaptiveConcurrency() && !RabbitMethodInvoker.isVoid(method)) {
+            policies.add(adaptiveConcurrencyLimiter(clientName + "." + method.getName(),
+                    "client", clientName, "method", method.getName()));
+        }
 
-            return postProcessor.postProcessMessage(message);
-        };
+        return policies;
     }
 
-    private <V> V sendAndReceive(
-            String exchange,
-            String routingKey,
-            Object payload,
-            Type returnType,
-            MessagePostProcessor postProcessor
-    ) {
-        ParameterizedTypeReference<V> returnTypeReference = ParameterizedTypeReference.forType(returnType);
+    private RetryPolicy retryPolicy(RetrySettings settings, String... tags) {
+        RetryPolicy policy = new RetryPolicy(settings);
+        metrics.counter("rabbitmq.rpc.method.retries", policy::getRetries, tags);
+        metrics.counter("rabbitmq.rpc.method.retries.budget.exhausted", policy::getBudgetExhausted, tags);
+        return policy;
+    }
 
-        if (exchange != null) {
-            return rabbitTemplate.convertSendAndReceiveAsType(exchange, routingKey, payload, postProcessor, returnTypeReference);
-        } else if (routingKey != null) {
-            return rabbitTemplate.convertSendAndReceiveAsType(routingKey, payload, postProcessor, returnTypeReference);
-        } else {
-            return rabbitTemplate.convertSendAndReceiveAsType(payload, postProcessor, returnTypeReference);
+    private CircuitBreaker circuitBreaker(String clientName, Method method, CircuitBreakerSettings settings) {
+        String methodName = method.getName();
+        CircuitBreaker circuitBreaker = new CircuitBreaker(clientName + "." + methodName, settings, !RabbitMethodInvoker.isVoid(method), (breaker, from, to) -> {
+            metrics.increment("rabbitmq.rpc.method.circuit.transitions",
+                    "client", clientName, "method", methodName, "from", from.name(), "to", to.name());
+            eventPublisher.publishEvent(new CircuitBreakerStateChangedEvent(breaker, clientName, methodName, from, to));
+        });
+        metrics.gauge("rabbitmq.rpc.method.circuit.state", () -> circuitBreaker.getState().ordinal(),
+                "client", clientName, "method", methodName);
+        metrics.gauge("rabbitmq.rpc.method.circuit.failure.rate", circuitBreaker::getFailureRate,
+                "client", clientName, "method", methodName);
+        metrics.counter("rabbitmq.rpc.method.circuit.rejected", circuitBreaker::getNotPermitted,
+                "client", clientName, "method", methodName);
+        return circuitBreaker;
+    }
+
+    private InFlightLimiter inFlightLimiter(String name, InFlightLimit limit, String metricPrefix, String... tags) {
+        InFlightLimiter limiter = new InFlightLimiter(name, limit);
+        metrics.gauge(metricPrefix + ".inflight", limiter::getInFlight, tags);
+        metrics.gauge(metricPrefix + ".inflight.queued", limiter::getQueued, tags);
+        metrics.gauge(metricPrefix + ".inflight.max", limiter::getMaxInFlight, tags);
+        return limiter;
+    }
+
+    private AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter(String name, String... tags) {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(name);
+        metrics.gauge("rabbitmq.rpc.method.concurrency.limit", limiter::getLimit, tags);
+        metrics.gauge("rabbitmq.rpc.method.concurrency.inflight", limiter::getInFlight, tags);
+        metrics.counter("rabbitmq.rpc.method.concurrency.rejected", limiter::getRejected, tags);
+        return limiter;
+    }
+
+    /**
+     * The hedging policy of a method is applied within its call policies, and the duplicate requests take a slot of its limiters.
+     */
+    private HedgingPolicy hedgingPolicy(HedgingSettings settings, List<CallPolicy> policies, String... tags) {
+        List<ConcurrencyLimiter> limiters = new ArrayList<>();
+        for (CallPolicy policy : policies) {
+            if (policy instanceof ConcurrencyLimiter) {
+                limiters.add((ConcurrencyLimiter) policy);
+            }
         }
+
+        HedgingPolicy policy = new HedgingPolicy(settings, limiters);
+        metrics.gauge("rabbitmq.rpc.method.hedge.delay", policy::getDelayMillis, tags);
+        metrics.counter("rabbitmq.rpc.method.hedged", policy::getHedged, tags);
+        metrics.counter("rabbitmq.rpc.method.hedges.rejected", policy::getRejected, tags);
+        return policy;
     }
 
-    private void sendAsync(
-            String exchange,
-            String routingKey,
-            Object payload,
-            MessagePostProcessor postProcessor
-    ) {
-        if (exchange != null) {
-            rabbitTemplate.convertAndSend(exchange, routingKey, payload, postProcessor);
-        } else if (routingKey != null) {
-            rabbitTemplate.convertAndSend(routingKey, payload, postProcessor);
-        } else {
-            rabbitTemplate.convertAndSend(payload, postProcessor);
+    /**
+     * The hedged calls are sent through an {@link AsyncRabbitTemplate} of their template, receiving the replies with direct reply-to,
+     * so that both requests of a call can be awaited at once.
+     */
+    private AsyncRabbitTemplate asyncTemplate(RabbitTemplate rabbitTemplate) {
+        return asyncTemplates.computeIfAbsent(rabbitTemplate, template -> {
+            AsyncRabbitTemplate asyncTemplate = new AsyncRabbitTemplate(template);
+            asyncTemplate.setBeanName("rabbit-rpc-hedging");
+            asyncTemplate.setReceiveTimeout(RabbitMethodInvoker.replyTimeout(template));
+            asyncTemplate.start();
+            return asyncTemplate;
+        });
+    }
+
+    /**
+     * The template, the priority lanes, the client-wide in-flight limiters and the outbox shared by the methods of a client.
+     */
+    private class ClientInvokers {
+        private final String clientName;
+        private final RabbitTemplate clientTemplate;
+        private final InFlightLimit clientLimit;
+        private final Outbox outbox;
+        private final Map<Integer, RabbitTemplate> templatesByLane = new HashMap<>();
+        private final Map<Integer, InFlightLimiter> clientLimitersByLane = new HashMap<>();
+
+        ClientInvokers(String clientName, RabbitClientMetadata clientMetadata) {
+            this.clientName = clientName;
+            this.clientTemplate = templateResolver.resolve(clientName, clientMetadata.getTemplateSettings());
+            this.clientLimit = clientMetadata.getClientInFlightLimit();
+            this.outbox = outbox(clientName, clientMetadata.getOutbox(), clientTemplate,
+                    publishChannelPool(clientTemplate, clientMetadata.getPublishChannels()));
+            registerBufferPool(clientTemplate.getMessageConverter());
         }
+
+        RabbitMethodInvoker invoker(Method method, RabbitClientMetadata metadata) {
+            Integer lane = metadata.getPriority();
+            RabbitTemplate template = lane == null ? clientTemplate :
+                    templatesByLane.computeIfAbsent(lane, priority -> templateResolver.resolveLane(clientName, clientTemplate, priority));
+            InFlightLimiter clientLimiter = null;
+            if (clientLimit.isLimited()) {
+                clientLimiter = clientLimitersByLane.computeIfAbsent(lane, priority -> priority == null ?
+                        inFlightLimiter(clientName, clientLimit, "rabbitmq.rpc.client", "client", clientName) :
+                        inFlightLimiter(clientName + "[priority=" + priority + "]", clientLimit, "rabbitmq.rpc.client.lane",
+                                "client", clientName, "priority", String.valueOf(priority)));
+            }
+
+            List<CallPolicy> policies = callPolicies(clientName, method, metadata, clientLimiter);
+            HedgingPolicy hedging = metadata.getHedging().isEnabled() && !RabbitMethodInvoker.isVoid(method) ?
+                    hedgingPolicy(metadata.getHedging(), policies, "client", clientName, "method", method.getName()) : null;
+
+            return new RabbitMethodInvoker(method, metadata, template, policies,
+                    metadata.isLocalDispatch() ? localListeners : null, replyMultiplexer(template, metadata.getReplyConsumers()),
+                    publishChannelPool(template, metadata.getPublishChannels()), hedging, () -> asyncTemplate(template), outbox);
+        }
+    }
+
+    /**
+     * Defers reading the client annotation, and setting up the client, until the first call of any of its methods.
+     */
+    private class LazyMethodInvokers implements Function<Method, RabbitMethodInvoker> {
+        private final Class<?> toImplement;
+        private Function<Method, RabbitClientMetadata> metadataReader;
+        private ClientInvokers clientInvokers;
+
+        LazyMethodInvokers(Class<?> toImplement) {
+            this.toImplement = toImplement;
+        }
+
+        @Override
+        public synchronized RabbitMethodInvoker apply(Method method) {
+            if (metadataReader == null) {
+                metadataReader = annotationProcessor.methodMetadataReader(toImplement);
+            }
+            RabbitClientMetadata metadata = metadataReader.apply(method);
+            if (clientInvokers == null) {
+                clientInvokers = new ClientInvokers(toImplement.getSimpleName(), metadata);
+            }
+            return clientInvokers.invoker(method, metadata);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        asyncTemplates.values().forEach(AsyncRabbitTemplate::stop);
+        replyMultiplexers.values().forEach(ReplyMultiplexer::close);
+        outboxes.values().forEach(Outbox::close);
+        publishChannelPools.values().forEach(StripedChannelPool::close);
     }
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.factory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * The {@link InvocationHandler} of a generated client, delegating each method to its {@link RabbitMethodInvoker}.
+ * The invokers of a lazy client are resolved on the first call of their method, once.
+ *
+ * @author Ivan Sergienko
+ */
+public class RabbitClientInvocationHandler implements InvocationHandler {
+    private final Map<String, RabbitMethodInvoker> invokers;
+    private final Function<Method, RabbitMethodInvoker> invokerResolver;
+
+    public RabbitClientInvocationHandler(Map<String, RabbitMethodInvoker> invokers) {
+        this.invokers = invokers;
+        this.invokerResolver = null;
+    }
+
+    /**
+     * @param invokerResolver the resolver of the invoker of a method, called once per method
+     */
+    public RabbitClientInvocationHandler(Function<Method, RabbitMethodInvoker> invokerResolver) {
+        this.invokers = new ConcurrentHashMap<>();
+        this.invokerResolver = invokerResolver;
+    }
+
+    /**
+     * @param client a client generated by {@link RabbitClientFactory}
+     * @return the invocation handler of the client
+     * @throws IllegalArgumentException if the object is not a generated client
+     */
+    public static RabbitClientInvocationHandler of(Object client) {
+        if (client != null && Proxy.isProxyClass(client.getClass())) {
+            InvocationHandler handler = Proxy.getInvocationHandler(client);
+            if (handler instanceof ObjectMethodsDelegatingInvocationHandler) {
+                handler = ((ObjectMethodsDelegatingInvocationHandler) handler).getHandler();
+            }
+            if (handler instanceof RabbitClientInvocationHandler) {
+                return (RabbitClientInvocationHandler) handler;
+            }
+        }
+
+        throw new IllegalArgumentException("The object provided is not a generated @RabbitClient: " + client);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        return getInvoker(method).invoke(args);
+    }
+
+    public RabbitMethodInvoker getInvoker(Method method) {
+        String signature = ClientReflection.signature(method);
+        RabbitMethodInvoker invoker = invokers.get(signature);
+        if (invoker == null && invokerResolver != null) {
+            invoker = invokers.computeIfAbsent(signature, s -> invokerResolver.apply(method));
+        }
+        return invoker;
+    }
+}
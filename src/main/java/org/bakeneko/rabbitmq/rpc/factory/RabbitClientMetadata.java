@@ -17,8 +17,14 @@
 package org.bakeneko.rabbitmq.rpc.factory;
 
 import org.bakeneko.rabbitmq.rpc.RabbitClient;
+import org.bakeneko.rabbitmq.rpc.outbox.OutboxSettings;
+import org.bakeneko.rabbitmq.rpc.policy.CircuitBreakerSettings;
+import org.bakeneko.rabbitmq.rpc.policy.HedgingSettings;
+import org.bakeneko.rabbitmq.rpc.policy.InFlightLimit;
+import org.bakeneko.rabbitmq.rpc.policy.RetrySettings;
 import org.springframework.amqp.core.MessagePostProcessor;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -26,6 +32,7 @@ import java.util.stream.Collectors;
 /**
  * Method metadata container for {@link RabbitClient} generation.
  * Contains data necessary for message dispatching through {@link org.springframework.amqp.rabbit.core.RabbitTemplate}.
+ * Created through {@link #builder()}.
  *
  * @author Ivan Sergienko
  */
@@ -36,21 +43,54 @@ public class RabbitClientMetadata {
     private final Integer payloadParameterIndex;
     private final Integer headerMapParameterIndex;
     private final Map<String, Integer> headerParameterIndexByName;
+    private final RoutingTemplate exchangeTemplate;
+    private final RoutingTemplate routingKeyTemplate;
+    private final Integer shardKeyParameterIndex;
+    private final ShardRouting shardRouting;
+    private final InFlightLimit clientInFlightLimit;
+    private final InFlightLimit inFlightLimit;
+    private final boolean adaptiveConcurrency;
+    private final HedgingSettings hedging;
+    private final CircuitBreakerSettings circuitBreaker;
+    private final RetrySettings retry;
+    private final RabbitTemplateSettings templateSettings;
+    private final Integer priority;
+    private final boolean localDispatch;
+    private final boolean copyOnLocalDispatch;
+    private final Integer replyConsumers;
+    private final Integer publishChannels;
+    private final Integer chunkSize;
+    private final OutboxSettings outbox;
 
-    public RabbitClientMetadata(
-            String exchange,
-            String routingKey,
-            MessagePostProcessor messagePostProcessor,
-            Integer payloadParameterIndex,
-            Integer headerMapParameterIndex,
-            Map<String, Integer> headerParameterIndexByName
-    ) {
-        this.exchange = exchange;
-        this.routingKey = routingKey;
-        this.messagePostProcessor = messagePostProcessor != null ? messagePostProcessor : message -> message;
-        this.payloadParameterIndex = payloadParameterIndex;
-        this.headerMapParameterIndex = headerMapParameterIndex;
-        this.headerParameterIndexByName = headerParameterIndexByName;
+    private RabbitClientMetadata(Builder builder) {
+        this.exchange = builder.exchange;
+        this.routingKey = builder.routingKey;
+        this.messagePostProcessor = builder.messagePostProcessor != null ? builder.messagePostProcessor : message -> message;
+        this.payloadParameterIndex = builder.payloadParameterIndex;
+        this.headerMapParameterIndex = builder.headerMapParameterIndex;
+        this.headerParameterIndexByName = builder.headerParameterIndexByName != null ? builder.headerParameterIndexByName : Collections.emptyMap();
+        this.exchangeTemplate = builder.exchangeTemplate;
+        this.routingKeyTemplate = builder.routingKeyTemplate;
+        this.shardKeyParameterIndex = builder.shardKeyParameterIndex;
+        this.shardRouting = builder.shardRouting;
+        this.clientInFlightLimit = builder.clientInFlightLimit != null ? builder.clientInFlightLimit : InFlightLimit.UNLIMITED;
+        this.inFlightLimit = builder.inFlightLimit != null ? builder.inFlightLimit : InFlightLimit.UNLIMITED;
+        this.adaptiveConcurrency = builder.adaptiveConcurrency;
+        this.hedging = builder.hedging != null ? builder.hedging : HedgingSettings.DISABLED;
+        this.circuitBreaker = builder.circuitBreaker != null ? builder.circuitBreaker : CircuitBreakerSettings.DISABLED;
+        this.retry = builder.retry != null ? builder.retry : RetrySettings.DISABLED;
+        this.templateSettings = builder.templateSettings != null ? builder.templateSettings : RabbitTemplateSettings.DEFAULT;
+        this.priority = builder.priority;
+        this.localDispatch = builder.localDispatch;
+        this.copyOnLocalDispatch = builder.copyOnLocalDispatch;
+        this.replyConsumers = builder.replyConsumers;
+        this.publishChannels = builder.publishChannels;
+        this.chunkSize = builder.chunkSize;
+        this.outbox = builder.outbox != null ? builder.outbox : OutboxSettings.DISABLED;
+    }
+
+    public static Builder builder() {
+        return new Builder();
     }
 
     public String getExchange() {
@@ -61,10 +101,139 @@ public class RabbitClientMetadata {
         return routingKey;
     }
 
+    /**
+     * @param args the arguments of the call
+     * @return the exchange of the call, taken from an {@link org.bakeneko.rabbitmq.rpc.Exchange} parameter if there is one
+     */
+    public String getExchange(Object[] args) {
+        return exchangeTemplate != null ? exchangeTemplate.evaluate(args) : exchange;
+    }
+
+    /**
+     * @param args the arguments of the call
+     * @return the routing key of the call, taken from a {@link org.bakeneko.rabbitmq.rpc.RoutingKey} parameter
+     * or mapped from a {@link org.bakeneko.rabbitmq.rpc.ShardKey} parameter if there is one
+     */
+    public String getRoutingKey(Object[] args) {
+        if (routingKeyTemplate != null) {
+            return routingKeyTemplate.evaluate(args);
+        } else if (shardKeyParameterIndex != null) {
+            return shardRouting.route(args[shardKeyParameterIndex], routingKey);
+        } else {
+            return routingKey;
+        }
+    }
+
+    /**
+     * @return whether the routing key is computed for each call from a {@link org.bakeneko.rabbitmq.rpc.RoutingKey}
+     * or a {@link org.bakeneko.rabbitmq.rpc.ShardKey} parameter
+     */
+    public boolean isRoutedPerCall() {
+        return routingKeyTemplate != null || shardKeyParameterIndex != null;
+    }
+
     public MessagePostProcessor getMessagePostProcessor() {
         return messagePostProcessor;
     }
 
+    /**
+     * @return the limit shared by all the methods of the client
+     */
+    public InFlightLimit getClientInFlightLimit() {
+        return clientInFlightLimit;
+    }
+
+    /**
+     * @return the limit applied to this particular method
+     */
+    public InFlightLimit getInFlightLimit() {
+        return inFlightLimit;
+    }
+
+    /**
+     * @return whether the concurrency of the method is limited adaptively
+     */
+    public boolean isAdaptiveConcurrency() {
+        return adaptiveConcurrency;
+    }
+
+    /**
+     * @return when to send a duplicate request for the method
+     */
+    public HedgingSettings getHedging() {
+        return hedging;
+    }
+
+    /**
+     * @return the circuit breaker settings for the method
+     */
+    public CircuitBreakerSettings getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @return the retry policy settings for the method
+     */
+    public RetrySettings getRetry() {
+        return retry;
+    }
+
+    /**
+     * @return the settings of the template shared by all the methods of the client
+     */
+    public RabbitTemplateSettings getTemplateSettings() {
+        return templateSettings;
+    }
+
+    /**
+     * @return the message priority, which is also the lane the method is sent through, or {@code null} for the default lane
+     */
+    public Integer getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return whether the calls are dispatched to the listeners of the same application when possible
+     */
+    public boolean isLocalDispatch() {
+        return localDispatch;
+    }
+
+    /**
+     * @return whether locally dispatched payloads and replies are copied through the message converter
+     */
+    public boolean isCopyOnLocalDispatch() {
+        return copyOnLocalDispatch;
+    }
+
+    /**
+     * @return the number of multiplexed reply consumers the replies are received through,
+     * or {@code null} if they are received by the {@link org.springframework.amqp.rabbit.core.RabbitTemplate}
+     */
+    public Integer getReplyConsumers() {
+        return replyConsumers;
+    }
+
+    /**
+     * @return the number of pooled channels the one-way calls are published through,
+     * or {@code null} if they are published by the {@link org.springframework.amqp.rabbit.core.RabbitTemplate}
+     */
+    public Integer getPublishChannels() {
+        return publishChannels;
+    }
+
+    /**
+     * @return the maximum body size of a request message, larger requests are split into chunks,
+     * or {@code null} if the requests are never split
+     */
+    public Integer getChunkSize() {
+        return chunkSize;
+    }
+
+    public OutboxSettings getOutbox() {
+        return outbox;
+    }
+
     public Object getPayload(Object[] args) {
         return payloadParameterIndex != null ? args[payloadParameterIndex] : null;
     }
@@ -82,4 +251,161 @@ public class RabbitClientMetadata {
 
         return allHeaders;
     }
+
+    /**
+     * Collects the metadata of a method, the settings left unset taking their defaults (no limits, no hedging, circuit breaking or retries).
+     */
+    public static class Builder {
+        private String exchange;
+        private String routingKey;
+        private MessagePostProcessor messagePostProcessor;
+        private Integer payloadParameterIndex;
+        private Integer headerMapParameterIndex;
+        private Map<String, Integer> headerParameterIndexByName;
+        private RoutingTemplate exchangeTemplate;
+        private RoutingTemplate routingKeyTemplate;
+        private Integer shardKeyParameterIndex;
+        private ShardRouting shardRouting;
+        private InFlightLimit clientInFlightLimit;
+        private InFlightLimit inFlightLimit;
+        private boolean adaptiveConcurrency;
+        private HedgingSettings hedging;
+        private CircuitBreakerSettings circuitBreaker;
+        private RetrySettings retry;
+        private RabbitTemplateSettings templateSettings;
+        private Integer priority;
+        private boolean localDispatch;
+        private boolean copyOnLocalDispatch;
+        private Integer replyConsumers;
+        private Integer publishChannels;
+        private Integer chunkSize;
+        private OutboxSettings outbox;
+
+        private Builder() {
+        }
+
+        public Builder exchange(String exchange) {
+            this.exchange = exchange;
+            return this;
+        }
+
+        public Builder routingKey(String routingKey) {
+            this.routingKey = routingKey;
+            return this;
+        }
+
+        public Builder messagePostProcessor(MessagePostProcessor messagePostProcessor) {
+            this.messagePostProcessor = messagePostProcessor;
+            return this;
+        }
+
+        public Builder payloadParameterIndex(Integer payloadParameterIndex) {
+            this.payloadParameterIndex = payloadParameterIndex;
+            return this;
+        }
+
+        public Builder headerMapParameterIndex(Integer headerMapParameterIndex) {
+            this.headerMapParameterIndex = headerMapParameterIndex;
+            return this;
+        }
+
+        public Builder headerParameterIndexByName(Map<String, Integer> headerParameterIndexByName) {
+            this.headerParameterIndexByName = headerParameterIndexByName;
+            return this;
+        }
+
+        public Builder exchangeTemplate(RoutingTemplate exchangeTemplate) {
+            this.exchangeTemplate = exchangeTemplate;
+            return this;
+        }
+
+        public Builder routingKeyTemplate(RoutingTemplate routingKeyTemplate) {
+            this.routingKeyTemplate = routingKeyTemplate;
+            return this;
+        }
+
+        public Builder shardKeyParameterIndex(Integer shardKeyParameterIndex) {
+            this.shardKeyParameterIndex = shardKeyParameterIndex;
+            return this;
+        }
+
+        public Builder shardRouting(ShardRouting shardRouting) {
+            this.shardRouting = shardRouting;
+            return this;
+        }
+
+        public Builder clientInFlightLimit(InFlightLimit clientInFlightLimit) {
+            this.clientInFlightLimit = clientInFlightLimit;
+            return this;
+        }
+
+        public Builder inFlightLimit(InFlightLimit inFlightLimit) {
+            this.inFlightLimit = inFlightLimit;
+            return this;
+        }
+
+        public Builder adaptiveConcurrency(boolean adaptiveConcurrency) {
+            this.adaptiveConcurrency = adaptiveConcurrency;
+            return this;
+        }
+
+        public Builder hedging(HedgingSettings hedging) {
+            this.hedging = hedging;
+            return this;
+        }
+
+        public Builder circuitBreaker(CircuitBreakerSettings circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        public Builder retry(RetrySettings retry) {
+            this.retry = retry;
+            return this;
+        }
+
+        public Builder templateSettings(RabbitTemplateSettings templateSettings) {
+            this.templateSettings = templateSettings;
+            return this;
+        }
+
+        public Builder priority(Integer priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        public Builder localDispatch(boolean localDispatch) {
+            this.localDispatch = localDispatch;
+            return this;
+        }
+
+        public Builder copyOnLocalDispatch(boolean copyOnLocalDispatch) {
+            this.copyOnLocalDispatch = copyOnLocalDispatch;
+            return this;
+        }
+
+        public Builder replyConsumers(Integer replyConsumers) {
+            this.replyConsumers = replyConsumers;
+            return this;
+        }
+
+        public Builder publishChannels(Integer publishChannels) {
+            this.publishChannels = publishChannels;
+            return this;
+        }
+
+        public Builder chunkSize(Integer chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        public Builder outbox(OutboxSettings outbox) {
+            this.outbox = outbox;
+            return this;
+        }
+
+        public RabbitClientMetadata build() {
+            return new RabbitClientMetadata(this);
+        }
+    }
 }
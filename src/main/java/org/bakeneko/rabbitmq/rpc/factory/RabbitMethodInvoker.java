@@ -0,0 +1,432 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.factory;
+
+import org.bakeneko.rabbitmq.rpc.RpcReply;
+import org.bakeneko.rabbitmq.rpc.chunk.ChunkedTransfer;
+import org.bakeneko.rabbitmq.rpc.local.LocalRabbitListener;
+import org.bakeneko.rabbitmq.rpc.local.LocalRabbitListenerRegistry;
+import org.bakeneko.rabbitmq.rpc.outbox.Outbox;
+import org.bakeneko.rabbitmq.rpc.policy.CallPolicy;
+import org.bakeneko.rabbitmq.rpc.policy.HedgingPolicy;
+import org.bakeneko.rabbitmq.rpc.publish.StripedChannelPool;
+import org.bakeneko.rabbitmq.rpc.reply.ReplyMultiplexer;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.AsyncRabbitTemplate;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.SimpleAmqpHeaderMapper;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.amqp.support.converter.SmartMessageConverter;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Dispatches the calls of a single {@link org.bakeneko.rabbitmq.rpc.RabbitClient} method through {@link RabbitTemplate},
+ * applying the method's {@link CallPolicy} chain.
+ * Everything that doesn't depend on the call arguments is resolved once, when the invoker is created.
+ * If the client enables local dispatch and a matching {@link LocalRabbitListener} accepts the payload and reply types of the call,
+ * the call is made in-process instead,
+ * still going through the policies. If the client has a {@link ReplyMultiplexer}, the replies are received through it
+ * instead of the template, and if it has a {@link StripedChannelPool}, the {@code void} calls are published through it.
+ * The {@code byte[]}, {@link java.nio.ByteBuffer} and {@link Message} payloads and return types bypass the message converter,
+ * see {@link RawMessages}. The methods returning {@link RpcReply} receive the reply message, and convert its body on demand.
+ * The requests larger than the {@link RabbitClientMetadata#getChunkSize()} of the client are split by {@link ChunkedTransfer},
+ * the leading chunks are published one-way, and the last one is sent the way the whole request would be.
+ * The streamed payloads (see {@link ChunkedTransfer#isStream(Object)}) are always sent in chunks, read as they are published.
+ * If the client has an {@link Outbox}, the {@code void} calls are sent through it.
+ *
+ * @author Ivan Sergienko
+ */
+public class RabbitMethodInvoker {
+    private static final SimpleAmqpHeaderMapper HEADER_MAPPER = new SimpleAmqpHeaderMapper();
+    private static final long DEFAULT_REPLY_TIMEOUT = 5000;
+
+    private final RabbitClientMetadata metadata;
+    private final RabbitTemplate rabbitTemplate;
+    private final CallPolicy policy;
+    private final LocalRabbitListenerRegistry localListeners;
+    private final ReplyMultiplexer replies;
+    private final StripedChannelPool publishChannels;
+    private final Outbox outbox;
+    private final long replyTimeout;
+    private final HedgingPolicy hedging;
+    private final Supplier<AsyncRabbitTemplate> asyncTemplate;
+    private final boolean isVoid;
+    private final boolean lazyReply;
+    private final Type replyType;
+    private final ParameterizedTypeReference<Object> returnTypeReference;
+    private final Class<?> rawReturnType;
+
+    /**
+     * @param localListeners the listeners to dispatch the calls to in-process, or {@code null} to always go through the broker
+     */
+    public RabbitMethodInvoker(Method method, RabbitClientMetadata metadata, RabbitTemplate rabbitTemplate, List<CallPolicy> policies,
+                               LocalRabbitListenerRegistry localListeners) {
+        this(method, metadata, rabbitTemplate, policies, localListeners, null, null, null, null, null);
+    }
+
+    /**
+     * @param localListeners  the listeners to dispatch the calls to in-process, or {@code null} to always go through the broker
+     * @param replies         the multiplexer to receive the replies through, or {@code null} to leave them to the template
+     * @param publishChannels the pool to publish the {@code void} calls through, or {@code null} to leave them to the template
+     * @param hedging         the hedging policy of the method, or {@code null} if its calls aren't hedged
+     * @param asyncTemplate   the template the hedged calls are sent through without a multiplexer, created when the first hedged call is made
+     * @param outbox          the outbox to store the {@code void} calls failing to reach the broker in, or {@code null} to fail them
+     */
+    public RabbitMethodInvoker(Method method, RabbitClientMetadata metadata, RabbitTemplate rabbitTemplate, List<CallPolicy> policies,
+                               LocalRabbitListenerRegistry localListeners, ReplyMultiplexer replies, StripedChannelPool publishChannels,
+                               HedgingPolicy hedging, Supplier<AsyncRabbitTemplate> asyncTemplate, Outbox outbox) {
+        this.metadata = metadata;
+        this.rabbitTemplate = rabbitTemplate;
+        this.policy = compose(policies);
+        this.localListeners = localListeners;
+        this.replies = replies;
+        this.publishChannels = publishChannels;
+        this.outbox = outbox;
+        this.hedging = hedging;
+        this.asyncTemplate = asyncTemplate;
+        this.replyTimeout = replies != null || hedging != null ? replyTimeout(rabbitTemplate) : DEFAULT_REPLY_TIMEOUT;
+        this.isVoid = isVoid(method);
+        this.lazyReply = method.getReturnType() == RpcReply.class;
+        Type replyType = lazyReply ? lazyReplyType(method) : method.getGenericReturnType();
+        this.replyType = isVoid ? null : replyType;
+        this.returnTypeReference = isVoid ? null : ParameterizedTypeReference.forType(replyType);
+        this.rawReturnType = replyType instanceof Class && RawMessages.isRaw((Class<?>) replyType) ? (Class<?>) replyType : null;
+    }
+
+    /**
+     * Sends a message built from the call arguments, and waits for the reply unless the method is {@code void}.
+     *
+     * @param args the arguments of the call
+     * @return the reply, or {@code null} for {@code void} methods
+     * @throws Exception if the call fails or is rejected by one of the policies
+     */
+    public Object invoke(Object[] args) throws Exception {
+        MessagePostProcessor postProcessor = postProcessor(args);
+        Object payload = metadata.getPayload(args);
+        String exchange = metadata.getExchange(args);
+        String routingKey = metadata.getRoutingKey(args);
+        LocalRabbitListener localListener = localListeners != null && payload != null ? localListeners.find(exchange, routingKey) : null;
+
+        Callable<Object> call;
+        if (localListener != null && localListener.accepts(payload, replyType)) {
+            call = () -> dispatchLocally(localListener, payload, postProcessor);
+        } else if (isVoid) {
+            call = () -> {
+                sendAsync(exchange, routingKey, payload, postProcessor);
+
+                return null;
+            };
+        } else if (hedging != null) {
+            call = () -> sendHedged(exchange, routingKey, payload, postProcessor);
+        } else {
+            call = () -> sendAndReceive(exchange, routingKey, payload, postProcessor);
+        }
+
+        return policy != null ? policy.execute(call) : call.call();
+    }
+
+    /**
+     * Builds the request message of a call, for the callers publishing it on their own.
+     *
+     * @param args the arguments of the call
+     * @return the converted and post-processed request
+     */
+    public Message toMessage(Object[] args) {
+        return toRequest(metadata.getPayload(args), postProcessor(args));
+    }
+
+    /**
+     * @param args the arguments of the call
+     * @return the exchange the call is sent to, falling back to the template's default exchange
+     */
+    public String getExchange(Object[] args) {
+        String exchange = metadata.getExchange(args);
+
+        return exchange != null ? exchange : rabbitTemplate.getExchange();
+    }
+
+    /**
+     * @param args the arguments of the call
+     * @return the routing key the call is sent with, falling back to the template's default routing key
+     */
+    public String getRoutingKey(Object[] args) {
+        String routingKey = metadata.getRoutingKey(args);
+
+        return routingKey != null ? routingKey : rabbitTemplate.getRoutingKey();
+    }
+
+    /**
+     * @param reply the reply message
+     * @return the reply converted to the return type of the method, or wrapped into an {@link RpcReply}
+     */
+    public Object fromReply(Message reply) {
+        return lazyReply ? new RpcReply<>(reply, this::convertReply) : convertReply(reply);
+    }
+
+    public boolean isVoid() {
+        return isVoid;
+    }
+
+    public RabbitClientMetadata getMetadata() {
+        return metadata;
+    }
+
+    public RabbitTemplate getRabbitTemplate() {
+        return rabbitTemplate;
+    }
+
+    private Object convertReply(Message reply) {
+        if (rawReturnType != null) {
+            return RawMessages.fromMessage(reply, rawReturnType);
+        }
+
+        MessageConverter converter = rabbitTemplate.getMessageConverter();
+
+        return converter instanceof SmartMessageConverter ?
+                ((SmartMessageConverter) converter).fromMessage(reply, returnTypeReference) : converter.fromMessage(reply);
+    }
+
+    /**
+     * Composes the policies into a single one, once, so that a call only has to wrap its own dispatch into each of them.
+     *
+     * @return the policies applied in their order, or {@code null} if there are none
+     */
+    private static CallPolicy compose(List<CallPolicy> policies) {
+        CallPolicy chain = null;
+        for (int i = policies.size() - 1; i >= 0; i--) {
+            CallPolicy policy = policies.get(i);
+            CallPolicy next = chain;
+            chain = next == null ? policy : call -> policy.execute(() -> next.execute(call));
+        }
+
+        return chain;
+    }
+
+    private MessagePostProcessor postProcessor(Object[] args) {
+        Map<String, Object> headers = metadata.getHeaders(args);
+        Integer priority = metadata.getPriority();
+        MessagePostProcessor postProcessor = metadata.getMessagePostProcessor();
+
+        return message -> {
+            headers.forEach((name, value) -> message.getMessageProperties().getHeaders().put(name, value));
+            if (priority != null) {
+                message.getMessageProperties().setPriority(priority);
+            }
+
+            return postProcessor.postProcessMessage(message);
+        };
+    }
+
+    private Message toRequest(Object payload, MessagePostProcessor postProcessor) {
+        Message message = RawMessages.isRaw(payload) ?
+                RawMessages.toMessage(payload) : rabbitTemplate.getMessageConverter().toMessage(payload, new MessageProperties());
+
+        return postProcessor.postProcessMessage(message);
+    }
+
+    private Object dispatchLocally(LocalRabbitListener listener, Object payload, MessagePostProcessor postProcessor) throws Exception {
+        Message message = postProcessor.postProcessMessage(new Message(new byte[0], new MessageProperties()));
+        Map<String, Object> headers = new HashMap<>(HEADER_MAPPER.toHeaders(message.getMessageProperties()));
+
+        Object reply = listener.invoke(metadata.isCopyOnLocalDispatch() ? copy(payload) : payload, headers);
+        if (isVoid || reply == null) {
+            return null;
+        }
+
+        Object body = metadata.isCopyOnLocalDispatch() ? copyReply(reply) : reply;
+
+        return lazyReply ? RpcReply.of(body) : body;
+    }
+
+    private Object copy(Object payload) {
+        if (RawMessages.isRaw(payload)) {
+            return RawMessages.copy(payload);
+        }
+
+        MessageConverter converter = rabbitTemplate.getMessageConverter();
+
+        return converter.fromMessage(converter.toMessage(payload, new MessageProperties()));
+    }
+
+    private Object copyReply(Object reply) {
+        if (RawMessages.isRaw(reply)) {
+            return RawMessages.copy(reply);
+        }
+
+        return convertReply(rabbitTemplate.getMessageConverter().toMessage(reply, new MessageProperties()));
+    }
+
+    private Object sendAndReceive(String exchange, String routingKey, Object payload, MessagePostProcessor postProcessor) {
+        if (replies != null || lazyReply || rawReturnType != null || metadata.getChunkSize() != null
+                || RawMessages.isRaw(payload) || ChunkedTransfer.isStream(payload)) {
+            String resolvedExchange = exchange != null ? exchange : rabbitTemplate.getExchange();
+            String resolvedRoutingKey = routingKey != null ? routingKey : rabbitTemplate.getRoutingKey();
+            Message request = sendLeadingChunks(resolvedExchange, resolvedRoutingKey, payload, postProcessor);
+            Message reply = replies != null ? replies.sendAndReceive(resolvedExchange, resolvedRoutingKey, request, replyTimeout) :
+                    rabbitTemplate.sendAndReceive(resolvedExchange, resolvedRoutingKey, request);
+
+            return reply != null ? fromReply(reply) : null;
+        } else if (exchange != null) {
+            return rabbitTemplate.convertSendAndReceiveAsType(exchange, routingKey, payload, postProcessor, returnTypeReference);
+        } else if (routingKey != null) {
+            return rabbitTemplate.convertSendAndReceiveAsType(routingKey, payload, postProcessor, returnTypeReference);
+        } else {
+            return rabbitTemplate.convertSendAndReceiveAsType(payload, postProcessor, returnTypeReference);
+        }
+    }
+
+    /**
+     * Sends the hedged requests through the multiplexer of the client if it has one, or through an {@link AsyncRabbitTemplate} otherwise.
+     */
+    private Object sendHedged(String exchange, String routingKey, Object payload, MessagePostProcessor postProcessor) throws Exception {
+        AsyncRabbitTemplate asyncTemplate = replies == null ? this.asyncTemplate.get() : null;
+        String resolvedExchange = exchange != null ? exchange : rabbitTemplate.getExchange();
+        String resolvedRoutingKey = routingKey != null ? routingKey : rabbitTemplate.getRoutingKey();
+
+        Message reply = hedging.execute(() -> {
+            Message request = sendLeadingChunks(resolvedExchange, resolvedRoutingKey, payload, postProcessor);
+            return asyncTemplate == null ? replies.send(resolvedExchange, resolvedRoutingKey, request) :
+                    completable(asyncTemplate.sendAndReceive(resolvedExchange, resolvedRoutingKey, request));
+        }, replyTimeout);
+
+        return reply != null ? fromReply(reply) : null;
+    }
+
+    /**
+     * Adapts the future of an {@link AsyncRabbitTemplate} request, cancelling the request (and discarding its reply) when cancelled.
+     */
+    private static <T> CompletableFuture<T> completable(ListenableFuture<T> future) {
+        CompletableFuture<T> completable = new CompletableFuture<T>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                if (!isDone()) {
+                    future.cancel(mayInterruptIfRunning);
+                }
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        future.addCallback(completable::complete, completable::completeExceptionally);
+
+        return completable;
+    }
+
+    private void sendAsync(String exchange, String routingKey, Object payload, MessagePostProcessor postProcessor) {
+        if (publishChannels != null || outbox != null || metadata.getChunkSize() != null || RawMessages.isRaw(payload) || ChunkedTransfer.isStream(payload)) {
+            String resolvedExchange = exchange != null ? exchange : rabbitTemplate.getExchange();
+            String resolvedRoutingKey = routingKey != null ? routingKey : rabbitTemplate.getRoutingKey();
+            send(resolvedExchange, resolvedRoutingKey, sendLeadingChunks(resolvedExchange, resolvedRoutingKey, payload, postProcessor));
+        } else if (exchange != null) {
+            rabbitTemplate.convertAndSend(exchange, routingKey, payload, postProcessor);
+        } else if (routingKey != null) {
+            rabbitTemplate.convertAndSend(routingKey, payload, postProcessor);
+        } else {
+            rabbitTemplate.convertAndSend(payload, postProcessor);
+        }
+    }
+
+    /**
+     * Publishes all the chunks of the request but the last one, if it's streamed or larger than the chunk size.
+     *
+     * @return the request itself, or its last chunk
+     */
+    private Message sendLeadingChunks(String exchange, String routingKey, Object payload, MessagePostProcessor postProcessor) {
+        Integer chunkSize = metadata.getChunkSize();
+        if (ChunkedTransfer.isStream(payload)) {
+            MessageProperties properties = new MessageProperties();
+            properties.setContentType(MessageProperties.CONTENT_TYPE_BYTES);
+            Message headers = postProcessor.postProcessMessage(new Message(new byte[0], properties));
+            try {
+                return ChunkedTransfer.stream(payload, headers.getMessageProperties(), chunkSize != null ? chunkSize : ChunkedTransfer.DEFAULT_CHUNK_SIZE,
+                        chunk -> send(exchange, routingKey, chunk));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        Message message = toRequest(payload, postProcessor);
+        if (chunkSize == null || message.getBody().length <= chunkSize) {
+            return message;
+        }
+
+        List<Message> chunks = ChunkedTransfer.split(message, chunkSize);
+        for (int i = 0; i < chunks.size() - 1; i++) {
+            send(exchange, routingKey, chunks.get(i));
+        }
+
+        return chunks.get(chunks.size() - 1);
+    }
+
+    private void send(String exchange, String routingKey, Message message) {
+        if (isVoid && outbox != null) {
+            outbox.send(exchange, routingKey, message, this::publish);
+        } else {
+            publish(exchange, routingKey, message);
+        }
+    }
+
+    private void publish(String exchange, String routingKey, Message message) {
+        if (publishChannels != null) {
+            publishChannels.publish(exchange, routingKey, message);
+        } else {
+            rabbitTemplate.send(exchange, routingKey, message);
+        }
+    }
+
+    /**
+     * Reads the reply timeout the template was configured with, since it isn't exposed by {@link RabbitTemplate}.
+     */
+    static long replyTimeout(RabbitTemplate rabbitTemplate) {
+        Object replyTimeout = new DirectFieldAccessor(rabbitTemplate).getPropertyValue("replyTimeout");
+
+        return replyTimeout instanceof Long ? (Long) replyTimeout : DEFAULT_REPLY_TIMEOUT;
+    }
+
+    /**
+     * @return the type argument of the {@link RpcReply} returned by the method, {@code Object} if it's raw or a wildcard
+     */
+    private static Type lazyReplyType(Method method) {
+        Type returnType = method.getGenericReturnType();
+        if (returnType instanceof ParameterizedType) {
+            Type replyType = ((ParameterizedType) returnType).getActualTypeArguments()[0];
+            if (replyType instanceof Class || replyType instanceof ParameterizedType) {
+                return replyType;
+            }
+        }
+
+        return Object.class;
+    }
+
+    static boolean isVoid(Method method) {
+        return "void".equals(method.getAnnotatedReturnType().getType().getTypeName());
+    }
+}
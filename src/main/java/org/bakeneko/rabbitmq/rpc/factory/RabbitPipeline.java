@@ -0,0 +1,197 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.factory;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import org.springframework.amqp.core.Address;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * Sends a sequence of client calls back to back, without waiting for the replies in between.
+ * The calls sharing a {@link RabbitTemplate} are published on a single channel, which consumes their replies through direct reply-to
+ * and completes the future of each call. The calls without a reply within the reply timeout fail with a {@link TimeoutException}.
+ * <p>
+ * Unlike the regular calls, the pipelined calls always go through the broker, and the call policies are not applied to them.
+ *
+ * @author Ivan Sergienko
+ * @see org.bakeneko.rabbitmq.rpc.RabbitRpc#pipeline
+ */
+public class RabbitPipeline {
+    private static final ScheduledExecutorService TIMEOUTS = timeoutScheduler();
+    private static final MessagePropertiesConverter PROPERTIES_CONVERTER = new DefaultMessagePropertiesConverter();
+    private static final String ENCODING = "UTF-8";
+
+    private final long replyTimeout;
+    private final List<Call> calls = new ArrayList<>();
+
+    /**
+     * @param replyTimeout the number of milliseconds to wait for the replies, counted from the moment the calls are sent
+     */
+    public RabbitPipeline(long replyTimeout) {
+        this.replyTimeout = replyTimeout;
+    }
+
+    /**
+     * Queues a call to be sent by {@link #send()}.
+     *
+     * @param invoker the invoker of the called method
+     * @param args    the arguments of the call
+     * @return the future of the reply, completed with {@code null} once a {@code void} call is sent
+     */
+    public CompletableFuture<Object> add(RabbitMethodInvoker invoker, Object[] args) {
+        Call call = new Call(invoker, args);
+        calls.add(call);
+
+        return call.future;
+    }
+
+    /**
+     * Publishes the queued calls. A call that can't be published completes its future exceptionally, along with the calls
+     * queued after it on the same channel.
+     */
+    public void send() {
+        Map<RabbitTemplate, List<Call>> callsByTemplate = calls.stream()
+                .collect(Collectors.groupingBy(call -> call.invoker.getRabbitTemplate(), LinkedHashMap::new, Collectors.toList()));
+
+        callsByTemplate.forEach(this::send);
+    }
+
+    private void send(RabbitTemplate template, List<Call> calls) {
+        Map<String, Call> pending = new ConcurrentHashMap<>();
+        Channel channel = null;
+        String consumerTag = null;
+        int next = 0;
+
+        try {
+            channel = template.getConnectionFactory().createConnection().createChannel(false);
+            if (calls.stream().anyMatch(call -> !call.invoker.isVoid())) {
+                consumerTag = channel.basicConsume(Address.AMQ_RABBITMQ_REPLY_TO, true, new ReplyConsumer(channel, pending));
+            }
+
+            for (; next < calls.size(); next++) {
+                Call call = calls.get(next);
+                Message message = call.invoker.toMessage(call.args);
+                MessageProperties properties = message.getMessageProperties();
+                if (!call.invoker.isVoid()) {
+                    String correlationId = String.valueOf(next);
+                    properties.setReplyTo(Address.AMQ_RABBITMQ_REPLY_TO);
+                    properties.setCorrelationId(correlationId);
+                    pending.put(correlationId, call);
+                }
+
+                channel.basicPublish(call.invoker.getExchange(call.args), call.invoker.getRoutingKey(call.args), false,
+                        PROPERTIES_CONVERTER.fromMessageProperties(properties, ENCODING), message.getBody());
+                if (call.invoker.isVoid()) {
+                    call.future.complete(null);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // the calls published before still get their replies
+            calls.subList(next, calls.size()).forEach(call -> {
+                pending.values().remove(call);
+                call.future.completeExceptionally(e);
+            });
+        }
+
+        Channel replyChannel = channel;
+        String replyConsumerTag = consumerTag;
+        CompletableFuture.allOf(calls.stream().map(call -> call.future).toArray(CompletableFuture[]::new))
+                .whenComplete((result, e) -> TIMEOUTS.execute(() -> close(replyChannel, replyConsumerTag)));
+
+        if (!pending.isEmpty()) {
+            TIMEOUTS.schedule(() -> pending.values().forEach(call -> call.future.completeExceptionally(
+                    new TimeoutException("No reply received within " + replyTimeout + " ms."))), replyTimeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void close(Channel channel, String consumerTag) {
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            if (consumerTag != null && channel.isOpen()) {
+                channel.basicCancel(consumerTag);
+            }
+            channel.close();
+        } catch (IOException | TimeoutException | RuntimeException e) {
+            // the channel is closed or broken anyway, and the calls are already completed
+        }
+    }
+
+    private static ScheduledExecutorService timeoutScheduler() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("rabbit-rpc-pipeline-");
+        threadFactory.setDaemon(true);
+        return Executors.newSingleThreadScheduledExecutor(threadFactory);
+    }
+
+    private static class Call {
+        private final RabbitMethodInvoker invoker;
+        private final Object[] args;
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        Call(RabbitMethodInvoker invoker, Object[] args) {
+            this.invoker = invoker;
+            this.args = args;
+        }
+    }
+
+    private static class ReplyConsumer extends DefaultConsumer {
+        private final Map<String, Call> pending;
+
+        ReplyConsumer(Channel channel, Map<String, Call> pending) {
+            super(channel);
+            this.pending = pending;
+        }
+
+        @Override
+        public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) {
+            Call call = properties.getCorrelationId() != null ? pending.remove(properties.getCorrelationId()) : null;
+            if (call == null) {
+                return;
+            }
+
+            try {
+                MessageProperties messageProperties = PROPERTIES_CONVERTER.toMessageProperties(properties, envelope, ENCODING);
+                call.future.complete(call.invoker.fromReply(new Message(body, messageProperties)));
+            } catch (RuntimeException e) {
+                call.future.completeExceptionally(e);
+            }
+        }
+    }
+}
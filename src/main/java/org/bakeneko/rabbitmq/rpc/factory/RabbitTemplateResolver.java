@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.factory;
+
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+/**
+ * Resolves the {@link RabbitTemplate} each generated client sends its messages through.
+ *
+ * @author Ivan Sergienko
+ * @see org.bakeneko.rabbitmq.rpc.RabbitClient#rabbitTemplate()
+ * @see org.bakeneko.rabbitmq.rpc.RabbitClient#connectionFactory()
+ * @see org.bakeneko.rabbitmq.rpc.RabbitClient#isolated()
+ * @see org.bakeneko.rabbitmq.rpc.RabbitSender#priority()
+ */
+public interface RabbitTemplateResolver {
+
+    /**
+     * Resolves (or creates) the {@link RabbitTemplate} for a client.
+     *
+     * @param clientName the name of the client, used to name the dedicated connections
+     * @param settings   the template settings of the client
+     * @return the template to use for the client
+     */
+    RabbitTemplate resolve(String clientName, RabbitTemplateSettings settings);
+
+    /**
+     * Resolves (or creates) the {@link RabbitTemplate} for a priority lane of a client,
+     * so the calls of the lane don't wait for the channels used by the rest of the client.
+     *
+     * @param clientName     the name of the client, used to name the dedicated connections
+     * @param clientTemplate the template resolved for the client
+     * @param priority       the message priority of the lane
+     * @return the template to use for the lane
+     */
+    RabbitTemplate resolveLane(String clientName, RabbitTemplate clientTemplate, int priority);
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.factory;
+
+import com.rabbitmq.client.RecoveryListener;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.CorrelationDataPostProcessor;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.amqp.support.ConditionalExceptionLogger;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.expression.Expression;
+import org.springframework.retry.RecoveryCallback;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.util.ErrorHandler;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Templates created for a {@link ConnectionFactory} are configured like the default {@link RabbitTemplate}: message converter,
+ * exchange and routing key, timeouts, mandatory flag, reply address, post processors, retry template and callbacks.
+ * A fixed reply address only works with a reply listener container of its own for the created template, so such clients are better
+ * given a {@link RabbitTemplate} bean of their own.
+ * Isolated templates get a {@link CachingConnectionFactory} of their own, created from the underlying
+ * {@link com.rabbitmq.client.ConnectionFactory} of the default one and configured like it (addresses, cache mode and sizes,
+ * channel checkout timeout, publisher confirms and returns, connection and channel listeners) - so the default one has to be
+ * a {@link CachingConnectionFactory}.
+ * Priority lanes are created the same way from the connection factory of the client's template; when that one isn't
+ * a {@link CachingConnectionFactory}, the lane shares the client's template and only gets an in-flight budget of its own.
+ * The template of a lane is configured like the client's one, so it keeps its reply timeout for instance.
+ * Created templates and connection factories are destroyed along with the Spring context.
+ *
+ * @author Ivan Sergienko
+ */
+public class RabbitTemplateResolverImpl implements RabbitTemplateResolver, DisposableBean {
+    private RabbitTemplate rabbitTemplate;
+    private BeanFactory beanFactory;
+
+    private final List<CachingConnectionFactory> createdConnectionFactories = new CopyOnWriteArrayList<>();
+    private final List<RabbitTemplate> createdTemplates = new CopyOnWriteArrayList<>();
+
+    public RabbitTemplateResolverImpl(RabbitTemplate rabbitTemplate, BeanFactory beanFactory) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public RabbitTemplate resolve(String clientName, RabbitTemplateSettings settings) {
+        if (settings.getRabbitTemplate() != null) {
+            return beanFactory.getBean(settings.getRabbitTemplate(), RabbitTemplate.class);
+        } else if (settings.getConnectionFactory() != null) {
+            return createTemplate(beanFactory.getBean(settings.getConnectionFactory(), ConnectionFactory.class));
+        } else if (settings.isIsolated()) {
+            return createTemplate(createConnectionFactory(clientName));
+        } else {
+            return rabbitTemplate;
+        }
+    }
+
+    @Override
+    public RabbitTemplate resolveLane(String clientName, RabbitTemplate clientTemplate, int priority) {
+        if (!(clientTemplate.getConnectionFactory() instanceof CachingConnectionFactory)) {
+            return clientTemplate;
+        }
+        CachingConnectionFactory clientConnectionFactory = (CachingConnectionFactory) clientTemplate.getConnectionFactory();
+
+        return createTemplate(createConnectionFactory(clientName + "-priority-" + priority, clientConnectionFactory), clientTemplate);
+    }
+
+    private RabbitTemplate createTemplate(ConnectionFactory connectionFactory) {
+        return createTemplate(connectionFactory, rabbitTemplate);
+    }
+
+    /**
+     * Creates a template configured like the prototype, but on another connection factory. Spring AMQP has no copy constructor
+     * and no getters for most of the settings, so the ones without a getter are read from the fields.
+     */
+    private RabbitTemplate createTemplate(ConnectionFactory connectionFactory, RabbitTemplate prototype) {
+        DirectFieldAccessor settings = new DirectFieldAccessor(prototype);
+        RabbitTemplate template = new RabbitTemplate(connectionFactory);
+        template.setMessageConverter(prototype.getMessageConverter());
+        template.setMessagePropertiesConverter((MessagePropertiesConverter) settings.getPropertyValue("messagePropertiesConverter"));
+        template.setExchange(prototype.getExchange());
+        template.setRoutingKey(prototype.getRoutingKey());
+        template.setDefaultReceiveQueue((String) settings.getPropertyValue("defaultReceiveQueue"));
+        template.setEncoding(prototype.getEncoding());
+        template.setReceiveTimeout((Long) settings.getPropertyValue("receiveTimeout"));
+        template.setReplyTimeout((Long) settings.getPropertyValue("replyTimeout"));
+        template.setMandatoryExpression((Expression) settings.getPropertyValue("mandatoryExpression"));
+        template.setUserIdExpression((Expression) settings.getPropertyValue("userIdExpression"));
+        template.setUserCorrelationId((Boolean) settings.getPropertyValue("userCorrelationId"));
+        template.setUsePublisherConnection(prototype.isUsePublisherConnection());
+        template.setUseDirectReplyToContainer((Boolean) settings.getPropertyValue("useDirectReplyToContainer"));
+        template.setUseTemporaryReplyQueues((Boolean) settings.getPropertyValue("useTemporaryReplyQueues"));
+        template.setNoLocalReplyConsumer((Boolean) settings.getPropertyValue("noLocalReplyConsumer"));
+        template.setTaskExecutor((Executor) settings.getPropertyValue("taskExecutor"));
+        Collection<?> beforePublishPostProcessors = (Collection<?>) settings.getPropertyValue("beforePublishPostProcessors");
+        if (beforePublishPostProcessors != null) {
+            template.setBeforePublishPostProcessors(beforePublishPostProcessors.toArray(new MessagePostProcessor[0]));
+        }
+        if (prototype.getAfterReceivePostProcessors() != null) {
+            template.setAfterReceivePostProcessors(prototype.getAfterReceivePostProcessors().toArray(new MessagePostProcessor[0]));
+        }
+        template.setCorrelationDataPostProcessor((CorrelationDataPostProcessor) settings.getPropertyValue("correlationDataPostProcessor"));
+        template.setRetryTemplate((RetryTemplate) settings.getPropertyValue("retryTemplate"));
+        template.setRecoveryCallback((RecoveryCallback<?>) settings.getPropertyValue("recoveryCallback"));
+        if (settings.getPropertyValue("replyErrorHandler") != null) {
+            template.setReplyErrorHandler((ErrorHandler) settings.getPropertyValue("replyErrorHandler"));
+        }
+        if (settings.getPropertyValue("confirmCallback") != null) {
+            template.setConfirmCallback((RabbitTemplate.ConfirmCallback) settings.getPropertyValue("confirmCallback"));
+        }
+        if (settings.getPropertyValue("returnCallback") != null) {
+            template.setReturnCallback((RabbitTemplate.ReturnCallback) settings.getPropertyValue("returnCallback"));
+        }
+        if (settings.getPropertyValue("correlationKey") != null) {
+            template.setCorrelationKey((String) settings.getPropertyValue("correlationKey"));
+        }
+        if (settings.getPropertyValue("replyAddress") != null) {
+            template.setReplyAddress((String) settings.getPropertyValue("replyAddress"));
+        }
+        createdTemplates.add(template);
+        return template;
+    }
+
+    private ConnectionFactory createConnectionFactory(String clientName) {
+        if (!(rabbitTemplate.getConnectionFactory() instanceof CachingConnectionFactory)) {
+            throw new IllegalStateException(String.format("An isolated connection for %s can only be created when the default RabbitTemplate " +
+                    "uses a CachingConnectionFactory, while it uses %s.", clientName, rabbitTemplate.getConnectionFactory()));
+        }
+
+        return createConnectionFactory(clientName, (CachingConnectionFactory) rabbitTemplate.getConnectionFactory());
+    }
+
+    /**
+     * Creates a connection factory configured like the prototype, on the same {@link com.rabbitmq.client.ConnectionFactory}.
+     */
+    private ConnectionFactory createConnectionFactory(String connectionName, CachingConnectionFactory prototype) {
+        DirectFieldAccessor settings = new DirectFieldAccessor(prototype);
+        CachingConnectionFactory connectionFactory = new CachingConnectionFactory(prototype.getRabbitConnectionFactory());
+        List<?> addresses = (List<?>) settings.getPropertyValue("addresses");
+        if (addresses != null) {
+            connectionFactory.setAddresses(StringUtils.collectionToCommaDelimitedString(addresses));
+        }
+        connectionFactory.setShuffleAddresses((Boolean) settings.getPropertyValue("shuffleAddresses"));
+        connectionFactory.setCacheMode(prototype.getCacheMode());
+        connectionFactory.setChannelCacheSize(prototype.getChannelCacheSize());
+        connectionFactory.setConnectionCacheSize(prototype.getConnectionCacheSize());
+        connectionFactory.setConnectionLimit((Integer) settings.getPropertyValue("connectionLimit"));
+        connectionFactory.setChannelCheckoutTimeout((Long) settings.getPropertyValue("channelCheckoutTimeout"));
+        // the two kinds of confirms are mutually exclusive, so only the enabled one is set
+        if (prototype.isPublisherConfirms()) {
+            connectionFactory.setPublisherConfirms(true);
+        }
+        if (prototype.isSimplePublisherConfirms()) {
+            connectionFactory.setSimplePublisherConfirms(true);
+        }
+        connectionFactory.setPublisherReturns(prototype.isPublisherReturns());
+        connectionFactory.setCloseTimeout(prototype.getCloseTimeout());
+        if (settings.getPropertyValue("closeExceptionLogger") != null) {
+            connectionFactory.setCloseExceptionLogger((ConditionalExceptionLogger) settings.getPropertyValue("closeExceptionLogger"));
+        }
+        if (settings.getPropertyValue("recoveryListener") != null) {
+            connectionFactory.setRecoveryListener((RecoveryListener) settings.getPropertyValue("recoveryListener"));
+        }
+        if (settings.getPropertyValue("executorService") != null) {
+            connectionFactory.setExecutor((Executor) settings.getPropertyValue("executorService"));
+        }
+        connectionFactory.setConnectionListeners(delegates(settings.getPropertyValue("connectionListener")));
+        connectionFactory.setChannelListeners(delegates(settings.getPropertyValue("channelListener")));
+        connectionFactory.setConnectionNameStrategy(factory -> connectionName);
+        createdConnectionFactories.add(connectionFactory);
+        return connectionFactory;
+    }
+
+    /**
+     * @return the listeners of a {@link org.springframework.amqp.rabbit.connection.CompositeConnectionListener}
+     * or a {@link org.springframework.amqp.rabbit.connection.CompositeChannelListener}
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> delegates(Object compositeListener) {
+        return new ArrayList<>((List<T>) new DirectFieldAccessor(compositeListener).getPropertyValue("delegates"));
+    }
+
+    @Override
+    public void destroy() {
+        createdTemplates.forEach(RabbitTemplate::stop);
+        createdConnectionFactories.forEach(CachingConnectionFactory::destroy);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.factory;
+
+/**
+ * Specifies which {@link org.springframework.amqp.rabbit.core.RabbitTemplate} a {@link org.bakeneko.rabbitmq.rpc.RabbitClient} sends its messages through.
+ *
+ * @author Ivan Sergienko
+ * @see RabbitTemplateResolver
+ */
+public class RabbitTemplateSettings {
+    public static final RabbitTemplateSettings DEFAULT = new RabbitTemplateSettings(null, null, false);
+
+    private final String rabbitTemplate;
+    private final String connectionFactory;
+    private final boolean isolated;
+
+    /**
+     * @param rabbitTemplate    the bean name of the template to use, if any
+     * @param connectionFactory the bean name of the connection factory to create a template for, if any
+     * @param isolated          whether a template with a dedicated connection should be created
+     */
+    public RabbitTemplateSettings(String rabbitTemplate, String connectionFactory, boolean isolated) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.connectionFactory = connectionFactory;
+        this.isolated = isolated;
+    }
+
+    public String getRabbitTemplate() {
+        return rabbitTemplate;
+    }
+
+    public String getConnectionFactory() {
+        return connectionFactory;
+    }
+
+    public boolean isIsolated() {
+        return isolated;
+    }
+
+    public boolean isDefault() {
+        return rabbitTemplate == null && connectionFactory == null && !isolated;
+    }
+}
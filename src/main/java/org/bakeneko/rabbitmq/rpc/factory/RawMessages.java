@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.factory;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Payloads and replies passed to and from the broker as they are, without the message converter:
+ * {@code byte[]}, {@link ByteBuffer} and {@link Message}.
+ * A byte array is sent without copying, and so is a heap {@link ByteBuffer} spanning its whole backing array;
+ * any other buffer has its remaining bytes copied, since a {@link Message} body is an array.
+ *
+ * @author Ivan Sergienko
+ */
+final class RawMessages {
+
+    private RawMessages() {
+    }
+
+    /**
+     * @param type a payload or return type
+     * @return {@code true} if the values of the type bypass the message converter
+     */
+    static boolean isRaw(Class<?> type) {
+        return type == byte[].class || type == ByteBuffer.class || type == Message.class;
+    }
+
+    /**
+     * @param payload a payload
+     * @return {@code true} if the payload bypasses the message converter
+     */
+    static boolean isRaw(Object payload) {
+        return payload instanceof byte[] || payload instanceof ByteBuffer || payload instanceof Message;
+    }
+
+    /**
+     * @param payload a raw payload
+     * @return the message to send, the payload itself if it's a {@link Message}
+     */
+    static Message toMessage(Object payload) {
+        if (payload instanceof Message) {
+            return (Message) payload;
+        }
+
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_BYTES);
+
+        return new Message(payload instanceof ByteBuffer ? toArray((ByteBuffer) payload) : (byte[]) payload, properties);
+    }
+
+    /**
+     * @param reply a reply
+     * @param type  a raw return type
+     * @return the reply as the return type, sharing the reply body
+     */
+    static Object fromMessage(Message reply, Class<?> type) {
+        if (type == Message.class) {
+            return reply;
+        }
+
+        return type == ByteBuffer.class ? ByteBuffer.wrap(reply.getBody()) : reply.getBody();
+    }
+
+    /**
+     * @param value a raw payload or reply
+     * @return a copy of the value not sharing its bytes, for the calls dispatched in-process
+     */
+    static Object copy(Object value) {
+        if (value instanceof Message) {
+            Message message = (Message) value;
+
+            return new Message(message.getBody().clone(), message.getMessageProperties());
+        }
+
+        return value instanceof ByteBuffer ? ByteBuffer.wrap(toArray((ByteBuffer) value).clone()) : ((byte[]) value).clone();
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0 && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+
+        return bytes;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.factory;
+
+/**
+ * The precompiled form of a {@link org.bakeneko.rabbitmq.rpc.RoutingKey} or {@link org.bakeneko.rabbitmq.rpc.Exchange} parameter:
+ * the template is split once, so evaluating it for a call is a single concatenation.
+ *
+ * @author Ivan Sergienko
+ */
+public class RoutingTemplate {
+    static final String PLACEHOLDER = "{}";
+
+    private final int parameterIndex;
+    private final String prefix;
+    private final String suffix;
+
+    public RoutingTemplate(int parameterIndex, String template) {
+        this.parameterIndex = parameterIndex;
+        if (template == null || template.isEmpty()) {
+            this.prefix = "";
+            this.suffix = "";
+        } else {
+            int placeholderIndex = template.indexOf(PLACEHOLDER);
+            if (placeholderIndex < 0 || template.indexOf(PLACEHOLDER, placeholderIndex + 1) >= 0) {
+                throw new IllegalArgumentException(String.format("A routing template must contain exactly one %s placeholder, while \"%s\" was specified.",
+                        PLACEHOLDER, template));
+            }
+            this.prefix = template.substring(0, placeholderIndex);
+            this.suffix = template.substring(placeholderIndex + PLACEHOLDER.length());
+        }
+    }
+
+    public int getParameterIndex() {
+        return parameterIndex;
+    }
+
+    /**
+     * @param args the arguments of the call
+     * @return the template with the placeholder replaced by the value of the parameter
+     * @throws IllegalArgumentException if the value of the parameter is {@code null}
+     */
+    public String evaluate(Object[] args) {
+        Object value = args[parameterIndex];
+        if (value == null) {
+            throw new IllegalArgumentException(String.format("The routing parameter #%d must not be null.", parameterIndex));
+        }
+
+        return prefix.isEmpty() && suffix.isEmpty() ? value.toString() : prefix + value + suffix;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.factory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Maps the shard keys of a client to routing keys through a {@link ConsistentHashRing}.
+ * The shard configuration (see {@link org.bakeneko.rabbitmq.rpc.RabbitClient#shards()}) is re-read at most once per refresh interval,
+ * and the ring is only rebuilt when it actually changes. An invalid updated configuration, or one failing to be read, keeps the current ring.
+ *
+ * @author Ivan Sergienko
+ */
+public class ShardRouting {
+    public static final long DEFAULT_REFRESH_INTERVAL_MILLIS = 10_000;
+
+    private final Supplier<String> configuration;
+    private final long refreshIntervalNanos;
+
+    private volatile Snapshot snapshot;
+    private volatile long nextRefreshNanos;
+
+    public ShardRouting(Supplier<String> configuration) {
+        this(configuration, DEFAULT_REFRESH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param configuration         supplies the current shard configuration
+     * @param refreshIntervalMillis how often the configuration is re-read, {@code 0} to re-read it on each call
+     * @throws IllegalArgumentException if the initial configuration is invalid
+     */
+    public ShardRouting(Supplier<String> configuration, long refreshIntervalMillis) {
+        this.configuration = configuration;
+        this.refreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(refreshIntervalMillis);
+        String initial = configuration.get();
+        this.snapshot = new Snapshot(initial, parse(initial));
+        this.nextRefreshNanos = System.nanoTime() + refreshIntervalNanos;
+    }
+
+    /**
+     * @param shardKey       the shard key of the call
+     * @param baseRoutingKey the routing key of the method, prefixing the shard number when the shards are given as a count
+     * @return the routing key of the shard the key belongs to
+     */
+    public String route(Object shardKey, String baseRoutingKey) {
+        if (shardKey == null) {
+            throw new IllegalArgumentException("The shard key must not be null.");
+        }
+        Snapshot current = currentSnapshot();
+        String shard = current.ring.shardFor(shardKey);
+
+        return current.counted && baseRoutingKey != null ? baseRoutingKey + "." + shard : shard;
+    }
+
+    public List<String> getShards() {
+        return currentSnapshot().ring.getShards();
+    }
+
+    private Snapshot currentSnapshot() {
+        long now = System.nanoTime();
+        if (now - nextRefreshNanos >= 0) {
+            refresh(now);
+        }
+        return snapshot;
+    }
+
+    private synchronized void refresh(long now) {
+        if (now - nextRefreshNanos < 0) {
+            return;
+        }
+        nextRefreshNanos = now + refreshIntervalNanos;
+
+        try {
+            String value = configuration.get();
+            if (value != null && !value.equals(snapshot.configuration)) {
+                snapshot = new Snapshot(value, parse(value));
+            }
+        } catch (RuntimeException ignored) {
+            // keep routing with the last valid configuration, whether the new one is invalid or couldn't be read at all
+        }
+    }
+
+    private static ParsedShards parse(String value) {
+        String trimmed = value != null ? value.trim() : "";
+        if (trimmed.matches("\\d+")) {
+            int count = Integer.parseInt(trimmed);
+            if (count < 1) {
+                throw new IllegalArgumentException("The number of shards must be positive, while " + count + " was specified.");
+            }
+            return new ParsedShards(IntStream.range(0, count).mapToObj(String::valueOf).collect(Collectors.toList()), true);
+        }
+
+        List<String> routingKeys = Stream.of(trimmed.split(","))
+                .map(String::trim)
+                .filter(it -> !it.isEmpty())
+                .distinct()
+                .collect(Collectors.toCollection(ArrayList::new));
+        if (routingKeys.isEmpty()) {
+            throw new IllegalArgumentException("The shards must be either a number or a comma-separated list of routing keys, while \""
+                    + value + "\" was specified.");
+        }
+        return new ParsedShards(routingKeys, false);
+    }
+
+    private static class ParsedShards {
+        private final List<String> shards;
+        private final boolean counted;
+
+        private ParsedShards(List<String> shards, boolean counted) {
+            this.shards = shards;
+            this.counted = counted;
+        }
+    }
+
+    private static class Snapshot {
+        private final String configuration;
+        private final ConsistentHashRing ring;
+        private final boolean counted;
+
+        private Snapshot(String configuration, ParsedShards shards) {
+            this.configuration = configuration;
+            this.ring = new ConsistentHashRing(shards.shards);
+            this.counted = shards.counted;
+        }
+    }
+}
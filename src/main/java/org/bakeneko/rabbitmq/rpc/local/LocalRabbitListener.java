@@ -0,0 +1,93 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.local;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.Headers;
+import org.springframework.messaging.handler.invocation.InvocableHandlerMethod;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * A {@link org.springframework.amqp.rabbit.annotation.RabbitListener} method living in the same application context,
+ * which a {@link org.bakeneko.rabbitmq.rpc.RabbitClient} call can be dispatched to directly, bypassing the broker.
+ * The call is only dispatched if the listener {@link #accepts(Object, Type) accepts} its payload and reply types,
+ * since no message converter stands between the two methods.
+ *
+ * @author Ivan Sergienko
+ * @see LocalRabbitListenerRegistry
+ */
+public class LocalRabbitListener {
+    private final String queue;
+    private final InvocableHandlerMethod handlerMethod;
+    private final Class<?> payloadType;
+    private final ResolvableType returnType;
+
+    public LocalRabbitListener(String queue, InvocableHandlerMethod handlerMethod) {
+        this.queue = queue;
+        this.handlerMethod = handlerMethod;
+        this.payloadType = Stream.of(handlerMethod.getMethodParameters())
+                .filter(parameter -> !parameter.hasParameterAnnotation(Header.class) && !parameter.hasParameterAnnotation(Headers.class))
+                .findFirst()
+                .map(MethodParameter::getParameterType)
+                .orElse(null);
+        this.returnType = ResolvableType.forMethodReturnType(handlerMethod.getMethod());
+    }
+
+    /**
+     * @param payload   the payload of the call
+     * @param replyType the type of the reply the caller expects, or {@code null} if it doesn't expect any
+     * @return whether the listener method takes the payload and returns a value assignable to the reply type
+     */
+    public boolean accepts(Object payload, Type replyType) {
+        if (payloadType != null && !ClassUtils.isAssignableValue(payloadType, payload)) {
+            return false;
+        }
+        if (replyType == null) {
+            return true;
+        }
+
+        return returnType.resolve() != void.class && ResolvableType.forType(replyType).isAssignableFrom(returnType);
+    }
+
+    /**
+     * Invokes the listener method on the calling thread.
+     *
+     * @param payload the payload of the call
+     * @param headers the headers of the call, mapped the same way the listener container maps the AMQP message properties
+     * @return the value returned by the listener method
+     * @throws Exception thrown by the listener method
+     */
+    public Object invoke(Object payload, Map<String, Object> headers) throws Exception {
+        return handlerMethod.invoke(new GenericMessage<>(payload, headers));
+    }
+
+    public String getQueue() {
+        return queue;
+    }
+
+    @Override
+    public String toString() {
+        return "LocalRabbitListener{queue=" + queue + ", method=" + handlerMethod.getShortLogMessage() + "}";
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.local;
+
+import com.rabbitmq.client.Channel;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Exchange;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.BeanExpressionContext;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.messaging.handler.annotation.support.DefaultMessageHandlerMethodFactory;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Collects the {@link RabbitListener} methods of the application context, so that {@link org.bakeneko.rabbitmq.rpc.RabbitClient} calls
+ * can be dispatched to them in-process. A listener is found for a call sent either to the default exchange with the queue name
+ * as the routing key, or to a direct {@link Exchange} bean through a {@link Binding} bean with the same routing key.
+ * <p>
+ * Only the listeners declared with {@link RabbitListener#queues()} on a method are collected, and only if the method doesn't
+ * take the raw {@link Message} or {@link Channel} - the calls to the other listeners go through the broker.
+ *
+ * @author Ivan Sergienko
+ * @see org.bakeneko.rabbitmq.rpc.RabbitClient#localDispatch()
+ */
+public class LocalRabbitListenerRegistry implements BeanPostProcessor, BeanFactoryAware, SmartInitializingSingleton {
+    private final Map<String, LocalRabbitListener> listenersByQueue = new ConcurrentHashMap<>();
+    private final Map<String, String> queuesByBinding = new ConcurrentHashMap<>();
+    private final DefaultMessageHandlerMethodFactory handlerMethodFactory = new DefaultMessageHandlerMethodFactory();
+    private BeanFactory beanFactory;
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+        handlerMethodFactory.setBeanFactory(beanFactory);
+        handlerMethodFactory.afterPropertiesSet();
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        Class<?> targetClass = AopUtils.getTargetClass(bean);
+        Map<Method, RabbitListener> listenerMethods = MethodIntrospector.selectMethods(targetClass,
+                (MethodIntrospector.MetadataLookup<RabbitListener>) method -> AnnotatedElementUtils.findMergedAnnotation(method, RabbitListener.class));
+
+        listenerMethods.forEach((method, listener) -> {
+            if (Stream.of(method.getParameterTypes()).anyMatch(type -> Message.class.equals(type) || Channel.class.equals(type))) {
+                return;
+            }
+            Method invocableMethod = AopUtils.selectInvocableMethod(method, bean.getClass());
+            for (String queue : listener.queues()) {
+                String queueName = resolveQueueName(queue);
+                if (queueName != null) {
+                    register(queueName, bean, invocableMethod);
+                }
+            }
+        });
+
+        return bean;
+    }
+
+    /**
+     * Registers a listener method consuming from a queue, unless the queue already has a local listener.
+     *
+     * @param queue  the name of the queue
+     * @param bean   the bean to invoke the method on
+     * @param method the listener method
+     */
+    public void register(String queue, Object bean, Method method) {
+        listenersByQueue.computeIfAbsent(queue, name -> new LocalRabbitListener(name, handlerMethodFactory.createInvocableHandlerMethod(bean, method)));
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!(beanFactory instanceof ListableBeanFactory)) {
+            return;
+        }
+        ListableBeanFactory listableBeanFactory = (ListableBeanFactory) beanFactory;
+        Map<String, Exchange> exchanges = listableBeanFactory.getBeansOfType(Exchange.class, false, false);
+        Set<String> directExchanges = exchanges.values().stream()
+                .filter(exchange -> ExchangeTypes.DIRECT.equals(exchange.getType()))
+                .map(Exchange::getName)
+                .collect(Collectors.toSet());
+
+        listableBeanFactory.getBeansOfType(Binding.class, false, false).values().stream()
+                .filter(binding -> binding.getDestinationType() == Binding.DestinationType.QUEUE)
+                .filter(binding -> directExchanges.contains(binding.getExchange()))
+                .forEach(binding -> queuesByBinding.putIfAbsent(bindingKey(binding.getExchange(), binding.getRoutingKey()), binding.getDestination()));
+    }
+
+    /**
+     * @param exchange   the exchange of the call, {@code null} or empty for the default exchange
+     * @param routingKey the routing key of the call
+     * @return the local listener the broker would route the call to, or {@code null} if there is none
+     */
+    public LocalRabbitListener find(String exchange, String routingKey) {
+        if (routingKey == null) {
+            return null;
+        }
+        if (exchange == null || exchange.isEmpty()) {
+            return listenersByQueue.get(routingKey);
+        }
+
+        String queue = queuesByBinding.get(bindingKey(exchange, routingKey));
+        return queue != null ? listenersByQueue.get(queue) : null;
+    }
+
+    private String resolveQueueName(String queue) {
+        if (!(beanFactory instanceof ConfigurableBeanFactory)) {
+            return queue;
+        }
+        ConfigurableBeanFactory configurableBeanFactory = (ConfigurableBeanFactory) beanFactory;
+        String resolved = configurableBeanFactory.resolveEmbeddedValue(queue);
+        if (configurableBeanFactory.getBeanExpressionResolver() == null) {
+            return resolved;
+        }
+
+        Object evaluated = configurableBeanFactory.getBeanExpressionResolver().evaluate(resolved, new BeanExpressionContext(configurableBeanFactory, null));
+        if (evaluated instanceof Queue) {
+            return ((Queue) evaluated).getName();
+        }
+        return evaluated instanceof String ? (String) evaluated : null;
+    }
+
+    private static String bindingKey(String exchange, String routingKey) {
+        return exchange + '\u0000' + routingKey;
+    }
+}
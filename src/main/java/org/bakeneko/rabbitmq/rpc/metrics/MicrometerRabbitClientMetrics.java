@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * A {@link RabbitClientMetrics} implementation backed by the Micrometer {@link MeterRegistry} from Spring context.
+ * If there is no {@link MeterRegistry} bean, the metrics are discarded.
+ *
+ * @author Ivan Sergienko
+ */
+public class MicrometerRabbitClientMetrics implements RabbitClientMetrics {
+    private ObjectProvider<MeterRegistry> meterRegistry;
+    // FunctionCounter only keeps a weak reference to the counted object
+    private final List<Supplier<Number>> counters = new CopyOnWriteArrayList<>();
+
+    public MicrometerRabbitClientMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void gauge(String name, Supplier<Number> value, String... tags) {
+        meterRegistry.ifAvailable(registry -> Gauge.builder(name, value, v -> v.get().doubleValue())
+                .tags(tags)
+                .strongReference(true)
+                .register(registry));
+    }
+
+    @Override
+    public void counter(String name, Supplier<Number> count, String... tags) {
+        meterRegistry.ifAvailable(registry -> {
+            counters.add(count);
+            FunctionCounter.builder(name, count, c -> c.get().doubleValue())
+                    .tags(tags)
+                    .register(registry);
+        });
+    }
+
+    @Override
+    public void increment(String name, String... tags) {
+        meterRegistry.ifAvailable(registry -> registry.counter(name, tags).increment());
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.metrics;
+
+import java.util.function.Supplier;
+
+/**
+ * A {@link RabbitClientMetrics} implementation discarding all the metrics, used when Micrometer is not on the classpath.
+ *
+ * @author Ivan Sergienko
+ */
+public class NoOpRabbitClientMetrics implements RabbitClientMetrics {
+
+    @Override
+    public void gauge(String name, Supplier<Number> value, String... tags) {
+    }
+
+    @Override
+    public void counter(String name, Supplier<Number> count, String... tags) {
+    }
+
+    @Override
+    public void increment(String name, String... tags) {
+    }
+}
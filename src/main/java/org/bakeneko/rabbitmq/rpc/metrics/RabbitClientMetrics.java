@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.metrics;
+
+import java.util.function.Supplier;
+
+/**
+ * Metrics sink used by the generated clients to expose their internal state.
+ * Tags are passed as alternating key/value pairs, e.g. {@code "client", "MyClient", "method", "doSomething"}.
+ *
+ * @author Ivan Sergienko
+ */
+public interface RabbitClientMetrics {
+
+    /**
+     * Registers a gauge reporting the current value provided by {@code value}.
+     *
+     * @param name  the gauge name
+     * @param value the supplier of the current gauge value, polled whenever the gauge is read
+     * @param tags  the gauge tags as alternating key/value pairs
+     */
+    void gauge(String name, Supplier<Number> value, String... tags);
+
+    /**
+     * Registers a monotonically increasing counter reporting the current value provided by {@code count}.
+     *
+     * @param name  the counter name
+     * @param count the supplier of the current counter value, polled whenever the counter is read
+     * @param tags  the counter tags as alternating key/value pairs
+     */
+    void counter(String name, Supplier<Number> count, String... tags);
+
+    /**
+     * Increments the counter with the given name and tags by one.
+     *
+     * @param name the counter name
+     * @param tags the counter tags as alternating key/value pairs
+     */
+    void increment(String name, String... tags);
+}
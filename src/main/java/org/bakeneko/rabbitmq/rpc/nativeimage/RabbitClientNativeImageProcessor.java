@@ -0,0 +1,199 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.nativeimage;
+
+import org.bakeneko.rabbitmq.rpc.RabbitClient;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.TypeVariable;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * The annotation processor generating the GraalVM reachability metadata of the {@link RabbitClient} interfaces
+ * of a module, so that the clients can be compiled to a native image:
+ * <ul>
+ *     <li>{@code proxy-config.json} lists the interfaces, implemented by JDK proxies at runtime;</li>
+ *     <li>{@code reflect-config.json} registers the interfaces, whose methods and annotations are read reflectively,
+ *     and the payload, header and reply types of their methods (with the types of their fields), which are serialized reflectively.</li>
+ * </ul>
+ * The processor is opt-in: although it's registered in {@code META-INF/services}, it only claims {@link RabbitClient}
+ * and writes anything when the {@value #LOCATION_OPTION} processor option gives the location of the files,
+ * which should be unique to the module (e.g. {@code META-INF/native-image/<group>/<module>}) so that {@code native-image}
+ * finds them on the classpath without clashing with the metadata of the other modules.
+ *
+ * @author Ivan Sergienko
+ */
+@SupportedAnnotationTypes("org.bakeneko.rabbitmq.rpc.RabbitClient")
+@SupportedOptions(RabbitClientNativeImageProcessor.LOCATION_OPTION)
+public class RabbitClientNativeImageProcessor extends AbstractProcessor {
+    /**
+     * The processor option enabling the processor, with the location of the generated files.
+     */
+    public static final String LOCATION_OPTION = "rabbitmq.rpc.nativeImageLocation";
+
+    private final Set<String> clients = new TreeSet<>();
+    private final Set<String> types = new TreeSet<>();
+    private final Set<Element> typeVariables = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return getLocation() != null ? super.getSupportedAnnotationTypes() : Collections.emptySet();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        String location = getLocation();
+        if (location == null) {
+            return false;
+        }
+
+        for (Element element : roundEnv.getElementsAnnotatedWith(RabbitClient.class)) {
+            if (element.getKind() != ElementKind.INTERFACE) {
+                continue;
+            }
+
+            TypeElement client = (TypeElement) element;
+            clients.add(binaryName(client));
+            for (ExecutableElement method : ElementFilter.methodsIn(client.getEnclosedElements())) {
+                addType(method.getReturnType());
+                for (VariableElement parameter : method.getParameters()) {
+                    addType(parameter.asType());
+                }
+            }
+        }
+
+        if (roundEnv.processingOver() && !clients.isEmpty()) {
+            write(location + "/proxy-config.json", proxyConfig());
+            write(location + "/reflect-config.json", reflectConfig());
+        }
+
+        return false;
+    }
+
+    private String getLocation() {
+        String location = processingEnv != null ? processingEnv.getOptions().get(LOCATION_OPTION) : null;
+        return location != null && !location.trim().isEmpty() ? location.trim() : null;
+    }
+
+    private void addType(TypeMirror type) {
+        switch (type.getKind()) {
+            case DECLARED:
+                DeclaredType declaredType = (DeclaredType) type;
+                TypeElement element = (TypeElement) declaredType.asElement();
+                String name = binaryName(element);
+                if (!isJdkType(name) && types.add(name)) {
+                    addType(element.getSuperclass());
+                    for (VariableElement field : ElementFilter.fieldsIn(element.getEnclosedElements())) {
+                        if (!field.getModifiers().contains(Modifier.STATIC)) {
+                            addType(field.asType());
+                        }
+                    }
+                }
+                for (TypeMirror typeArgument : declaredType.getTypeArguments()) {
+                    addType(typeArgument);
+                }
+                break;
+            case ARRAY:
+                addType(((ArrayType) type).getComponentType());
+                break;
+            case WILDCARD:
+                TypeMirror bound = ((WildcardType) type).getExtendsBound();
+                if (bound != null) {
+                    addType(bound);
+                }
+                break;
+            case TYPEVAR:
+                TypeVariable typeVariable = (TypeVariable) type;
+                if (typeVariables.add(typeVariable.asElement())) {
+                    addType(typeVariable.getUpperBound());
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private String proxyConfig() {
+        return clients.stream()
+                .map(client -> "  {\"interfaces\": [\"" + client + "\"]}")
+                .collect(Collectors.joining(",\n", "[\n", "\n]\n"));
+    }
+
+    private String reflectConfig() {
+        Set<String> entries = new TreeSet<>();
+        for (String client : clients) {
+            entries.add("  {\"name\": \"" + client + "\", \"allDeclaredMethods\": true, \"allPublicMethods\": true}");
+        }
+        for (String type : types) {
+            if (!clients.contains(type)) {
+                entries.add("  {\"name\": \"" + type + "\", \"allDeclaredConstructors\": true, \"allPublicConstructors\": true, " +
+                        "\"allDeclaredMethods\": true, \"allPublicMethods\": true, \"allDeclaredFields\": true, \"allPublicFields\": true}");
+            }
+        }
+
+        return entries.stream().collect(Collectors.joining(",\n", "[\n", "\n]\n"));
+    }
+
+    private void write(String path, String content) {
+        try {
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", path);
+            try (Writer writer = file.openWriter()) {
+                writer.write(content);
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    String.format("Failed to write %s: %s", path, e.getMessage()));
+        }
+    }
+
+    private String binaryName(TypeElement element) {
+        return processingEnv.getElementUtils().getBinaryName(element).toString();
+    }
+
+    private static boolean isJdkType(String name) {
+        return name.startsWith("java.") || name.startsWith("javax.");
+    }
+}
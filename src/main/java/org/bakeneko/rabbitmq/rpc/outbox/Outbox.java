@@ -0,0 +1,230 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.outbox;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bakeneko.rabbitmq.rpc.policy.RabbitCallRejectedException;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A durable local outbox for one-way messages. A message is published directly while the outbox is empty, and appended to
+ * an {@link OutboxJournal} if that fails with an {@link AmqpException} - or right away if the outbox already has pending messages,
+ * so that the messages are replayed in the order they were sent, and those with the same routing key keep their relative order.
+ * A background thread publishes the pending messages, backing off exponentially while the broker is unreachable.
+ * <p>
+ * The outbox only holds its lock to check whether it's empty and to store a message, the direct publishes run outside it.
+ * A failed direct publish is stored as soon as it fails, and the sends that start after that are stored behind it,
+ * so a caller publishing one message at a time keeps its order; the messages sent concurrently have no order anyway.
+ * <p>
+ * The messages are stored with their exchange, routing key and properties by an {@link OutboxCodec},
+ * so only the properties and header values sent to the broker are kept (the other header values are stored as strings).
+ *
+ * @author Ivan Sergienko
+ * @see org.bakeneko.rabbitmq.rpc.RabbitOutbox
+ */
+public class Outbox {
+    private static final Log logger = LogFactory.getLog(Outbox.class);
+    private static final long MIN_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+    private static final ScheduledExecutorService FLUSHER = flusher();
+
+    private final String name;
+    private final OutboxJournal journal;
+    private final Publisher publisher;
+    private final Thread drainer;
+    private final ScheduledFuture<?> flush;
+    private volatile boolean closed;
+
+    /**
+     * Opens the journal and starts publishing the messages left in it.
+     *
+     * @param name      the name of the outbox, for the logs and the thread name
+     * @param settings  the settings of the journal
+     * @param publisher the publisher of the pending messages
+     * @throws UncheckedIOException if the journal can't be opened
+     */
+    public Outbox(String name, OutboxSettings settings, Publisher publisher) {
+        this.name = name;
+        this.publisher = publisher;
+        try {
+            this.journal = new OutboxJournal(settings.getDirectory(), settings.getSegmentSize(), settings.getMaxSize(),
+                    settings.getFsyncIntervalMillis() == OutboxSettings.FSYNC_ALWAYS);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open the outbox journal in " + settings.getDirectory(), e);
+        }
+
+        long fsyncInterval = settings.getFsyncIntervalMillis();
+        this.flush = fsyncInterval > 0 ? FLUSHER.scheduleWithFixedDelay(this::force, fsyncInterval, fsyncInterval, TimeUnit.MILLISECONDS) : null;
+        this.drainer = new CustomizableThreadFactory("rabbit-rpc-outbox-" + name + "-").newThread(this::drain);
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Publishes the message through {@code direct}, or stores it to be published later.
+     *
+     * @param exchange   the exchange to publish the message to
+     * @param routingKey the routing key of the message
+     * @param message    the message
+     * @param direct     the publisher to try while the outbox is empty
+     * @throws AmqpException if the message can be neither published nor stored
+     */
+    public void send(String exchange, String routingKey, Message message, Publisher direct) {
+        synchronized (this) {
+            if (journal.getPending() > 0) {
+                if (!store(exchange, routingKey, message)) {
+                    throw new RabbitCallRejectedException(String.format("The outbox %s is full.", name));
+                }
+                return;
+            }
+        }
+
+        try {
+            direct.publish(exchange, routingKey, message);
+        } catch (AmqpException e) {
+            if (!store(exchange, routingKey, message)) {
+                throw e;
+            }
+            logger.debug(String.format("The outbox %s stored a message failed to be published.", name), e);
+        }
+    }
+
+    /**
+     * @return the number of messages waiting to be published
+     */
+    public synchronized int getPending() {
+        return journal.getPending();
+    }
+
+    /**
+     * @return the total body size of the messages waiting to be published
+     */
+    public synchronized long getPendingBytes() {
+        return journal.getPendingBytes();
+    }
+
+    /**
+     * Stops the publishing and closes the journal, the pending messages are published once it's reopened.
+     */
+    public void close() {
+        closed = true;
+        drainer.interrupt();
+        try {
+            drainer.join(MAX_BACKOFF_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (flush != null) {
+            flush.cancel(false);
+        }
+
+        synchronized (this) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close the outbox " + name, e);
+            }
+        }
+    }
+
+    private synchronized boolean store(String exchange, String routingKey, Message message) {
+        if (closed) {
+            return false;
+        }
+
+        try {
+            boolean stored = journal.append(OutboxCodec.encode(exchange, routingKey, message));
+            notifyAll();
+            return stored;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to store a message in the outbox " + name, e);
+        }
+    }
+
+    private synchronized void force() {
+        if (!closed) {
+            journal.force();
+        }
+    }
+
+    private void drain() {
+        long backoff = MIN_BACKOFF_MILLIS;
+        while (!closed) {
+            try {
+                OutboxJournal.Record record;
+                synchronized (this) {
+                    record = journal.peek();
+                    if (record == null) {
+                        wait(MAX_BACKOFF_MILLIS);
+                        continue;
+                    }
+                }
+
+                OutboxCodec.StoredMessage message = null;
+                try {
+                    message = OutboxCodec.decode(record.getData());
+                } catch (IOException | RuntimeException e) {
+                    logger.error(String.format("The outbox %s dropped a message it failed to read.", name), e);
+                }
+
+                if (message != null) {
+                    try {
+                        publisher.publish(message.getExchange(), message.getRoutingKey(), message.getMessage());
+                        backoff = MIN_BACKOFF_MILLIS;
+                    } catch (RuntimeException e) {
+                        logger.debug(String.format("The outbox %s failed to publish a message, retrying in %d ms.", name, backoff), e);
+                        Thread.sleep(backoff);
+                        backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+                        continue;
+                    }
+                }
+
+                synchronized (this) {
+                    journal.markPublished(record);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                logger.error("Failed to update the journal of the outbox " + name, e);
+            }
+        }
+    }
+
+    private static ScheduledExecutorService flusher() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("rabbit-rpc-outbox-fsync-");
+        threadFactory.setDaemon(true);
+        return Executors.newSingleThreadScheduledExecutor(threadFactory);
+    }
+
+    /**
+     * Publishes a message to the broker.
+     */
+    @FunctionalInterface
+    public interface Publisher {
+        void publish(String exchange, String routingKey, Message message);
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.outbox;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.LongString;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes the messages stored in an {@link OutboxJournal}: a format version, the exchange, the routing key, the basic properties
+ * field by field, the headers as typed values and the body.
+ * <p>
+ * The properties are taken as they would be sent to the broker, so only the header values of the types AMQP supports are kept,
+ * the other ones are stored as strings.
+ *
+ * @author Ivan Sergienko
+ */
+final class OutboxCodec {
+    private static final int VERSION = 1;
+    private static final MessagePropertiesConverter PROPERTIES_CONVERTER = new DefaultMessagePropertiesConverter();
+
+    private static final byte NULL = 'V';
+    private static final byte STRING = 'S';
+    private static final byte INTEGER = 'I';
+    private static final byte LONG = 'L';
+    private static final byte SHORT = 's';
+    private static final byte BYTE = 'b';
+    private static final byte BOOLEAN = 't';
+    private static final byte FLOAT = 'f';
+    private static final byte DOUBLE = 'd';
+    private static final byte DECIMAL = 'D';
+    private static final byte TIMESTAMP = 'T';
+    private static final byte BYTES = 'x';
+    private static final byte LIST = 'A';
+    private static final byte TABLE = 'F';
+
+    private OutboxCodec() {
+    }
+
+    static byte[] encode(String exchange, String routingKey, Message message) throws IOException {
+        AMQP.BasicProperties properties = PROPERTIES_CONVERTER.fromMessageProperties(message.getMessageProperties(), StandardCharsets.UTF_8.name());
+        byte[] body = message.getBody();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length + 256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            writeString(out, exchange != null ? exchange : "");
+            writeString(out, routingKey != null ? routingKey : "");
+
+            writeString(out, properties.getContentType());
+            writeString(out, properties.getContentEncoding());
+            writeInteger(out, properties.getDeliveryMode());
+            writeInteger(out, properties.getPriority());
+            writeString(out, properties.getCorrelationId());
+            writeString(out, properties.getReplyTo());
+            writeString(out, properties.getExpiration());
+            writeString(out, properties.getMessageId());
+            writeValue(out, properties.getTimestamp());
+            writeString(out, properties.getType());
+            writeString(out, properties.getUserId());
+            writeString(out, properties.getAppId());
+            writeString(out, properties.getClusterId());
+            writeValue(out, properties.getHeaders());
+
+            out.writeInt(body.length);
+            out.write(body);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    static StoredMessage decode(byte[] record) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unknown outbox record version " + version);
+            }
+            String exchange = readString(in);
+            String routingKey = readString(in);
+
+            AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+                    .contentType(readString(in))
+                    .contentEncoding(readString(in))
+                    .deliveryMode(readInteger(in))
+                    .priority(readInteger(in))
+                    .correlationId(readString(in))
+                    .replyTo(readString(in))
+                    .expiration(readString(in))
+                    .messageId(readString(in))
+                    .timestamp((Date) readValue(in))
+                    .type(readString(in))
+                    .userId(readString(in))
+                    .appId(readString(in))
+                    .clusterId(readString(in))
+                    .headers(readTable(in))
+                    .build();
+
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+
+            MessageProperties messageProperties = PROPERTIES_CONVERTER.toMessageProperties(properties, null, StandardCharsets.UTF_8.name());
+            return new StoredMessage(exchange, routingKey, new Message(body, messageProperties));
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readInteger(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String || value instanceof LongString) {
+            out.writeByte(STRING);
+            writeBytes(out, value instanceof LongString ? ((LongString) value).getBytes() : ((String) value).getBytes(StandardCharsets.UTF_8));
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(DECIMAL);
+            writeString(out, value.toString());
+        } else if (value instanceof Date) {
+            out.writeByte(TIMESTAMP);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof byte[]) {
+            out.writeByte(BYTES);
+            writeBytes(out, (byte[]) value);
+        } else if (value instanceof List || value instanceof Object[]) {
+            List<?> list = value instanceof List ? (List<?>) value : Arrays.asList((Object[]) value);
+            out.writeByte(LIST);
+            out.writeInt(list.size());
+            for (Object element : list) {
+                writeValue(out, element);
+            }
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(TABLE);
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeString(out, String.valueOf(entry.getKey()));
+                writeValue(out, entry.getValue());
+            }
+        } else {
+            writeValue(out, value.toString());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case INTEGER:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case SHORT:
+                return in.readShort();
+            case BYTE:
+                return in.readByte();
+            case BOOLEAN:
+                return in.readBoolean();
+            case FLOAT:
+                return in.readFloat();
+            case DOUBLE:
+                return in.readDouble();
+            case DECIMAL:
+                return new BigDecimal(readString(in));
+            case TIMESTAMP:
+                return new Date(in.readLong());
+            case BYTES:
+                return readBytes(in);
+            case LIST:
+                int size = in.readInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                return list;
+            case TABLE:
+                return readEntries(in);
+            default:
+                throw new IOException("Unknown outbox value type " + (char) type);
+        }
+    }
+
+    private static Map<String, Object> readTable(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        if (type == NULL) {
+            return null;
+        }
+        if (type != TABLE) {
+            throw new IOException("Unknown outbox headers type " + (char) type);
+        }
+        return readEntries(in);
+    }
+
+    private static Map<String, Object> readEntries(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            map.put(readString(in), readValue(in));
+        }
+        return map;
+    }
+
+    /**
+     * A message read from the journal, with the exchange and routing key it was sent to.
+     */
+    static final class StoredMessage {
+        private final String exchange;
+        private final String routingKey;
+        private final Message message;
+
+        StoredMessage(String exchange, String routingKey, Message message) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.message = message;
+        }
+
+        String getExchange() {
+            return exchange;
+        }
+
+        String getRoutingKey() {
+            return routingKey;
+        }
+
+        Message getMessage() {
+            return message;
+        }
+    }
+}
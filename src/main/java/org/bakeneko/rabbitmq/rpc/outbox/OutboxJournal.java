@@ -0,0 +1,289 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.outbox;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of records, kept in fixed-size memory-mapped segment files.
+ * A record is written as its length, its CRC32 checksum and its bytes, the length last, so that a record torn by a crash
+ * is recognised (by a zero length or a checksum mismatch) and dropped when the journal is reopened.
+ * Once published, a record is marked by negating its length in place, and a segment is deleted as soon as all its records are.
+ * <p>
+ * The records are read in the order they were appended. Not thread-safe, the {@link Outbox} serializes the access.
+ *
+ * @author Ivan Sergienko
+ */
+class OutboxJournal {
+    private static final Log logger = LogFactory.getLog(OutboxJournal.class);
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final int HEADER_SIZE = 8;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long maxSize;
+    private final boolean forceOnWrite;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private long nextSegmentId;
+    private int pending;
+    private long pendingBytes;
+
+    /**
+     * Opens the journal, recovering the records not published before it was closed.
+     *
+     * @param forceOnWrite whether to force every record to the disk as it's written
+     */
+    OutboxJournal(Path directory, int segmentSize, long maxSize, boolean forceOnWrite) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSize = maxSize;
+        this.forceOnWrite = forceOnWrite;
+
+        Files.createDirectories(directory);
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> list = Files.list(directory)) {
+            list.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().forEach(files::add);
+        }
+        for (Path file : files) {
+            Segment segment = new Segment(file, Long.parseLong(file.getFileName().toString().replace(SEGMENT_SUFFIX, "")), false);
+            recover(segment);
+            nextSegmentId = segment.id + 1;
+            if (segment.pending > 0) {
+                segments.addLast(segment);
+            } else {
+                delete(segment);
+            }
+        }
+    }
+
+    /**
+     * @param record the bytes of a record
+     * @return {@code false} if the record doesn't fit into the journal
+     */
+    boolean append(byte[] record) throws IOException {
+        int size = HEADER_SIZE + record.length;
+        if (size > segmentSize) {
+            return false;
+        }
+
+        Segment segment = segments.peekLast();
+        if (segment == null || segment.writePosition + size > segment.size) {
+            if (segment != null && segment.pending == 0) {
+                segments.removeLast();
+                delete(segment);
+            }
+            if ((segments.size() + 1L) * segmentSize > maxSize) {
+                return false;
+            }
+            segment = new Segment(directory.resolve(String.format("%020d%s", nextSegmentId, SEGMENT_SUFFIX)), nextSegmentId++, true);
+            segments.addLast(segment);
+        }
+
+        MappedByteBuffer buffer = segment.buffer;
+        int position = segment.writePosition;
+        buffer.position(position + HEADER_SIZE);
+        buffer.put(record);
+        buffer.putInt(position + 4, checksum(record));
+        buffer.putInt(position, record.length);
+        if (forceOnWrite) {
+            buffer.force();
+        }
+
+        segment.writePosition += size;
+        segment.pending++;
+        pending++;
+        pendingBytes += record.length;
+
+        return true;
+    }
+
+    /**
+     * @return the oldest record not published yet, or {@code null} if there is none
+     */
+    Record peek() {
+        for (Segment segment : segments) {
+            while (segment.readPosition < segment.writePosition) {
+                int length = segment.buffer.getInt(segment.readPosition);
+                if (length > 0) {
+                    byte[] data = new byte[length];
+                    segment.buffer.position(segment.readPosition + HEADER_SIZE);
+                    segment.buffer.get(data);
+
+                    return new Record(segment, segment.readPosition, data);
+                }
+                segment.readPosition += HEADER_SIZE - length;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Marks the record as published, deleting its segment if it was the last pending record there.
+     */
+    void markPublished(Record record) throws IOException {
+        Segment segment = record.segment;
+        segment.buffer.putInt(record.position, -record.data.length);
+        if (forceOnWrite) {
+            segment.buffer.force();
+        }
+        segment.readPosition = record.position + HEADER_SIZE + record.data.length;
+        segment.pending--;
+        pending--;
+        pendingBytes -= record.data.length;
+
+        if (segment.pending == 0 && segment != segments.peekLast()) {
+            segments.remove(segment);
+            delete(segment);
+        }
+    }
+
+    int getPending() {
+        return pending;
+    }
+
+    long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    void force() {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+    }
+
+    void close() throws IOException {
+        force();
+        for (Segment segment : segments) {
+            segment.file.close();
+        }
+        segments.clear();
+    }
+
+    /**
+     * Scans the records of a segment, zeroing everything from the first torn record on.
+     */
+    private void recover(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = 0;
+        boolean readPositionFound = false;
+        while (position + HEADER_SIZE <= segment.size) {
+            int length = buffer.getInt(position);
+            int size = Math.abs(length);
+            if (length == 0 || position + HEADER_SIZE + size > segment.size) {
+                break;
+            }
+            if (length > 0) {
+                byte[] data = new byte[size];
+                buffer.position(position + HEADER_SIZE);
+                buffer.get(data);
+                if (checksum(data) != buffer.getInt(position + 4)) {
+                    logger.warn(String.format("Dropping the torn records of %s from the position %d.", segment.path, position));
+                    break;
+                }
+                if (!readPositionFound) {
+                    segment.readPosition = position;
+                    readPositionFound = true;
+                }
+                segment.pending++;
+                pending++;
+                pendingBytes += size;
+            }
+            position += HEADER_SIZE + size;
+        }
+
+        for (int i = position; i < segment.size; i++) {
+            buffer.put(i, (byte) 0);
+        }
+        segment.writePosition = position;
+        if (!readPositionFound) {
+            segment.readPosition = position;
+        }
+    }
+
+    private void delete(Segment segment) throws IOException {
+        segment.file.close();
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            logger.warn("Failed to delete the published segment " + segment.path, e);
+        }
+    }
+
+    private static int checksum(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+
+        return (int) crc.getValue();
+    }
+
+    static class Record {
+        private final Segment segment;
+        private final int position;
+        private final byte[] data;
+
+        Record(Segment segment, int position, byte[] data) {
+            this.segment = segment;
+            this.position = position;
+            this.data = data;
+        }
+
+        byte[] getData() {
+            return data;
+        }
+    }
+
+    private class Segment {
+        private final Path path;
+        private final long id;
+        private final RandomAccessFile file;
+        private final int size;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private int readPosition;
+        private int pending;
+
+        /**
+         * @param created whether the file is a new one, to be sized; an existing file keeps its size (and its records)
+         *                even if the segment size has been changed since it was created
+         */
+        Segment(Path path, long id, boolean created) throws IOException {
+            this.path = path;
+            this.id = id;
+            this.file = new RandomAccessFile(path.toFile(), "rw");
+            if (created) {
+                file.setLength(segmentSize);
+            }
+            this.size = (int) file.length();
+            this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+}
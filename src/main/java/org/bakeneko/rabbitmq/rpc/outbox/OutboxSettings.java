@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.outbox;
+
+import java.nio.file.Path;
+
+/**
+ * The journal location, size limits and fsync policy of an {@link Outbox}.
+ *
+ * @author Ivan Sergienko
+ * @see org.bakeneko.rabbitmq.rpc.RabbitOutbox
+ */
+public class OutboxSettings {
+    public static final long DEFAULT_MAX_SIZE = 1024L * 1024 * 1024;
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    public static final long DEFAULT_FSYNC_INTERVAL_MILLIS = 1000;
+
+    /**
+     * Forcing the journal after each message: no interval.
+     */
+    public static final long FSYNC_ALWAYS = 0;
+
+    /**
+     * Leaving the journal to the OS: no interval.
+     */
+    public static final long FSYNC_NEVER = -1;
+
+    public static final OutboxSettings DISABLED = new OutboxSettings(null, DEFAULT_MAX_SIZE, DEFAULT_SEGMENT_SIZE, DEFAULT_FSYNC_INTERVAL_MILLIS);
+
+    private final Path directory;
+    private final long maxSize;
+    private final int segmentSize;
+    private final long fsyncIntervalMillis;
+
+    /**
+     * @param directory           the directory of the journal, {@code null} to disable the outbox
+     * @param maxSize             the maximum size of the journal in bytes
+     * @param segmentSize         the size of a journal segment in bytes
+     * @param fsyncIntervalMillis the interval of forcing the journal to the disk, or {@link #FSYNC_ALWAYS} or {@link #FSYNC_NEVER}
+     */
+    public OutboxSettings(Path directory, long maxSize, int segmentSize, long fsyncIntervalMillis) {
+        if (segmentSize < 1024 || maxSize < segmentSize) {
+            throw new IllegalArgumentException(String.format("The segment size must be at least 1024 bytes and not exceed the maximum size, " +
+                    "while %d and %d were specified.", segmentSize, maxSize));
+        }
+        if (fsyncIntervalMillis < FSYNC_NEVER) {
+            throw new IllegalArgumentException("Invalid fsync interval: " + fsyncIntervalMillis);
+        }
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.segmentSize = segmentSize;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public long getFsyncIntervalMillis() {
+        return fsyncIntervalMillis;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.policy;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link ConcurrencyLimiter} limiting the number of outstanding calls to a value adjusted from the measured round-trip time.
+ * Calls exceeding the current limit are rejected immediately with {@link RabbitCallRejectedException},
+ * shedding the excess load before it reaches an already backed up queue.
+ * A call returning {@code null} (i.e. a reply timeout in {@link org.springframework.amqp.rabbit.core.RabbitTemplate})
+ * or throwing an exception is considered dropped.
+ *
+ * @author Ivan Sergienko
+ * @see VegasLimit
+ */
+public class AdaptiveConcurrencyLimiter implements ConcurrencyLimiter {
+    public static final int INITIAL_LIMIT = 20;
+    public static final int MIN_LIMIT = 1;
+    public static final int MAX_LIMIT = 1000;
+
+    private final String name;
+    private final VegasLimit limitAlgorithm;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private volatile int limit;
+
+    public AdaptiveConcurrencyLimiter(String name) {
+        this(name, new VegasLimit(INITIAL_LIMIT, MIN_LIMIT, MAX_LIMIT));
+    }
+
+    public AdaptiveConcurrencyLimiter(String name, VegasLimit limitAlgorithm) {
+        this.name = name;
+        this.limitAlgorithm = limitAlgorithm;
+        this.limit = limitAlgorithm.getLimit();
+    }
+
+    @Override
+    public Object execute(Callable<Object> call) throws Exception {
+        int current = acquire();
+        long start = System.nanoTime();
+        boolean dropped = true;
+        try {
+            Object result = call.call();
+            dropped = result == null;
+            return result;
+        } finally {
+            inFlight.decrementAndGet();
+            onSample(System.nanoTime() - start, current, dropped);
+        }
+    }
+
+    /**
+     * Takes a slot for a request sent outside of the policy chain. Unlike the calls, such requests aren't sampled.
+     */
+    @Override
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    private int acquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                rejected.increment();
+                throw new RabbitCallRejectedException(String.format("The adaptive concurrency limit of %d calls is reached for %s.",
+                        current, name));
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return current + 1;
+            }
+        }
+    }
+
+    private synchronized void onSample(long rttNanos, int inFlightAtStart, boolean dropped) {
+        limit = limitAlgorithm.onSample(rttNanos, inFlightAtStart, dropped);
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return the total number of calls rejected because of the limit
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.policy;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket capping the extra requests (retries, hedges) to a share of the regular calls.
+ * Each call {@link #earn() earns} {@code percent} hundredths of a token, each extra request {@link #trySpend() spends} a whole one,
+ * so that in the long run at most {@code percent} extra requests are sent per hundred calls.
+ * A few tokens may be accumulated to absorb short bursts.
+ *
+ * @author Ivan Sergienko
+ */
+public class CallBudget {
+    private static final long TOKEN = 100;
+    private static final long MAX_TOKENS = 10 * TOKEN;
+
+    private final int percent;
+    private final AtomicLong tokens = new AtomicLong(TOKEN);
+    private final AtomicLong exhausted = new AtomicLong();
+
+    /**
+     * @param percent the maximum number of extra requests per hundred calls
+     */
+    public CallBudget(int percent) {
+        if (percent <= 0 || percent > 100) {
+            throw new IllegalArgumentException("The budget must be between 1 and 100 percent, while " + percent + " was specified.");
+        }
+        this.percent = percent;
+    }
+
+    /**
+     * Registers a regular call.
+     */
+    public void earn() {
+        tokens.getAndUpdate(current -> Math.min(MAX_TOKENS, current + percent));
+    }
+
+    /**
+     * @return whether an extra request may be sent
+     */
+    public boolean trySpend() {
+        while (true) {
+            long current = tokens.get();
+            if (current < TOKEN) {
+                exhausted.incrementAndGet();
+                return false;
+            }
+            if (tokens.compareAndSet(current, current - TOKEN)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the total number of extra requests refused because the budget was exhausted
+     */
+    public long getExhausted() {
+        return exhausted.get();
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.policy;
+
+import java.util.concurrent.Callable;
+
+/**
+ * A policy applied around each call made through a generated {@link org.bakeneko.rabbitmq.rpc.RabbitClient},
+ * e.g. limiting the number of concurrent calls.
+ * Policies are chained, each one deciding whether (and how many times) to proceed with the {@code call}.
+ *
+ * @author Ivan Sergienko
+ */
+public interface CallPolicy {
+
+    /**
+     * Executes the {@code call} according to the policy.
+     *
+     * @param call the next policy in the chain, or the actual message dispatch
+     * @return the result of the {@code call}
+     * @throws Exception if the {@code call} fails, or the policy rejects it
+     */
+    Object execute(Callable<Object> call) throws Exception;
+}
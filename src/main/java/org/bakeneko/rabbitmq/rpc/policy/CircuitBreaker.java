@@ -0,0 +1,230 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.policy;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link CallPolicy} failing calls immediately with {@link CircuitBreakerOpenException} while the downstream service seems to be down.
+ * <p>
+ * While {@link State#CLOSED}, the outcomes of the most recent calls are kept in a count-based sliding window.
+ * Once the failure rate or the slow call rate reaches its threshold, the breaker becomes {@link State#OPEN}
+ * and rejects all the calls, which only costs a volatile read and a clock check.
+ * After the wait duration, it becomes {@link State#HALF_OPEN} and lets a limited number of probe calls through,
+ * becoming closed again if their rates are below the thresholds, or open otherwise.
+ * <p>
+ * Exceptions, and optionally {@code null} replies (i.e. reply timeouts), are counted as failures.
+ * Calls rejected by other policies ({@link RabbitCallRejectedException}) are not counted at all.
+ *
+ * @author Ivan Sergienko
+ */
+public class CircuitBreaker implements CallPolicy {
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Notified about the {@link CircuitBreaker} state transitions, outside of any locks.
+     */
+    @FunctionalInterface
+    public interface StateListener {
+        void onStateChange(CircuitBreaker circuitBreaker, State from, State to);
+    }
+
+    private final String name;
+    private final CircuitBreakerSettings settings;
+    private final boolean nullReplyIsFailure;
+    private final StateListener listener;
+    private final LongSupplier nanoClock;
+    private final long slowCallDurationNanos;
+    private final long waitDurationInOpenStateNanos;
+
+    private volatile State state = State.CLOSED;
+    private volatile long openedAtNanos;
+    private final AtomicInteger halfOpenPermits = new AtomicInteger();
+    private final LongAdder notPermitted = new LongAdder();
+
+    // Guarded by this
+    private final byte[] outcomes;
+    private int position;
+    private int calls;
+    private int failures;
+    private int slowCalls;
+
+    /**
+     * @param name               the name of the protected resource, used in error messages
+     * @param settings           the thresholds and timings to use
+     * @param nullReplyIsFailure whether a {@code null} result of a call should be considered a failure
+     * @param listener           the listener to notify about state transitions
+     */
+    public CircuitBreaker(String name, CircuitBreakerSettings settings, boolean nullReplyIsFailure, StateListener listener) {
+        this(name, settings, nullReplyIsFailure, listener, System::nanoTime);
+    }
+
+    CircuitBreaker(String name, CircuitBreakerSettings settings, boolean nullReplyIsFailure, StateListener listener, LongSupplier nanoClock) {
+        this.name = name;
+        this.settings = settings;
+        this.nullReplyIsFailure = nullReplyIsFailure;
+        this.listener = listener;
+        this.nanoClock = nanoClock;
+        this.slowCallDurationNanos = TimeUnit.MILLISECONDS.toNanos(settings.getSlowCallDurationMillis());
+        this.waitDurationInOpenStateNanos = TimeUnit.MILLISECONDS.toNanos(settings.getWaitDurationInOpenStateMillis());
+        this.outcomes = new byte[settings.getSlidingWindowSize()];
+    }
+
+    @Override
+    public Object execute(Callable<Object> call) throws Exception {
+        acquirePermission();
+
+        long start = nanoClock.getAsLong();
+        Object result;
+        try {
+            result = call.call();
+        } catch (RabbitCallRejectedException e) {
+            if (state == State.HALF_OPEN) {
+                halfOpenPermits.incrementAndGet();
+            }
+            throw e;
+        } catch (Exception e) {
+            onResult(nanoClock.getAsLong() - start, true);
+            throw e;
+        }
+
+        onResult(nanoClock.getAsLong() - start, nullReplyIsFailure && result == null);
+        return result;
+    }
+
+    private void acquirePermission() {
+        if (state == State.CLOSED) {
+            return;
+        }
+
+        if (state == State.OPEN) {
+            if (nanoClock.getAsLong() - openedAtNanos < waitDurationInOpenStateNanos) {
+                throw notPermitted();
+            }
+            transition(State.OPEN, State.HALF_OPEN);
+        }
+
+        if (state != State.CLOSED && halfOpenPermits.getAndDecrement() <= 0) {
+            throw notPermitted();
+        }
+    }
+
+    private CircuitBreakerOpenException notPermitted() {
+        notPermitted.increment();
+        return new CircuitBreakerOpenException("The circuit breaker is open for " + name);
+    }
+
+    private void onResult(long durationNanos, boolean failed) {
+        byte outcome = (byte) ((failed ? FAILED : 0) | (durationNanos > slowCallDurationNanos ? SLOW : 0));
+        State from;
+        State to;
+
+        synchronized (this) {
+            from = state;
+            if (from == State.OPEN) {
+                return;
+            }
+
+            int windowSize = from == State.CLOSED ? outcomes.length : settings.getPermittedCallsInHalfOpenState();
+            if (calls == windowSize) {
+                byte evicted = outcomes[position];
+                failures -= evicted & FAILED;
+                slowCalls -= (evicted & SLOW) >> 1;
+            } else {
+                calls++;
+            }
+            outcomes[position] = outcome;
+            position = (position + 1) % windowSize;
+            failures += outcome & FAILED;
+            slowCalls += (outcome & SLOW) >> 1;
+
+            int minimumCalls = from == State.CLOSED ? settings.getMinimumNumberOfCalls() : windowSize;
+            if (calls < minimumCalls) {
+                return;
+            }
+
+            boolean exceeded = failures * 100 >= settings.getFailureRateThreshold() * calls
+                    || slowCalls * 100 >= settings.getSlowCallRateThreshold() * calls;
+            if (exceeded) {
+                to = State.OPEN;
+            } else if (from == State.HALF_OPEN) {
+                to = State.CLOSED;
+            } else {
+                return;
+            }
+            setState(to);
+        }
+
+        listener.onStateChange(this, from, to);
+    }
+
+    private void transition(State from, State to) {
+        synchronized (this) {
+            if (state != from) {
+                return;
+            }
+            setState(to);
+        }
+
+        listener.onStateChange(this, from, to);
+    }
+
+    // Must be called while holding the lock
+    private void setState(State to) {
+        if (to == State.OPEN) {
+            openedAtNanos = nanoClock.getAsLong();
+        } else if (to == State.HALF_OPEN) {
+            halfOpenPermits.set(settings.getPermittedCallsInHalfOpenState());
+        }
+        position = 0;
+        calls = 0;
+        failures = 0;
+        slowCalls = 0;
+        state = to;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return the failure rate in percent over the calls currently in the window, or {@code -1} if there were no calls yet
+     */
+    public synchronized float getFailureRate() {
+        return calls > 0 ? failures * 100f / calls : -1;
+    }
+
+    /**
+     * @return the total number of calls rejected because the circuit was open
+     */
+    public long getNotPermitted() {
+        return notPermitted.sum();
+    }
+}
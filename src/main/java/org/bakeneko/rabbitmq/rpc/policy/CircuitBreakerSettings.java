@@ -0,0 +1,99 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.policy;
+
+/**
+ * The thresholds and timings of a {@link CircuitBreaker}.
+ *
+ * @author Ivan Sergienko
+ * @see org.bakeneko.rabbitmq.rpc.RabbitCircuitBreaker
+ */
+public class CircuitBreakerSettings {
+    public static final CircuitBreakerSettings DISABLED = new CircuitBreakerSettings(false, 0, 0, 0, 1, 1, 0, 1);
+
+    public static final int DEFAULT_FAILURE_RATE_THRESHOLD = 50;
+    public static final int DEFAULT_SLOW_CALL_RATE_THRESHOLD = 100;
+    public static final long DEFAULT_SLOW_CALL_DURATION_MILLIS = 5_000;
+    public static final int DEFAULT_SLIDING_WINDOW_SIZE = 100;
+    public static final int DEFAULT_MINIMUM_NUMBER_OF_CALLS = 20;
+    public static final long DEFAULT_WAIT_DURATION_IN_OPEN_STATE_MILLIS = 30_000;
+    public static final int DEFAULT_PERMITTED_CALLS_IN_HALF_OPEN_STATE = 5;
+
+    private final boolean enabled;
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final long slowCallDurationMillis;
+    private final int slidingWindowSize;
+    private final int minimumNumberOfCalls;
+    private final long waitDurationInOpenStateMillis;
+    private final int permittedCallsInHalfOpenState;
+
+    public CircuitBreakerSettings(
+            boolean enabled,
+            int failureRateThreshold,
+            int slowCallRateThreshold,
+            long slowCallDurationMillis,
+            int slidingWindowSize,
+            int minimumNumberOfCalls,
+            long waitDurationInOpenStateMillis,
+            int permittedCallsInHalfOpenState
+    ) {
+        if (slidingWindowSize < 1 || minimumNumberOfCalls < 1 || permittedCallsInHalfOpenState < 1) {
+            throw new IllegalArgumentException("The circuit breaker window size, minimum number of calls and permitted calls in half-open state must be positive");
+        }
+        this.enabled = enabled;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallDurationMillis = slowCallDurationMillis;
+        this.slidingWindowSize = slidingWindowSize;
+        this.minimumNumberOfCalls = Math.min(minimumNumberOfCalls, slidingWindowSize);
+        this.waitDurationInOpenStateMillis = waitDurationInOpenStateMillis;
+        this.permittedCallsInHalfOpenState = Math.min(permittedCallsInHalfOpenState, slidingWindowSize);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public int getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    public long getSlowCallDurationMillis() {
+        return slowCallDurationMillis;
+    }
+
+    public int getSlidingWindowSize() {
+        return slidingWindowSize;
+    }
+
+    public int getMinimumNumberOfCalls() {
+        return minimumNumberOfCalls;
+    }
+
+    public long getWaitDurationInOpenStateMillis() {
+        return waitDurationInOpenStateMillis;
+    }
+
+    public int getPermittedCallsInHalfOpenState() {
+        return permittedCallsInHalfOpenState;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.policy;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published to the Spring context whenever a {@link CircuitBreaker} of a generated client changes its state.
+ *
+ * @author Ivan Sergienko
+ */
+public class CircuitBreakerStateChangedEvent extends ApplicationEvent {
+    private final String clientName;
+    private final String methodName;
+    private final CircuitBreaker.State from;
+    private final CircuitBreaker.State to;
+
+    public CircuitBreakerStateChangedEvent(CircuitBreaker source, String clientName, String methodName,
+                                           CircuitBreaker.State from, CircuitBreaker.State to) {
+        super(source);
+        this.clientName = clientName;
+        this.methodName = methodName;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    public CircuitBreaker getSource() {
+        return (CircuitBreaker) super.getSource();
+    }
+
+    public String getClientName() {
+        return clientName;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public CircuitBreaker.State getFrom() {
+        return from;
+    }
+
+    public CircuitBreaker.State getTo() {
+        return to;
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreakerStateChangedEvent{" + clientName + "." + methodName + ": " + from + " -> " + to + "}";
+    }
+}
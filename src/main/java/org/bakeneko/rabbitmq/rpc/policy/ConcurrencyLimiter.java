@@ -0,0 +1,38 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.policy;
+
+/**
+ * A {@link CallPolicy} limiting the number of outstanding calls, which also lets the requests sent outside of the policy chain,
+ * like the duplicates of {@link HedgingPolicy}, take a slot without waiting for it.
+ *
+ * @author Ivan Sergienko
+ */
+public interface ConcurrencyLimiter extends CallPolicy {
+
+    /**
+     * Takes a slot if one is free right away.
+     *
+     * @return whether a slot was taken
+     */
+    boolean tryAcquire();
+
+    /**
+     * Frees a slot taken with {@link #tryAcquire()}.
+     */
+    void release();
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.policy;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Sends a duplicate request if no reply arrives within a delay, and returns whichever reply comes first.
+ * The other request is cancelled, and its reply discarded. Only suitable for idempotent calls.
+ * <p>
+ * Both requests are sent asynchronously from the calling thread, which then waits for the first reply, so hedging needs no threads of its own.
+ * Unlike the {@link CallPolicy} chain applied around the whole call, the duplicate isn't held back by the in-flight limits:
+ * it takes a slot of each of the {@link ConcurrencyLimiter}s of the method if one is free right away, and isn't sent otherwise.
+ * <p>
+ * The extra load is capped by a {@link CallBudget}, so that in the long run at most {@link HedgingSettings#getBudgetPercent()} percent
+ * of calls are hedged.
+ *
+ * @author Ivan Sergienko
+ */
+public class HedgingPolicy {
+    private static final int LATENCY_SAMPLES = 1000;
+
+    private final HedgingSettings settings;
+    private final List<ConcurrencyLimiter> limiters;
+    private final LatencyTracker latencyTracker;
+    private final CallBudget budget;
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param settings the hedging settings, must be {@link HedgingSettings#isEnabled() enabled}
+     * @param limiters the limiters the duplicate requests take a slot of
+     */
+    public HedgingPolicy(HedgingSettings settings, List<ConcurrencyLimiter> limiters) {
+        if (!settings.isEnabled()) {
+            throw new IllegalArgumentException("A HedgingPolicy requires hedging to be enabled");
+        }
+        this.settings = settings;
+        this.limiters = limiters;
+        this.latencyTracker = settings.isPercentileBased() ? new LatencyTracker(settings.getPercentile(), LATENCY_SAMPLES) : null;
+        this.budget = new CallBudget(settings.getBudgetPercent());
+    }
+
+    /**
+     * Sends the request, and its duplicate if needed, and waits for the first reply.
+     *
+     * @param request       sends a request and returns its pending reply, cancelling it discards the reply
+     * @param timeoutMillis the number of milliseconds to wait for a reply
+     * @param <T>           the type of the reply
+     * @return the first reply, or {@code null} if none arrived in time
+     * @throws Exception if the request fails, and its duplicate either wasn't sent or failed as well
+     */
+    public <T> T execute(Supplier<CompletableFuture<T>> request, long timeoutMillis) throws Exception {
+        budget.earn();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        CompletableFuture<T> primary = request.get();
+        if (latencyTracker != null) {
+            primary.thenAccept(reply -> {
+                if (reply != null) {
+                    latencyTracker.record(System.nanoTime() - start);
+                }
+            });
+        }
+
+        CompletableFuture<T> hedge = null;
+        try {
+            long delayNanos = getDelayNanos();
+            if (delayNanos >= 0 && !isReplied(primary, Math.min(start + delayNanos, deadline))) {
+                hedge = hedge(request);
+            }
+
+            return await(hedge != null ? firstReply(primary, hedge) : primary, deadline);
+        } finally {
+            primary.cancel(false);
+            if (hedge != null) {
+                hedge.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * @return the pending reply to the duplicate request, or {@code null} if it isn't sent
+     */
+    private <T> CompletableFuture<T> hedge(Supplier<CompletableFuture<T>> request) {
+        if (!acquireSlots()) {
+            rejected.increment();
+            return null;
+        }
+        if (!budget.trySpend()) {
+            releaseSlots(limiters.size());
+            return null;
+        }
+
+        CompletableFuture<T> hedge;
+        try {
+            hedge = request.get();
+        } catch (RuntimeException e) {
+            // the request itself is still pending, and its failure is the one reported
+            releaseSlots(limiters.size());
+            return null;
+        }
+        hedged.increment();
+        hedge.whenComplete((reply, failure) -> releaseSlots(limiters.size()));
+
+        return hedge;
+    }
+
+    private boolean acquireSlots() {
+        for (int i = 0; i < limiters.size(); i++) {
+            if (!limiters.get(i).tryAcquire()) {
+                releaseSlots(i);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void releaseSlots(int count) {
+        for (int i = 0; i < count; i++) {
+            limiters.get(i).release();
+        }
+    }
+
+    /**
+     * Waits until the request completes or the deadline passes, whichever comes first.
+     *
+     * @return whether the request completed
+     */
+    private static boolean isReplied(CompletableFuture<?> request, long deadline) {
+        try {
+            request.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            // a failure is reported once the reply is awaited
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RabbitCallInterruptedException("Interrupted while waiting for the reply to a hedged request", e);
+        }
+        return request.isDone();
+    }
+
+    private static <T> T await(CompletableFuture<T> reply, long deadline) throws Exception {
+        try {
+            return reply.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RabbitCallInterruptedException("Interrupted while waiting for the reply to a hedged request", e);
+        }
+    }
+
+    /**
+     * @return the first non-{@code null} reply of either request, or the outcome of the primary one if neither replied
+     */
+    private static <T> CompletableFuture<T> firstReply(CompletableFuture<T> primary, CompletableFuture<T> hedge) {
+        CompletableFuture<T> first = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(2);
+        for (CompletableFuture<T> request : Arrays.asList(primary, hedge)) {
+            request.whenComplete((reply, failure) -> {
+                if (reply != null) {
+                    first.complete(reply);
+                } else if (pending.decrementAndGet() == 0) {
+                    primary.whenComplete((primaryReply, primaryFailure) -> {
+                        if (primaryFailure != null) {
+                            first.completeExceptionally(primaryFailure);
+                        } else {
+                            first.complete(primaryReply);
+                        }
+                    });
+                }
+            });
+        }
+
+        return first;
+    }
+
+    private long getDelayNanos() {
+        return latencyTracker != null ? latencyTracker.getPercentileNanos() : TimeUnit.MILLISECONDS.toNanos(settings.getDelayMillis());
+    }
+
+    /**
+     * @return the current delay before hedging in milliseconds, or {@code -1} if not known yet
+     */
+    public double getDelayMillis() {
+        long delayNanos = getDelayNanos();
+        return delayNanos >= 0 ? delayNanos / 1_000_000.0 : -1;
+    }
+
+    /**
+     * @return the total number of duplicate requests sent
+     */
+    public long getHedged() {
+        return hedged.sum();
+    }
+
+    /**
+     * @return the total number of duplicate requests not sent because a concurrency limit was reached
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
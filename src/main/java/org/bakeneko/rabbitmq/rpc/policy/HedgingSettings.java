@@ -0,0 +1,90 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.policy;
+
+/**
+ * Defines when a duplicate (hedged) request is sent for a call, and how many of the calls may be hedged.
+ * The delay before hedging is either fixed, or a percentile of the observed round-trip times.
+ *
+ * @author Ivan Sergienko
+ * @see HedgingPolicy
+ */
+public class HedgingSettings {
+    public static final HedgingSettings DISABLED = new HedgingSettings(-1, 0, 0);
+    public static final int DEFAULT_BUDGET_PERCENT = 10;
+
+    private final long delayMillis;
+    private final double percentile;
+    private final int budgetPercent;
+
+    private HedgingSettings(long delayMillis, double percentile, int budgetPercent) {
+        this.delayMillis = delayMillis;
+        this.percentile = percentile;
+        this.budgetPercent = budgetPercent;
+    }
+
+    /**
+     * @param delayMillis   the time to wait for a reply before sending a duplicate request
+     * @param budgetPercent the maximum share of calls to be hedged, in percent
+     * @return the settings for hedging after a fixed delay
+     */
+    public static HedgingSettings fixed(long delayMillis, int budgetPercent) {
+        if (delayMillis < 0) {
+            throw new IllegalArgumentException("The hedging delay must not be negative, while " + delayMillis + " was specified.");
+        }
+        return new HedgingSettings(delayMillis, 0, checkBudget(budgetPercent));
+    }
+
+    /**
+     * @param percentile    the percentile of the observed round-trip times to wait for before sending a duplicate request, e.g. {@code 95}
+     * @param budgetPercent the maximum share of calls to be hedged, in percent
+     * @return the settings for hedging after a round-trip time percentile
+     */
+    public static HedgingSettings percentile(double percentile, int budgetPercent) {
+        if (percentile <= 0 || percentile >= 100) {
+            throw new IllegalArgumentException("The hedging percentile must be between 0 and 100, while " + percentile + " was specified.");
+        }
+        return new HedgingSettings(-1, percentile, checkBudget(budgetPercent));
+    }
+
+    private static int checkBudget(int budgetPercent) {
+        if (budgetPercent <= 0 || budgetPercent > 100) {
+            throw new IllegalArgumentException("The hedging budget must be between 1 and 100 percent, while " + budgetPercent + " was specified.");
+        }
+        return budgetPercent;
+    }
+
+    public boolean isEnabled() {
+        return delayMillis >= 0 || percentile > 0;
+    }
+
+    public boolean isPercentileBased() {
+        return percentile > 0;
+    }
+
+    public long getDelayMillis() {
+        return delayMillis;
+    }
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    public int getBudgetPercent() {
+        return budgetPercent;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.policy;
+
+/**
+ * The maximum number of calls allowed to be outstanding at the same time, along with the way to handle the calls exceeding it.
+ *
+ * @author Ivan Sergienko
+ * @see InFlightLimiter
+ */
+public class InFlightLimit {
+    public static final InFlightLimit UNLIMITED = new InFlightLimit(0, -1);
+
+    private final int maxInFlight;
+    private final long timeoutMillis;
+
+    /**
+     * @param maxInFlight   the maximum number of outstanding calls, {@code 0} meaning no limit
+     * @param timeoutMillis how long a call waits for a slot once the limit is reached: a negative value means waiting indefinitely,
+     *                      {@code 0} means failing immediately
+     */
+    public InFlightLimit(int maxInFlight, long timeoutMillis) {
+        if (maxInFlight < 0) {
+            throw new IllegalArgumentException("The in-flight limit must not be negative, while " + maxInFlight + " was specified.");
+        }
+        this.maxInFlight = maxInFlight;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public boolean isLimited() {
+        return maxInFlight > 0;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.policy;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link ConcurrencyLimiter} capping the number of outstanding calls (a bulkhead).
+ * Backed by a non-fair {@link Semaphore}, so that acquiring a free slot is a single CAS without any locking.
+ *
+ * @author Ivan Sergienko
+ */
+public class InFlightLimiter implements ConcurrencyLimiter {
+    private final String name;
+    private final InFlightLimit limit;
+    private final Semaphore permits;
+
+    /**
+     * @param name  the name of the limited resource, used in error messages
+     * @param limit the limit to enforce, must be {@link InFlightLimit#isLimited() limited}
+     */
+    public InFlightLimiter(String name, InFlightLimit limit) {
+        if (!limit.isLimited()) {
+            throw new IllegalArgumentException("An InFlightLimiter requires a positive in-flight limit for " + name);
+        }
+        this.name = name;
+        this.limit = limit;
+        this.permits = new Semaphore(limit.getMaxInFlight());
+    }
+
+    @Override
+    public Object execute(Callable<Object> call) throws Exception {
+        acquire();
+        try {
+            return call.call();
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public boolean tryAcquire() {
+        return permits.tryAcquire();
+    }
+
+    @Override
+    public void release() {
+        permits.release();
+    }
+
+    private void acquire() {
+        if (permits.tryAcquire()) {
+            return;
+        }
+
+        long timeoutMillis = limit.getTimeoutMillis();
+        try {
+            if (timeoutMillis < 0) {
+                permits.acquire();
+            } else if (timeoutMillis == 0 || !permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new RabbitCallRejectedException(String.format("The in-flight limit of %d calls is reached for %s.",
+                        limit.getMaxInFlight(), name));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RabbitCallInterruptedException("Interrupted while waiting for an in-flight slot of " + name, e);
+        }
+    }
+
+    /**
+     * @return the number of calls currently holding a slot
+     */
+    public int getInFlight() {
+        return limit.getMaxInFlight() - permits.availablePermits();
+    }
+
+    /**
+     * @return the number of calls waiting for a slot to become available
+     */
+    public int getQueued() {
+        return permits.getQueueLength();
+    }
+
+    public int getMaxInFlight() {
+        return limit.getMaxInFlight();
+    }
+}
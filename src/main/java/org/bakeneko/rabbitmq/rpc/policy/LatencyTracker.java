@@ -0,0 +1,68 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.policy;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the most recent latency samples in a fixed size ring buffer and estimates a percentile over them.
+ * Recording is lock-free; concurrent writers may occasionally overwrite each other's samples, which is acceptable for an estimate.
+ * The percentile is recomputed every {@link #RECOMPUTE_INTERVAL} samples rather than on each read.
+ *
+ * @author Ivan Sergienko
+ */
+public class LatencyTracker {
+    public static final int RECOMPUTE_INTERVAL = 100;
+
+    private final double percentile;
+    private final long[] samples;
+    private final AtomicLong recorded = new AtomicLong();
+    private volatile long percentileNanos = -1;
+
+    /**
+     * @param percentile the percentile to estimate, e.g. {@code 95}
+     * @param capacity   the number of most recent samples to keep
+     */
+    public LatencyTracker(double percentile, int capacity) {
+        this.percentile = percentile;
+        this.samples = new long[capacity];
+    }
+
+    public void record(long latencyNanos) {
+        long count = recorded.getAndIncrement();
+        samples[(int) (count % samples.length)] = latencyNanos;
+
+        if ((count + 1) % RECOMPUTE_INTERVAL == 0) {
+            recompute(Math.min(count + 1, samples.length));
+        }
+    }
+
+    private void recompute(long size) {
+        long[] sorted = Arrays.copyOf(samples, (int) size);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * size) - 1;
+        percentileNanos = sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    /**
+     * @return the estimated percentile in nanoseconds, or {@code -1} until enough samples are recorded
+     */
+    public long getPercentileNanos() {
+        return percentileNanos;
+    }
+}
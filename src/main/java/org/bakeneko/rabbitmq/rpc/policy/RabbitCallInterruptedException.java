@@ -0,0 +1,32 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.policy;
+
+import org.springframework.amqp.AmqpException;
+
+/**
+ * Thrown when the calling thread is interrupted while a {@link CallPolicy} holds its call back.
+ * The interrupt status of the thread is restored before it's thrown.
+ *
+ * @author Ivan Sergienko
+ */
+public class RabbitCallInterruptedException extends AmqpException {
+
+    public RabbitCallInterruptedException(String message, InterruptedException cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.policy;
+
+import org.springframework.amqp.AmqpException;
+
+/**
+ * Thrown when a {@link CallPolicy} refuses to dispatch a call, without sending anything to RabbitMQ.
+ *
+ * @author Ivan Sergienko
+ */
+public class RabbitCallRejectedException extends AmqpException {
+
+    public RabbitCallRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.policy;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link CallPolicy} retrying the calls failed with one of the {@link RetrySettings#getRetryOn() retryable exceptions}
+ * (or exceptions caused by them), sleeping for a randomized exponential backoff ("full jitter") between the attempts.
+ * Calls rejected by other policies ({@link RabbitCallRejectedException}) are never retried.
+ * The retries are capped by a {@link CallBudget}.
+ *
+ * @author Ivan Sergienko
+ */
+public class RetryPolicy implements CallPolicy {
+    private final RetrySettings settings;
+    private final CallBudget budget;
+    private final LongAdder retries = new LongAdder();
+
+    public RetryPolicy(RetrySettings settings) {
+        if (!settings.isEnabled()) {
+            throw new IllegalArgumentException("A RetryPolicy requires more than one attempt");
+        }
+        this.settings = settings;
+        this.budget = new CallBudget(settings.getBudgetPercent());
+    }
+
+    @Override
+    public Object execute(Callable<Object> call) throws Exception {
+        budget.earn();
+        double backoffBound = settings.getInitialBackoffMillis();
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.call();
+            } catch (Exception e) {
+                if (attempt >= settings.getMaxAttempts() || !isRetryable(e) || !budget.trySpend()) {
+                    throw e;
+                }
+            }
+
+            retries.increment();
+            long bound = (long) Math.min(settings.getMaxBackoffMillis(), backoffBound);
+            if (bound > 0) {
+                backOff(ThreadLocalRandom.current().nextLong(bound + 1));
+            }
+            backoffBound *= settings.getMultiplier();
+        }
+    }
+
+    private void backOff(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RabbitCallInterruptedException("Interrupted while backing off before a retry", e);
+        }
+    }
+
+    private boolean isRetryable(Exception exception) {
+        if (exception instanceof RabbitCallRejectedException || exception instanceof RabbitCallInterruptedException) {
+            return false;
+        }
+
+        for (Throwable cause = exception; cause != null; cause = cause.getCause() != cause ? cause.getCause() : null) {
+            for (Class<? extends Throwable> retryable : settings.getRetryOn()) {
+                if (retryable.isInstance(cause)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the total number of retries made
+     */
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * @return the total number of retries not made because the budget was exhausted
+     */
+    public long getBudgetExhausted() {
+        return budget.getExhausted();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.policy;
+
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.AmqpIOException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The attempts, backoff and retryable exceptions of a {@link RetryPolicy}.
+ *
+ * @author Ivan Sergienko
+ * @see org.bakeneko.rabbitmq.rpc.RabbitRetry
+ */
+public class RetrySettings {
+    public static final int DEFAULT_MAX_ATTEMPTS = 1;
+    public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 100;
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = 2_000;
+    public static final double DEFAULT_MULTIPLIER = 2;
+    public static final int DEFAULT_BUDGET_PERCENT = 20;
+    public static final List<Class<? extends Throwable>> DEFAULT_RETRY_ON =
+            Collections.unmodifiableList(Arrays.asList(AmqpConnectException.class, AmqpIOException.class));
+
+    public static final RetrySettings DISABLED = new RetrySettings(1, DEFAULT_INITIAL_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS,
+            DEFAULT_MULTIPLIER, DEFAULT_RETRY_ON, DEFAULT_BUDGET_PERCENT);
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final double multiplier;
+    private final List<Class<? extends Throwable>> retryOn;
+    private final int budgetPercent;
+
+    public RetrySettings(
+            int maxAttempts,
+            long initialBackoffMillis,
+            long maxBackoffMillis,
+            double multiplier,
+            List<Class<? extends Throwable>> retryOn,
+            int budgetPercent
+    ) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("The maximum number of attempts must be positive, while " + maxAttempts + " was specified.");
+        }
+        if (initialBackoffMillis < 0 || maxBackoffMillis < 0 || multiplier < 1) {
+            throw new IllegalArgumentException("The backoff must not be negative and the multiplier must be at least 1.");
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.multiplier = multiplier;
+        this.retryOn = retryOn;
+        this.budgetPercent = budgetPercent;
+    }
+
+    public boolean isEnabled() {
+        return maxAttempts > 1;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getInitialBackoffMillis() {
+        return initialBackoffMillis;
+    }
+
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    public List<Class<? extends Throwable>> getRetryOn() {
+        return retryOn;
+    }
+
+    public int getBudgetPercent() {
+        return budgetPercent;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.policy;
+
+/**
+ * A concurrency limit estimation algorithm based on TCP Vegas congestion control, as popularized by Netflix concurrency-limits.
+ * <p>
+ * The limit is derived from the ratio between the minimal (no load) round-trip time and the latest measured one:
+ * {@code queue = limit * (1 - minRtt / rtt)} estimates how many calls are queued on the other side.
+ * The limit grows while the estimated queue is small, and shrinks when it builds up or when calls fail.
+ * The minimal round-trip time is periodically re-measured to adapt to the changes in the downstream latency.
+ * <p>
+ * Not thread safe, callers are expected to synchronize the {@link #onSample(long, int, boolean)} calls.
+ *
+ * @author Ivan Sergienko
+ * @see AdaptiveConcurrencyLimiter
+ */
+public class VegasLimit {
+    private static final int PROBE_MULTIPLIER = 30;
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    private int limit;
+    private long minRttNanos;
+    private long samplesUntilProbe;
+
+    /**
+     * @param initialLimit the limit to start with
+     * @param minLimit     the lowest value the limit may drop to
+     * @param maxLimit     the highest value the limit may grow to
+     */
+    public VegasLimit(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException(String.format("Invalid adaptive limit bounds: initial=%d, min=%d, max=%d",
+                    initialLimit, minLimit, maxLimit));
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+        this.samplesUntilProbe = nextProbe();
+    }
+
+    /**
+     * Updates the limit according to a completed call.
+     *
+     * @param rttNanos the round-trip time of the call
+     * @param inFlight the number of calls that were in flight when the call started
+     * @param dropped  whether the call failed or timed out
+     * @return the updated limit
+     */
+    public int onSample(long rttNanos, int inFlight, boolean dropped) {
+        if (--samplesUntilProbe <= 0) {
+            minRttNanos = 0;
+            samplesUntilProbe = nextProbe();
+        }
+
+        if (dropped) {
+            return setLimit(limit - log10(limit));
+        }
+        if (rttNanos <= 0) {
+            return limit;
+        }
+        if (minRttNanos == 0 || rttNanos < minRttNanos) {
+            minRttNanos = rttNanos;
+            return limit;
+        }
+        if (inFlight * 2 < limit) {
+            // The limit is not being used, so the measurement says nothing about it
+            return limit;
+        }
+
+        int log10 = log10(limit);
+        int queueSize = (int) Math.ceil(limit * (1 - (double) minRttNanos / rttNanos));
+        if (queueSize <= log10) {
+            return setLimit(limit + 6 * log10);
+        } else if (queueSize < 3 * log10) {
+            return setLimit(limit + log10);
+        } else if (queueSize > 6 * log10) {
+            return setLimit(limit - log10);
+        } else {
+            return limit;
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    private int setLimit(int newLimit) {
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        return limit;
+    }
+
+    private long nextProbe() {
+        return (long) PROBE_MULTIPLIER * limit;
+    }
+
+    private static int log10(int value) {
+        return Math.max(1, (int) Math.log10(value));
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.publish;
+
+import com.rabbitmq.client.Channel;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.RabbitExceptionTranslator;
+
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed number of long-lived publishing channels of a {@link ConnectionFactory}, each guarded by a lock of its own.
+ * A thread publishes through its home slot (picked by the thread id), moving on to the next free slot when the home one is busy,
+ * and only waits for its home slot when all of them are busy - there is no lock shared by all the publishers,
+ * unlike the checkout and checkin of the {@link org.springframework.amqp.rabbit.connection.CachingConnectionFactory} channel cache.
+ *
+ * @author Ivan Sergienko
+ * @see org.bakeneko.rabbitmq.rpc.RabbitClient#publishChannels()
+ */
+public class StripedChannelPool {
+    private static final MessagePropertiesConverter PROPERTIES_CONVERTER = new DefaultMessagePropertiesConverter();
+    private static final String ENCODING = "UTF-8";
+
+    private final ConnectionFactory connectionFactory;
+    private final Slot[] slots;
+
+    /**
+     * @param connectionFactory the connection factory to open the channels with
+     * @param size              the number of channels
+     */
+    public StripedChannelPool(ConnectionFactory connectionFactory, int size) {
+        this.connectionFactory = connectionFactory;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    /**
+     * Publishes the message through one of the channels, opening it if necessary.
+     *
+     * @param exchange   the exchange to publish the message to
+     * @param routingKey the routing key of the message
+     * @param message    the message
+     */
+    public void publish(String exchange, String routingKey, Message message) {
+        Slot slot = acquire();
+        try {
+            slot.channel().basicPublish(exchange, routingKey, false,
+                    PROPERTIES_CONVERTER.fromMessageProperties(message.getMessageProperties(), ENCODING), message.getBody());
+        } catch (IOException e) {
+            throw RabbitExceptionTranslator.convertRabbitAccessException(e);
+        } finally {
+            slot.lock.unlock();
+        }
+    }
+
+    public int getSize() {
+        return slots.length;
+    }
+
+    /**
+     * Closes the channels. The pool reopens them if it's used afterwards.
+     */
+    public void close() {
+        for (Slot slot : slots) {
+            slot.lock.lock();
+            try {
+                slot.close();
+            } finally {
+                slot.lock.unlock();
+            }
+        }
+    }
+
+    private Slot acquire() {
+        int home = (int) (Thread.currentThread().getId() % slots.length);
+        for (int i = 0; i < slots.length; i++) {
+            Slot slot = slots[(home + i) % slots.length];
+            if (slot.lock.tryLock()) {
+                return slot;
+            }
+        }
+
+        Slot slot = slots[home];
+        slot.lock.lock();
+        return slot;
+    }
+
+    private class Slot {
+        private final ReentrantLock lock = new ReentrantLock();
+        private Channel channel;
+
+        Channel channel() {
+            if (channel == null || !channel.isOpen()) {
+                channel = connectionFactory.createConnection().createChannel(false);
+            }
+            return channel;
+        }
+
+        void close() {
+            if (channel == null) {
+                return;
+            }
+
+            try {
+                channel.close();
+            } catch (IOException | TimeoutException | RuntimeException e) {
+                // the channel is broken anyway
+            }
+            channel = null;
+        }
+    }
+}
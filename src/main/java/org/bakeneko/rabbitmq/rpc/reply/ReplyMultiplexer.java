@@ -0,0 +1,192 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.reply;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import org.bakeneko.rabbitmq.rpc.policy.RabbitCallInterruptedException;
+import org.springframework.amqp.core.Address;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.RabbitExceptionTranslator;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends requests and receives their replies through a fixed number of long-lived channels of a {@link ConnectionFactory},
+ * each consuming from the direct reply-to pseudo queue. A request is published on the channel picked by the calling thread,
+ * and its reply is matched through a {@link ConcurrentHashMap} from the correlation id to the pending call,
+ * so no channel is held for the duration of a call, and the calls never wait for each other.
+ * <p>
+ * Each call times out on its own: the calling thread waits for its reply with the reply timeout and removes the call once it's over,
+ * so nothing has to scan the pending calls. Like {@link org.springframework.amqp.rabbit.core.RabbitTemplate},
+ * a call without a reply in time returns {@code null}.
+ *
+ * @author Ivan Sergienko
+ * @see org.bakeneko.rabbitmq.rpc.RabbitClient#replyConsumers()
+ */
+public class ReplyMultiplexer {
+    private static final MessagePropertiesConverter PROPERTIES_CONVERTER = new DefaultMessagePropertiesConverter();
+    private static final String ENCODING = "UTF-8";
+
+    private final ConnectionFactory connectionFactory;
+    private final ReplyChannel[] channels;
+    private final Map<String, CompletableFuture<Message>> pending = new ConcurrentHashMap<>();
+    private final AtomicLong correlationIds = new AtomicLong();
+
+    /**
+     * @param connectionFactory the connection factory to open the channels with
+     * @param consumers         the number of channels (and reply consumers)
+     */
+    public ReplyMultiplexer(ConnectionFactory connectionFactory, int consumers) {
+        this.connectionFactory = connectionFactory;
+        this.channels = new ReplyChannel[consumers];
+        for (int i = 0; i < consumers; i++) {
+            channels[i] = new ReplyChannel();
+        }
+    }
+
+    /**
+     * Publishes the request and waits for its reply.
+     *
+     * @param exchange      the exchange to publish the request to
+     * @param routingKey    the routing key of the request
+     * @param request       the request, its reply address and correlation id are overwritten
+     * @param timeoutMillis the number of milliseconds to wait for the reply
+     * @return the reply, or {@code null} if none arrived in time
+     * @throws RabbitCallInterruptedException if the calling thread is interrupted while waiting, with its interrupt status restored
+     */
+    public Message sendAndReceive(String exchange, String routingKey, Message request, long timeoutMillis) {
+        CompletableFuture<Message> reply = send(exchange, routingKey, request);
+        try {
+            return reply.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RabbitCallInterruptedException("Interrupted while waiting for the reply to "
+                    + request.getMessageProperties().getCorrelationId(), e);
+        } finally {
+            reply.cancel(false);
+        }
+    }
+
+    /**
+     * Publishes the request without waiting for its reply. The call stays pending until its reply arrives
+     * or the returned future is cancelled, which discards the reply, so the caller has to cancel it once it stops waiting.
+     *
+     * @param exchange   the exchange to publish the request to
+     * @param routingKey the routing key of the request
+     * @param request    the request, its reply address and correlation id are overwritten
+     * @return the future reply
+     */
+    public CompletableFuture<Message> send(String exchange, String routingKey, Message request) {
+        String correlationId = Long.toString(correlationIds.incrementAndGet(), Character.MAX_RADIX);
+        CompletableFuture<Message> reply = new CompletableFuture<>();
+        MessageProperties properties = request.getMessageProperties();
+        properties.setReplyTo(Address.AMQ_RABBITMQ_REPLY_TO);
+        properties.setCorrelationId(correlationId);
+
+        pending.put(correlationId, reply);
+        reply.whenComplete((message, e) -> pending.remove(correlationId, reply));
+        try {
+            channels[(int) (Thread.currentThread().getId() % channels.length)].publish(exchange, routingKey, request);
+        } catch (IOException | RuntimeException e) {
+            pending.remove(correlationId);
+            throw RabbitExceptionTranslator.convertRabbitAccessException(e);
+        }
+
+        return reply;
+    }
+
+    /**
+     * @return the number of calls waiting for a reply
+     */
+    public int getPending() {
+        return pending.size();
+    }
+
+    /**
+     * Closes the channels. The calls waiting for a reply return {@code null}.
+     */
+    public void close() {
+        for (ReplyChannel channel : channels) {
+            channel.close();
+        }
+        pending.values().forEach(reply -> reply.complete(null));
+    }
+
+    /**
+     * A channel consuming the replies of the requests published on it, reopened once it's closed.
+     * The requests published on a channel that gets closed before their replies arrive expire.
+     */
+    private class ReplyChannel {
+        private Channel channel;
+
+        synchronized void publish(String exchange, String routingKey, Message request) throws IOException {
+            if (channel == null || !channel.isOpen()) {
+                channel = connectionFactory.createConnection().createChannel(false);
+                channel.basicConsume(Address.AMQ_RABBITMQ_REPLY_TO, true, new ReplyConsumer(channel));
+            }
+
+            channel.basicPublish(exchange, routingKey, false,
+                    PROPERTIES_CONVERTER.fromMessageProperties(request.getMessageProperties(), ENCODING), request.getBody());
+        }
+
+        synchronized void close() {
+            if (channel == null) {
+                return;
+            }
+
+            try {
+                channel.close();
+            } catch (IOException | TimeoutException | RuntimeException e) {
+                // the channel is broken anyway
+            }
+            channel = null;
+        }
+    }
+
+    private class ReplyConsumer extends DefaultConsumer {
+
+        ReplyConsumer(Channel channel) {
+            super(channel);
+        }
+
+        @Override
+        public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) {
+            CompletableFuture<Message> reply = properties.getCorrelationId() != null ? pending.remove(properties.getCorrelationId()) : null;
+            if (reply != null) {
+                reply.complete(new Message(body, PROPERTIES_CONVERTER.toMessageProperties(properties, envelope, ENCODING)));
+            }
+        }
+    }
+}
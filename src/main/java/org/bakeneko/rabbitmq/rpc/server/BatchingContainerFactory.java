@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.server;
+
+import org.springframework.amqp.rabbit.listener.ListenerContainerIdleEvent;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.context.ApplicationEventPublisher;
+
+/**
+ * Creates the listener containers of {@link BatchingMessageListener}s through another {@link RabbitListenerContainerFactory},
+ * each with a single consumer, so that the consumer thread handles the incomplete batch once the container is idle:
+ * the container polls for messages every {@code maxWait} milliseconds of its listener, and instead of being published,
+ * its {@link ListenerContainerIdleEvent}s {@link BatchingMessageListener#flush() flush} the listener.
+ * Only {@link SimpleMessageListenerContainer}s publish the idle events on the consumer thread, so the other containers are rejected.
+ *
+ * @author Ivan Sergienko
+ */
+public class BatchingContainerFactory implements RabbitListenerContainerFactory<SimpleMessageListenerContainer> {
+    private final RabbitListenerContainerFactory<?> delegate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    /**
+     * @param delegate       the factory creating the containers
+     * @param eventPublisher the publisher of the other events of the containers, or {@code null} to drop them
+     */
+    public BatchingContainerFactory(RabbitListenerContainerFactory<?> delegate, ApplicationEventPublisher eventPublisher) {
+        this.delegate = delegate;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @Override
+    public SimpleMessageListenerContainer createListenerContainer(RabbitListenerEndpoint endpoint) {
+        MessageListenerContainer container = delegate.createListenerContainer(endpoint);
+        if (!(container instanceof SimpleMessageListenerContainer)) {
+            throw new IllegalStateException(String.format("The batch handlers require a SimpleMessageListenerContainer, while the endpoint %s got %s.",
+                    endpoint.getId(), container.getClass().getName()));
+        }
+
+        SimpleMessageListenerContainer listenerContainer = (SimpleMessageListenerContainer) container;
+        BatchingMessageListener listener = (BatchingMessageListener) listenerContainer.getMessageListener();
+        listenerContainer.setConcurrentConsumers(1);
+        listenerContainer.setMaxConcurrentConsumers(1);
+        listenerContainer.setReceiveTimeout(listener.getMaxWaitMillis());
+        listenerContainer.setIdleEventInterval(listener.getMaxWaitMillis());
+        listenerContainer.setApplicationEventPublisher(event -> {
+            if (event instanceof ListenerContainerIdleEvent) {
+                listener.flush();
+            } else if (eventPublisher != null) {
+                eventPublisher.publishEvent(event);
+            }
+        });
+
+        return listenerContainer;
+    }
+}
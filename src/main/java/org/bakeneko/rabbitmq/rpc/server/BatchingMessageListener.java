@@ -0,0 +1,224 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.server;
+
+import com.rabbitmq.client.Channel;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Address;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.amqp.support.converter.SmartMessageConverter;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.ResolvableType;
+import org.springframework.remoting.support.RemoteInvocationResult;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Collects the messages of a single consumer into batches and passes every batch to a
+ * {@link org.bakeneko.rabbitmq.rpc.RabbitBatchHandler} method, once it's full or its first message has waited for {@code maxWaitMillis}.
+ * The replies are published to the reply addresses of their requests, and the batch is then acknowledged at once.
+ * If the handler fails, every request with a reply address gets the exception as a {@link RemoteInvocationResult} reply,
+ * the way {@code @RabbitListener(returnExceptions = "true")} returns it, and the one-way requests are rejected without requeueing.
+ * <p>
+ * A batch is only handled on the consumer thread, which owns the channel the batch is acknowledged through: when a message
+ * fills it up or arrives after its {@code maxWaitMillis}, or when the container is idle and calls {@link #flush()} -
+ * see {@link BatchingContainerFactory}. Since the messages are acknowledged by the listener, the container must use
+ * {@link org.springframework.amqp.core.AcknowledgeMode#MANUAL}, with a prefetch count of at least the batch size.
+ *
+ * @author Ivan Sergienko
+ */
+public class BatchingMessageListener implements ChannelAwareMessageListener {
+    private static final Log logger = LogFactory.getLog(BatchingMessageListener.class);
+
+    private final MessagePropertiesConverter propertiesConverter = new DefaultMessagePropertiesConverter();
+
+    private final Object bean;
+    private final Method handler;
+    private final MessageConverter converter;
+    private final ParameterizedTypeReference<Object> payloadType;
+    private final int batchSize;
+    private final long maxWaitMillis;
+    private Batch batch;
+
+    /**
+     * @param bean          the bean to invoke the handler on
+     * @param handler       the handler method, taking a {@code List} of payloads
+     * @param converter     the converter of the payloads and the replies
+     * @param batchSize     the maximum number of messages in a batch
+     * @param maxWaitMillis the maximum time an incomplete batch waits for more messages
+     */
+    public BatchingMessageListener(Object bean, Method handler, MessageConverter converter, int batchSize, long maxWaitMillis) {
+        this.bean = bean;
+        this.handler = handler;
+        this.converter = converter;
+        this.payloadType = ParameterizedTypeReference.forType(ResolvableType.forMethodParameter(handler, 0).getGeneric(0).getType());
+        this.batchSize = batchSize;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    /**
+     * Handles a message received without a channel on its own, leaving its acknowledgement to the caller.
+     * Its reply can't be published without a channel, so only one-way requests should be consumed this way.
+     *
+     * @param message the request
+     * @throws AmqpRejectAndDontRequeueException if the handler fails
+     */
+    @Override
+    public void onMessage(Message message) {
+        handle(Collections.singletonList(message), null);
+    }
+
+    @Override
+    public void onMessage(Message message, Channel channel) {
+        if (batch != null && batch.channel != channel) {
+            // the channel of the batch is closed, and the broker redelivers its unacknowledged messages
+            batch = null;
+        }
+        if (batch == null) {
+            batch = new Batch(channel);
+        }
+
+        batch.messages.add(message);
+        if (batch.messages.size() >= batchSize || System.currentTimeMillis() - batch.createdAt >= maxWaitMillis) {
+            flush();
+        }
+    }
+
+    /**
+     * Handles the incomplete batch, if any. Like {@link #onMessage(Message, Channel)}, must be called by the consumer thread.
+     */
+    public void flush() {
+        Batch pending = batch;
+        batch = null;
+        if (pending != null) {
+            handle(pending.messages, pending.channel);
+        }
+    }
+
+    private void handle(List<Message> requests, Channel channel) {
+        try {
+            List<Object> payloads = requests.stream().map(this::fromMessage).collect(Collectors.toList());
+            Object replies = handler.invoke(bean, payloads);
+            if (replies != null) {
+                reply(requests, (List<?>) replies, channel);
+            }
+            if (channel != null) {
+                channel.basicAck(requests.get(requests.size() - 1).getMessageProperties().getDeliveryTag(), true);
+            }
+        } catch (Exception e) {
+            Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+            String description = String.format("Failed to handle a batch of %d messages with %s.", requests.size(), handler);
+            if (channel == null) {
+                throw new AmqpRejectAndDontRequeueException(description, cause);
+            }
+
+            logger.error(description, cause);
+            fail(requests, cause, channel);
+        }
+    }
+
+    private Object fromMessage(Message message) {
+        return converter instanceof SmartMessageConverter ?
+                ((SmartMessageConverter) converter).fromMessage(message, payloadType) : converter.fromMessage(message);
+    }
+
+    private void reply(List<Message> requests, List<?> replies, Channel channel) throws IOException {
+        if (replies.size() != requests.size()) {
+            throw new IllegalStateException(String.format("%s returned %d replies to %d requests.", handler, replies.size(), requests.size()));
+        }
+
+        for (int i = 0; i < requests.size(); i++) {
+            if (replies.get(i) != null) {
+                reply(requests.get(i), replies.get(i), channel);
+            }
+        }
+    }
+
+    /**
+     * @return whether the request has a reply address the reply has been published to
+     */
+    private boolean reply(Message request, Object reply, Channel channel) throws IOException {
+        MessageProperties requestProperties = request.getMessageProperties();
+        Address replyTo = requestProperties.getReplyToAddress();
+        if (replyTo == null) {
+            return false;
+        }
+        if (channel == null) {
+            logger.warn(String.format("The reply of %s to the message %s is dropped, since the message was received without a channel.",
+                    handler, requestProperties.getMessageId()));
+            return false;
+        }
+
+        MessageProperties replyProperties = new MessageProperties();
+        replyProperties.setCorrelationId(requestProperties.getCorrelationId() != null ?
+                requestProperties.getCorrelationId() : requestProperties.getMessageId());
+        Message message = converter.toMessage(reply, replyProperties);
+        channel.basicPublish(replyTo.getExchangeName(), replyTo.getRoutingKey(), false,
+                propertiesConverter.fromMessageProperties(message.getMessageProperties(), "UTF-8"), message.getBody());
+
+        return true;
+    }
+
+    private void fail(List<Message> requests, Throwable cause, Channel channel) {
+        for (Message request : requests) {
+            long deliveryTag = request.getMessageProperties().getDeliveryTag();
+            try {
+                boolean replied = false;
+                try {
+                    replied = reply(request, new RemoteInvocationResult(cause), channel);
+                } catch (RuntimeException e) {
+                    logger.error(String.format("Failed to convert the failure of a batch into a reply to the message %d.", deliveryTag), e);
+                }
+
+                if (replied) {
+                    channel.basicAck(deliveryTag, false);
+                } else {
+                    channel.basicNack(deliveryTag, false, false);
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.error(String.format("Failed to return the failure of a batch to the message %d.", deliveryTag), e);
+            }
+        }
+    }
+
+    private static class Batch {
+        private final Channel channel;
+        private final List<Message> messages = new ArrayList<>();
+        private final long createdAt = System.currentTimeMillis();
+
+        Batch(Channel channel) {
+            this.channel = channel;
+        }
+    }
+}
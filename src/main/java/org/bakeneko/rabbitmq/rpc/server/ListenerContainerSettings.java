@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.server;
+
+import org.springframework.amqp.core.AcknowledgeMode;
+
+/**
+ * The consumer settings of a {@link org.bakeneko.rabbitmq.rpc.RabbitService} method's listener container.
+ * {@code null} values keep the settings of the container factory.
+ *
+ * @author Ivan Sergienko
+ */
+public class ListenerContainerSettings {
+    private final String concurrency;
+    private final Integer prefetch;
+    private final Integer batchSize;
+    private final AcknowledgeMode acknowledgeMode;
+
+    public ListenerContainerSettings(String concurrency, Integer prefetch, Integer batchSize) {
+        this(concurrency, prefetch, batchSize, null);
+    }
+
+    public ListenerContainerSettings(String concurrency, Integer prefetch, Integer batchSize, AcknowledgeMode acknowledgeMode) {
+        this.concurrency = concurrency;
+        this.prefetch = prefetch;
+        this.batchSize = batchSize;
+        this.acknowledgeMode = acknowledgeMode;
+    }
+
+    /**
+     * @return the number of consumers, either fixed ({@code "4"}) or a range ({@code "2-8"})
+     */
+    public String getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @return the number of unacknowledged messages per consumer
+     */
+    public Integer getPrefetch() {
+        return prefetch;
+    }
+
+    /**
+     * @return the number of messages consumed and acknowledged together
+     */
+    public Integer getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return the acknowledge mode of the container
+     */
+    public AcknowledgeMode getAcknowledgeMode() {
+        return acknowledgeMode;
+    }
+
+    public boolean isContainerTuned() {
+        return prefetch != null || batchSize != null || acknowledgeMode != null;
+    }
+}
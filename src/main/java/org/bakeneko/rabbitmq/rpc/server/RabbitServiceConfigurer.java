@@ -0,0 +1,352 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.server;
+
+import org.bakeneko.rabbitmq.rpc.RabbitBatchHandler;
+import org.bakeneko.rabbitmq.rpc.RabbitClient;
+import org.bakeneko.rabbitmq.rpc.RabbitSender;
+import org.bakeneko.rabbitmq.rpc.RabbitService;
+import org.bakeneko.rabbitmq.rpc.chunk.ChunkAssembler;
+import org.bakeneko.rabbitmq.rpc.chunk.ChunkAssemblingContainerFactory;
+import org.bakeneko.rabbitmq.rpc.factory.ClientReflection;
+import org.bakeneko.rabbitmq.rpc.factory.PropertiesResolver;
+import org.bakeneko.rabbitmq.rpc.factory.RabbitClientAnnotationProcessor;
+import org.bakeneko.rabbitmq.rpc.factory.RabbitClientMetadata;
+import org.bakeneko.rabbitmq.rpc.local.LocalRabbitListenerRegistry;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.rabbit.annotation.RabbitListenerAnnotationBeanPostProcessor;
+import org.springframework.amqp.rabbit.annotation.RabbitListenerConfigurer;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.listener.AbstractRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.listener.MethodRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.listener.RabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistrar;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.handler.annotation.support.DefaultMessageHandlerMethodFactory;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Registers a listener endpoint for each method of the {@link RabbitClient} interfaces implemented by {@link RabbitService} beans.
+ * The queue of a method is its routing key, as resolved by the {@link RabbitClientAnnotationProcessor} for the client side.
+ * The endpoints are also registered as local listeners (if any client has local dispatch), so that clients with local dispatch
+ * can call them in-process.
+ * <p>
+ * The methods with a {@link RabbitBatchHandler} are consumed by {@link BatchingMessageListener}s instead, one per consumer,
+ * in the single-consumer containers of a {@link BatchingContainerFactory} with manual acknowledgements and a prefetch count
+ * fitting at least one batch.
+ * The requests of the clients with a {@link RabbitClient#chunkSize()} are reassembled by a {@link ChunkAssembler} shared by all the services:
+ * the {@code ChunkAssembler} bean of the context if there is one, or one with the default limits otherwise.
+ *
+ * @author Ivan Sergienko
+ */
+public class RabbitServiceConfigurer implements RabbitListenerConfigurer, BeanFactoryAware, ApplicationEventPublisherAware, DisposableBean {
+    private RabbitClientAnnotationProcessor annotationProcessor;
+    private PropertiesResolver propertiesResolver;
+    private LocalRabbitListenerRegistry localListeners;
+    private ListableBeanFactory beanFactory;
+    private ApplicationEventPublisher eventPublisher;
+    private ChunkAssembler chunkAssembler;
+    private boolean ownsChunkAssembler;
+
+    private final DefaultMessageHandlerMethodFactory handlerMethodFactory = new DefaultMessageHandlerMethodFactory();
+
+    public RabbitServiceConfigurer(
+            RabbitClientAnnotationProcessor annotationProcessor,
+            PropertiesResolver propertiesResolver,
+            @Nullable LocalRabbitListenerRegistry localListeners
+    ) {
+        this.annotationProcessor = annotationProcessor;
+        this.propertiesResolver = propertiesResolver;
+        this.localListeners = localListeners;
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        this.beanFactory = (ListableBeanFactory) beanFactory;
+        handlerMethodFactory.setBeanFactory(beanFactory);
+        handlerMethodFactory.afterPropertiesSet();
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @Override
+    public void configureRabbitListeners(RabbitListenerEndpointRegistrar registrar) {
+        Set<String> endpointIds = new HashSet<>();
+
+        beanFactory.getBeansWithAnnotation(RabbitService.class).forEach((beanName, bean) -> {
+            Class<?> targetClass = AopUtils.getTargetClass(bean);
+            RabbitService rabbitService = AnnotationUtils.findAnnotation(targetClass, RabbitService.class);
+            List<Class<?>> clientInterfaces = ClassUtils.getAllInterfacesForClassAsSet(targetClass).stream()
+                    .filter(it -> it.isAnnotationPresent(RabbitClient.class))
+                    .collect(Collectors.toList());
+            if (clientInterfaces.isEmpty()) {
+                throw new IllegalStateException(String.format("The @RabbitService %s doesn't implement any @RabbitClient interface.", targetClass.getName()));
+            }
+
+            Map<String, Method> batchHandlers = getBatchHandlers(targetClass, clientInterfaces);
+
+            for (Class<?> clientInterface : clientInterfaces) {
+                Map<String, RabbitClientMetadata> metadataByMethod = annotationProcessor.readMetadata(clientInterface);
+
+                for (Method method : clientInterface.getDeclaredMethods()) {
+                    RabbitClientMetadata metadata = metadataByMethod.get(ClientReflection.signature(method));
+                    String queue = getQueue(method, metadata);
+                    ListenerContainerSettings settings = getSettings(rabbitService, method.getAnnotation(RabbitSender.class));
+                    Method batchHandler = batchHandlers.remove(ClientReflection.signature(method));
+                    String endpointId = beanName + "." + method.getName();
+
+                    if (batchHandler != null) {
+                        if (metadata.getChunkSize() != null) {
+                            throw new IllegalStateException(String.format("The batch handler %s can't consume the chunked requests of %s.",
+                                    batchHandler, clientInterface.getName()));
+                        }
+
+                        RabbitListenerContainerFactory<?> containerFactory =
+                                new BatchingContainerFactory(getContainerFactory(rabbitService, batchSettings(settings)), eventPublisher);
+                        for (int i = 0; i < getMaxConsumers(settings); i++) {
+                            SimpleRabbitListenerEndpoint endpoint = batchEndpoint(bean, method, batchHandler, settings);
+                            registrar.registerEndpoint(configure(endpoint, uniqueId(endpointIds, endpointId), queue, null), containerFactory);
+                        }
+                    } else {
+                        RabbitListenerContainerFactory<?> containerFactory = getContainerFactory(rabbitService, settings);
+                        if (metadata.getChunkSize() != null) {
+                            containerFactory = new ChunkAssemblingContainerFactory(containerFactory, getChunkAssembler());
+                        }
+
+                        MethodRabbitListenerEndpoint endpoint = methodEndpoint(bean, method);
+                        registrar.registerEndpoint(configure(endpoint, uniqueId(endpointIds, endpointId), queue, settings.getConcurrency()), containerFactory);
+                    }
+
+                    if (localListeners != null) {
+                        localListeners.register(queue, bean, method);
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (ownsChunkAssembler) {
+            chunkAssembler.close();
+        }
+    }
+
+    private AbstractRabbitListenerEndpoint configure(AbstractRabbitListenerEndpoint endpoint, String id, String queue, String concurrency) {
+        endpoint.setId(id);
+        endpoint.setQueueNames(queue);
+        endpoint.setConcurrency(concurrency);
+        endpoint.setBeanFactory(beanFactory);
+
+        return endpoint;
+    }
+
+    private MethodRabbitListenerEndpoint methodEndpoint(Object bean, Method method) {
+        MethodRabbitListenerEndpoint endpoint = new MethodRabbitListenerEndpoint();
+        endpoint.setBean(bean);
+        endpoint.setMethod(method);
+        endpoint.setMessageHandlerMethodFactory(handlerMethodFactory);
+
+        return endpoint;
+    }
+
+    private SimpleRabbitListenerEndpoint batchEndpoint(Object bean, Method method, Method handler, ListenerContainerSettings settings) {
+        boolean takesPayloads = handler.getParameterCount() == 1 && List.class.equals(handler.getParameterTypes()[0]);
+        boolean returnsReplies = void.class.equals(method.getReturnType()) ?
+                void.class.equals(handler.getReturnType()) : List.class.isAssignableFrom(handler.getReturnType());
+        if (!takesPayloads || !returnsReplies) {
+            throw new IllegalStateException(String.format("The batch handler %s must take a List of %s payloads and return a List of their replies.",
+                    handler, method.getName()));
+        }
+        if (settings.getBatchSize() == null) {
+            throw new IllegalStateException(String.format("The batch handler %s requires the batchSize of the service or of %s.%s.",
+                    handler, method.getDeclaringClass().getName(), method.getName()));
+        }
+
+        RabbitBatchHandler batchHandler = AnnotatedElementUtils.findMergedAnnotation(handler, RabbitBatchHandler.class);
+        int maxWait = parseInteger(propertiesResolver.replaceIfProperty(batchHandler.maxWait()), "maxWait");
+        if (maxWait <= 0) {
+            throw new IllegalStateException(String.format("The maxWait of the batch handler %s must be positive.", handler));
+        }
+        MessageConverter converter = beanFactory.getBeanProvider(MessageConverter.class).getIfUnique(SimpleMessageConverter::new);
+
+        SimpleRabbitListenerEndpoint endpoint = new SimpleRabbitListenerEndpoint();
+        endpoint.setMessageListener(new BatchingMessageListener(bean, handler, converter, settings.getBatchSize(), maxWait));
+
+        return endpoint;
+    }
+
+    /**
+     * The batches are acknowledged by the listener, and the prefetch count is raised to fit two batches unless set explicitly,
+     * so that the next batch is already delivered while the handler runs.
+     */
+    private ListenerContainerSettings batchSettings(ListenerContainerSettings settings) {
+        int batchSize = settings.getBatchSize();
+        int prefetch = settings.getPrefetch() != null ? Math.max(settings.getPrefetch(), batchSize) : 2 * batchSize;
+
+        return new ListenerContainerSettings(settings.getConcurrency(), prefetch, null, AcknowledgeMode.MANUAL);
+    }
+
+    /**
+     * A batch consumer handles the batches on its own thread, so each consumer gets a container of its own.
+     */
+    private int getMaxConsumers(ListenerContainerSettings settings) {
+        String concurrency = settings.getConcurrency();
+        if (concurrency == null) {
+            return 1;
+        }
+
+        return parseInteger(concurrency.substring(concurrency.indexOf('-') + 1).trim(), "concurrency");
+    }
+
+    /**
+     * @return the batch handlers by the {@link ClientReflection#signature(Method) signatures} of the interface methods they handle
+     */
+    private Map<String, Method> getBatchHandlers(Class<?> targetClass, List<Class<?>> clientInterfaces) {
+        Map<Method, RabbitBatchHandler> handlers = MethodIntrospector.selectMethods(targetClass,
+                (MethodIntrospector.MetadataLookup<RabbitBatchHandler>) method -> AnnotatedElementUtils.findMergedAnnotation(method, RabbitBatchHandler.class));
+
+        Map<String, Method> handlersBySignature = new HashMap<>();
+        handlers.forEach((handler, annotation) -> {
+            String signature = ClientReflection.signature(getBatchedMethod(handler, annotation.value(), clientInterfaces));
+            Method previous = handlersBySignature.putIfAbsent(signature, handler);
+            if (previous != null) {
+                throw new IllegalStateException(String.format("The batch handlers %s and %s handle the same method.", previous, handler));
+            }
+        });
+
+        return handlersBySignature;
+    }
+
+    /**
+     * The overloads of a method are told apart by the payloads the handler takes.
+     */
+    private Method getBatchedMethod(Method handler, String methodName, List<Class<?>> clientInterfaces) {
+        List<Method> methods = clientInterfaces.stream()
+                .flatMap(clientInterface -> Stream.of(clientInterface.getDeclaredMethods()))
+                .filter(method -> method.getName().equals(methodName))
+                .collect(Collectors.toList());
+        if (methods.size() > 1) {
+            Class<?> payloadType = ResolvableType.forMethodParameter(handler, 0).getGeneric(0).resolve(Object.class);
+            methods = methods.stream()
+                    .filter(method -> Stream.of(method.getParameterTypes()).anyMatch(type -> ClassUtils.resolvePrimitiveIfNecessary(type) == payloadType))
+                    .collect(Collectors.toList());
+        }
+
+        if (methods.isEmpty()) {
+            throw new IllegalStateException(String.format("The batch handler %s doesn't match any @RabbitClient interface method.", handler));
+        }
+        if (methods.size() > 1) {
+            throw new IllegalStateException(String.format("The batch handler %s matches several overloads of %s, taking the same payload.",
+                    handler, methodName));
+        }
+
+        return methods.get(0);
+    }
+
+    private synchronized ChunkAssembler getChunkAssembler() {
+        if (chunkAssembler == null) {
+            chunkAssembler = beanFactory.getBeanProvider(ChunkAssembler.class).getIfUnique();
+            if (chunkAssembler == null) {
+                chunkAssembler = new ChunkAssembler();
+                ownsChunkAssembler = true;
+            }
+        }
+        return chunkAssembler;
+    }
+
+    private String getQueue(Method method, RabbitClientMetadata metadata) {
+        if (metadata.isRoutedPerCall() || metadata.getRoutingKey() == null) {
+            throw new IllegalStateException(String.format("%s.%s can't be exposed by a @RabbitService, since its routing key is not static.",
+                    method.getDeclaringClass().getName(), method.getName()));
+        }
+
+        return metadata.getRoutingKey();
+    }
+
+    private ListenerContainerSettings getSettings(RabbitService rabbitService, RabbitSender rabbitSender) {
+        return new ListenerContainerSettings(
+                attribute(rabbitService.concurrency(), rabbitSender != null ? rabbitSender.concurrency() : null),
+                parseInteger(attribute(rabbitService.prefetch(), rabbitSender != null ? rabbitSender.prefetch() : null), "prefetch"),
+                parseInteger(attribute(rabbitService.batchSize(), rabbitSender != null ? rabbitSender.batchSize() : null), "batchSize")
+        );
+    }
+
+    private RabbitListenerContainerFactory<?> getContainerFactory(RabbitService rabbitService, ListenerContainerSettings settings) {
+        String beanName = propertiesResolver.replaceIfProperty(rabbitService.containerFactory());
+        if (beanName == null || beanName.isEmpty()) {
+            beanName = RabbitListenerAnnotationBeanPostProcessor.DEFAULT_RABBIT_LISTENER_CONTAINER_FACTORY_BEAN_NAME;
+        }
+        RabbitListenerContainerFactory<?> containerFactory = beanFactory.getBean(beanName, RabbitListenerContainerFactory.class);
+
+        return settings.isContainerTuned() ? new TunedListenerContainerFactory(containerFactory, settings) : containerFactory;
+    }
+
+    private String attribute(String serviceLevel, String methodLevel) {
+        String value = methodLevel != null && !methodLevel.isEmpty() ? methodLevel : serviceLevel;
+        String resolved = propertiesResolver.replaceIfProperty(value);
+
+        return resolved != null && !resolved.trim().isEmpty() ? resolved.trim() : null;
+    }
+
+    private Integer parseInteger(String value, String attributeName) {
+        if (value == null) {
+            return null;
+        }
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException(String.format("The value of %s must be a number, while \"%s\" was specified.",
+                    attributeName, value), e);
+        }
+    }
+
+    private String uniqueId(Set<String> endpointIds, String id) {
+        String uniqueId = id;
+        for (int i = 1; !endpointIds.add(uniqueId); i++) {
+            uniqueId = id + "#" + i;
+        }
+
+        return uniqueId;
+    }
+}
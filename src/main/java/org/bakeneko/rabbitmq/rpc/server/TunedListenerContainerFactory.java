@@ -0,0 +1,57 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.server;
+
+import org.springframework.amqp.rabbit.listener.AbstractMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+
+/**
+ * Creates the listener containers through another {@link RabbitListenerContainerFactory}, overriding the prefetch count,
+ * the batch size and the acknowledge mode of the created containers - the settings which, unlike the concurrency, can't be set on the endpoint.
+ * The batch size only applies to {@link SimpleMessageListenerContainer}s, where it's the number of messages acknowledged together.
+ *
+ * @author Ivan Sergienko
+ */
+public class TunedListenerContainerFactory implements RabbitListenerContainerFactory<MessageListenerContainer> {
+    private final RabbitListenerContainerFactory<?> delegate;
+    private final ListenerContainerSettings settings;
+
+    public TunedListenerContainerFactory(RabbitListenerContainerFactory<?> delegate, ListenerContainerSettings settings) {
+        this.delegate = delegate;
+        this.settings = settings;
+    }
+
+    @Override
+    public MessageListenerContainer createListenerContainer(RabbitListenerEndpoint endpoint) {
+        MessageListenerContainer container = delegate.createListenerContainer(endpoint);
+
+        if (settings.getPrefetch() != null && container instanceof AbstractMessageListenerContainer) {
+            ((AbstractMessageListenerContainer) container).setPrefetchCount(settings.getPrefetch());
+        }
+        if (settings.getBatchSize() != null && container instanceof SimpleMessageListenerContainer) {
+            ((SimpleMessageListenerContainer) container).setTxSize(settings.getBatchSize());
+        }
+        if (settings.getAcknowledgeMode() != null && container instanceof AbstractMessageListenerContainer) {
+            ((AbstractMessageListenerContainer) container).setAcknowledgeMode(settings.getAcknowledgeMode());
+        }
+
+        return container;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bakeneko.rabbitmq.rpc.local.LocalRabbitListenerRegistry;
+import org.bakeneko.rpc.test.service.TestClient;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.type.StandardAnnotationMetadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ivan Sergienko
+ */
+public class RabbitClientRegistrarTest {
+    private static final Log logger = LogFactory.getLog(RabbitClientRegistrarTest.class);
+    private static final String INDEX_LOCATION = "META-INF/spring.components";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void clientsAreLookedUpInTheIndex() throws Exception {
+        assertTrue(registerClients(getClass().getClassLoader()).size() > 1);
+
+        ClassLoader indexed = indexed(Collections.singleton(TestClient.class.getName()));
+        assertEquals(Collections.singleton(TestClient.class.getName()), registerClients(indexed));
+    }
+
+    @Test
+    public void indexAndScanningFindTheSameClients() throws Exception {
+        long start = System.nanoTime();
+        Set<String> scanned = registerClients(getClass().getClassLoader());
+        long scanningMicros = (System.nanoTime() - start) / 1000;
+
+        ClassLoader indexed = indexed(scanned);
+        start = System.nanoTime();
+        Set<String> fromIndex = registerClients(indexed);
+        long indexMicros = (System.nanoTime() - start) / 1000;
+
+        assertEquals(scanned, fromIndex);
+        logger.info(String.format("Registered %d clients in %d us scanning the classpath and in %d us reading the index.",
+                scanned.size(), scanningMicros, indexMicros));
+    }
+
+    @Test
+    public void localListenersAreOnlyCollectedForLocalDispatch() throws Exception {
+        DefaultListableBeanFactory registry = register(getClass().getClassLoader());
+        assertTrue(registry.containsBeanDefinition(LocalRabbitListenerRegistry.class.getName()));
+
+        registry = register(indexed(Collections.singleton(TestClient.class.getName())));
+        assertFalse(registry.containsBeanDefinition(LocalRabbitListenerRegistry.class.getName()));
+    }
+
+    @Test
+    public void onlyClientsDeclaredPrimaryArePrimary() {
+        DefaultListableBeanFactory registry = register(getClass().getClassLoader());
+
+        assertTrue(registry.getBeanDefinition("testService").isPrimary());
+        assertFalse(registry.getBeanDefinition("testClient").isPrimary());
+    }
+
+    private Set<String> registerClients(ClassLoader classLoader) {
+        DefaultListableBeanFactory registry = register(classLoader);
+
+        Set<String> clients = new TreeSet<>();
+        for (String beanName : registry.getBeanDefinitionNames()) {
+            BeanDefinition definition = registry.getBeanDefinition(beanName);
+            if ("forType".equals(definition.getFactoryMethodName())) {
+                clients.add(definition.getBeanClassName());
+            }
+        }
+        return clients;
+    }
+
+    private DefaultListableBeanFactory register(ClassLoader classLoader) {
+        DefaultListableBeanFactory registry = new DefaultListableBeanFactory();
+        RabbitClientRegistrar registrar = new RabbitClientRegistrar();
+        registrar.setBeanClassLoader(classLoader);
+        registrar.setResourceLoader(new DefaultResourceLoader(classLoader));
+        registrar.setEnvironment(new StandardEnvironment());
+        registrar.registerBeanDefinitions(new StandardAnnotationMetadata(ClientsConfiguration.class, true), registry);
+
+        return registry;
+    }
+
+    private ClassLoader indexed(Collection<String> clients) throws IOException {
+        File index = folder.newFile();
+        Files.write(index.toPath(), clients.stream()
+                .map(client -> client + "=" + RabbitClient.class.getName())
+                .collect(Collectors.toList()));
+        URL indexUrl = index.toURI().toURL();
+
+        return new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            public Enumeration<URL> getResources(String name) throws IOException {
+                return INDEX_LOCATION.equals(name) ? Collections.enumeration(Collections.singleton(indexUrl)) : super.getResources(name);
+            }
+        };
+    }
+
+    @EnableRabbitRPC("org.bakeneko.rpc.test")
+    static class ClientsConfiguration {
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.buffer;
+
+import org.bakeneko.rpc.test.model.TestRequest;
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.core.ParameterizedTypeReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Ivan Sergienko
+ */
+public class BufferPoolTest {
+
+    @Test
+    public void buffersAreReused() {
+        BufferPool pool = new BufferPool(64 * 1024, 4);
+        byte[] buffer = pool.acquire(3000);
+        assertEquals(4096, buffer.length);
+        assertEquals(0, pool.getHits());
+        assertEquals(1, pool.getMisses());
+
+        pool.release(buffer);
+        assertEquals(4096, pool.getRetainedBytes());
+        assertSame(buffer, pool.acquire(2049));
+        assertEquals(1, pool.getHits());
+        assertEquals(0, pool.getRetainedBytes());
+        assertNotSame(buffer, pool.acquire(4096));
+    }
+
+    @Test
+    public void retainedMemoryIsBounded() {
+        BufferPool pool = new BufferPool(64 * 1024, 4);
+        for (int size = BufferPool.MIN_BUFFER_SIZE; size <= pool.getMaxBufferSize(); size *= 2) {
+            for (int i = 0; i < 2 * pool.getSlots(); i++) {
+                pool.release(new byte[size]);
+            }
+        }
+
+        assertEquals(4L * (128 * 1024 - 1024), pool.getMaxRetainedBytes());
+        assertEquals(pool.getMaxRetainedBytes(), pool.getRetainedBytes());
+    }
+
+    @Test
+    public void oversizedBuffersAreNotPooled() {
+        BufferPool pool = new BufferPool(64 * 1024, 4);
+        byte[] buffer = pool.acquire(100_000);
+        assertEquals(100_000, buffer.length);
+
+        pool.release(buffer);
+        assertNotSame(buffer, pool.acquire(100_000));
+        assertEquals(2, pool.getMisses());
+    }
+
+    @Test
+    public void streamsGrowThroughTheSizeClasses() {
+        BufferPool pool = new BufferPool(64 * 1024, 4);
+        byte[] data = new byte[10_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+
+        PooledByteArrayOutputStream out = pool.outputStream();
+        out.write(data, 0, 5000);
+        out.write(data, 5000, 5000);
+        assertArrayEquals(data, out.toByteArray());
+        out.release();
+
+        PooledByteArrayOutputStream reused = pool.outputStream();
+        reused.write(data, 0, data.length);
+        assertArrayEquals(data, reused.toByteArray());
+        reused.release();
+        assertEquals(2, pool.getHits());
+    }
+
+    @Test
+    public void pooledConverterWritesTheSameMessages() {
+        Jackson2JsonMessageConverter converter = new Jackson2JsonMessageConverter();
+        PooledJackson2JsonMessageConverter pooledConverter = new PooledJackson2JsonMessageConverter();
+        TestRequest request = new TestRequest("data");
+
+        Message expected = converter.toMessage(request, new MessageProperties());
+        Message message = pooledConverter.toMessage(request, new MessageProperties());
+
+        assertArrayEquals(expected.getBody(), message.getBody());
+        assertEquals(expected.getMessageProperties().getContentType(), message.getMessageProperties().getContentType());
+        assertEquals(expected.getMessageProperties().getContentEncoding(), message.getMessageProperties().getContentEncoding());
+        assertEquals(expected.getMessageProperties().getHeaders(), message.getMessageProperties().getHeaders());
+        assertEquals(request, pooledConverter.fromMessage(message, new ParameterizedTypeReference<TestRequest>() {
+        }));
+    }
+}
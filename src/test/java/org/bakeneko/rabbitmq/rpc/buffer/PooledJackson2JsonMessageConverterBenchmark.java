@@ -0,0 +1,94 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.buffer;
+
+import org.bakeneko.rpc.test.model.TestRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the serialization of a request by {@link Jackson2JsonMessageConverter} and by {@link PooledJackson2JsonMessageConverter},
+ * from several threads at once. Run with the GC profiler, the {@code gc.alloc.rate.norm} metric is the number of bytes allocated per call.
+ * <p>
+ * Not a part of the test suite, run it with {@link #main(String[])}.
+ *
+ * @author Ivan Sergienko
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(8)
+public class PooledJackson2JsonMessageConverterBenchmark {
+
+    @Param({"256", "16384", "262144"})
+    private int payloadSize;
+
+    private Jackson2JsonMessageConverter converter;
+    private PooledJackson2JsonMessageConverter pooledConverter;
+    private TestRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        converter = new Jackson2JsonMessageConverter();
+        pooledConverter = new PooledJackson2JsonMessageConverter();
+        StringBuilder data = new StringBuilder(payloadSize);
+        for (int i = 0; i < payloadSize; i++) {
+            data.append((char) ('a' + i % 26));
+        }
+        request = new TestRequest(data.toString());
+    }
+
+    @Benchmark
+    public Message jackson2JsonMessageConverter() {
+        return converter.toMessage(request, new MessageProperties());
+    }
+
+    @Benchmark
+    public Message pooledJackson2JsonMessageConverter() {
+        return pooledConverter.toMessage(request, new MessageProperties());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PooledJackson2JsonMessageConverterBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.chunk;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Pipe;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ivan Sergienko
+ */
+public class ChunkAssemblerTest {
+    private ChunkAssembler assembler;
+
+    @After
+    public void close() {
+        assembler.close();
+    }
+
+    @Test
+    public void chunksAreReassembledInAnyOrder() {
+        assembler = new ChunkAssembler();
+        Message message = message(10_000);
+        List<Message> chunks = new ArrayList<>(ChunkedTransfer.split(message, 1024));
+        assertEquals(10, chunks.size());
+        chunks.get(chunks.size() - 1).getMessageProperties().setReplyTo("amq.rabbitmq.reply-to");
+        Collections.reverse(chunks);
+
+        Message assembled = null;
+        for (Message chunk : chunks) {
+            assertNull(assembled);
+            assembled = assembler.add(chunk);
+        }
+
+        assertArrayEquals(message.getBody(), assembled.getBody());
+        assertEquals("amq.rabbitmq.reply-to", assembled.getMessageProperties().getReplyTo());
+        assertEquals("value", assembled.getMessageProperties().getHeaders().get("header"));
+        assertFalse(ChunkedTransfer.isChunk(assembled));
+        assertEquals(0, assembler.getBufferedBytes());
+        assertEquals(0, assembler.getTransfers());
+    }
+
+    @Test
+    public void streamsAreReassembled() throws Exception {
+        assembler = new ChunkAssembler();
+        Message message = message(10_000);
+        List<Message> chunks = new ArrayList<>();
+        chunks.add(ChunkedTransfer.stream(new ByteArrayInputStream(message.getBody()), message.getMessageProperties(), 1024, chunks::add));
+        assertEquals(10, chunks.size());
+        Collections.shuffle(chunks);
+
+        Message assembled = null;
+        for (Message chunk : chunks) {
+            assertNull(assembled);
+            assembled = assembler.add(chunk);
+        }
+
+        assertArrayEquals(message.getBody(), assembled.getBody());
+        assertEquals("value", assembled.getMessageProperties().getHeaders().get("header"));
+        assertEquals(0, assembler.getTransfers());
+    }
+
+    @Test
+    public void filesAreStreamed() throws Exception {
+        assembler = new ChunkAssembler();
+        Message message = message(4000);
+        Path file = Files.createTempFile("chunks", ".bin");
+        try {
+            Files.write(file, message.getBody());
+            List<Message> chunks = new ArrayList<>();
+            Message last = ChunkedTransfer.stream(file, message.getMessageProperties(), 1024, chunks::add);
+            assertEquals(3, chunks.size());
+            assertEquals(4000 - 3 * 1024, last.getBody().length);
+
+            for (Message chunk : chunks) {
+                assertNull(assembler.add(chunk));
+            }
+            assertArrayEquals(message.getBody(), assembler.add(last).getBody());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonBlockingChannelsAreRejected() throws Exception {
+        assembler = new ChunkAssembler();
+        Pipe pipe = Pipe.open();
+        try {
+            pipe.source().configureBlocking(false);
+            ChunkedTransfer.stream(pipe.source(), new MessageProperties(), 1024, chunk -> fail("A non-blocking channel must not be read"));
+        } finally {
+            pipe.source().close();
+            pipe.sink().close();
+        }
+    }
+
+    @Test
+    public void emptyStreamsAreSentAsOneChunk() throws Exception {
+        assembler = new ChunkAssembler();
+        Message last = ChunkedTransfer.stream(new ByteArrayInputStream(new byte[0]), new MessageProperties(), 1024,
+                chunk -> fail("An empty stream has no leading chunks"));
+
+        assertEquals(0, assembler.add(last).getBody().length);
+    }
+
+    @Test
+    public void smallMessagesAreNotSplit() {
+        assembler = new ChunkAssembler();
+        Message message = message(100);
+
+        assertSame(message, ChunkedTransfer.split(message, 100).get(0));
+    }
+
+    @Test
+    public void transfersExceedingTheBufferFail() {
+        assembler = new ChunkAssembler(4096, ChunkAssembler.DEFAULT_TIMEOUT_MILLIS);
+        List<Message> first = ChunkedTransfer.split(message(3072), 1024);
+        List<Message> second = ChunkedTransfer.split(message(3072), 1024);
+
+        assertNull(assembler.add(first.get(0)));
+        assertNull(assembler.add(first.get(1)));
+        assertNull(assembler.add(second.get(0)));
+        assertNull(assembler.add(second.get(1)));
+        try {
+            assembler.add(first.get(2));
+            fail("The chunk must not fit into the buffer");
+        } catch (AmqpRejectAndDontRequeueException e) {
+            assertEquals(2048, assembler.getBufferedBytes());
+        }
+        assertEquals(3072, assembler.add(second.get(2)).getBody().length);
+        try {
+            assembler.add(first.get(0));
+            fail("The chunks of a failed transfer must be rejected");
+        } catch (AmqpRejectAndDontRequeueException e) {
+            assertEquals(0, assembler.getBufferedBytes());
+        }
+    }
+
+    @Test
+    public void transfersKnownToExceedTheBufferFailRightAway() {
+        assembler = new ChunkAssembler(2048, ChunkAssembler.DEFAULT_TIMEOUT_MILLIS);
+        List<Message> chunks = ChunkedTransfer.split(message(4096), 1024);
+
+        try {
+            assembler.add(chunks.get(1));
+            fail("The transfer must not fit into the buffer");
+        } catch (AmqpRejectAndDontRequeueException e) {
+            assertEquals(0, assembler.getBufferedBytes());
+        }
+    }
+
+    @Test
+    public void transfersExceedingMessageSizeFailRightAway() {
+        assembler = new ChunkAssembler(Long.MAX_VALUE, ChunkAssembler.DEFAULT_TIMEOUT_MILLIS);
+        Message chunk = ChunkedTransfer.split(message(2048), 1024).get(0);
+        chunk.getMessageProperties().setHeader(ChunkedTransfer.CHUNK_COUNT, 3 * 1024 * 1024);
+
+        try {
+            assembler.add(chunk);
+            fail("The transfer must not fit into a message");
+        } catch (AmqpRejectAndDontRequeueException e) {
+            assertEquals(0, assembler.getBufferedBytes());
+        }
+    }
+
+    @Test
+    public void incompleteTransfersTimeOut() throws Exception {
+        assembler = new ChunkAssembler(ChunkAssembler.DEFAULT_MAX_BUFFERED_BYTES, 10);
+        assertNull(assembler.add(ChunkedTransfer.split(message(4096), 1024).get(0)));
+        assertEquals(1024, assembler.getBufferedBytes());
+
+        for (int i = 0; i < 50 && assembler.getTransfers() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, assembler.getTransfers());
+        assertEquals(0, assembler.getBufferedBytes());
+    }
+
+    private Message message(int size) {
+        byte[] body = new byte[size];
+        for (int i = 0; i < size; i++) {
+            body[i] = (byte) i;
+        }
+        MessageProperties properties = new MessageProperties();
+        properties.setHeader("header", "value");
+
+        return new Message(body, properties);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.factory;
+
+import org.bakeneko.rabbitmq.rpc.RabbitClient;
+import org.bakeneko.rabbitmq.rpc.RabbitSender;
+import org.bakeneko.rabbitmq.rpc.RoutingKey;
+import org.junit.Test;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.Payload;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Ivan Sergienko
+ */
+public class ClientReflectionTest {
+
+    @Test
+    public void reflectionIsCached() throws NoSuchMethodException {
+        Method method = Client.class.getMethod("send", String.class, String.class, String.class);
+
+        assertSame(ClientReflection.of(Client.class), ClientReflection.of(Client.class));
+        assertSame(ClientReflection.of(method), ClientReflection.of(method));
+        assertSame(ClientReflection.of(method), ClientReflection.of(Client.class.getMethod("send", String.class, String.class, String.class)));
+
+        ClientReflection.MethodReflection reflection = ClientReflection.of(method);
+        assertEquals(Integer.valueOf(0), reflection.getPayloadParameterIndex());
+        assertEquals(Collections.singletonMap("id", 1), reflection.getHeaderParameterIndexByName());
+        assertEquals(Integer.valueOf(2), reflection.getRoutingKeyParameterIndex());
+        assertEquals("${prefix}.{}", reflection.getRoutingKeyTemplate());
+    }
+
+    @Test
+    public void propertiesAreResolvedPerProcessor() throws NoSuchMethodException {
+        RabbitClientAnnotationProcessor first = new RabbitClientAnnotationProcessorImpl(resolver("first", "one"), Collections.emptyMap());
+        RabbitClientAnnotationProcessor second = new RabbitClientAnnotationProcessorImpl(resolver("second", "two"), Collections.emptyMap());
+        String signature = ClientReflection.signature(Client.class.getMethod("send", String.class, String.class, String.class));
+
+        Map<String, RabbitClientMetadata> firstMetadata = first.readMetadata(Client.class);
+        Map<String, RabbitClientMetadata> secondMetadata = second.readMetadata(Client.class);
+        Object[] args = {"payload", "1", "key"};
+
+        assertEquals("first", firstMetadata.get(signature).getExchange());
+        assertEquals("one.key", firstMetadata.get(signature).getRoutingKey(args));
+        assertEquals("second", secondMetadata.get(signature).getExchange());
+        assertEquals("two.key", secondMetadata.get(signature).getRoutingKey(args));
+    }
+
+    @Test
+    public void signaturesOfObjectMethodsAreNotValidated() throws NoSuchMethodException {
+        Method toString = Object.class.getMethod("toString");
+
+        assertEquals(ReflectionUtils.methodNameSignatureAware(toString), ClientReflection.signature(toString));
+    }
+
+    private static PropertiesResolver resolver(String exchange, String prefix) {
+        // like PropertiesResolverImpl, passes the unset (null) attributes through
+        return value -> value != null ? value.replace("${exchange}", exchange).replace("${prefix}", prefix) : null;
+    }
+
+    @RabbitClient(exchange = "${exchange}")
+    interface Client {
+        @RabbitSender
+        void send(@Payload String payload, @Header("id") String id, @RoutingKey("${prefix}.{}") String key);
+    }
+}
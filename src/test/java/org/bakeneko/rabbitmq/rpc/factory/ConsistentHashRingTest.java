@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.factory;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ivan Sergienko
+ */
+public class ConsistentHashRingTest {
+    private static final int KEYS = 10_000;
+
+    @Test
+    public void sameKeyAlwaysMapsToSameShard() {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("a", "b", "c"));
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(ring.shardFor("entity-" + i), new ConsistentHashRing(Arrays.asList("a", "b", "c")).shardFor("entity-" + i));
+        }
+    }
+
+    @Test
+    public void spreadsKeysEvenly() {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("0", "1", "2", "3"));
+        Map<String, Integer> keysByShard = new HashMap<>();
+
+        for (int i = 0; i < KEYS; i++) {
+            keysByShard.merge(ring.shardFor(i), 1, Integer::sum);
+        }
+
+        assertEquals(4, keysByShard.size());
+        keysByShard.values().forEach(count -> assertTrue("Unbalanced shard: " + count, count > KEYS / 4 * 0.75 && count < KEYS / 4 * 1.25));
+    }
+
+    @Test
+    public void addingShardMovesOnlyItsShareOfKeys() {
+        ConsistentHashRing before = new ConsistentHashRing(Arrays.asList("0", "1", "2", "3"));
+        ConsistentHashRing after = new ConsistentHashRing(Arrays.asList("0", "1", "2", "3", "4"));
+        int moved = 0;
+
+        for (int i = 0; i < KEYS; i++) {
+            String shard = after.shardFor(i);
+            if (!shard.equals(before.shardFor(i))) {
+                assertEquals("4", shard);
+                moved++;
+            }
+        }
+
+        assertTrue("Too many keys moved: " + moved, moved < KEYS / 5 * 1.25);
+    }
+}
@@ -16,24 +16,42 @@
 
 package org.bakeneko.rabbitmq.rpc.factory;
 
+import org.bakeneko.rabbitmq.rpc.Exchange;
+import org.bakeneko.rabbitmq.rpc.RabbitCircuitBreaker;
 import org.bakeneko.rabbitmq.rpc.RabbitClient;
+import org.bakeneko.rabbitmq.rpc.RabbitOutbox;
+import org.bakeneko.rabbitmq.rpc.RabbitRetry;
 import org.bakeneko.rabbitmq.rpc.RabbitSender;
+import org.bakeneko.rabbitmq.rpc.RoutingKey;
+import org.bakeneko.rabbitmq.rpc.ShardKey;
+import org.bakeneko.rabbitmq.rpc.outbox.OutboxSettings;
+import org.bakeneko.rabbitmq.rpc.policy.CircuitBreakerSettings;
+import org.bakeneko.rabbitmq.rpc.policy.HedgingSettings;
+import org.bakeneko.rabbitmq.rpc.policy.RetrySettings;
 import org.bakeneko.rpc.test.model.TestRequest;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.amqp.AmqpException;
 import org.springframework.amqp.core.MessagePostProcessor;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Headers;
 import org.springframework.messaging.handler.annotation.Payload;
 
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
 
 /**
  * @author Ivan Sergienko
@@ -122,6 +140,206 @@ public class RabbitClientAnnotationProcessorImplTest {
         assertEquals(headers, metadata.getHeaders(args));
     }
 
+    @Test
+    public void readMetadata_in_flight_limits() throws NoSuchMethodException {
+        Map<String, RabbitClientMetadata> metadataByMethod = annotationProcessor.readMetadata(InFlightLimitedClient.class);
+
+        RabbitClientMetadata inheritedTimeout = metadataByMethod.get(ReflectionUtils.methodNameSignatureAware(InFlightLimitedClient.class.getMethod("inheritedTimeout", String.class)));
+        assertEquals(10, inheritedTimeout.getClientInFlightLimit().getMaxInFlight());
+        assertEquals(100, inheritedTimeout.getClientInFlightLimit().getTimeoutMillis());
+        assertEquals(2, inheritedTimeout.getInFlightLimit().getMaxInFlight());
+        assertEquals(100, inheritedTimeout.getInFlightLimit().getTimeoutMillis());
+
+        RabbitClientMetadata failFast = metadataByMethod.get(ReflectionUtils.methodNameSignatureAware(InFlightLimitedClient.class.getMethod("failFast", String.class)));
+        assertEquals(1, failFast.getInFlightLimit().getMaxInFlight());
+        assertEquals(0, failFast.getInFlightLimit().getTimeoutMillis());
+
+        RabbitClientMetadata unlimited = metadataByMethod.get(ReflectionUtils.methodNameSignatureAware(InFlightLimitedClient.class.getMethod("unlimited", String.class)));
+        assertEquals(10, unlimited.getClientInFlightLimit().getMaxInFlight());
+        assertFalse(unlimited.getInFlightLimit().isLimited());
+    }
+
+    @Test
+    public void readMetadata_adaptive_concurrency() throws NoSuchMethodException {
+        Map<String, RabbitClientMetadata> metadataByMethod = annotationProcessor.readMetadata(AdaptiveConcurrencyClient.class);
+
+        assertTrue(metadataByMethod.get(ReflectionUtils.methodNameSignatureAware(AdaptiveConcurrencyClient.class.getMethod("inherited", String.class))).isAdaptiveConcurrency());
+        assertFalse(metadataByMethod.get(ReflectionUtils.methodNameSignatureAware(AdaptiveConcurrencyClient.class.getMethod("disabled", String.class))).isAdaptiveConcurrency());
+    }
+
+    @Test
+    public void readMetadata_hedging() throws NoSuchMethodException {
+        Map<String, RabbitClientMetadata> metadataByMethod = annotationProcessor.readMetadata(HedgingClient.class);
+
+        HedgingSettings fixed = metadataByMethod.get(ReflectionUtils.methodNameSignatureAware(HedgingClient.class.getMethod("fixed", String.class))).getHedging();
+        assertEquals(50, fixed.getDelayMillis());
+        assertEquals(HedgingSettings.DEFAULT_BUDGET_PERCENT, fixed.getBudgetPercent());
+
+        HedgingSettings percentile = metadataByMethod.get(ReflectionUtils.methodNameSignatureAware(HedgingClient.class.getMethod("percentile", String.class))).getHedging();
+        assertTrue(percentile.isPercentileBased());
+        assertEquals(99.5, percentile.getPercentile(), 0);
+        assertEquals(5, percentile.getBudgetPercent());
+
+        assertFalse(metadataByMethod.get(ReflectionUtils.methodNameSignatureAware(HedgingClient.class.getMethod("none", String.class))).getHedging().isEnabled());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readMetadata_invalid_hedging_percentile() {
+        annotationProcessor.readMetadata(InvalidHedgingClient.class);
+    }
+
+    @Test
+    public void readMetadata_circuit_breaker() throws NoSuchMethodException {
+        Map<String, RabbitClientMetadata> metadataByMethod = annotationProcessor.readMetadata(CircuitBreakerClient.class);
+
+        CircuitBreakerSettings inherited = metadataByMethod.get(ReflectionUtils.methodNameSignatureAware(CircuitBreakerClient.class.getMethod("inherited", String.class))).getCircuitBreaker();
+        assertTrue(inherited.isEnabled());
+        assertEquals(25, inherited.getFailureRateThreshold());
+        assertEquals(CircuitBreakerSettings.DEFAULT_SLIDING_WINDOW_SIZE, inherited.getSlidingWindowSize());
+
+        CircuitBreakerSettings overridden = metadataByMethod.get(ReflectionUtils.methodNameSignatureAware(CircuitBreakerClient.class.getMethod("overridden", String.class))).getCircuitBreaker();
+        assertEquals(25, overridden.getFailureRateThreshold());
+        assertEquals(10, overridden.getSlidingWindowSize());
+
+        assertFalse(metadataByMethod.get(ReflectionUtils.methodNameSignatureAware(CircuitBreakerClient.class.getMethod("disabled", String.class))).getCircuitBreaker().isEnabled());
+        assertFalse(annotationProcessor.readMetadata(HeaderMapClient.class).values().iterator().next().getCircuitBreaker().isEnabled());
+    }
+
+    @Test
+    public void readMetadata_retry() throws NoSuchMethodException {
+        Map<String, RabbitClientMetadata> metadataByMethod = annotationProcessor.readMetadata(RetryClient.class);
+
+        RetrySettings inherited = metadataByMethod.get(ReflectionUtils.methodNameSignatureAware(RetryClient.class.getMethod("inherited", String.class))).getRetry();
+        assertEquals(3, inherited.getMaxAttempts());
+        assertEquals(50, inherited.getInitialBackoffMillis());
+        assertEquals(RetrySettings.DEFAULT_RETRY_ON, inherited.getRetryOn());
+
+        RetrySettings overridden = metadataByMethod.get(ReflectionUtils.methodNameSignatureAware(RetryClient.class.getMethod("overridden", String.class))).getRetry();
+        assertEquals(5, overridden.getMaxAttempts());
+        assertEquals(50, overridden.getInitialBackoffMillis());
+        assertEquals(Collections.singletonList(AmqpException.class), overridden.getRetryOn());
+
+        assertFalse(metadataByMethod.get(ReflectionUtils.methodNameSignatureAware(RetryClient.class.getMethod("disabled", String.class))).getRetry().isEnabled());
+        assertFalse(metadataByMethod.get(ReflectionUtils.methodNameSignatureAware(RetryClient.class.getMethod("streamed", InputStream.class))).getRetry().isEnabled());
+        assertTrue(metadataByMethod.get(ReflectionUtils.methodNameSignatureAware(RetryClient.class.getMethod("file", Path.class))).getRetry().isEnabled());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readMetadata_retry_of_streamed_payload() {
+        annotationProcessor.readMetadata(StreamedRetryClient.class);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readMetadata_hedging_of_streamed_payload() {
+        annotationProcessor.readMetadata(StreamedHedgingClient.class);
+    }
+
+    @Test
+    public void readMetadata_template_settings() {
+        RabbitTemplateSettings templateSettings = annotationProcessor.readMetadata(DedicatedTemplateClient.class).values().iterator().next().getTemplateSettings();
+        assertEquals("customTemplate", templateSettings.getRabbitTemplate());
+        assertFalse(templateSettings.isIsolated());
+
+        assertTrue(annotationProcessor.readMetadata(HeaderMapClient.class).values().iterator().next().getTemplateSettings().isDefault());
+    }
+
+    @Test
+    public void readMetadata_priority() throws NoSuchMethodException {
+        Map<String, RabbitClientMetadata> metadataByMethod = annotationProcessor.readMetadata(PriorityClient.class);
+
+        assertEquals(Integer.valueOf(9), metadataByMethod.get(ReflectionUtils.methodNameSignatureAware(PriorityClient.class.getMethod("interactive", String.class))).getPriority());
+        assertNull(metadataByMethod.get(ReflectionUtils.methodNameSignatureAware(PriorityClient.class.getMethod("bulk", String.class))).getPriority());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readMetadata_invalid_priority() {
+        annotationProcessor.readMetadata(InvalidPriorityClient.class);
+    }
+
+    @Test
+    public void readMetadata_reply_consumers() {
+        assertEquals(Integer.valueOf(4), annotationProcessor.readMetadata(MultiplexedRepliesClient.class).values().iterator().next().getReplyConsumers());
+        assertNull(annotationProcessor.readMetadata(HeaderMapClient.class).values().iterator().next().getReplyConsumers());
+    }
+
+    @Test
+    public void readMetadata_chunk_size() {
+        assertEquals(Integer.valueOf(1048576), annotationProcessor.readMetadata(ChunkedClient.class).values().iterator().next().getChunkSize());
+        assertNull(annotationProcessor.readMetadata(HeaderMapClient.class).values().iterator().next().getChunkSize());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readMetadata_invalid_chunk_size() {
+        annotationProcessor.readMetadata(InvalidChunkSizeClient.class);
+    }
+
+    @Test
+    public void readMetadata_outbox() {
+        OutboxSettings outbox = annotationProcessor.readMetadata(OutboxClient.class).values().iterator().next().getOutbox();
+        assertEquals(Paths.get("/var/lib/app/outbox"), outbox.getDirectory());
+        assertEquals(OutboxSettings.DEFAULT_MAX_SIZE, outbox.getMaxSize());
+        assertEquals(1048576, outbox.getSegmentSize());
+        assertEquals(OutboxSettings.FSYNC_ALWAYS, outbox.getFsyncIntervalMillis());
+        assertFalse(annotationProcessor.readMetadata(HeaderMapClient.class).values().iterator().next().getOutbox().isEnabled());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readMetadata_invalid_outbox() {
+        annotationProcessor.readMetadata(InvalidOutboxClient.class);
+    }
+
+    @Test
+    public void readMetadata_lazy() throws NoSuchMethodException {
+        assertTrue(annotationProcessor.isLazy(LazyClient.class));
+        assertFalse(annotationProcessor.isLazy(HeaderMapClient.class));
+
+        RabbitClientMetadata metadata = annotationProcessor.methodMetadataReader(LazyClient.class)
+                .apply(LazyClient.class.getMethod("send", String.class));
+        assertEquals("lazy", metadata.getRoutingKey());
+        assertEquals("payload", metadata.getPayload(new Object[]{"payload"}));
+    }
+
+    @Test
+    public void readMetadata_routing_parameters() {
+        RabbitClientMetadata metadata = annotationProcessor.readMetadata(RoutingParameterClient.class).values().iterator().next();
+        Object[] args = {"payload", "tenant", "orders"};
+
+        assertEquals("payload", metadata.getPayload(args));
+        assertEquals("tenant.exchange", metadata.getExchange(args));
+        assertEquals("orders", metadata.getRoutingKey(args));
+        assertTrue(metadata.getHeaders(args).isEmpty());
+    }
+
+    @Test
+    public void readMetadata_shard_key() {
+        RabbitClientMetadata metadata = annotationProcessor.readMetadata(ShardedClient.class).values().iterator().next();
+        Object[] args = {"payload", 42L};
+
+        assertEquals("payload", metadata.getPayload(args));
+        assertEquals(metadata.getRoutingKey(args), metadata.getRoutingKey(new Object[]{"another payload", 42L}));
+        assertTrue(metadata.getRoutingKey(args).matches("orders\\.[0-7]"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readMetadata_shard_key_without_shards() {
+        annotationProcessor.readMetadata(UnshardedClient.class);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readMetadata_multiple_routing_key_parameters() {
+        annotationProcessor.readMetadata(MultipleRoutingKeyClient.class);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readMetadata_conflicting_template_settings() {
+        annotationProcessor.readMetadata(ConflictingTemplateClient.class);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readMetadata_invalid_in_flight_limit() {
+        annotationProcessor.readMetadata(InvalidInFlightLimitClient.class);
+    }
+
     @Test(expected = IllegalStateException.class)
     public void readMetadata_ambiguous_method_parameters() {
         annotationProcessor.readMetadata(MissingPayloadAnnotationClient.class);
@@ -176,6 +394,160 @@ public class RabbitClientAnnotationProcessorImplTest {
         String noPayload();
     }
 
+    @RabbitClient(maxInFlight = "10", inFlightTimeout = "100")
+    interface InFlightLimitedClient {
+        @RabbitSender(maxInFlight = "2")
+        String inheritedTimeout(String payload);
+
+        @RabbitSender(maxInFlight = "1", inFlightTimeout = "0")
+        String failFast(String payload);
+
+        String unlimited(String payload);
+    }
+
+    @RabbitClient(adaptiveConcurrency = "true")
+    interface AdaptiveConcurrencyClient {
+        String inherited(String payload);
+
+        @RabbitSender(adaptiveConcurrency = "false")
+        String disabled(String payload);
+    }
+
+    @RabbitClient
+    interface HedgingClient {
+        @RabbitSender(hedgeAfter = "50")
+        String fixed(String payload);
+
+        @RabbitSender(hedgeAfter = "p99.5", hedgeBudget = "5")
+        String percentile(String payload);
+
+        String none(String payload);
+    }
+
+    @RabbitClient
+    interface InvalidHedgingClient {
+        @RabbitSender(hedgeAfter = "p100")
+        String send(String payload);
+    }
+
+    @RabbitClient
+    @RabbitCircuitBreaker(failureRateThreshold = "25")
+    interface CircuitBreakerClient {
+        String inherited(String payload);
+
+        @RabbitCircuitBreaker(slidingWindowSize = "10")
+        String overridden(String payload);
+
+        @RabbitCircuitBreaker(enabled = "false")
+        String disabled(String payload);
+    }
+
+    @RabbitClient(retry = @RabbitRetry(maxAttempts = "3", initialBackoff = "50"))
+    interface RetryClient {
+        String inherited(String payload);
+
+        @RabbitSender(retry = @RabbitRetry(maxAttempts = "5", retryOn = AmqpException.class))
+        String overridden(String payload);
+
+        @RabbitSender(retry = @RabbitRetry(maxAttempts = "1"))
+        String disabled(String payload);
+
+        String streamed(InputStream payload);
+
+        String file(Path payload);
+    }
+
+    @RabbitClient
+    interface StreamedRetryClient {
+        @RabbitSender(retry = @RabbitRetry(maxAttempts = "3"))
+        String send(ReadableByteChannel payload);
+    }
+
+    @RabbitClient
+    interface StreamedHedgingClient {
+        @RabbitSender(hedgeAfter = "50")
+        String send(InputStream payload);
+    }
+
+    @RabbitClient(rabbitTemplate = "customTemplate")
+    interface DedicatedTemplateClient {
+        String send(String payload);
+    }
+
+    @RabbitClient(rabbitTemplate = "customTemplate", isolated = "true")
+    interface ConflictingTemplateClient {
+        String send(String payload);
+    }
+
+    @RabbitClient(replyConsumers = "4")
+    interface MultiplexedRepliesClient {
+        String send(String payload);
+    }
+
+    @RabbitClient(routingKey = "uploads", chunkSize = "1048576")
+    interface ChunkedClient {
+        String send(byte[] payload);
+    }
+
+    @RabbitClient(routingKey = "uploads", chunkSize = "0")
+    interface InvalidChunkSizeClient {
+        String send(byte[] payload);
+    }
+
+    @RabbitClient(routingKey = "events", outbox = @RabbitOutbox(directory = "/var/lib/app/outbox", segmentSize = "1048576", fsync = "always"))
+    interface OutboxClient {
+        void send(String payload);
+    }
+
+    @RabbitClient(routingKey = "events", outbox = @RabbitOutbox(directory = "/var/lib/app/outbox", fsync = "sometimes"))
+    interface InvalidOutboxClient {
+        void send(String payload);
+    }
+
+    @RabbitClient(routingKey = "lazy", lazy = "true")
+    interface LazyClient {
+        String send(String payload);
+    }
+
+    @RabbitClient(routingKey = "static")
+    interface RoutingParameterClient {
+        String send(String payload, @Exchange("{}.exchange") String tenant, @RoutingKey String routingKey);
+    }
+
+    @RabbitClient(routingKey = "orders", shards = "8")
+    interface ShardedClient {
+        String send(String payload, @ShardKey Long entityId);
+    }
+
+    @RabbitClient
+    interface UnshardedClient {
+        String send(String payload, @ShardKey Long entityId);
+    }
+
+    @RabbitClient
+    interface MultipleRoutingKeyClient {
+        String send(@Payload String payload, @RoutingKey String first, @RoutingKey String second);
+    }
+
+    @RabbitClient
+    interface PriorityClient {
+        @RabbitSender(priority = "9")
+        String interactive(String payload);
+
+        String bulk(String payload);
+    }
+
+    @RabbitClient
+    interface InvalidPriorityClient {
+        @RabbitSender(priority = "256")
+        String send(String payload);
+    }
+
+    @RabbitClient(maxInFlight = "many")
+    interface InvalidInFlightLimitClient {
+        String send(String payload);
+    }
+
     @RabbitClient
     interface HeaderMapClient {
         String specifyHeaderMap(@Payload String payload, @Headers Map<String, String> someHeaders);
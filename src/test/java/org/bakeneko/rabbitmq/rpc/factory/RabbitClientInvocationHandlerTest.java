@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.factory;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author Ivan Sergienko
+ */
+public class RabbitClientInvocationHandlerTest {
+
+    @Test
+    public void lazyInvokersAreResolvedOncePerMethod() throws Exception {
+        Map<Method, AtomicInteger> resolutions = new ConcurrentHashMap<>();
+        RabbitClientInvocationHandler handler = new RabbitClientInvocationHandler(method -> {
+            resolutions.computeIfAbsent(method, m -> new AtomicInteger()).incrementAndGet();
+            return mock(RabbitMethodInvoker.class);
+        });
+        Method first = Client.class.getMethod("first", String.class);
+        Method second = Client.class.getMethod("second", String.class);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < 64; i++) {
+            Method method = i % 2 == 0 ? first : second;
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    handler.getInvoker(method);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(1, resolutions.get(first).get());
+        assertEquals(1, resolutions.get(second).get());
+        assertSame(handler.getInvoker(first), handler.getInvoker(first));
+    }
+
+    interface Client {
+        String first(String payload);
+
+        String second(String payload);
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.factory;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.Envelope;
+import org.bakeneko.rabbitmq.rpc.RabbitClient;
+import org.bakeneko.rabbitmq.rpc.RabbitRpc;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.bakeneko.rabbitmq.rpc.factory.ReflectionUtils.methodNameSignatureAware;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author Ivan Sergienko
+ */
+public class RabbitPipelineTest {
+    private final AtomicReference<Consumer> replyConsumer = new AtomicReference<>();
+    private final List<AMQP.BasicProperties> published = new ArrayList<>();
+    private Channel channel;
+    private PipelinedClient client;
+
+    @Before
+    public void init() throws Exception {
+        ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+        Connection connection = mock(Connection.class);
+        channel = mock(Channel.class);
+        given(connectionFactory.createConnection()).willReturn(connection);
+        given(connection.createChannel(false)).willReturn(channel);
+        given(channel.isOpen()).willReturn(true);
+        willAnswer(invocation -> {
+            replyConsumer.set(invocation.getArgument(2));
+            return "replies";
+        }).given(channel).basicConsume(anyString(), anyBoolean(), any(Consumer.class));
+        willAnswer(invocation -> {
+            AMQP.BasicProperties properties = invocation.getArgument(3);
+            published.add(properties);
+            return null;
+        }).given(channel).basicPublish(anyString(), anyString(), anyBoolean(), any(AMQP.BasicProperties.class), any(byte[].class));
+
+        client = client(new RabbitTemplate(connectionFactory));
+    }
+
+    @Test
+    public void callsArePublishedBeforeAnyReplyArrives() throws Exception {
+        List<CompletableFuture<Object>> replies = RabbitRpc.pipeline(client, c -> {
+            assertNull(c.upperCase("a"));
+            c.upperCase("b");
+            c.publish("c");
+        });
+
+        assertEquals(3, published.size());
+        assertEquals("amq.rabbitmq.reply-to", published.get(0).getReplyTo());
+        assertFalse(replies.get(0).isDone());
+        assertNull(replies.get(2).get());
+
+        reply(published.get(1), "B");
+        reply(published.get(0), "A");
+
+        assertEquals("A", replies.get(0).get(1, TimeUnit.SECONDS));
+        assertEquals("B", replies.get(1).get(1, TimeUnit.SECONDS));
+        verify(channel, timeout(1_000)).basicCancel("replies");
+        verify(channel, timeout(1_000)).close();
+    }
+
+    @Test
+    public void onlyCallsFromFailedOneOnAreFailed() throws Exception {
+        IOException failure = new IOException("Channel closed");
+        willAnswer(invocation -> {
+            if (!published.isEmpty()) {
+                throw failure;
+            }
+            published.add(invocation.getArgument(3));
+            return null;
+        }).given(channel).basicPublish(anyString(), anyString(), anyBoolean(), any(AMQP.BasicProperties.class), any(byte[].class));
+
+        List<CompletableFuture<Object>> replies = RabbitRpc.pipeline(client, c -> {
+            c.upperCase("a");
+            c.upperCase("b");
+            c.publish("c");
+        });
+
+        for (CompletableFuture<Object> failed : replies.subList(1, 3)) {
+            try {
+                failed.get(1, TimeUnit.SECONDS);
+                fail("The call must fail");
+            } catch (ExecutionException e) {
+                assertSame(failure, e.getCause());
+            }
+        }
+        assertFalse(replies.get(0).isDone());
+
+        reply(published.get(0), "A");
+        assertEquals("A", replies.get(0).get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void callsWithoutReplyTimeOut() throws Exception {
+        List<CompletableFuture<Object>> replies = RabbitRpc.pipeline(client, 50, c -> c.upperCase("a"));
+
+        try {
+            replies.get(0).get(1, TimeUnit.SECONDS);
+            fail("The call must time out");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        verify(channel, timeout(1_000)).close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void onlyGeneratedClientsCanBePipelined() {
+        PipelinedClient handWritten = new PipelinedClient() {
+            @Override
+            public String upperCase(String value) {
+                return value.toUpperCase();
+            }
+
+            @Override
+            public void publish(String value) {
+            }
+        };
+
+        RabbitRpc.pipeline(handWritten, c -> c.upperCase("a"));
+    }
+
+    private void reply(AMQP.BasicProperties request, String body) throws Exception {
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+                .correlationId(request.getCorrelationId())
+                .contentType("text/plain")
+                .build();
+        replyConsumer.get().handleDelivery("replies", new Envelope(1, false, "", "amq.rabbitmq.reply-to"), properties, body.getBytes());
+    }
+
+    private PipelinedClient client(RabbitTemplate template) {
+        Map<String, RabbitClientMetadata> metadata = new RabbitClientAnnotationProcessorImpl(value -> value, Collections.emptyMap())
+                .readMetadata(PipelinedClient.class);
+        Map<String, RabbitMethodInvoker> invokers = new HashMap<>();
+        for (Method method : PipelinedClient.class.getDeclaredMethods()) {
+            String signature = methodNameSignatureAware(method);
+            invokers.put(signature, new RabbitMethodInvoker(method, metadata.get(signature), template, Collections.emptyList(), null));
+        }
+
+        return (PipelinedClient) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{PipelinedClient.class},
+                new ObjectMethodsDelegatingInvocationHandler(new RabbitClientInvocationHandler(invokers)));
+    }
+
+    @RabbitClient(routingKey = "pipelined")
+    public interface PipelinedClient {
+        String upperCase(String value);
+
+        void publish(String value);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.factory;
+
+import com.rabbitmq.client.Address;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ChannelListener;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.expression.Expression;
+import org.springframework.retry.support.RetryTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+
+/**
+ * @author Ivan Sergienko
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class RabbitTemplateResolverImplTest {
+    @Mock
+    private BeanFactory beanFactory;
+    @Mock
+    private ConnectionFactory connectionFactory;
+    @Mock
+    private ConnectionListener connectionListener;
+    @Mock
+    private ChannelListener channelListener;
+    @Mock
+    private MessagePostProcessor postProcessor;
+
+    private final RetryTemplate retryTemplate = new RetryTemplate();
+
+    private RabbitTemplate defaultTemplate;
+    private RabbitTemplateResolverImpl templateResolver;
+
+    @Before
+    public void init() {
+        CachingConnectionFactory defaultConnectionFactory = new CachingConnectionFactory("localhost");
+        defaultConnectionFactory.setAddresses("rabbit-1:5672,rabbit-2:5673");
+        defaultConnectionFactory.setCacheMode(CachingConnectionFactory.CacheMode.CONNECTION);
+        defaultConnectionFactory.setConnectionCacheSize(3);
+        defaultConnectionFactory.setChannelCheckoutTimeout(500);
+        defaultConnectionFactory.setPublisherConfirms(true);
+        defaultConnectionFactory.setPublisherReturns(true);
+        defaultConnectionFactory.setConnectionListeners(Collections.singletonList(connectionListener));
+        defaultConnectionFactory.setChannelListeners(Collections.singletonList(channelListener));
+
+        defaultTemplate = new RabbitTemplate(defaultConnectionFactory);
+        defaultTemplate.setMessageConverter(new Jackson2JsonMessageConverter());
+        defaultTemplate.setReplyTimeout(12_345);
+        defaultTemplate.setExchange("exchange");
+        defaultTemplate.setRoutingKey("routingKey");
+        defaultTemplate.setMandatory(true);
+        defaultTemplate.setReplyAddress("replies");
+        defaultTemplate.setBeforePublishPostProcessors(postProcessor);
+        defaultTemplate.setRetryTemplate(retryTemplate);
+        templateResolver = new RabbitTemplateResolverImpl(defaultTemplate, beanFactory);
+    }
+
+    @After
+    public void destroy() {
+        templateResolver.destroy();
+        ((CachingConnectionFactory) defaultTemplate.getConnectionFactory()).destroy();
+    }
+
+    @Test
+    public void resolvesDefaultTemplate() {
+        assertSame(defaultTemplate, templateResolver.resolve("client", RabbitTemplateSettings.DEFAULT));
+    }
+
+    @Test
+    public void resolvesTemplateByBeanName() {
+        RabbitTemplate template = new RabbitTemplate(connectionFactory);
+        given(beanFactory.getBean("customTemplate", RabbitTemplate.class)).willReturn(template);
+
+        assertSame(template, templateResolver.resolve("client", new RabbitTemplateSettings("customTemplate", null, false)));
+    }
+
+    @Test
+    public void createsTemplateForConnectionFactory() {
+        given(beanFactory.getBean("customConnectionFactory", ConnectionFactory.class)).willReturn(connectionFactory);
+
+        RabbitTemplate template = templateResolver.resolve("client", new RabbitTemplateSettings(null, "customConnectionFactory", false));
+
+        assertSame(connectionFactory, template.getConnectionFactory());
+        assertTemplateSettings(template);
+    }
+
+    @Test
+    public void createsIsolatedConnectionFactory() {
+        RabbitTemplate template = templateResolver.resolve("client", new RabbitTemplateSettings(null, null, true));
+
+        assertNotSame(defaultTemplate, template);
+        assertNotSame(defaultTemplate.getConnectionFactory(), template.getConnectionFactory());
+        assertSame(((CachingConnectionFactory) defaultTemplate.getConnectionFactory()).getRabbitConnectionFactory(),
+                ((CachingConnectionFactory) template.getConnectionFactory()).getRabbitConnectionFactory());
+        assertTemplateSettings(template);
+        assertConnectionFactorySettings((CachingConnectionFactory) template.getConnectionFactory());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void isolatedConnectionRequiresCachingConnectionFactory() {
+        RabbitTemplateResolverImpl resolver = new RabbitTemplateResolverImpl(new RabbitTemplate(connectionFactory), beanFactory);
+
+        resolver.resolve("client", new RabbitTemplateSettings(null, null, true));
+    }
+
+    @Test
+    public void createsLaneConnectionFactory() {
+        RabbitTemplate template = templateResolver.resolveLane("client", defaultTemplate, 5);
+
+        assertNotSame(defaultTemplate, template);
+        assertNotSame(defaultTemplate.getConnectionFactory(), template.getConnectionFactory());
+        assertTemplateSettings(template);
+        assertConnectionFactorySettings((CachingConnectionFactory) template.getConnectionFactory());
+    }
+
+    @Test
+    public void laneKeepsReplyTimeoutOfClientTemplate() {
+        RabbitTemplate clientTemplate = templateResolver.resolve("client", new RabbitTemplateSettings(null, null, true));
+        clientTemplate.setReplyTimeout(54_321);
+
+        RabbitTemplate template = templateResolver.resolveLane("client", clientTemplate, 5);
+
+        assertEquals(54_321L, new DirectFieldAccessor(template).getPropertyValue("replyTimeout"));
+    }
+
+    @Test
+    public void laneFallsBackToClientTemplate() {
+        RabbitTemplate clientTemplate = new RabbitTemplate(connectionFactory);
+
+        assertSame(clientTemplate, templateResolver.resolveLane("client", clientTemplate, 5));
+    }
+
+    private void assertTemplateSettings(RabbitTemplate template) {
+        DirectFieldAccessor settings = new DirectFieldAccessor(template);
+        assertSame(defaultTemplate.getMessageConverter(), template.getMessageConverter());
+        assertEquals(12_345L, settings.getPropertyValue("replyTimeout"));
+        assertEquals("exchange", template.getExchange());
+        assertEquals("routingKey", template.getRoutingKey());
+        assertEquals("true", ((Expression) settings.getPropertyValue("mandatoryExpression")).getExpressionString());
+        assertEquals("replies", settings.getPropertyValue("replyAddress"));
+        assertEquals(Collections.singletonList(postProcessor), new ArrayList<>((Collection<?>) settings.getPropertyValue("beforePublishPostProcessors")));
+        assertSame(retryTemplate, settings.getPropertyValue("retryTemplate"));
+    }
+
+    private void assertConnectionFactorySettings(CachingConnectionFactory connectionFactory) {
+        DirectFieldAccessor settings = new DirectFieldAccessor(connectionFactory);
+        assertEquals(Arrays.asList(new Address("rabbit-1", 5672), new Address("rabbit-2", 5673)), settings.getPropertyValue("addresses"));
+        assertEquals(CachingConnectionFactory.CacheMode.CONNECTION, connectionFactory.getCacheMode());
+        assertEquals(3, connectionFactory.getConnectionCacheSize());
+        assertEquals(500L, settings.getPropertyValue("channelCheckoutTimeout"));
+        assertTrue(connectionFactory.isPublisherConfirms());
+        assertTrue(connectionFactory.isPublisherReturns());
+        assertEquals(Collections.singletonList(connectionListener),
+                new DirectFieldAccessor(settings.getPropertyValue("connectionListener")).getPropertyValue("delegates"));
+        assertEquals(Collections.singletonList(channelListener),
+                new DirectFieldAccessor(settings.getPropertyValue("channelListener")).getPropertyValue("delegates"));
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.factory;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Ivan Sergienko
+ */
+public class RoutingTemplateTest {
+
+    @Test
+    public void usesParameterValueAsIs() {
+        assertEquals("42", new RoutingTemplate(1, "").evaluate(new Object[]{"payload", 42}));
+    }
+
+    @Test
+    public void replacesPlaceholder() {
+        assertEquals("orders.tenant-1.v2", new RoutingTemplate(0, "orders.{}.v2").evaluate(new Object[]{"tenant-1"}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTemplateWithoutPlaceholder() {
+        new RoutingTemplate(0, "orders");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNullValue() {
+        new RoutingTemplate(0, "").evaluate(new Object[]{null});
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.factory;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ivan Sergienko
+ */
+public class ShardRoutingTest {
+
+    @Test
+    public void prefixesShardNumberWithRoutingKey() {
+        ShardRouting routing = new ShardRouting(() -> "4");
+
+        assertEquals(Arrays.asList("0", "1", "2", "3"), routing.getShards());
+        assertTrue(routing.route("entity", "orders").matches("orders\\.[0-3]"));
+    }
+
+    @Test
+    public void usesListedRoutingKeys() {
+        ShardRouting routing = new ShardRouting(() -> "orders-a, orders-b");
+
+        assertTrue(routing.route("entity", "orders").matches("orders-[ab]"));
+    }
+
+    @Test
+    public void rebuildsRingWhenConfigurationChanges() {
+        AtomicReference<String> configuration = new AtomicReference<>("2");
+        ShardRouting routing = new ShardRouting(configuration::get, 0);
+
+        configuration.set("3");
+        assertEquals(3, routing.getShards().size());
+
+        configuration.set(" , ");
+        assertEquals(3, routing.getShards().size());
+    }
+
+    @Test
+    public void keepsRingWhenConfigurationFailsToBeRead() {
+        AtomicReference<String> configuration = new AtomicReference<>("2");
+        ShardRouting routing = new ShardRouting(() -> {
+            if (configuration.get() == null) {
+                throw new IllegalArgumentException("Could not resolve placeholder 'shards'");
+            }
+            return configuration.get();
+        }, 0);
+
+        configuration.set(null);
+        assertEquals(2, routing.getShards().size());
+
+        configuration.set("3");
+        assertEquals(3, routing.getShards().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidInitialConfiguration() {
+        new ShardRouting(() -> "0");
+    }
+}
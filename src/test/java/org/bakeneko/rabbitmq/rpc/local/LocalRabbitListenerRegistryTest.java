@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.local;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.Payload;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ivan Sergienko
+ */
+public class LocalRabbitListenerRegistryTest {
+    private DefaultListableBeanFactory beanFactory;
+    private LocalRabbitListenerRegistry registry;
+
+    @Before
+    public void init() {
+        beanFactory = new DefaultListableBeanFactory();
+        registry = new LocalRabbitListenerRegistry();
+        registry.setBeanFactory(beanFactory);
+    }
+
+    @Test
+    public void findsListenerByQueueOnDefaultExchange() throws Exception {
+        registry.postProcessAfterInitialization(new Listener(), "listener");
+
+        LocalRabbitListener listener = registry.find(null, "greetings");
+        assertNotNull(listener);
+        assertEquals("hello, world", listener.invoke("world", Collections.singletonMap("greeting", "hello")));
+        assertNull(registry.find("", "unknown"));
+    }
+
+    @Test
+    public void skipsListenersTakingRawMessage() {
+        registry.postProcessAfterInitialization(new Listener(), "listener");
+
+        assertNull(registry.find(null, "raw"));
+    }
+
+    @Test
+    public void findsListenerThroughDirectBinding() {
+        DirectExchange direct = new DirectExchange("direct");
+        TopicExchange topic = new TopicExchange("topic");
+        Queue queue = new Queue("greetings");
+        beanFactory.registerSingleton("direct", direct);
+        beanFactory.registerSingleton("topic", topic);
+        beanFactory.registerSingleton("directBinding", BindingBuilder.bind(queue).to(direct).with("greet"));
+        beanFactory.registerSingleton("topicBinding", BindingBuilder.bind(queue).to(topic).with("greet"));
+        registry.postProcessAfterInitialization(new Listener(), "listener");
+        registry.afterSingletonsInstantiated();
+
+        assertNotNull(registry.find("direct", "greet"));
+        assertNull(registry.find("direct", "other"));
+        assertNull(registry.find("topic", "greet"));
+    }
+
+    @Test
+    public void acceptsOnlyAssignablePayloadAndReplyTypes() {
+        registry.postProcessAfterInitialization(new Listener(), "listener");
+
+        LocalRabbitListener listener = registry.find(null, "greetings");
+        assertTrue(listener.accepts("world", String.class));
+        assertTrue(listener.accepts("world", CharSequence.class));
+        assertTrue(listener.accepts("world", null));
+        assertFalse(listener.accepts(42, String.class));
+        assertFalse(listener.accepts("world", Integer.class));
+    }
+
+    static class Listener {
+        @RabbitListener(queues = "greetings")
+        public String greet(@Payload String name, @Header("greeting") String greeting) {
+            return greeting + ", " + name;
+        }
+
+        @RabbitListener(queues = "raw")
+        public void raw(Message message) {
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.nativeimage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+/**
+ * @author Ivan Sergienko
+ */
+public class RabbitClientNativeImageProcessorTest {
+    private static final String LOCATION = "META-INF/native-image/demo/clients";
+    private static final String CLIENT_SOURCE = String.join("\n",
+            "package demo;",
+            "",
+            "import org.bakeneko.rabbitmq.rpc.RabbitClient;",
+            "import java.util.List;",
+            "import java.util.Map;",
+            "import java.util.concurrent.CompletableFuture;",
+            "",
+            "@RabbitClient",
+            "public interface DemoClient {",
+            "    CompletableFuture<Reply> call(Request request);",
+            "",
+            "    <T extends Comparable<T>> List<T> sort(List<T> values);",
+            "",
+            "    class Request { Item[] items; Map<String, Reply> previous; static Unused unused; }",
+            "    class Item {}",
+            "    class Reply extends Base {}",
+            "    class Base { String value; }",
+            "    class Unused {}",
+            "}",
+            "");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void metadataIsGeneratedForClients() throws Exception {
+        Path output = compile(CLIENT_SOURCE, LOCATION);
+        Path location = output.resolve(LOCATION);
+
+        String proxyConfig = read(location.resolve("proxy-config.json"));
+        assertEquals("[\n  {\"interfaces\": [\"demo.DemoClient\"]}\n]\n", proxyConfig);
+
+        String reflectConfig = read(location.resolve("reflect-config.json"));
+        assertTrue(reflectConfig.contains("{\"name\": \"demo.DemoClient\", \"allDeclaredMethods\": true, \"allPublicMethods\": true}"));
+        assertTrue(reflectConfig.contains("\"demo.DemoClient$Request\""));
+        assertTrue(reflectConfig.contains("\"demo.DemoClient$Item\""));
+        assertTrue(reflectConfig.contains("\"demo.DemoClient$Reply\""));
+        assertTrue(reflectConfig.contains("\"demo.DemoClient$Base\""));
+        assertFalse(reflectConfig.contains("\"demo.DemoClient$Unused\""));
+        assertFalse(reflectConfig.contains("\"java."));
+    }
+
+    @Test
+    public void nothingIsGeneratedUnlessEnabled() throws Exception {
+        Path output = compile(CLIENT_SOURCE, null);
+
+        assertFalse(Files.exists(output.resolve("META-INF")));
+    }
+
+    @Test
+    public void nothingIsGeneratedWithoutClients() throws Exception {
+        Path output = compile("package demo; public interface NotAClient { String call(String request); }", LOCATION);
+
+        assertFalse(Files.exists(output.resolve(LOCATION)));
+    }
+
+    private Path compile(String source, String location) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assumeNotNull(compiler);
+
+        File sources = folder.newFolder();
+        File output = folder.newFolder();
+        String className = source.substring(source.indexOf("interface ") + "interface ".length()).split("\\s")[0];
+        Path sourceFile = sources.toPath().resolve(className + ".java");
+        Files.write(sourceFile, source.getBytes(StandardCharsets.UTF_8));
+
+        List<String> arguments = new ArrayList<>(Arrays.asList(
+                "-proc:only",
+                "-processor", RabbitClientNativeImageProcessor.class.getName(),
+                "-classpath", System.getProperty("java.class.path"),
+                "-d", output.getAbsolutePath()
+        ));
+        if (location != null) {
+            arguments.add("-A" + RabbitClientNativeImageProcessor.LOCATION_OPTION + "=" + location);
+        }
+        arguments.add(sourceFile.toString());
+
+        assertEquals(0, compiler.run(null, null, null, arguments.toArray(new String[0])));
+        return output.toPath();
+    }
+
+    private String read(Path file) throws Exception {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+}
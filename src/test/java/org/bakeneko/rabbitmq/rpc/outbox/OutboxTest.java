@@ -0,0 +1,258 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.outbox;
+
+import org.bakeneko.rabbitmq.rpc.policy.RabbitCallRejectedException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ivan Sergienko
+ */
+public class OutboxTest {
+    private final List<String> published = new CopyOnWriteArrayList<>();
+    private volatile boolean brokerDown = true;
+    private Path directory;
+    private Outbox outbox;
+
+    @Before
+    public void init() throws IOException {
+        directory = Files.createTempDirectory("outbox");
+    }
+
+    @After
+    public void cleanUp() throws IOException {
+        if (outbox != null) {
+            outbox.close();
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void messagesAreStoredAndReplayedInOrder() throws Exception {
+        outbox = new Outbox("test", settings(1024 * 1024), this::publish);
+        for (int i = 0; i < 100; i++) {
+            outbox.send("", "events", message("message-" + i), this::publish);
+        }
+        assertEquals(100, outbox.getPending());
+
+        brokerDown = false;
+        awaitPublished(100);
+
+        assertEquals(0, outbox.getPending());
+        assertEquals(0, outbox.getPendingBytes());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("events:message-" + i, published.get(i));
+        }
+    }
+
+    @Test
+    public void messagesArePublishedDirectlyWhileTheOutboxIsEmpty() {
+        brokerDown = false;
+        outbox = new Outbox("test", settings(1024 * 1024), this::publish);
+        outbox.send("", "events", message("direct"), (exchange, routingKey, message) -> published.add("direct"));
+
+        assertEquals(0, outbox.getPending());
+        assertEquals("direct", published.get(0));
+    }
+
+    @Test
+    public void directPublishesDoNotHoldTheOutbox() throws Exception {
+        brokerDown = false;
+        outbox = new Outbox("test", settings(1024 * 1024), this::publish);
+        CountDownLatch publishing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread slow = new Thread(() -> outbox.send("", "events", message("slow"), (exchange, routingKey, message) -> {
+            publishing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            publish(exchange, routingKey, message);
+        }));
+        slow.start();
+        assertTrue(publishing.await(5, TimeUnit.SECONDS));
+
+        outbox.send("", "events", message("fast"), this::publish);
+        assertEquals(0, outbox.getPending());
+        assertEquals("events:fast", published.get(0));
+
+        release.countDown();
+        slow.join(5000);
+        assertEquals("events:slow", published.get(1));
+    }
+
+    @Test
+    public void pendingMessagesSurviveARestart() throws Exception {
+        outbox = new Outbox("test", settings(16 * 1024), this::publish);
+        for (int i = 0; i < 50; i++) {
+            outbox.send("", "events", message("message-" + i), this::publish);
+        }
+        outbox.close();
+
+        brokerDown = false;
+        outbox = new Outbox("test", settings(16 * 1024), this::publish);
+        awaitPublished(50);
+
+        for (int i = 0; i < 50; i++) {
+            assertEquals("events:message-" + i, published.get(i));
+        }
+        awaitSegments(1);
+    }
+
+    @Test
+    public void segmentsKeepTheirSizeWhenItIsChanged() throws Exception {
+        outbox = new Outbox("test", settings(16 * 1024), this::publish);
+        for (int i = 0; i < 50; i++) {
+            outbox.send("", "events", message("message-" + i), this::publish);
+        }
+        outbox.close();
+
+        brokerDown = false;
+        outbox = new Outbox("test", settings(4 * 1024), this::publish);
+        awaitPublished(50);
+
+        for (int i = 0; i < 50; i++) {
+            assertEquals("events:message-" + i, published.get(i));
+        }
+    }
+
+    @Test
+    public void propertiesAreReplayed() throws Exception {
+        List<Message> replayed = new CopyOnWriteArrayList<>();
+        outbox = new Outbox("test", settings(16 * 1024), (exchange, routingKey, message) -> replayed.add(message));
+        Message message = message("stored");
+        message.getMessageProperties().setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        message.getMessageProperties().setCorrelationId("correlation");
+        message.getMessageProperties().setPriority(5);
+        message.getMessageProperties().setHeader("count", 3);
+        message.getMessageProperties().setMessageId("id");
+        message.getMessageProperties().setReplyTo("replies");
+        message.getMessageProperties().setExpiration("60000");
+        message.getMessageProperties().setTimestamp(new Date(1_000_000L));
+        message.getMessageProperties().setDeliveryMode(MessageDeliveryMode.NON_PERSISTENT);
+        message.getMessageProperties().setHeader("total", 5_000_000_000L);
+        message.getMessageProperties().setHeader("ratio", 0.5);
+        message.getMessageProperties().setHeader("flag", true);
+        message.getMessageProperties().setHeader("tags", Arrays.asList("a", "b"));
+        message.getMessageProperties().setHeader("nested", Collections.singletonMap("key", 1));
+        message.getMessageProperties().setHeader("type", Thread.State.NEW);
+        outbox.send("", "events", message, this::publish);
+
+        for (int i = 0; i < 100 && replayed.isEmpty(); i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(1, replayed.size());
+        MessageProperties properties = replayed.get(0).getMessageProperties();
+        assertEquals("stored", new String(replayed.get(0).getBody(), StandardCharsets.UTF_8));
+        assertEquals(MessageProperties.CONTENT_TYPE_JSON, properties.getContentType());
+        assertEquals("correlation", properties.getCorrelationId());
+        assertEquals(Integer.valueOf(5), properties.getPriority());
+        assertEquals("value", properties.getHeaders().get("header"));
+        assertEquals(3, properties.getHeaders().get("count"));
+        assertEquals("id", properties.getMessageId());
+        assertEquals("replies", properties.getReplyTo());
+        assertEquals("60000", properties.getExpiration());
+        assertEquals(new Date(1_000_000L), properties.getTimestamp());
+        assertEquals(MessageDeliveryMode.NON_PERSISTENT, properties.getReceivedDeliveryMode());
+        assertEquals(5_000_000_000L, properties.getHeaders().get("total"));
+        assertEquals(0.5, properties.getHeaders().get("ratio"));
+        assertEquals(true, properties.getHeaders().get("flag"));
+        assertEquals(Arrays.asList("a", "b"), properties.getHeaders().get("tags"));
+        assertEquals(Collections.singletonMap("key", 1), properties.getHeaders().get("nested"));
+        assertEquals("NEW", properties.getHeaders().get("type"));
+    }
+
+    @Test
+    public void fullOutboxRejectsMessages() {
+        outbox = new Outbox("test", new OutboxSettings(directory, 16 * 1024, 8 * 1024, OutboxSettings.FSYNC_NEVER), this::publish);
+        try {
+            for (int i = 0; i < 1000; i++) {
+                outbox.send("", "events", message("message-" + i), this::publish);
+            }
+            fail("The outbox must run out of space");
+        } catch (RabbitCallRejectedException e) {
+            assertEquals(0, published.size());
+        }
+    }
+
+    private void publish(String exchange, String routingKey, Message message) {
+        if (brokerDown) {
+            throw new AmqpConnectException(new ConnectException("Connection refused"));
+        }
+        published.add(routingKey + ":" + new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    private OutboxSettings settings(int segmentSize) {
+        return new OutboxSettings(directory, 64L * segmentSize, segmentSize, OutboxSettings.DEFAULT_FSYNC_INTERVAL_MILLIS);
+    }
+
+    private void awaitPublished(int count) throws InterruptedException {
+        for (int i = 0; i < 100 && published.size() < count; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(count, published.size());
+    }
+
+    private void awaitSegments(int max) throws Exception {
+        long segments = max + 1;
+        for (int i = 0; i < 50 && segments > max; i++) {
+            Thread.sleep(100);
+            try (Stream<Path> files = Files.list(directory)) {
+                segments = files.count();
+            }
+        }
+        assertTrue(segments <= max);
+    }
+
+    private Message message(String body) {
+        MessageProperties properties = new MessageProperties();
+        properties.setHeader("header", "value");
+
+        return new Message(body.getBytes(StandardCharsets.UTF_8), properties);
+    }
+}
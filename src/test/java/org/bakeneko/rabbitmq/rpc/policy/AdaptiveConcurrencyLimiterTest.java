@@ -0,0 +1,49 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.policy;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Ivan Sergienko
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    public void rejectsCallsAboveLimit() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", new VegasLimit(1, 1, 1));
+
+        try {
+            limiter.execute(() -> limiter.execute(() -> "nested"));
+        } catch (RabbitCallRejectedException expected) {
+        }
+
+        assertEquals(1, limiter.getRejected());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void decreasesLimitOnReplyTimeout() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", new VegasLimit(10, 1, 10));
+
+        limiter.execute(() -> null);
+
+        assertEquals(9, limiter.getLimit());
+    }
+}
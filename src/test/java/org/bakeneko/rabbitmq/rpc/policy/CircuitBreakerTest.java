@@ -0,0 +1,140 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.policy;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ivan Sergienko
+ */
+public class CircuitBreakerTest {
+    private static final CircuitBreakerSettings SETTINGS = new CircuitBreakerSettings(true, 50, 100, 100, 10, 4, 1000, 2);
+
+    private final AtomicLong clock = new AtomicLong();
+    private final List<CircuitBreaker.State> transitions = new ArrayList<>();
+    private CircuitBreaker circuitBreaker;
+
+    @Before
+    public void init() {
+        circuitBreaker = new CircuitBreaker("test", SETTINGS, true, (breaker, from, to) -> transitions.add(to), clock::get);
+    }
+
+    @Test
+    public void staysClosedBelowMinimumNumberOfCalls() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            failCall(circuitBreaker);
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void opensOnFailureRate() throws Exception {
+        succeedCall(circuitBreaker);
+        succeedCall(circuitBreaker);
+        failCall(circuitBreaker);
+        circuitBreaker.execute(() -> null);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        expectNotPermitted();
+        assertEquals(1, circuitBreaker.getNotPermitted());
+    }
+
+    @Test
+    public void opensOnSlowCallRate() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.execute(() -> {
+                clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+                return "slow";
+            });
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void closesAfterSuccessfulProbes() throws Exception {
+        open();
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+
+        succeedCall(circuitBreaker);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        succeedCall(circuitBreaker);
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(3, transitions.size());
+    }
+
+    @Test
+    public void reopensAfterFailedProbes() throws Exception {
+        open();
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+
+        succeedCall(circuitBreaker);
+        failCall(circuitBreaker);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void limitsProbeCallsInHalfOpenState() throws Exception {
+        open();
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+
+        circuitBreaker.execute(() -> circuitBreaker.execute(() -> {
+            expectNotPermitted();
+            return "probe";
+        }));
+    }
+
+    private void open() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            failCall(circuitBreaker);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    private void expectNotPermitted() throws Exception {
+        try {
+            circuitBreaker.execute(() -> "rejected");
+            fail("The call should not be permitted");
+        } catch (CircuitBreakerOpenException expected) {
+        }
+    }
+
+    private static void succeedCall(CircuitBreaker circuitBreaker) throws Exception {
+        circuitBreaker.execute(() -> "reply");
+    }
+
+    private static void failCall(CircuitBreaker circuitBreaker) throws Exception {
+        try {
+            circuitBreaker.execute(() -> {
+                throw new IllegalStateException("failed");
+            });
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.policy;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ivan Sergienko
+ */
+public class HedgingPolicyTest {
+    private final ScheduledExecutorService replies = Executors.newSingleThreadScheduledExecutor();
+    private final List<CompletableFuture<String>> requests = new ArrayList<>();
+
+    @After
+    public void shutdown() {
+        replies.shutdownNow();
+    }
+
+    @Test
+    public void fastReplyIsNotHedged() throws Exception {
+        HedgingPolicy policy = new HedgingPolicy(HedgingSettings.fixed(1000, 100), Collections.emptyList());
+
+        assertEquals("reply", policy.execute(() -> reply("reply", 0), 1000));
+        assertEquals(0, policy.getHedged());
+    }
+
+    @Test
+    public void hedgedReplyBeatsSlowPrimary() throws Exception {
+        HedgingPolicy policy = new HedgingPolicy(HedgingSettings.fixed(10, 100), Collections.emptyList());
+
+        long start = System.nanoTime();
+        Object reply = policy.execute(() -> requests.isEmpty() ? reply("slow", 1000) : reply("hedged", 0), 5000);
+
+        assertEquals("hedged", reply);
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(1, policy.getHedged());
+        assertTrue("the slow request is discarded", requests.get(0).isCancelled());
+    }
+
+    @Test
+    public void primaryReplyBeatsSlowHedge() throws Exception {
+        HedgingPolicy policy = new HedgingPolicy(HedgingSettings.fixed(10, 100), Collections.emptyList());
+
+        Object reply = policy.execute(() -> requests.isEmpty() ? reply("primary", 30) : reply("hedged", 1000), 5000);
+
+        assertEquals("primary", reply);
+        assertTrue("the slow hedge is discarded", requests.get(1).isCancelled());
+    }
+
+    @Test
+    public void hedgedReplyIsReturnedWhenPrimaryFails() throws Exception {
+        HedgingPolicy policy = new HedgingPolicy(HedgingSettings.fixed(10, 100), Collections.emptyList());
+
+        Object reply = policy.execute(() -> requests.isEmpty() ? failure(20) : reply("hedged", 50), 5000);
+
+        assertEquals("hedged", reply);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void primaryFailureIsThrownWhenHedgeFails() throws Exception {
+        HedgingPolicy policy = new HedgingPolicy(HedgingSettings.fixed(10, 100), Collections.emptyList());
+
+        policy.execute(() -> requests.isEmpty() ? failure(20) : failure(30), 5000);
+    }
+
+    @Test
+    public void noReplyInTimeReturnsNull() throws Exception {
+        HedgingPolicy policy = new HedgingPolicy(HedgingSettings.fixed(10, 100), Collections.emptyList());
+
+        assertEquals(null, policy.execute(() -> reply("late", 1000), 50));
+        assertEquals(2, requests.size());
+        assertTrue(requests.stream().allMatch(CompletableFuture::isCancelled));
+    }
+
+    @Test
+    public void hedgeTakesSlotOfLimiters() throws Exception {
+        InFlightLimiter limiter = new InFlightLimiter("test", new InFlightLimit(2, -1));
+        HedgingPolicy policy = new HedgingPolicy(HedgingSettings.fixed(10, 100), Collections.singletonList(limiter));
+
+        Object reply = limiter.execute(() -> policy.execute(() -> {
+            if (requests.size() == 1) {
+                assertEquals(2, limiter.getInFlight());
+            }
+            return requests.isEmpty() ? reply("slow", 1000) : reply("hedged", 0);
+        }, 5000));
+
+        assertEquals("hedged", reply);
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void hedgeIsNotSentWhenLimitIsReached() throws Exception {
+        InFlightLimiter limiter = new InFlightLimiter("test", new InFlightLimit(1, -1));
+        HedgingPolicy policy = new HedgingPolicy(HedgingSettings.fixed(10, 100), Collections.singletonList(limiter));
+
+        Object reply = limiter.execute(() -> policy.execute(() -> reply("reply", 30), 5000));
+
+        assertEquals("reply", reply);
+        assertEquals(0, policy.getHedged());
+        assertEquals(1, policy.getRejected());
+    }
+
+    @Test
+    public void hedgingIsLimitedByBudget() throws Exception {
+        HedgingPolicy policy = new HedgingPolicy(HedgingSettings.fixed(0, 1), Collections.emptyList());
+
+        for (int i = 0; i < 5; i++) {
+            policy.execute(() -> reply("reply", 5), 5000);
+        }
+
+        assertEquals(1, policy.getHedged());
+    }
+
+    private CompletableFuture<String> reply(String reply, long delayMillis) {
+        CompletableFuture<String> request = new CompletableFuture<>();
+        requests.add(request);
+        replies.schedule(() -> request.complete(reply), delayMillis, TimeUnit.MILLISECONDS);
+        return request;
+    }
+
+    private CompletableFuture<String> failure(long delayMillis) {
+        CompletableFuture<String> request = new CompletableFuture<>();
+        requests.add(request);
+        replies.schedule(() -> request.completeExceptionally(new IllegalStateException("request failed")), delayMillis, TimeUnit.MILLISECONDS);
+        return request;
+    }
+}
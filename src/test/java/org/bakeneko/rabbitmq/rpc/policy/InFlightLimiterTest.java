@@ -0,0 +1,118 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.policy;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ivan Sergienko
+ */
+public class InFlightLimiterTest {
+
+    @Test
+    public void releasesSlotAfterCall() throws Exception {
+        InFlightLimiter limiter = new InFlightLimiter("test", new InFlightLimit(1, 0));
+
+        assertEquals("first", limiter.execute(() -> "first"));
+        assertEquals("second", limiter.execute(() -> "second"));
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void releasesSlotAfterFailedCall() throws Exception {
+        InFlightLimiter limiter = new InFlightLimiter("test", new InFlightLimit(1, 0));
+
+        try {
+            limiter.execute(() -> {
+                throw new IllegalStateException("failed");
+            });
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test(expected = RabbitCallRejectedException.class)
+    public void failsFastWhenLimitReached() throws Exception {
+        InFlightLimiter limiter = new InFlightLimiter("test", new InFlightLimit(1, 0));
+
+        limiter.execute(() -> limiter.execute(() -> "nested"));
+    }
+
+    @Test(expected = RabbitCallRejectedException.class)
+    public void failsAfterTimeoutWhenLimitReached() throws Exception {
+        InFlightLimiter limiter = new InFlightLimiter("test", new InFlightLimit(1, 10));
+
+        limiter.execute(() -> limiter.execute(() -> "nested"));
+    }
+
+    @Test
+    public void waitsForSlotWhenLimitReached() throws Exception {
+        InFlightLimiter limiter = new InFlightLimiter("test", new InFlightLimit(1, -1));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            Future<Object> first = executor.submit(() -> limiter.execute(() -> {
+                started.countDown();
+                release.await();
+                return "first";
+            }));
+            started.await();
+            Future<Object> second = executor.submit(() -> limiter.execute(() -> "second"));
+
+            while (limiter.getQueued() == 0) {
+                Thread.sleep(1);
+            }
+            assertEquals(1, limiter.getInFlight());
+            release.countDown();
+
+            assertEquals("first", first.get(1, TimeUnit.SECONDS));
+            assertEquals("second", second.get(1, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void interruptedWaitKeepsTheInterruptStatus() throws Exception {
+        InFlightLimiter limiter = new InFlightLimiter("test", new InFlightLimit(1, -1));
+
+        limiter.execute(() -> {
+            Thread.currentThread().interrupt();
+            try {
+                limiter.execute(() -> "nested");
+                fail("The interrupted call must fail");
+            } catch (RabbitCallInterruptedException e) {
+                assertTrue(Thread.interrupted());
+                assertTrue(e.getCause() instanceof InterruptedException);
+            }
+            return null;
+        });
+        assertEquals(0, limiter.getInFlight());
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.policy;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Ivan Sergienko
+ */
+public class LatencyTrackerTest {
+
+    @Test
+    public void unknownUntilEnoughSamples() {
+        LatencyTracker tracker = new LatencyTracker(95, 1000);
+        for (int i = 0; i < LatencyTracker.RECOMPUTE_INTERVAL - 1; i++) {
+            tracker.record(i);
+        }
+
+        assertEquals(-1, tracker.getPercentileNanos());
+    }
+
+    @Test
+    public void estimatesPercentile() {
+        LatencyTracker tracker = new LatencyTracker(95, 1000);
+        for (int i = 1; i <= 1000; i++) {
+            tracker.record(i);
+        }
+
+        assertEquals(950, tracker.getPercentileNanos());
+    }
+
+    @Test
+    public void keepsOnlyRecentSamples() {
+        LatencyTracker tracker = new LatencyTracker(50, 100);
+        for (int i = 0; i < 100; i++) {
+            tracker.record(1_000);
+        }
+        for (int i = 0; i < 100; i++) {
+            tracker.record(10);
+        }
+
+        assertEquals(10, tracker.getPercentileNanos());
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.policy;
+
+import org.junit.Test;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.AmqpException;
+
+import java.net.ConnectException;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ivan Sergienko
+ */
+public class RetryPolicyTest {
+    private static final RetrySettings SETTINGS = new RetrySettings(3, 1, 5, 2, RetrySettings.DEFAULT_RETRY_ON, 100);
+
+    @Test
+    public void retriesRetryableExceptions() throws Exception {
+        RetryPolicy policy = new RetryPolicy(SETTINGS);
+        AtomicInteger attempts = new AtomicInteger();
+
+        Object reply = policy.execute(() -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new AmqpConnectException(new ConnectException("refused"));
+            }
+            return "reply";
+        });
+
+        assertEquals("reply", reply);
+        assertEquals(2, policy.getRetries());
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() throws Exception {
+        RetryPolicy policy = new RetryPolicy(SETTINGS);
+        AtomicInteger attempts = new AtomicInteger();
+
+        try {
+            policy.execute(() -> {
+                attempts.incrementAndGet();
+                throw new AmqpConnectException(new ConnectException("refused"));
+            });
+            fail("The last failure should be rethrown");
+        } catch (AmqpConnectException expected) {
+        }
+
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void retriesOnRetryableCause() throws Exception {
+        RetryPolicy policy = new RetryPolicy(new RetrySettings(2, 0, 0, 1, Collections.singletonList(ConnectException.class), 100));
+        AtomicInteger attempts = new AtomicInteger();
+
+        policy.execute(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new AmqpException(new ConnectException("refused"));
+            }
+            return "reply";
+        });
+
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    public void doesNotRetryOtherExceptions() throws Exception {
+        RetryPolicy policy = new RetryPolicy(SETTINGS);
+        AtomicInteger attempts = new AtomicInteger();
+
+        try {
+            policy.execute(() -> {
+                attempts.incrementAndGet();
+                throw new IllegalStateException("not retryable");
+            });
+        } catch (IllegalStateException expected) {
+        }
+
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void doesNotRetryRejectedCalls() throws Exception {
+        RetryPolicy policy = new RetryPolicy(new RetrySettings(2, 0, 0, 1, Collections.singletonList(AmqpException.class), 100));
+        AtomicInteger attempts = new AtomicInteger();
+
+        try {
+            policy.execute(() -> {
+                attempts.incrementAndGet();
+                throw new CircuitBreakerOpenException("open");
+            });
+        } catch (CircuitBreakerOpenException expected) {
+        }
+
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void retriesAreLimitedByBudget() throws Exception {
+        RetryPolicy policy = new RetryPolicy(new RetrySettings(2, 0, 0, 1, RetrySettings.DEFAULT_RETRY_ON, 1));
+
+        for (int i = 0; i < 5; i++) {
+            try {
+                policy.execute(() -> {
+                    throw new AmqpConnectException(new ConnectException("refused"));
+                });
+            } catch (AmqpConnectException expected) {
+            }
+        }
+
+        assertEquals(1, policy.getRetries());
+        assertEquals(4, policy.getBudgetExhausted());
+    }
+
+    @Test
+    public void interruptedBackoffKeepsTheInterruptStatus() throws Exception {
+        RetryPolicy policy = new RetryPolicy(new RetrySettings(3, 1000, 1000, 1, RetrySettings.DEFAULT_RETRY_ON, 100));
+        AtomicInteger attempts = new AtomicInteger();
+
+        try {
+            policy.execute(() -> {
+                attempts.incrementAndGet();
+                Thread.currentThread().interrupt();
+                throw new AmqpConnectException(new ConnectException("refused"));
+            });
+            fail("The interrupted backoff must fail the call");
+        } catch (RabbitCallInterruptedException expected) {
+            assertTrue(Thread.interrupted());
+        }
+
+        assertEquals(1, attempts.get());
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.policy;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ivan Sergienko
+ */
+public class VegasLimitTest {
+    private static final long BASE_RTT = 1_000_000;
+
+    @Test
+    public void growsWhileLatencyIsStable() {
+        VegasLimit limit = new VegasLimit(20, 1, 1000);
+        limit.onSample(BASE_RTT, 20, false);
+
+        for (int i = 0; i < 10; i++) {
+            limit.onSample(BASE_RTT, limit.getLimit(), false);
+        }
+
+        assertTrue(limit.getLimit() > 20);
+    }
+
+    @Test
+    public void shrinksWhenLatencyGrows() {
+        VegasLimit limit = new VegasLimit(100, 1, 1000);
+        limit.onSample(BASE_RTT, 100, false);
+
+        for (int i = 0; i < 10; i++) {
+            limit.onSample(BASE_RTT * 2, limit.getLimit(), false);
+        }
+
+        assertTrue(limit.getLimit() < 100);
+    }
+
+    @Test
+    public void shrinksOnDrop() {
+        VegasLimit limit = new VegasLimit(20, 1, 1000);
+
+        assertEquals(19, limit.onSample(BASE_RTT, 20, true));
+    }
+
+    @Test
+    public void ignoresSamplesWhenLimitIsNotUsed() {
+        VegasLimit limit = new VegasLimit(20, 1, 1000);
+        limit.onSample(BASE_RTT, 20, false);
+
+        assertEquals(20, limit.onSample(BASE_RTT, 5, false));
+    }
+
+    @Test
+    public void staysWithinBounds() {
+        VegasLimit limit = new VegasLimit(2, 2, 3);
+        for (int i = 0; i < 10; i++) {
+            limit.onSample(BASE_RTT, 3, true);
+        }
+        assertEquals(2, limit.getLimit());
+
+        limit.onSample(BASE_RTT, 3, false);
+        for (int i = 0; i < 10; i++) {
+            limit.onSample(BASE_RTT, 3, false);
+        }
+        assertEquals(3, limit.getLimit());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.publish;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares publishing through the {@link CachingConnectionFactory} channel cache of a {@link RabbitTemplate}
+ * with publishing through a {@link StripedChannelPool}, from many threads at once.
+ * Requires a RabbitMQ broker, at {@code localhost} unless the {@code rabbitmq.host} system property says otherwise.
+ * The messages are published to the default exchange with a routing key no queue is bound with, so the broker drops them.
+ * <p>
+ * Not a part of the test suite, run it with {@link #main(String[])}.
+ *
+ * @author Ivan Sergienko
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(32)
+public class StripedChannelPoolBenchmark {
+    private static final String ROUTING_KEY = "rabbit-rpc-benchmark-nowhere";
+
+    @Param({"8", "32"})
+    private int channels;
+
+    private CachingConnectionFactory connectionFactory;
+    private RabbitTemplate rabbitTemplate;
+    private StripedChannelPool channelPool;
+    private Message message;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        connectionFactory = new CachingConnectionFactory(System.getProperty("rabbitmq.host", "localhost"));
+        connectionFactory.setChannelCacheSize(channels);
+        rabbitTemplate = new RabbitTemplate(connectionFactory);
+        channelPool = new StripedChannelPool(connectionFactory, channels);
+        message = new Message(new byte[256], new MessageProperties());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        channelPool.close();
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    public void cachingConnectionFactory() {
+        rabbitTemplate.send("", ROUTING_KEY, message);
+    }
+
+    @Benchmark
+    public void stripedChannelPool() {
+        channelPool.publish("", ROUTING_KEY, message);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(StripedChannelPoolBenchmark.class.getSimpleName()).build()).run();
+    }
+}
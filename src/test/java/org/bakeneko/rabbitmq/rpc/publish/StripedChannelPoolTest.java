@@ -0,0 +1,111 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.publish;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author Ivan Sergienko
+ */
+public class StripedChannelPoolTest {
+    private final AtomicInteger publishing = new AtomicInteger();
+    private final AtomicInteger maxPublishing = new AtomicInteger();
+    private final AtomicInteger published = new AtomicInteger();
+    private Connection connection;
+
+    @Before
+    public void init() {
+        connection = mock(Connection.class);
+        given(connection.createChannel(false)).willAnswer(invocation -> channel());
+    }
+
+    @Test
+    public void publishersUseAtMostPoolSizeChannels() throws Exception {
+        ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+        given(connectionFactory.createConnection()).willReturn(connection);
+        StripedChannelPool pool = new StripedChannelPool(connectionFactory, 4);
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<?>> publishes = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                publishes.add(executor.submit(() -> pool.publish("", "queue", new Message(new byte[0], new MessageProperties()))));
+            }
+            for (Future<?> publish : publishes) {
+                publish.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(200, published.get());
+        assertTrue(maxPublishing.get() <= 4);
+        verify(connection, times(4)).createChannel(false);
+    }
+
+    @Test
+    public void closedChannelsAreReopened() throws Exception {
+        ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+        given(connectionFactory.createConnection()).willReturn(connection);
+        StripedChannelPool pool = new StripedChannelPool(connectionFactory, 1);
+
+        pool.publish("", "queue", new Message(new byte[0], new MessageProperties()));
+        pool.close();
+        pool.publish("", "queue", new Message(new byte[0], new MessageProperties()));
+
+        verify(connection, times(2)).createChannel(false);
+    }
+
+    private Channel channel() throws Exception {
+        Channel channel = mock(Channel.class);
+        given(channel.isOpen()).willReturn(true);
+        willAnswer(invocation -> {
+            maxPublishing.accumulateAndGet(publishing.incrementAndGet(), Math::max);
+            Thread.sleep(1);
+            publishing.decrementAndGet();
+            published.incrementAndGet();
+            return null;
+        }).given(channel).basicPublish(anyString(), eq("queue"), anyBoolean(), any(AMQP.BasicProperties.class), any(byte[].class));
+        return channel;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.reply;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.Envelope;
+import org.bakeneko.rabbitmq.rpc.policy.RabbitCallInterruptedException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author Ivan Sergienko
+ */
+public class ReplyMultiplexerTest {
+    private final AtomicReference<Consumer> replyConsumer = new AtomicReference<>();
+    private Connection connection;
+    private ReplyMultiplexer multiplexer;
+    private volatile boolean echo = true;
+
+    @Before
+    public void init() throws Exception {
+        ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+        connection = mock(Connection.class);
+        Channel channel = mock(Channel.class);
+        given(connectionFactory.createConnection()).willReturn(connection);
+        given(connection.createChannel(false)).willReturn(channel);
+        given(channel.isOpen()).willReturn(true);
+        willAnswer(invocation -> {
+            replyConsumer.set(invocation.getArgument(2));
+            return "replies";
+        }).given(channel).basicConsume(anyString(), anyBoolean(), any(Consumer.class));
+        willAnswer(invocation -> {
+            if (echo) {
+                AMQP.BasicProperties request = invocation.getArgument(3);
+                AMQP.BasicProperties reply = new AMQP.BasicProperties.Builder().correlationId(request.getCorrelationId()).build();
+                replyConsumer.get().handleDelivery("replies", new Envelope(1, false, "", request.getReplyTo()), reply, invocation.getArgument(4));
+            }
+            return null;
+        }).given(channel).basicPublish(anyString(), anyString(), anyBoolean(), any(AMQP.BasicProperties.class), any(byte[].class));
+
+        multiplexer = new ReplyMultiplexer(connectionFactory, 2);
+    }
+
+    @After
+    public void close() {
+        multiplexer.close();
+    }
+
+    @Test
+    public void repliesAreMatchedByCorrelationId() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Message>> replies = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                String body = "request-" + i;
+                replies.add(executor.submit(() -> multiplexer.sendAndReceive("", "queue", new Message(body.getBytes(), new MessageProperties()), 1_000)));
+            }
+
+            for (int i = 0; i < 100; i++) {
+                assertEquals("request-" + i, new String(replies.get(i).get().getBody()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(0, multiplexer.getPending());
+        verify(connection, atMost(2)).createChannel(false);
+    }
+
+    @Test
+    public void callsWithoutReplyExpire() throws Exception {
+        echo = false;
+
+        assertNull(multiplexer.sendAndReceive("", "queue", new Message(new byte[0], new MessageProperties()), 50));
+        assertEquals(0, multiplexer.getPending());
+    }
+
+    @Test
+    public void cancelledCallIsNoLongerPending() {
+        echo = false;
+
+        CompletableFuture<Message> reply = multiplexer.send("", "queue", new Message(new byte[0], new MessageProperties()));
+        assertEquals(1, multiplexer.getPending());
+
+        reply.cancel(false);
+        assertEquals(0, multiplexer.getPending());
+    }
+
+    @Test
+    public void interruptedWaitKeepsTheInterruptStatus() {
+        echo = false;
+        Thread.currentThread().interrupt();
+
+        try {
+            multiplexer.sendAndReceive("", "queue", new Message(new byte[0], new MessageProperties()), 1_000);
+            fail("The call must be interrupted");
+        } catch (RabbitCallInterruptedException e) {
+            assertTrue(Thread.interrupted());
+        }
+        assertEquals(0, multiplexer.getPending());
+    }
+}
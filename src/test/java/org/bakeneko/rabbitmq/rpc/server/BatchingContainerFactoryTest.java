@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.server;
+
+import org.junit.Test;
+import org.springframework.amqp.rabbit.config.DirectRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.listener.AsyncConsumerStoppedEvent;
+import org.springframework.amqp.rabbit.listener.ListenerContainerIdleEvent;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Ivan Sergienko
+ */
+public class BatchingContainerFactoryTest {
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+
+    @Test
+    public void containerHasSingleConsumerFlushingListenerWhenIdle() {
+        SimpleRabbitListenerContainerFactory delegate = new SimpleRabbitListenerContainerFactory();
+        delegate.setConnectionFactory(mock(ConnectionFactory.class));
+        delegate.setConcurrentConsumers(4);
+        BatchingMessageListener listener = mock(BatchingMessageListener.class);
+        when(listener.getMaxWaitMillis()).thenReturn(50L);
+        SimpleMessageListenerContainer container = new BatchingContainerFactory(delegate, eventPublisher).createListenerContainer(endpoint(listener));
+
+        assertEquals(1, ReflectionTestUtils.getField(container, "concurrentConsumers"));
+        assertEquals(50L, ReflectionTestUtils.getField(container, "receiveTimeout"));
+        ApplicationEventPublisher containerPublisher = ReflectionTestUtils.invokeMethod(container, "getApplicationEventPublisher");
+
+        containerPublisher.publishEvent(new ListenerContainerIdleEvent(container, 100, "batches"));
+        verify(listener).flush();
+        verify(eventPublisher, never()).publishEvent(any(Object.class));
+
+        AsyncConsumerStoppedEvent stopped = new AsyncConsumerStoppedEvent(container, null);
+        containerPublisher.publishEvent(stopped);
+        verify(eventPublisher).publishEvent((Object) stopped);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsDirectContainers() {
+        DirectRabbitListenerContainerFactory delegate = new DirectRabbitListenerContainerFactory();
+        delegate.setConnectionFactory(mock(ConnectionFactory.class));
+
+        new BatchingContainerFactory(delegate, eventPublisher).createListenerContainer(endpoint(mock(BatchingMessageListener.class)));
+    }
+
+    private SimpleRabbitListenerEndpoint endpoint(BatchingMessageListener listener) {
+        SimpleRabbitListenerEndpoint endpoint = new SimpleRabbitListenerEndpoint();
+        endpoint.setId("batches");
+        endpoint.setQueueNames("batches");
+        endpoint.setMessageListener(listener);
+
+        return endpoint;
+    }
+}
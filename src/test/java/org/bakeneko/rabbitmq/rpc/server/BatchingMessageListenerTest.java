@@ -0,0 +1,185 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rabbitmq.rpc.server;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+import org.springframework.remoting.support.RemoteInvocationResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author Ivan Sergienko
+ */
+public class BatchingMessageListenerTest {
+    private final SimpleMessageConverter converter = new SimpleMessageConverter();
+    private Handler handler;
+    private Channel channel;
+
+    @Before
+    public void init() {
+        handler = new Handler();
+        channel = mock(Channel.class);
+    }
+
+    @Test
+    public void fullBatchIsHandledAtOnceAndRepliedPerRequest() throws Exception {
+        BatchingMessageListener listener = listener("upperCase", 3, 10_000);
+
+        for (int i = 1; i <= 3; i++) {
+            listener.onMessage(request("r" + i, i), channel);
+        }
+
+        assertEquals(1, handler.batches.size());
+        ArgumentCaptor<AMQP.BasicProperties> properties = ArgumentCaptor.forClass(AMQP.BasicProperties.class);
+        ArgumentCaptor<byte[]> bodies = ArgumentCaptor.forClass(byte[].class);
+        verify(channel, times(3)).basicPublish(eq(""), eq("replies"), eq(false), properties.capture(), bodies.capture());
+        assertEquals("correlation-2", properties.getAllValues().get(1).getCorrelationId());
+        assertEquals("R2", new String(bodies.getAllValues().get(1)));
+        verify(channel).basicAck(3, true);
+    }
+
+    @Test
+    public void incompleteBatchIsHandledOnFlush() throws Exception {
+        BatchingMessageListener listener = listener("upperCase", 10, 10_000);
+
+        listener.onMessage(request("r1", 1), channel);
+        listener.onMessage(request("r2", 2), channel);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+
+        listener.flush();
+        verify(channel).basicAck(2, true);
+        assertEquals(1, handler.batches.size());
+        assertEquals(2, handler.batches.get(0).size());
+
+        listener.flush();
+        assertEquals(1, handler.batches.size());
+    }
+
+    @Test
+    public void batchOlderThanMaxWaitIsHandledWithNextMessage() throws Exception {
+        BatchingMessageListener listener = listener("upperCase", 10, 50);
+
+        listener.onMessage(request("r1", 1), channel);
+        Thread.sleep(60);
+        listener.onMessage(request("r2", 2), channel);
+
+        verify(channel).basicAck(2, true);
+        assertEquals(Collections.singletonList(2), handler.batches.stream().map(List::size).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void batchOfClosedChannelIsDropped() throws Exception {
+        BatchingMessageListener listener = listener("upperCase", 2, 10_000);
+        Channel recovered = mock(Channel.class);
+
+        listener.onMessage(request("r1", 1), channel);
+        listener.onMessage(request("r1", 1), recovered);
+        listener.onMessage(request("r2", 2), recovered);
+
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        verify(recovered).basicAck(2, true);
+    }
+
+    @Test
+    public void failedBatchIsRepliedWithException() throws Exception {
+        BatchingMessageListener listener = listener("fail", 3, 10_000);
+
+        listener.onMessage(request("r1", 1), channel);
+        listener.onMessage(oneWayRequest("r2", 2), channel);
+        listener.onMessage(request("r3", 3), channel);
+
+        ArgumentCaptor<byte[]> bodies = ArgumentCaptor.forClass(byte[].class);
+        verify(channel, times(2)).basicPublish(eq(""), eq("replies"), eq(false), any(), bodies.capture());
+        MessageProperties replyProperties = new MessageProperties();
+        replyProperties.setContentType(MessageProperties.CONTENT_TYPE_SERIALIZED_OBJECT);
+        Object reply = converter.fromMessage(new Message(bodies.getValue(), replyProperties));
+        assertTrue(reply instanceof RemoteInvocationResult);
+        assertTrue(((RemoteInvocationResult) reply).getException() instanceof IllegalArgumentException);
+        verify(channel).basicAck(1, false);
+        verify(channel).basicNack(2, false, false);
+        verify(channel).basicAck(3, false);
+        verify(channel, never()).basicAck(anyLong(), eq(true));
+    }
+
+    @Test
+    public void messageWithoutChannelIsHandledAlone() throws Exception {
+        BatchingMessageListener listener = listener("upperCase", 10, 10_000);
+
+        listener.onMessage(oneWayRequest("r1", 1));
+
+        assertEquals(Collections.singletonList(Collections.singletonList("r1")), handler.batches);
+    }
+
+    @Test(expected = AmqpRejectAndDontRequeueException.class)
+    public void failedMessageWithoutChannelIsRejected() throws Exception {
+        listener("fail", 10, 10_000).onMessage(oneWayRequest("r1", 1));
+    }
+
+    private BatchingMessageListener listener(String handlerName, int batchSize, long maxWaitMillis) throws NoSuchMethodException {
+        return new BatchingMessageListener(handler, Handler.class.getMethod(handlerName, List.class), converter, batchSize, maxWaitMillis);
+    }
+
+    private Message request(String payload, long deliveryTag) {
+        Message message = oneWayRequest(payload, deliveryTag);
+        message.getMessageProperties().setReplyTo("replies");
+        message.getMessageProperties().setCorrelationId("correlation-" + deliveryTag);
+
+        return message;
+    }
+
+    private Message oneWayRequest(String payload, long deliveryTag) {
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(deliveryTag);
+
+        return converter.toMessage(payload, properties);
+    }
+
+    public static class Handler {
+        private final List<List<String>> batches = new ArrayList<>();
+
+        public synchronized List<String> upperCase(List<String> payloads) {
+            batches.add(payloads);
+            return payloads.stream().map(String::toUpperCase).collect(Collectors.toList());
+        }
+
+        public List<String> fail(List<String> payloads) {
+            throw new IllegalArgumentException("Failed: " + payloads);
+        }
+    }
+}
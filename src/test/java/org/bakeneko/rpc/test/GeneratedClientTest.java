@@ -16,17 +16,27 @@
 
 package org.bakeneko.rpc.test;
 
+import org.bakeneko.rabbitmq.rpc.RpcReply;
 import org.bakeneko.rpc.test.model.TestRequest;
 import org.bakeneko.rpc.test.model.TestResponse;
 import org.bakeneko.rpc.test.service.TestClient;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.bakeneko.rpc.test.TestConfiguration.TEST_HEADER_NAME;
 import static org.bakeneko.rpc.test.TestConfiguration.TEST_HEADER_VALUE;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author Ivan Sergienko
@@ -66,9 +76,46 @@ public class GeneratedClientTest {
         assertEquals(new TestResponse("test"), response);
     }
 
+    @Test
+    public void sendAndReceiveLazyCustomModel() {
+        RpcReply<TestResponse> reply = client.sendAndReceiveLazyCustomModel(new TestRequest("test"));
+        assertFalse(reply.isConverted());
+        assertEquals(MessageProperties.CONTENT_TYPE_JSON, reply.getMessageProperties().getContentType());
+        assertTrue(reply.getSize() > 0);
+
+        assertEquals(new TestResponse("test"), reply.get());
+        assertTrue(reply.isConverted());
+        assertEquals(new TestResponse("test"), reply.get());
+    }
+
     @Test
     public void sendWithHeaderAndReceiveCustomModel() {
         TestResponse response = client.sendWithHeaderAndReceiveCustomModel(new TestRequest("test"), TEST_HEADER_VALUE);
         assertEquals(new TestResponse("test"), response);
     }
+
+    @Test
+    public void sendWithPriority() {
+        Integer priority = client.sendWithPriorityAndReceivePriority("test");
+        assertEquals(Integer.valueOf(5), priority);
+    }
+
+    @Test
+    public void sendToRoutingKeyFromParameter() {
+        assertEquals("test", client.sendToRoutingKeyAndReceiveString("test", "payload_only"));
+        assertEquals("test", client.sendToRoutingKeyTemplateAndReceiveString("test", "payload"));
+    }
+
+    @Test
+    public void rawPayloadsBypassTheConverter() {
+        byte[] bytes = "test".getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(bytes, client.sendAndReceiveBytes(bytes));
+        assertEquals(ByteBuffer.wrap(bytes), client.sendAndReceiveByteBuffer(ByteBuffer.wrap(bytes)));
+
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_BYTES);
+        Message reply = client.sendAndReceiveMessage(new Message(bytes, properties), TEST_HEADER_VALUE);
+        assertArrayEquals(bytes, reply.getBody());
+        assertEquals(TEST_HEADER_VALUE, reply.getMessageProperties().getHeaders().get(TEST_HEADER_NAME));
+    }
 }
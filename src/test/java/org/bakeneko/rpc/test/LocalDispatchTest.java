@@ -0,0 +1,69 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rpc.test;
+
+import org.bakeneko.rpc.test.model.TestRequest;
+import org.bakeneko.rpc.test.model.TestResponse;
+import org.bakeneko.rpc.test.service.CopyingLocalTestClient;
+import org.bakeneko.rpc.test.service.LocalTestClient;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.bakeneko.rpc.test.TestConfiguration.TEST_HEADER_VALUE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Ivan Sergienko
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = TestConfiguration.class)
+public class LocalDispatchTest {
+    @Autowired
+    private LocalTestClient localClient;
+    @Autowired
+    private CopyingLocalTestClient copyingLocalClient;
+
+    @Test
+    public void localDispatchPassesPayloadByReference() {
+        TestRequest request = new TestRequest("test");
+        assertSame(request, localClient.echo(request));
+    }
+
+    @Test
+    public void localDispatchPassesHeaders() {
+        assertEquals("test", localClient.sendWithHeaderAndReceiveString("test", TEST_HEADER_VALUE));
+    }
+
+    @Test
+    public void mismatchedReplyTypeGoesThroughBroker() {
+        assertEquals(new TestResponse("test"), localClient.echoAsResponse(new TestRequest("test")));
+    }
+
+    @Test
+    public void copyOnLocalDispatchCopiesPayloadAndReply() {
+        TestRequest request = new TestRequest("test");
+        TestRequest response = copyingLocalClient.echo(request);
+
+        assertEquals(request, response);
+        assertNotSame(request, response);
+    }
+}
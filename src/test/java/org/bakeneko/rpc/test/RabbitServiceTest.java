@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rpc.test;
+
+import org.bakeneko.rabbitmq.rpc.server.BatchingMessageListener;
+import org.bakeneko.rpc.test.model.TestRequest;
+import org.bakeneko.rpc.test.model.TestResponse;
+import org.bakeneko.rpc.test.service.TestService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.amqp.rabbit.listener.AbstractMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.bakeneko.rpc.test.TestConfiguration.TEST_HEADER_VALUE;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ivan Sergienko
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = TestConfiguration.class)
+public class RabbitServiceTest {
+    @Autowired
+    private TestService client;
+    @Autowired
+    private RabbitListenerEndpointRegistry endpointRegistry;
+
+    @Test
+    public void generatedClientIsInjectedByInterfaceType() {
+        assertTrue(Proxy.isProxyClass(client.getClass()));
+    }
+
+    @Test
+    public void serviceMethodsAreExposedAsListeners() {
+        assertEquals(new TestResponse("test"), client.process(new TestRequest("test")));
+        assertEquals("test", client.processWithHeader("test", TEST_HEADER_VALUE));
+    }
+
+    @Test
+    public void listenerContainersAreTunedPerMethod() {
+        DirectFieldAccessor tuned = new DirectFieldAccessor(containers("service").get(0));
+        assertEquals(2, tuned.getPropertyValue("concurrentConsumers"));
+        assertEquals(5, tuned.getPropertyValue("prefetchCount"));
+        assertEquals(3, tuned.getPropertyValue("txSize"));
+
+        MessageListenerContainer defaults = endpointRegistry.getListenerContainer("testServiceImpl.processWithHeader");
+        assertEquals(10, new DirectFieldAccessor(defaults).getPropertyValue("prefetchCount"));
+    }
+
+    @Test
+    public void batchHandlerAppliesToOverloadTakingItsPayload() {
+        List<AbstractMessageListenerContainer> batchContainers = containers("service_events");
+        assertEquals(2, batchContainers.size());
+        batchContainers.forEach(container -> assertTrue(container.getMessageListener() instanceof BatchingMessageListener));
+
+        assertEquals(1, containers("service").size());
+        assertFalse(containers("service").get(0).getMessageListener() instanceof BatchingMessageListener);
+    }
+
+    private List<AbstractMessageListenerContainer> containers(String queue) {
+        return endpointRegistry.getListenerContainers().stream()
+                .map(AbstractMessageListenerContainer.class::cast)
+                .filter(container -> Arrays.asList(container.getQueueNames()).contains(queue))
+                .collect(Collectors.toList());
+    }
+}
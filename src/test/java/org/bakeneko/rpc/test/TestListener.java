@@ -18,7 +18,10 @@ package org.bakeneko.rpc.test;
 
 import org.bakeneko.rpc.test.model.TestRequest;
 import org.bakeneko.rpc.test.model.TestResponse;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.AmqpMessageHeaderAccessor;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Service;
@@ -59,4 +62,21 @@ public class TestListener {
         assertEquals(TEST_HEADER_VALUE, header);
         return new TestResponse(payload.getData());
     }
+
+    @RabbitListener(queues = "${rpc-test.queue.priority}")
+    public Integer priority(@Payload String payload, @Header(AmqpMessageHeaderAccessor.PRIORITY) Integer priority) {
+        assertNotNull(payload);
+        return priority;
+    }
+
+    @RabbitListener(queues = "${rpc-test.queue.echo}")
+    public TestRequest echo(@Payload TestRequest payload) {
+        return payload;
+    }
+
+    @RabbitListener(queues = "${rpc-test.queue.raw}")
+    public Message raw(Message message) {
+        assertEquals(MessageProperties.CONTENT_TYPE_BYTES, message.getMessageProperties().getContentType());
+        return message;
+    }
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bakeneko.rpc.test;
+
+import org.bakeneko.rabbitmq.rpc.RabbitBatchHandler;
+import org.bakeneko.rabbitmq.rpc.RabbitService;
+import org.bakeneko.rpc.test.model.TestRequest;
+import org.bakeneko.rpc.test.model.TestResponse;
+import org.bakeneko.rpc.test.service.TestService;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.bakeneko.rpc.test.TestConfiguration.TEST_HEADER_VALUE;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Ivan Sergienko
+ */
+@RabbitService(prefetch = "10")
+public class TestServiceImpl implements TestService {
+
+    @Override
+    public TestResponse process(TestRequest request) {
+        return new TestResponse(request.getData());
+    }
+
+    @Override
+    public void process(String event) {
+        processAll(Collections.singletonList(event));
+    }
+
+    @RabbitBatchHandler("process")
+    public void processAll(List<String> events) {
+    }
+
+    @Override
+    public String processWithHeader(String payload, String header) {
+        assertEquals(TEST_HEADER_VALUE, header);
+        return payload;
+    }
+}
@@ -18,11 +18,16 @@ package org.bakeneko.rpc.test.service;
 
 import org.bakeneko.rabbitmq.rpc.RabbitClient;
 import org.bakeneko.rabbitmq.rpc.RabbitSender;
+import org.bakeneko.rabbitmq.rpc.RoutingKey;
+import org.bakeneko.rabbitmq.rpc.RpcReply;
 import org.bakeneko.rpc.test.model.TestRequest;
 import org.bakeneko.rpc.test.model.TestResponse;
+import org.springframework.amqp.core.Message;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
 
+import java.nio.ByteBuffer;
+
 import static org.bakeneko.rpc.test.TestConfiguration.*;
 
 /**
@@ -46,7 +51,26 @@ public interface TestClient {
     @RabbitSender(routingKey = "${rpc-test.queue.custom-payload-only}")
     TestResponse sendAndReceiveCustomModel(TestRequest request);
 
+    @RabbitSender(routingKey = "${rpc-test.queue.custom-payload-only}")
+    RpcReply<TestResponse> sendAndReceiveLazyCustomModel(TestRequest request);
+
     @RabbitSender(routingKey = "${rpc-test.queue.custom-payload-and-header}")
     TestResponse sendWithHeaderAndReceiveCustomModel(@Payload TestRequest request, @Header(TEST_HEADER_NAME) String header);
 
+    @RabbitSender(routingKey = "${rpc-test.queue.priority}", priority = "5")
+    Integer sendWithPriorityAndReceivePriority(String payload);
+
+    String sendToRoutingKeyAndReceiveString(@Payload String payload, @RoutingKey String routingKey);
+
+    String sendToRoutingKeyTemplateAndReceiveString(String payload, @RoutingKey("{}_only") String routingKeyPrefix);
+
+    @RabbitSender(routingKey = "${rpc-test.queue.raw}")
+    byte[] sendAndReceiveBytes(byte[] payload);
+
+    @RabbitSender(routingKey = "${rpc-test.queue.raw}")
+    ByteBuffer sendAndReceiveByteBuffer(ByteBuffer payload);
+
+    @RabbitSender(routingKey = "${rpc-test.queue.raw}")
+    Message sendAndReceiveMessage(@Payload Message payload, @Header(TEST_HEADER_NAME) String header);
+
 }